@@ -0,0 +1,27 @@
+package com.parkit.parkingsystem.benchmark;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+
+import java.util.Properties;
+
+/**
+ * In-memory H2 database in MySQL mode, so that DAO benchmarks need no server.
+ */
+public class BenchmarkDataBaseConfig extends DataBaseConfig {
+
+    @Override
+    protected String getPropertiesFile() {
+        return "benchmark:h2";
+    }
+
+    @Override
+    protected Properties loadProperties(String propertiesFile) {
+        Properties props = new Properties();
+        props.setProperty("jdbc.driver", "org.h2.Driver");
+        props.setProperty("jdbc.url", "jdbc:h2:mem:parkit;MODE=MySQL;DB_CLOSE_DELAY=-1");
+        props.setProperty("jdbc.username", "sa");
+        props.setProperty("jdbc.password", "");
+        props.setProperty("pool.maxSize", "4");
+        return props;
+    }
+}
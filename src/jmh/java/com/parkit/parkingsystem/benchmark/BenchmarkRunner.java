@@ -0,0 +1,62 @@
+package com.parkit.parkingsystem.benchmark;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the benchmarks in throughput and average time modes with the GC profiler (allocation per operation).
+ * Takes the usual JMH command line options. To gate regressions of the fare path, pass
+ * -Dbenchmark.fare.maxNanos=&lt;ns&gt; and/or -Dbenchmark.fare.maxBytes=&lt;bytes&gt;: the run exits with 1 when
+ * the average time or the allocation per call of a FareCalculatorBenchmark case goes above them.
+ */
+public final class BenchmarkRunner {
+
+    private BenchmarkRunner(){}
+
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .mode(Mode.Throughput)
+                .mode(Mode.AverageTime)
+                .timeUnit(TimeUnit.NANOSECONDS)
+                .addProfiler(GCProfiler.class)
+                .build();
+        Collection<RunResult> results = new Runner(options).run();
+        if (!checkFarePath(results)) {
+            System.exit(1);
+        }
+    }
+
+    private static boolean checkFarePath(Collection<RunResult> results) {
+        double maxNanos = Double.parseDouble(System.getProperty("benchmark.fare.maxNanos", "Infinity"));
+        double maxBytes = Double.parseDouble(System.getProperty("benchmark.fare.maxBytes", "Infinity"));
+        boolean passed = true;
+        for (RunResult result : results) {
+            String benchmark = result.getParams().getBenchmark();
+            if (!benchmark.contains("FareCalculatorBenchmark")) {
+                continue;
+            }
+            String name = benchmark + " " + result.getParams().getParam("parkingType") + " "
+                    + result.getParams().getParam("minutes") + "min regular=" + result.getParams().getParam("regularUser");
+            if (result.getParams().getMode() == Mode.AverageTime && result.getPrimaryResult().getScore() > maxNanos) {
+                System.err.println("REGRESSION " + name + ": " + result.getPrimaryResult().getScore() + " ns/op > " + maxNanos);
+                passed = false;
+            }
+            Result allocation = result.getSecondaryResults().get("gc.alloc.rate.norm");
+            if (allocation != null && allocation.getScore() > maxBytes) {
+                System.err.println("REGRESSION " + name + ": " + allocation.getScore() + " B/op > " + maxBytes);
+                passed = false;
+            }
+        }
+        return passed;
+    }
+}
@@ -0,0 +1,57 @@
+package com.parkit.parkingsystem.benchmark;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.FareCalculatorService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Date;
+
+/**
+ * Fare path: calculateFare on a ticket, and the integer cents engine underneath, per vehicle type and duration.
+ */
+@State(Scope.Thread)
+public class FareCalculatorBenchmark {
+
+    private static final long IN_TIME = 1_577_869_200_000L;
+
+    @Param({"CAR", "BIKE"})
+    private ParkingType parkingType;
+
+    @Param({"20", "45", "90", "1500"})
+    private int minutes;
+
+    @Param({"false", "true"})
+    private boolean regularUser;
+
+    private final FareCalculatorService fareCalculatorService = new FareCalculatorService();
+    private Ticket ticket;
+    private long outTime;
+
+    @Setup
+    public void setUp() {
+        outTime = IN_TIME + minutes * 60_000L;
+        ticket = new Ticket();
+        ticket.setParkingSpot(new ParkingSpot(1, parkingType, false));
+        ticket.setVehicleRegNumber("ABCDEF");
+        ticket.setInTime(new Date(IN_TIME));
+        ticket.setOutTime(new Date(outTime));
+        ticket.setRegularUser(regularUser);
+    }
+
+    @Benchmark
+    public double calculateFare() {
+        fareCalculatorService.calculateFare(ticket);
+        return ticket.getPrice();
+    }
+
+    @Benchmark
+    public long calculateFareCents() {
+        return fareCalculatorService.calculateFareCents(parkingType, IN_TIME, outTime, regularUser);
+    }
+}
@@ -0,0 +1,35 @@
+package com.parkit.parkingsystem.benchmark;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Date;
+
+/**
+ * Cost of building the model objects the gates create for every vehicle.
+ */
+@State(Scope.Thread)
+public class ModelBenchmark {
+
+    private int parkingNumber;
+
+    @Benchmark
+    public ParkingSpot newParkingSpot() {
+        return new ParkingSpot(++parkingNumber, ParkingType.CAR, false);
+    }
+
+    @Benchmark
+    public Ticket newTicket() {
+        Ticket ticket = new Ticket();
+        ticket.setParkingSpot(new ParkingSpot(++parkingNumber, ParkingType.CAR, false));
+        ticket.setVehicleRegNumber("ABCDEF");
+        ticket.setPrice(0);
+        ticket.setInTime(new Date());
+        ticket.setOutTime(null);
+        return ticket;
+    }
+}
@@ -0,0 +1,59 @@
+package com.parkit.parkingsystem.benchmark;
+
+import com.parkit.parkingsystem.config.SchemaMigrator;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.model.Ticket;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+
+/**
+ * TicketDAO.getTicket for vehicles that already left: the lookup goes to the database and maps the row.
+ */
+@State(Scope.Benchmark)
+public class TicketDAOBenchmark {
+
+    private static final int VEHICLES = 1000;
+
+    private final BenchmarkDataBaseConfig dataBaseConfig = new BenchmarkDataBaseConfig();
+    private final TicketDAO ticketDAO = new TicketDAO();
+    private int vehicle;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        Connection con = dataBaseConfig.getConnection();
+        try (Statement statement = con.createStatement()) {
+            //SchemaMigrator itself needs MySQL locks: only the baseline tables are created here
+            for (String sql : SchemaMigrator.readStatements("db/migration/V1__create_parking_and_ticket.sql")) {
+                statement.execute(sql);
+            }
+            statement.execute("delete from ticket");
+            statement.execute("delete from parking");
+            statement.execute("insert into parking(PARKING_NUMBER, AVAILABLE, TYPE) values(1, true, 'CAR')");
+        }
+        try (PreparedStatement ps = con.prepareStatement("insert into ticket(PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME) "
+                + "values(1, ?, 1.5, '2020-01-01 10:00:00', '2020-01-01 11:30:00')")) {
+            for (int i = 0; i < VEHICLES; i++) {
+                ps.setString(1, "BENCH" + i);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        } finally {
+            dataBaseConfig.closeConnection(con);
+        }
+        ticketDAO.setDataBaseConfig(dataBaseConfig);
+        ticketDAO.loadActiveSessionIndex();
+    }
+
+    @Benchmark
+    public Ticket getClosedTicket() {
+        vehicle = (vehicle + 1) % VEHICLES;
+        return ticketDAO.getTicket("BENCH" + vehicle);
+    }
+}
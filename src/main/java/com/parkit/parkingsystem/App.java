@@ -1,16 +1,67 @@
 package com.parkit.parkingsystem;
 
+import com.parkit.parkingsystem.dao.InMemoryParkingSpotStore;
+import com.parkit.parkingsystem.dao.ParkingStores;
 import com.parkit.parkingsystem.service.InteractiveShell;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
 public final class App {
     private static InteractiveShell interactiveShell;
     private App(){};
     private static final Logger logger = LogManager.getLogger("App");
 
+    private static final String HTTP_PORT_OPTION = "--http=";
+    private static final String STORE_OPTION = "--store=";
+    private static final String LAYOUT_OPTION = "--layout=";
+    private static final String EVENTS_OPTION = "--events=";
+    private static final String FILE_STORE_PREFIX = "file:";
+
+    /**
+     * Pass --http=&lt;port&gt; to open the HTTP gate API alongside the interactive shell.
+     * Pass --store=memory or --store=file:&lt;path&gt; to run without a database server, on the lot given by
+     * --layout=&lt;TYPE:first-last,...&gt; (by default the lot of Data.sql).
+     * Pass --events=&lt;file&gt;, or --events=- for the standard input, to apply a log of gate events and exit
+     * instead of opening the shell.
+     */
     public static void main(String args[]) throws Exception {
         logger.info("Initializing Parking System");
-        interactiveShell.loadInterface();
+        int httpPort = 0;
+        String store = null;
+        String layout = InMemoryParkingSpotStore.DEFAULT_LAYOUT;
+        String events = null;
+        for (String arg : args) {
+            if (arg.startsWith(HTTP_PORT_OPTION)) {
+                httpPort = Integer.parseInt(arg.substring(HTTP_PORT_OPTION.length()));
+            } else if (arg.startsWith(STORE_OPTION)) {
+                store = arg.substring(STORE_OPTION.length());
+            } else if (arg.startsWith(LAYOUT_OPTION)) {
+                layout = arg.substring(LAYOUT_OPTION.length());
+            } else if (arg.startsWith(EVENTS_OPTION)) {
+                events = arg.substring(EVENTS_OPTION.length());
+            }
+        }
+        ParkingStores stores = null;
+        if ("memory".equals(store)) {
+            stores = ParkingStores.inMemory(layout);
+        } else if (store != null && store.startsWith(FILE_STORE_PREFIX)) {
+            stores = ParkingStores.file(Paths.get(store.substring(FILE_STORE_PREFIX.length())), layout, true);
+        } else if (store != null) {
+            throw new IllegalArgumentException("Unknown store " + store + ", expected memory or file:<path>");
+        }
+        if (events != null) {
+            try (Reader log = "-".equals(events) ? new InputStreamReader(System.in, StandardCharsets.UTF_8)
+                    : Files.newBufferedReader(Paths.get(events), StandardCharsets.UTF_8)) {
+                InteractiveShell.processEvents(log, stores);
+            }
+            return;
+        }
+        interactiveShell.loadInterface(httpPort, stores);
     }
 }
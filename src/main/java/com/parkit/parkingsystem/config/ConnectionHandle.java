@@ -0,0 +1,71 @@
+package com.parkit.parkingsystem.config;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Backs the {@link java.sql.Connection} proxy handed out for one checkout of a {@link PooledConnection}.
+ * close() returns the connection to the pool; any use after that fails like a closed connection would.
+ */
+class ConnectionHandle implements InvocationHandler {
+
+    private static final String CONNECTION_EXCEPTION_SQL_STATE = "08";
+
+    private final ConnectionPool pool;
+    private final PooledConnection pooledConnection;
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    ConnectionHandle(ConnectionPool pool, PooledConnection pooledConnection) {
+        this.pool = pool;
+        this.pooledConnection = pooledConnection;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        switch (method.getName()) {
+            case "close":
+                if (closed.compareAndSet(false, true)) {
+                    pool.release(pooledConnection);
+                }
+                return null;
+            case "isClosed":
+                return closed.get() || pooledConnection.getPhysicalConnection().isClosed();
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "prepareStatement":
+                if (args.length == 1 && !closed.get()) {
+                    return pooledConnection.getStatementCache().borrow((String) args[0], Statement.NO_GENERATED_KEYS, (Connection) proxy);
+                }
+                if (args.length == 2 && args[1] instanceof Integer && !closed.get()) {
+                    return pooledConnection.getStatementCache().borrow((String) args[0], (Integer) args[1], (Connection) proxy);
+                }
+                break;
+            case "toString":
+                return "Pooled" + pooledConnection.getPhysicalConnection();
+            default:
+                break;
+        }
+        if (closed.get()) {
+            throw new SQLException("Connection is closed");
+        }
+        try {
+            return method.invoke(pooledConnection.getPhysicalConnection(), args);
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException) {
+                String sqlState = ((SQLException) cause).getSQLState();
+                if (sqlState != null && sqlState.startsWith(CONNECTION_EXCEPTION_SQL_STATE)) {
+                    pooledConnection.markBroken();
+                }
+            }
+            throw cause;
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package com.parkit.parkingsystem.config;
+
+import com.parkit.parkingsystem.metrics.MetricsRegistry;
+import com.parkit.parkingsystem.metrics.OperationMetrics;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded pool of physical JDBC connections.
+ * Borrowed connections are proxies: calling close() on them gives the physical connection back to the pool.
+ */
+public class ConnectionPool implements ConnectionPoolMBean {
+
+    private static final Logger logger = LogManager.getLogger("ConnectionPool");
+    private static final OperationMetrics getConnectionMetrics = MetricsRegistry.operation("ConnectionPool.getConnection");
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final int minSize;
+    private final int maxSize;
+    private final long acquireTimeoutMillis;
+    private final int validationTimeoutSeconds;
+    private final long validationIdleNanos;
+    private final int statementCacheSize;
+
+    private final Semaphore permits;
+    private final BlockingDeque<PooledConnection> idleConnections = new LinkedBlockingDeque<>();
+    private final AtomicInteger totalConnections = new AtomicInteger();
+    private final AtomicLong createdConnections = new AtomicLong();
+    private final AtomicLong discardedConnections = new AtomicLong();
+    private final AtomicLong acquiredConnections = new AtomicLong();
+    private final AtomicLong acquireTimeouts = new AtomicLong();
+    private final AtomicLong statementCacheHits = new AtomicLong();
+    private final AtomicLong statementCacheMisses = new AtomicLong();
+    private volatile boolean closed;
+
+    public ConnectionPool(String url, String user, String password, int minSize, int maxSize,
+                          long acquireTimeoutMillis, int validationTimeoutSeconds, long validationIdleMillis,
+                          int statementCacheSize) {
+        if (maxSize < 1 || minSize < 0 || minSize > maxSize) {
+            throw new IllegalArgumentException("Invalid pool size: min=" + minSize + " max=" + maxSize);
+        }
+        if (statementCacheSize < 0) {
+            throw new IllegalArgumentException("Invalid statement cache size: " + statementCacheSize);
+        }
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        this.validationTimeoutSeconds = validationTimeoutSeconds;
+        this.validationIdleNanos = TimeUnit.MILLISECONDS.toNanos(validationIdleMillis);
+        this.statementCacheSize = statementCacheSize;
+        this.permits = new Semaphore(maxSize, true);
+    }
+
+    /**
+     * Opens connections until the pool holds at least minSize of them. Failures are logged, not thrown,
+     * so that the application can still start while the database is down.
+     */
+    public void prefill() {
+        while (totalConnections.get() < minSize && !closed) {
+            try {
+                idleConnections.offerLast(createConnection());
+            } catch (SQLException e) {
+                logger.error("Error while pre-filling connection pool", e);
+                return;
+            }
+        }
+    }
+
+    public Connection getConnection() throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return acquire();
+        } catch (SQLException | RuntimeException e) {
+            getConnectionMetrics.failed();
+            throw e;
+        } finally {
+            getConnectionMetrics.record(start);
+        }
+    }
+
+    private Connection acquire() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+        try {
+            if (!permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                acquireTimeouts.incrementAndGet();
+                throw new SQLTimeoutException("Timed out after " + acquireTimeoutMillis + " ms waiting for a DB connection");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a DB connection", e);
+        }
+        try {
+            PooledConnection pooledConnection = takeValidConnection();
+            acquiredConnections.incrementAndGet();
+            return (Connection) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, new ConnectionHandle(this, pooledConnection));
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private PooledConnection takeValidConnection() throws SQLException {
+        PooledConnection pooledConnection;
+        //LIFO: the most recently used connection is the least likely to have been dropped by the server
+        while ((pooledConnection = idleConnections.pollFirst()) != null) {
+            if (isValid(pooledConnection)) {
+                return pooledConnection;
+            }
+            discard(pooledConnection);
+        }
+        return createConnection();
+    }
+
+    private boolean isValid(PooledConnection pooledConnection) {
+        if (System.nanoTime() - pooledConnection.getLastReleasedNanos() < validationIdleNanos) {
+            return true;
+        }
+        try {
+            return pooledConnection.getPhysicalConnection().isValid(validationTimeoutSeconds);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private PooledConnection createConnection() throws SQLException {
+        Connection physicalConnection = DriverManager.getConnection(url, user, password);
+        totalConnections.incrementAndGet();
+        createdConnections.incrementAndGet();
+        logger.info("Opened new physical DB connection");
+        return new PooledConnection(physicalConnection,
+                new StatementCache(physicalConnection, statementCacheSize, statementCacheHits, statementCacheMisses));
+    }
+
+    void release(PooledConnection pooledConnection) {
+        try {
+            if (closed || pooledConnection.isBroken()) {
+                discard(pooledConnection);
+                return;
+            }
+            pooledConnection.getStatementCache().releaseAll();
+            Connection physicalConnection = pooledConnection.getPhysicalConnection();
+            if (!physicalConnection.getAutoCommit()) {
+                physicalConnection.rollback();
+                physicalConnection.setAutoCommit(true);
+            }
+            pooledConnection.markReleased();
+            idleConnections.offerFirst(pooledConnection);
+        } catch (SQLException e) {
+            logger.error("Error while returning connection to pool", e);
+            discard(pooledConnection);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void discard(PooledConnection pooledConnection) {
+        totalConnections.decrementAndGet();
+        discardedConnections.incrementAndGet();
+        try {
+            pooledConnection.getPhysicalConnection().close();
+        } catch (SQLException e) {
+            logger.error("Error while closing physical connection", e);
+        }
+    }
+
+    public void close() {
+        closed = true;
+        PooledConnection pooledConnection;
+        while ((pooledConnection = idleConnections.pollFirst()) != null) {
+            discard(pooledConnection);
+        }
+    }
+
+    public int getMinSize() {
+        return minSize;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public int getTotalConnections() {
+        return totalConnections.get();
+    }
+
+    public int getIdleConnections() {
+        return idleConnections.size();
+    }
+
+    public int getActiveConnections() {
+        return maxSize - permits.availablePermits();
+    }
+
+    public int getWaitingThreads() {
+        return permits.getQueueLength();
+    }
+
+    public long getCreatedConnections() {
+        return createdConnections.get();
+    }
+
+    public long getDiscardedConnections() {
+        return discardedConnections.get();
+    }
+
+    public long getAcquiredConnections() {
+        return acquiredConnections.get();
+    }
+
+    public long getAcquireTimeouts() {
+        return acquireTimeouts.get();
+    }
+
+    public int getStatementCacheSize() {
+        return statementCacheSize;
+    }
+
+    public long getStatementCacheHits() {
+        return statementCacheHits.get();
+    }
+
+    public long getStatementCacheMisses() {
+        return statementCacheMisses.get();
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectionPool{total=" + getTotalConnections()
+                + ", active=" + getActiveConnections()
+                + ", idle=" + getIdleConnections()
+                + ", waiting=" + getWaitingThreads()
+                + ", created=" + getCreatedConnections()
+                + ", discarded=" + getDiscardedConnections()
+                + ", acquired=" + getAcquiredConnections()
+                + ", timeouts=" + getAcquireTimeouts()
+                + ", statementCacheHits=" + getStatementCacheHits()
+                + ", statementCacheMisses=" + getStatementCacheMisses() + "}";
+    }
+}
@@ -0,0 +1,33 @@
+package com.parkit.parkingsystem.config;
+
+/**
+ * JMX view of a {@link ConnectionPool}.
+ */
+public interface ConnectionPoolMBean {
+
+    int getMinSize();
+
+    int getMaxSize();
+
+    int getTotalConnections();
+
+    int getIdleConnections();
+
+    int getActiveConnections();
+
+    int getWaitingThreads();
+
+    long getCreatedConnections();
+
+    long getDiscardedConnections();
+
+    long getAcquiredConnections();
+
+    long getAcquireTimeouts();
+
+    int getStatementCacheSize();
+
+    long getStatementCacheHits();
+
+    long getStatementCacheMisses();
+}
@@ -1,36 +1,157 @@
 package com.parkit.parkingsystem.config;
 
+import com.parkit.parkingsystem.metrics.MetricsRegistry;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.sql.*;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class DataBaseConfig {
 
     private static final Logger logger = LogManager.getLogger("DataBaseConfig");
 
+    private static final String PROPERTIES_FILE = "src/main/resources/DataBaseProperties.properties";
+    private static final String DEFAULT_DRIVER = "com.mysql.cj.jdbc.Driver";
+
+    //one pool per properties file, shared by every DAO using the same configuration
+    private static final Map<String, ConnectionPool> connectionPools = new ConcurrentHashMap<>();
+    private static final ThreadLocal<Transaction> currentTransaction = new ThreadLocal<>();
+
     public Connection getConnection() throws ClassNotFoundException, SQLException, IOException {
-        logger.info("Create DB connection");
+        Transaction transaction = getCurrentTransaction();
+        if (transaction != null) {
+            return transaction.getSharedConnection();
+        }
+        logger.debug("Borrow DB connection from pool");
+        return getConnectionPool().getConnection();
+    }
+
+    /**
+     * Runs the callback in one DB transaction: every getConnection() made by this thread meanwhile returns
+     * the same connection. Commits if the callback returns, rolls back if it throws.
+     * A nested call joins the transaction already running.
+     */
+    public <T> T inTransaction(TransactionCallback<T> callback) throws Exception {
+        if (getCurrentTransaction() != null) {
+            return callback.doInTransaction();
+        }
+        Connection con = getConnectionPool().getConnection();
+        Transaction transaction = new Transaction(getPropertiesFile(), con);
+        currentTransaction.set(transaction);
+        try {
+            con.setAutoCommit(false);
+            T result = callback.doInTransaction();
+            con.commit();
+            currentTransaction.remove();
+            transaction.committed();
+            return result;
+        } catch (Exception | Error e) {
+            currentTransaction.remove();
+            try {
+                con.rollback();
+            } catch (SQLException rollbackException) {
+                logger.error("Error while rolling back transaction", rollbackException);
+            }
+            transaction.rolledBack();
+            throw e;
+        } finally {
+            currentTransaction.remove();
+            closeConnection(con);
+        }
+    }
+
+    /**
+     * Runs the action once the current transaction commits, or right away when there is none.
+     * Used to keep in-memory state from showing writes that could still be rolled back.
+     */
+    public void afterCommit(Runnable action) {
+        Transaction transaction = getCurrentTransaction();
+        if (transaction != null) {
+            transaction.afterCommit(action);
+        } else {
+            action.run();
+        }
+    }
+
+    /**
+     * Runs the action if the current transaction rolls back; does nothing when there is no transaction.
+     */
+    public void afterRollback(Runnable action) {
+        Transaction transaction = getCurrentTransaction();
+        if (transaction != null) {
+            transaction.afterRollback(action);
+        }
+    }
+
+    private Transaction getCurrentTransaction() {
+        Transaction transaction = currentTransaction.get();
+        return (transaction != null && transaction.getPropertiesFile().equals(getPropertiesFile())) ? transaction : null;
+    }
+
+    public ConnectionPool getConnectionPool() throws ClassNotFoundException, IOException {
+        String propertiesFile = getPropertiesFile();
+        ConnectionPool connectionPool = connectionPools.get(propertiesFile);
+        if (connectionPool == null) {
+            synchronized (connectionPools) {
+                connectionPool = connectionPools.get(propertiesFile);
+                if (connectionPool == null) {
+                    connectionPool = createConnectionPool(loadProperties(propertiesFile));
+                    connectionPools.put(propertiesFile, connectionPool);
+                    MetricsRegistry.registerConnectionPool(propertiesFile, connectionPool);
+                }
+            }
+        }
+        return connectionPool;
+    }
+
+    protected String getPropertiesFile() {
+        return PROPERTIES_FILE;
+    }
+
+    /**
+     * @return the settings of the properties file behind this configuration, read again on every call
+     */
+    public Properties getProperties() throws IOException {
+        return loadProperties(getPropertiesFile());
+    }
+
+    protected Properties loadProperties(String propertiesFile) throws IOException {
         Properties props = new Properties();
-        FileInputStream fis = new FileInputStream("src/main/resources/DataBaseProperties.properties");
-        props.load(fis);
-        String url = props.getProperty("jdbc.url");
-        String user = props.getProperty("jdbc.username");
-        String password = props.getProperty("jdbc.password");
+        try (InputStream fis = new FileInputStream(propertiesFile)) {
+            props.load(fis);
+        }
+        return props;
+    }
 
-        Class.forName("com.mysql.cj.jdbc.Driver");
-        return DriverManager.getConnection(
-                url, user ,password);
+    private ConnectionPool createConnectionPool(Properties props) throws ClassNotFoundException {
+        Class.forName(props.getProperty("jdbc.driver", DEFAULT_DRIVER));
+        ConnectionPool connectionPool = new ConnectionPool(
+                props.getProperty("jdbc.url"),
+                props.getProperty("jdbc.username"),
+                props.getProperty("jdbc.password"),
+                Integer.parseInt(props.getProperty("pool.minSize", "1")),
+                Integer.parseInt(props.getProperty("pool.maxSize", "10")),
+                Long.parseLong(props.getProperty("pool.acquireTimeoutMillis", "5000")),
+                Integer.parseInt(props.getProperty("pool.validationTimeoutSeconds", "2")),
+                Long.parseLong(props.getProperty("pool.validationIdleMillis", "30000")),
+                Integer.parseInt(props.getProperty("pool.statementCacheSize", "32")));
+        connectionPool.prefill();
+        logger.info("Created DB connection pool " + connectionPool);
+        return connectionPool;
     }
 
     public void closeConnection(Connection con){
         if(con!=null){
             try {
+                //pooled connections go back to the pool on close
                 con.close();
-                logger.info("Closing DB connection");
+                logger.debug("Releasing DB connection to pool");
             } catch (SQLException e) {
                 logger.error("Error while closing connection",e);
             }
@@ -41,7 +162,7 @@ public class DataBaseConfig {
         if(ps!=null){
             try {
                 ps.close();
-                logger.info("Closing Prepared Statement");
+                logger.debug("Closing Prepared Statement");
             } catch (SQLException e) {
                 logger.error("Error while closing prepared statement",e);
             }
@@ -52,7 +173,7 @@ public class DataBaseConfig {
         if(rs!=null){
             try {
                 rs.close();
-                logger.info("Closing Result Set");
+                logger.debug("Closing Result Set");
             } catch (SQLException e) {
                 logger.error("Error while closing result set",e);
             }
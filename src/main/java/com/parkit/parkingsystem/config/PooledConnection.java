@@ -0,0 +1,44 @@
+package com.parkit.parkingsystem.config;
+
+import java.sql.Connection;
+
+/**
+ * A physical connection owned by the {@link ConnectionPool}, with the bookkeeping the pool needs.
+ */
+class PooledConnection {
+
+    private final Connection physicalConnection;
+    private final StatementCache statementCache;
+    private volatile long lastReleasedNanos;
+    private volatile boolean broken;
+
+    PooledConnection(Connection physicalConnection, StatementCache statementCache) {
+        this.physicalConnection = physicalConnection;
+        this.statementCache = statementCache;
+        this.lastReleasedNanos = System.nanoTime();
+    }
+
+    Connection getPhysicalConnection() {
+        return physicalConnection;
+    }
+
+    StatementCache getStatementCache() {
+        return statementCache;
+    }
+
+    long getLastReleasedNanos() {
+        return lastReleasedNanos;
+    }
+
+    void markReleased() {
+        lastReleasedNanos = System.nanoTime();
+    }
+
+    boolean isBroken() {
+        return broken;
+    }
+
+    void markBroken() {
+        broken = true;
+    }
+}
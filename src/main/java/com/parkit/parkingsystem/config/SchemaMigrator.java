@@ -0,0 +1,174 @@
+package com.parkit.parkingsystem.config;
+
+import com.parkit.parkingsystem.constants.DBConstants;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Applies the versioned SQL scripts of db/migration in order, once each, and records them in schema_version.
+ * Scripts are named V&lt;version&gt;__&lt;description&gt;.sql and must be listed in MIGRATIONS.
+ */
+public class SchemaMigrator {
+
+    private static final Logger logger = LogManager.getLogger("SchemaMigrator");
+
+    private static final String MIGRATION_FOLDER = "db/migration/";
+    private static final String[] MIGRATIONS = {
+            "V1__create_parking_and_ticket.sql",
+            "V2__ticket_vehicle_reg_number_index.sql",
+            "V3__parking_type_available_index.sql",
+            "V4__ticket_journal_checkpoint.sql",
+            "V5__ticket_archive.sql",
+            "V6__offline_queue_checkpoint.sql",
+            "V7__reservation.sql",
+            "V8__ticket_journal_dead_letter.sql"
+    };
+    private static final int LOCK_TIMEOUT_SECONDS = 60;
+
+    private final DataBaseConfig dataBaseConfig;
+
+    public SchemaMigrator(DataBaseConfig dataBaseConfig) {
+        this.dataBaseConfig = dataBaseConfig;
+    }
+
+    /**
+     * @return the number of migrations applied by this call
+     */
+    public int migrate() throws Exception {
+        Connection con = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            //several instances may start at once: only one of them migrates
+            acquireLock(con);
+            try {
+                execute(con, DBConstants.CREATE_SCHEMA_VERSION_TABLE);
+                Set<Integer> appliedVersions = getAppliedVersions(con);
+                int applied = 0;
+                for (String migration : MIGRATIONS) {
+                    int version = getVersion(migration);
+                    if (!appliedVersions.contains(version)) {
+                        apply(con, version, migration);
+                        applied++;
+                    }
+                }
+                logger.info("Schema is up to date, " + applied + " migration(s) applied");
+                return applied;
+            } finally {
+                execute(con, DBConstants.RELEASE_MIGRATION_LOCK);
+            }
+        } finally {
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    private void acquireLock(Connection con) throws SQLException {
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            ps = con.prepareStatement(DBConstants.GET_MIGRATION_LOCK);
+            ps.setInt(1, LOCK_TIMEOUT_SECONDS);
+            rs = ps.executeQuery();
+            if (!rs.next() || rs.getInt(1) != 1) {
+                throw new SQLException("Timed out waiting for the schema migration lock");
+            }
+        } finally {
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+        }
+    }
+
+    private Set<Integer> getAppliedVersions(Connection con) throws SQLException {
+        Set<Integer> versions = new HashSet<>();
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            ps = con.prepareStatement(DBConstants.GET_SCHEMA_VERSIONS);
+            rs = ps.executeQuery();
+            while (rs.next()) {
+                versions.add(rs.getInt(1));
+            }
+        } finally {
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+        }
+        return versions;
+    }
+
+    private void apply(Connection con, int version, String migration) throws SQLException, IOException {
+        logger.info("Applying migration " + migration);
+        //MySQL commits DDL implicitly, so each statement is its own unit of work
+        for (String sql : readStatements(MIGRATION_FOLDER + migration)) {
+            execute(con, sql);
+        }
+        PreparedStatement ps = null;
+        try {
+            ps = con.prepareStatement(DBConstants.SAVE_SCHEMA_VERSION);
+            ps.setInt(1, version);
+            ps.setString(2, getDescription(migration));
+            ps.setTimestamp(3, new Timestamp(System.currentTimeMillis()));
+            ps.executeUpdate();
+        } finally {
+            dataBaseConfig.closePreparedStatement(ps);
+        }
+    }
+
+    private void execute(Connection con, String sql) throws SQLException {
+        try (Statement statement = con.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+    static int getVersion(String migration) {
+        return Integer.parseInt(migration.substring(1, migration.indexOf("__")));
+    }
+
+    static String getDescription(String migration) {
+        return migration.substring(migration.indexOf("__") + 2, migration.lastIndexOf('.')).replace('_', ' ');
+    }
+
+    /**
+     * Splits a script on ';' at the end of a line, dropping '--' comment lines.
+     */
+    public static List<String> readStatements(String resource) throws IOException {
+        InputStream in = SchemaMigrator.class.getClassLoader().getResourceAsStream(resource);
+        if (in == null) {
+            throw new IOException("Migration script not found: " + resource);
+        }
+        List<String> statements = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String trimmed = line.trim();
+                if (trimmed.isEmpty() || trimmed.startsWith("--")) {
+                    continue;
+                }
+                current.append(line).append('\n');
+                if (trimmed.endsWith(";")) {
+                    statements.add(current.substring(0, current.lastIndexOf(";")).trim());
+                    current.setLength(0);
+                }
+            }
+        }
+        if (current.toString().trim().length() > 0) {
+            statements.add(current.toString().trim());
+        }
+        return statements;
+    }
+}
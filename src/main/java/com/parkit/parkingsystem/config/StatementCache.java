@@ -0,0 +1,125 @@
+package com.parkit.parkingsystem.config;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * LRU cache of prepared statements living as long as one physical connection.
+ * Statements are keyed on their SQL, so every DBConstants query is parsed and planned once per connection.
+ */
+class StatementCache {
+
+    private static final Logger logger = LogManager.getLogger("StatementCache");
+    private static final String GENERATED_KEYS_SUFFIX = "#generatedKeys";
+
+    private final Connection physicalConnection;
+    private final int maxSize;
+    private final AtomicLong hits;
+    private final AtomicLong misses;
+    private final LinkedHashMap<String, CachedStatement> statements = new LinkedHashMap<>(16, 0.75f, true);
+
+    StatementCache(Connection physicalConnection, int maxSize, AtomicLong hits, AtomicLong misses) {
+        this.physicalConnection = physicalConnection;
+        this.maxSize = maxSize;
+        this.hits = hits;
+        this.misses = misses;
+    }
+
+    synchronized PreparedStatement borrow(String sql, int autoGeneratedKeys, Connection connectionProxy) throws SQLException {
+        String key = (autoGeneratedKeys == Statement.RETURN_GENERATED_KEYS) ? sql + GENERATED_KEYS_SUFFIX : sql;
+        CachedStatement cachedStatement = statements.get(key);
+        if (cachedStatement != null && !cachedStatement.inUse) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+            PreparedStatement physicalStatement = physicalConnection.prepareStatement(sql, autoGeneratedKeys);
+            if (cachedStatement != null || maxSize == 0) {
+                //the cached statement is already borrowed (or caching is off): hand out a one-shot statement
+                return physicalStatement;
+            }
+            cachedStatement = new CachedStatement(physicalStatement);
+            statements.put(key, cachedStatement);
+            evictEldest();
+        }
+        cachedStatement.inUse = true;
+        cachedStatement.checkout++;
+        return (PreparedStatement) Proxy.newProxyInstance(StatementCache.class.getClassLoader(),
+                new Class<?>[]{PreparedStatement.class},
+                new StatementHandle(this, cachedStatement, cachedStatement.checkout, connectionProxy));
+    }
+
+    synchronized boolean isBorrowed(CachedStatement cachedStatement, int checkout) {
+        return cachedStatement.inUse && cachedStatement.checkout == checkout;
+    }
+
+    synchronized void release(CachedStatement cachedStatement) {
+        cachedStatement.inUse = false;
+        try {
+            cachedStatement.physicalStatement.clearParameters();
+        } catch (SQLException e) {
+            logger.error("Error while clearing cached statement, dropping it", e);
+            cachedStatement.evicted = true;
+        }
+        if (cachedStatement.evicted) {
+            close(cachedStatement);
+        }
+    }
+
+    /**
+     * Called when the connection goes back to the pool, so that a statement a caller forgot to close
+     * does not stay borrowed forever.
+     */
+    synchronized void releaseAll() {
+        List<CachedStatement> borrowed = new ArrayList<>();
+        for (CachedStatement cachedStatement : statements.values()) {
+            if (cachedStatement.inUse) {
+                borrowed.add(cachedStatement);
+            }
+        }
+        for (CachedStatement cachedStatement : borrowed) {
+            release(cachedStatement);
+        }
+    }
+
+    private void evictEldest() {
+        Iterator<CachedStatement> iterator = statements.values().iterator();
+        while (statements.size() > maxSize && iterator.hasNext()) {
+            CachedStatement eldest = iterator.next();
+            iterator.remove();
+            eldest.evicted = true;
+            if (!eldest.inUse) {
+                close(eldest);
+            }
+        }
+    }
+
+    private void close(CachedStatement cachedStatement) {
+        try {
+            cachedStatement.physicalStatement.close();
+        } catch (SQLException e) {
+            logger.error("Error while closing evicted statement", e);
+        }
+    }
+
+    static final class CachedStatement {
+        final PreparedStatement physicalStatement;
+        boolean inUse;
+        boolean evicted;
+        int checkout;
+
+        CachedStatement(PreparedStatement physicalStatement) {
+            this.physicalStatement = physicalStatement;
+        }
+    }
+}
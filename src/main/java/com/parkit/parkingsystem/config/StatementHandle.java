@@ -0,0 +1,57 @@
+package com.parkit.parkingsystem.config;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Backs the {@link java.sql.PreparedStatement} proxy handed out by the {@link StatementCache}.
+ * close() gives the statement back to the cache instead of deallocating it on the server.
+ */
+class StatementHandle implements InvocationHandler {
+
+    private final StatementCache statementCache;
+    private final StatementCache.CachedStatement cachedStatement;
+    private final int checkout;
+    private final Connection connectionProxy;
+
+    StatementHandle(StatementCache statementCache, StatementCache.CachedStatement cachedStatement, int checkout,
+                    Connection connectionProxy) {
+        this.statementCache = statementCache;
+        this.cachedStatement = cachedStatement;
+        this.checkout = checkout;
+        this.connectionProxy = connectionProxy;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        switch (method.getName()) {
+            case "close":
+                //a handle only gives the statement back for its own checkout
+                if (statementCache.isBorrowed(cachedStatement, checkout)) {
+                    statementCache.release(cachedStatement);
+                }
+                return null;
+            case "isClosed":
+                return !statementCache.isBorrowed(cachedStatement, checkout);
+            case "getConnection":
+                return connectionProxy;
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            default:
+                break;
+        }
+        if (!statementCache.isBorrowed(cachedStatement, checkout)) {
+            throw new SQLException("Statement is closed");
+        }
+        try {
+            return method.invoke(cachedStatement.physicalStatement, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.parkit.parkingsystem.config;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A transaction bound to the current thread by {@link DataBaseConfig}.
+ */
+class Transaction {
+
+    private static final Logger logger = LogManager.getLogger("Transaction");
+
+    private final String propertiesFile;
+    private final Connection connection;
+    private final Connection sharedConnection;
+    private final List<Runnable> afterCommitActions = new ArrayList<>();
+    private final List<Runnable> afterRollbackActions = new ArrayList<>();
+
+    Transaction(String propertiesFile, Connection connection) {
+        this.propertiesFile = propertiesFile;
+        this.connection = connection;
+        //DAOs close what they get from getConnection(): inside a transaction that must not end it
+        this.sharedConnection = (Connection) Proxy.newProxyInstance(Transaction.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "close":
+                            return null;
+                        case "equals":
+                            return proxy == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        default:
+                            try {
+                                return method.invoke(connection, args);
+                            } catch (InvocationTargetException e) {
+                                throw e.getCause();
+                            }
+                    }
+                });
+    }
+
+    String getPropertiesFile() {
+        return propertiesFile;
+    }
+
+    Connection getConnection() {
+        return connection;
+    }
+
+    Connection getSharedConnection() {
+        return sharedConnection;
+    }
+
+    void afterCommit(Runnable action) {
+        afterCommitActions.add(action);
+    }
+
+    void afterRollback(Runnable action) {
+        afterRollbackActions.add(action);
+    }
+
+    void committed() {
+        run(afterCommitActions);
+    }
+
+    void rolledBack() {
+        run(afterRollbackActions);
+    }
+
+    private static void run(List<Runnable> actions) {
+        for (Runnable action : actions) {
+            try {
+                action.run();
+            } catch (RuntimeException e) {
+                logger.error("Error in transaction completion action", e);
+            }
+        }
+    }
+}
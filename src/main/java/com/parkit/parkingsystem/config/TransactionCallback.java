@@ -0,0 +1,10 @@
+package com.parkit.parkingsystem.config;
+
+/**
+ * Work run by {@link DataBaseConfig#inTransaction(TransactionCallback)}: every DAO call made from it
+ * shares one connection and is committed or rolled back together.
+ */
+public interface TransactionCallback<T> {
+
+    T doInTransaction() throws Exception;
+}
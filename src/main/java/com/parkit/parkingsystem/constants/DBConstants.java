@@ -4,11 +4,80 @@ public final class DBConstants {
 
     private DBConstants(){};
     public static final String GET_NEXT_PARKING_SPOT = "select min(PARKING_NUMBER) from parking where AVAILABLE = true and TYPE = ?";
+    public static final String GET_NEXT_PARKING_SPOT_FROM = "select min(PARKING_NUMBER) from parking where AVAILABLE = true and TYPE = ? and PARKING_NUMBER >= ?";
+    public static final String GET_PARKING_SPOTS = "select PARKING_NUMBER, AVAILABLE, TYPE from parking order by PARKING_NUMBER desc";
     public static final String UPDATE_PARKING_SPOT = "update parking set available = ? where PARKING_NUMBER = ?";
+    public static final String GET_OCCUPANCY = "select count(*), coalesce(sum(case when AVAILABLE then 1 else 0 end), 0) from parking where TYPE = ?";
+    public static final String CLAIM_PARKING_SPOT = "update parking set AVAILABLE = false where PARKING_NUMBER = ? and TYPE = ? and AVAILABLE = true";
 
     public static final String SAVE_TICKET = "insert into ticket(PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME) values(?,?,?,?,?)";
     public static final String UPDATE_TICKET = "update ticket set PRICE=?, OUT_TIME=? where ID=?";
-    public static final String CHECK_REGULAR_USERS ="SELECT *  from ticket WHERE VEHICLE_REG_NUMBER =?";
+    public static final String UPDATE_OPEN_TICKET = "update ticket set PRICE=?, OUT_TIME=? where VEHICLE_REG_NUMBER=? and OUT_TIME is null order by ID desc limit 1";
+    //vehicles whose tickets were all archived are regular users too
+    public static final String GET_VEHICLE_REG_NUMBERS = "select VEHICLE_REG_NUMBER from ticket union select VEHICLE_REG_NUMBER from archived_vehicle";
+    public static final String CHECK_REGULAR_USERS ="SELECT VEHICLE_REG_NUMBER from ticket WHERE VEHICLE_REG_NUMBER =? union all SELECT VEHICLE_REG_NUMBER from archived_vehicle WHERE VEHICLE_REG_NUMBER =? limit 1";
     public static final String CHECK_ALREADY_IN_PARKING ="SELECT t.PARKING_NUMBER, p.AVAILABLE from ticket t,parking p where p.parking_number = t.parking_number and p.available = 0 and t.VEHICLE_REG_NUMBER=? order by p.PARKING_NUMBER limit 1 ";
+    public static final String CREATE_SCHEMA_VERSION_TABLE = "create table if not exists schema_version(VERSION int PRIMARY KEY, DESCRIPTION varchar(200) NOT NULL, INSTALLED_ON DATETIME NOT NULL)";
+    public static final String GET_SCHEMA_VERSIONS = "select VERSION from schema_version";
+    public static final String SAVE_SCHEMA_VERSION = "insert into schema_version(VERSION, DESCRIPTION, INSTALLED_ON) values(?,?,?)";
+    public static final String GET_MIGRATION_LOCK = "select GET_LOCK('parkit_schema_migration', ?)";
+    public static final String RELEASE_MIGRATION_LOCK = "select RELEASE_LOCK('parkit_schema_migration')";
+
+    public static final String GET_OPEN_TICKETS = "select t.PARKING_NUMBER, t.ID, t.PRICE, t.IN_TIME, t.VEHICLE_REG_NUMBER, p.TYPE from ticket t,parking p where p.parking_number = t.parking_number and t.OUT_TIME is null order by t.ID";
     public static final String GET_TICKET = "select t.PARKING_NUMBER, t.ID, t.PRICE, t.IN_TIME, t.OUT_TIME, p.TYPE from ticket t,parking p where p.parking_number = t.parking_number and t.VEHICLE_REG_NUMBER=? order by t.ID DESC limit 1";
+
+    public static final String GET_JOURNAL_CHECKPOINT = "select APPLIED_SEQUENCE from ticket_journal_checkpoint where ID = 1";
+    public static final String SAVE_JOURNAL_CHECKPOINT = "update ticket_journal_checkpoint set APPLIED_SEQUENCE = ? where ID = 1";
+    public static final String SAVE_JOURNAL_DEAD_LETTER = "insert into ticket_journal_dead_letter(SEQUENCE, OPERATION, TICKET_ID, PARKING_NUMBER, "
+            + "VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME, ERROR, FAILED_AT) values(?,?,?,?,?,?,?,?,?,?)";
+
+    public static final String GET_OFFLINE_QUEUE_CHECKPOINT = "select APPLIED_SEQUENCE from offline_queue_checkpoint where QUEUE_NAME = ?";
+    public static final String SAVE_OFFLINE_QUEUE_CHECKPOINT = "insert into offline_queue_checkpoint(QUEUE_NAME, APPLIED_SEQUENCE) values(?,?) "
+            + "on duplicate key update APPLIED_SEQUENCE = values(APPLIED_SEQUENCE)";
+    //conflict checks of the offline queue replay: the DB may have moved on while the gates worked offline
+    public static final String GET_OPEN_TICKET_ID = "select ID from ticket where VEHICLE_REG_NUMBER = ? and OUT_TIME is null limit 1";
+    public static final String CLOSE_OPEN_TICKET = "update ticket set PRICE=?, OUT_TIME=? where ID=? and OUT_TIME is null";
+
+    //RepricingJob: the first ticket ID of every vehicle, gathered once per job from ticket and each history table through
+    //their (VEHICLE_REG_NUMBER, ID) indexes; a temporary table, so only the connection of the job sees it
+    public static final String DROP_FIRST_TICKETS = "drop temporary table if exists first_ticket";
+    public static final String CREATE_FIRST_TICKETS = "create temporary table first_ticket(VEHICLE_REG_NUMBER varchar(10) PRIMARY KEY, "
+            + "FIRST_ID int NOT NULL)";
+    //%s is ticket or a ticket_history_YYYYMM table
+    public static final String SAVE_FIRST_TICKETS = "insert into first_ticket(VEHICLE_REG_NUMBER, FIRST_ID) "
+            + "select VEHICLE_REG_NUMBER, min(ID) from %s group by VEHICLE_REG_NUMBER "
+            + "on duplicate key update FIRST_ID = least(FIRST_ID, values(FIRST_ID))";
+    //keyset paging on the ID of one table; a ticket is a regular user's when the vehicle already had an earlier ticket.
+    //%s is ticket or the ticket_history_YYYYMM table of a month of the range
+    public static final String GET_CLOSED_TICKETS_PAGE = "select t.ID, p.TYPE, t.IN_TIME, t.OUT_TIME, t.ID > f.FIRST_ID as REGULAR_USER "
+            + "from %s t join parking p on p.parking_number = t.parking_number "
+            + "join first_ticket f on f.VEHICLE_REG_NUMBER = t.VEHICLE_REG_NUMBER where t.OUT_TIME is not null "
+            + "and t.OUT_TIME >= ? and t.OUT_TIME < ? and t.ID > ? order by t.ID limit ?";
+
+    //streamed by UsageReport, archived tickets included, oldest exit first so that each period is complete when the next starts
+    //%s is ticket or a ticket_history_YYYYMM table: a range on its OUT_TIME index, no sort
+    public static final String GET_CLOSED_TICKETS_BY_EXIT = "select p.TYPE, t.PRICE, t.IN_TIME, t.OUT_TIME "
+            + "from %s t, parking p where p.parking_number = t.parking_number and t.OUT_TIME >= ? and t.OUT_TIME < ?";
+    public static final String GET_TICKET_EXIT_RANGE = "select min(OUT_TIME), max(OUT_TIME) from ticket";
+
+    //closed tickets are archived oldest exit first; the highest ID stays so that AUTO_INCREMENT never goes back below it
+    public static final String GET_TICKETS_TO_ARCHIVE = "select ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME from ticket "
+            + "where OUT_TIME < ? and ID < (select max(ID) from ticket) order by OUT_TIME limit ?";
+    public static final String GET_TICKET_HISTORY_TABLES = "select TABLE_NAME from information_schema.TABLES "
+            + "where TABLE_SCHEMA = database() and TABLE_NAME like 'ticket\\_history\\_%' and TABLE_TYPE = 'BASE TABLE' order by TABLE_NAME";
+    //%s is a ticket_history_YYYYMM table
+    public static final String CREATE_TICKET_HISTORY_TABLE = "create table if not exists %s(ID int PRIMARY KEY, PARKING_NUMBER int NOT NULL, "
+            + "VEHICLE_REG_NUMBER varchar(10) NOT NULL, PRICE double, IN_TIME DATETIME NOT NULL, OUT_TIME DATETIME NOT NULL, "
+            + "index IDX_%1$s_VEHICLE_REG_NUMBER(VEHICLE_REG_NUMBER, ID), index IDX_%1$s_OUT_TIME(OUT_TIME))";
+    public static final String ARCHIVE_TICKET = "insert into %s(ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME) values(?,?,?,?,?,?)";
+    public static final String TICKET_COLUMNS = "ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME";
+    public static final String CREATE_TICKET_ALL_VIEW = "create or replace view ticket_all as select " + TICKET_COLUMNS + " from ticket";
+    public static final String SAVE_ARCHIVED_VEHICLE = "insert ignore into archived_vehicle(VEHICLE_REG_NUMBER) values(?)";
+    public static final String DELETE_TICKET = "delete from ticket where ID = ?";
+
+    public static final String GET_RESERVATIONS = "select r.ID, r.PARKING_NUMBER, p.TYPE, r.VEHICLE_REG_NUMBER, r.START_TIME, r.END_TIME "
+            + "from reservation r, parking p where p.PARKING_NUMBER = r.PARKING_NUMBER and r.END_TIME > ?";
+    public static final String LOCK_PARKING_SPOT = "select PARKING_NUMBER from parking where PARKING_NUMBER = ? for update";
+    public static final String COUNT_OVERLAPPING_RESERVATIONS = "select count(*) from reservation where PARKING_NUMBER = ? and START_TIME < ? and END_TIME > ?";
+    public static final String SAVE_RESERVATION = "insert into reservation(PARKING_NUMBER, VEHICLE_REG_NUMBER, START_TIME, END_TIME) values(?,?,?,?)";
 }
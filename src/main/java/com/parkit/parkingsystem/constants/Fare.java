@@ -5,4 +5,9 @@ public final class Fare {
     public static final double BIKE_RATE_PER_HOUR = 1.00;
     public static final double CAR_RATE_PER_HOUR = 1.50;
     public static final double REGULAR_USER_REDUCTION = 0.95;
+
+    //same fares in integer cents and percent, used by the fare engine
+    public static final long BIKE_RATE_PER_HOUR_CENTS = 100;
+    public static final long CAR_RATE_PER_HOUR_CENTS = 150;
+    public static final long REGULAR_USER_REDUCTION_PERCENT = 95;
 }
@@ -0,0 +1,89 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The open ticket (no OUT_TIME yet) of every vehicle currently in the lot, keyed on its plate.
+ * Callers always get their own copy of a ticket, so changing it does not change the index.
+ */
+public class ActiveSessionIndex {
+
+    private final Map<String, Ticket> openTickets = new ConcurrentHashMap<>();
+
+    public Ticket getOpenTicket(String vehicleRegNumber) {
+        Ticket ticket = openTickets.get(normalize(vehicleRegNumber));
+        return ticket == null ? null : copy(ticket);
+    }
+
+    public boolean isInParking(String vehicleRegNumber) {
+        return openTickets.containsKey(normalize(vehicleRegNumber));
+    }
+
+    public void open(Ticket ticket) {
+        openTickets.put(normalize(ticket.getVehicleRegNumber()), copy(ticket));
+    }
+
+    /**
+     * Removes the session of this ticket; a newer session of the same vehicle is left alone.
+     * @return false if the session of this ticket was already closed
+     */
+    public boolean close(Ticket ticket) {
+        String plate = normalize(ticket.getVehicleRegNumber());
+        boolean[] closed = new boolean[1];
+        openTickets.computeIfPresent(plate, (key, open) -> {
+            if (open.getId() != ticket.getId()) {
+                return open;
+            }
+            closed[0] = true;
+            return null;
+        });
+        return closed[0];
+    }
+
+    /**
+     * @return a copy of every open ticket
+     */
+    public List<Ticket> getOpenTickets() {
+        List<Ticket> copies = new ArrayList<>(openTickets.size());
+        for (Ticket ticket : openTickets.values()) {
+            copies.add(copy(ticket));
+        }
+        return copies;
+    }
+
+    public int size() {
+        return openTickets.size();
+    }
+
+    /**
+     * @return a copy of the ticket, for callers that hand it to the index later on
+     */
+    public static Ticket snapshot(Ticket ticket) {
+        return copy(ticket);
+    }
+
+    private static Ticket copy(Ticket ticket) {
+        Ticket copy = new Ticket();
+        copy.setId(ticket.getId());
+        ParkingSpot parkingSpot = ticket.getParkingSpot();
+        copy.setParkingSpot(new ParkingSpot(parkingSpot.getId(), parkingSpot.getParkingType(), parkingSpot.isAvailable()));
+        copy.setVehicleRegNumber(ticket.getVehicleRegNumber());
+        copy.setPrice(ticket.getPrice());
+        copy.setInTime(ticket.getInTime());
+        copy.setOutTime(ticket.getOutTime());
+        copy.setRegularUser(ticket.getRegularUser());
+        return copy;
+    }
+
+    //the VEHICLE_REG_NUMBER comparison in MySQL is case insensitive
+    private static String normalize(String vehicleRegNumber) {
+        return vehicleRegNumber.toUpperCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,172 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.model.Ticket;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * {@link InMemoryTicketStore} that survives restarts: every change is appended to a {@link TicketJournalFile}
+ * before its transaction commits, a transaction failing if its change cannot be written, and replayed when the
+ * store is opened again; a CANCEL entry undoes the change of a transaction rolled back afterwards. When the file is full it is rewritten
+ * with one SAVE entry per committed ticket followed by the entries of transactions still running, twice as large if
+ * those fill more than half of it. Sequence numbers go on across rewrites.
+ */
+public class FileTicketStore extends InMemoryTicketStore implements Closeable {
+
+    private static final Logger logger = LogManager.getLogger("FileTicketStore");
+
+    private final Path path;
+    private final boolean syncOnAppend;
+    private TicketJournalFile file;
+    //tickets as of their last commit, what a rewrite keeps
+    private final Map<Integer, Ticket> committedTickets = new HashMap<>();
+    //written by transactions that have not committed or rolled back yet, oldest first
+    private final Set<PendingEntry> pendingEntries = new LinkedHashSet<>();
+
+    /**
+     * Opens the store, creating the file if needed, and loads the tickets it holds.
+     * @param syncOnAppend force every change to disk before the gate goes on
+     */
+    public FileTicketStore(Path path, int capacity, boolean syncOnAppend) throws IOException {
+        this.path = path;
+        this.syncOnAppend = syncOnAppend;
+        this.file = new TicketJournalFile(path, capacity, syncOnAppend);
+        List<TicketJournalEntry> entries = file.getRecoveredEntries();
+        Set<Long> cancelledSequences = new HashSet<>();
+        for (TicketJournalEntry entry : entries) {
+            if (entry.getOperation() == TicketJournalEntry.Operation.CANCEL) {
+                cancelledSequences.add(entry.getMarkedSequence());
+            }
+        }
+        for (TicketJournalEntry entry : entries) {
+            if (!entry.isMarker() && !cancelledSequences.contains(entry.getSequence())) {
+                //entries hold the whole ticket: replaying one again, or out of order after a rewrite, does no harm
+                restore(entry.getTicket());
+            }
+        }
+        for (Ticket ticket : getTickets()) {
+            committedTickets.put(ticket.getId(), ticket);
+        }
+        logger.info("Loaded " + committedTickets.size() + " tickets from " + path);
+    }
+
+    @Override
+    protected synchronized void written(TicketJournalEntry.Operation operation, Ticket ticket) throws IOException {
+        TicketJournalEntry entry;
+        try {
+            entry = file.append(operation, ticket);
+            if (entry == null) {
+                rewrite();
+                entry = file.append(operation, ticket);
+                if (entry == null) {
+                    throw new IOException("Ticket " + ticket.getId() + " does not fit in " + path);
+                }
+            }
+        } catch (IOException e) {
+            logger.error("Error writing ticket " + ticket.getId() + " to " + path + ", rolling back", e);
+            throw e;
+        }
+        PendingEntry pending = new PendingEntry(entry);
+        pendingEntries.add(pending);
+        //another change of the same transaction may still fail to be written
+        InMemoryTransaction.undoOnRollback(() -> cancel(pending));
+        InMemoryTransaction.afterCommit(() -> committed(pending));
+    }
+
+    private synchronized void committed(PendingEntry pending) {
+        pendingEntries.remove(pending);
+        Ticket ticket = pending.entry.getTicket();
+        committedTickets.put(ticket.getId(), ticket);
+    }
+
+    private synchronized void cancel(PendingEntry pending) {
+        pendingEntries.remove(pending);
+        //the entry may have been written again by a rewrite since, under another sequence
+        long sequence = pending.entry.getSequence();
+        if (file.appendCancel(sequence) == null) {
+            try {
+                //no longer pending: the rewritten file leaves it out
+                rewrite();
+            } catch (IOException e) {
+                logger.error("Could not cancel entry " + sequence + " of " + path + ", it would be loaded again after a restart", e);
+            }
+        }
+    }
+
+    private void rewrite() throws IOException {
+        Path rewritten = path.resolveSibling(path.getFileName() + ".rewrite");
+        //new numbers only: a CANCEL written later must never point at an entry of the snapshot
+        long firstSequence = file.getLastSequence() + 1;
+        int capacity = file.getCapacity();
+        List<TicketJournalEntry> rewrittenPending;
+        while (true) {
+            Files.deleteIfExists(rewritten);
+            TicketJournalFile next = new TicketJournalFile(rewritten, capacity, false);
+            next.skipTo(firstSequence);
+            boolean fits = true;
+            for (Ticket ticket : committedTickets.values()) {
+                if (next.append(TicketJournalEntry.Operation.SAVE, ticket) == null) {
+                    fits = false;
+                    break;
+                }
+            }
+            rewrittenPending = new ArrayList<>(pendingEntries.size());
+            for (PendingEntry pending : pendingEntries) {
+                TicketJournalEntry entry = fits ? next.append(pending.entry.getOperation(), pending.entry.getTicket()) : null;
+                if (entry == null) {
+                    fits = false;
+                    break;
+                }
+                rewrittenPending.add(entry);
+            }
+            fits = fits && next.getUsedBytes() <= capacity / 2;
+            next.close();
+            if (fits) {
+                break;
+            }
+            capacity = Math.multiplyExact(capacity, 2);
+        }
+        file.close();
+        Files.move(rewritten, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        file = new TicketJournalFile(path, capacity, syncOnAppend);
+        file.skipTo(firstSequence);
+        int i = 0;
+        for (PendingEntry pending : pendingEntries) {
+            pending.entry = rewrittenPending.get(i++);
+        }
+        logger.info("Rewrote " + path + " with " + committedTickets.size() + " tickets and " + pendingEntries.size()
+                + " uncommitted changes in " + capacity + " bytes");
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        file.close();
+    }
+
+    private static final class PendingEntry {
+
+        //where the change now is in the file, moved by a rewrite
+        private TicketJournalEntry entry;
+
+        private PendingEntry(TicketJournalEntry entry) {
+            this.entry = entry;
+        }
+    }
+}
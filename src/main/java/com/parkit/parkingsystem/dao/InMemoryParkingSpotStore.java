@@ -0,0 +1,133 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.Occupancy;
+import com.parkit.parkingsystem.model.ParkingSpot;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.IntPredicate;
+
+/**
+ * Parking spots held in a {@link ParkingSpotIndex} only: claims are a compare-and-set on one bit, no lock taken.
+ */
+public class InMemoryParkingSpotStore implements ParkingSpotStore {
+
+    /**
+     * The lot created by resources/Data.sql.
+     */
+    public static final String DEFAULT_LAYOUT = "CAR:1-3,BIKE:4-5";
+
+    private final Map<Integer, ParkingType> parkingTypes;
+    private final ParkingSpotIndex index;
+
+    public InMemoryParkingSpotStore(Collection<ParkingSpot> parkingSpots) {
+        Map<Integer, ParkingType> types = new TreeMap<>();
+        int highestParkingNumber = 0;
+        for (ParkingSpot parkingSpot : parkingSpots) {
+            if (parkingSpot.getId() <= 0 || types.put(parkingSpot.getId(), parkingSpot.getParkingType()) != null) {
+                throw new IllegalArgumentException("Invalid or duplicate parking number " + parkingSpot.getId());
+            }
+            highestParkingNumber = Math.max(highestParkingNumber, parkingSpot.getId());
+        }
+        this.parkingTypes = Collections.unmodifiableMap(types);
+        this.index = new ParkingSpotIndex(highestParkingNumber);
+        for (ParkingSpot parkingSpot : parkingSpots) {
+            index.addSpot(parkingSpot.getParkingType(), parkingSpot.getId(), parkingSpot.isAvailable());
+        }
+    }
+
+    /**
+     * @param layout comma separated TYPE:first-last ranges of parking numbers, e.g. {@value #DEFAULT_LAYOUT};
+     * every spot is free
+     */
+    public static List<ParkingSpot> parseLayout(String layout) {
+        List<ParkingSpot> parkingSpots = new ArrayList<>();
+        for (String range : layout.split(",")) {
+            String[] typeAndNumbers = range.trim().split(":");
+            if (typeAndNumbers.length != 2) {
+                throw new IllegalArgumentException("Invalid parking spot range: " + range);
+            }
+            ParkingType parkingType = ParkingType.valueOf(typeAndNumbers[0].trim().toUpperCase());
+            String[] numbers = typeAndNumbers[1].trim().split("-");
+            int first = Integer.parseInt(numbers[0].trim());
+            int last = numbers.length > 1 ? Integer.parseInt(numbers[1].trim()) : first;
+            for (int parkingNumber = first; parkingNumber <= last; parkingNumber++) {
+                parkingSpots.add(new ParkingSpot(parkingNumber, parkingType, true));
+            }
+        }
+        return parkingSpots;
+    }
+
+    @Override
+    public int getNextAvailableSlot(ParkingType parkingType) {
+        return index.getNextAvailableSlot(parkingType);
+    }
+
+    @Override
+    public int claimNextAvailableSlot(ParkingType parkingType) {
+        return claimNextAvailableSlot(parkingType, parkingNumber -> false);
+    }
+
+    @Override
+    public int claimNextAvailableSlot(ParkingType parkingType, IntPredicate skip) {
+        int from = 1;
+        while (true) {
+            int candidate = index.getNextAvailableSlot(parkingType, from);
+            if (candidate <= 0) {
+                return candidate;
+            }
+            if (skip.test(candidate)) {
+                from = candidate + 1;
+                continue;
+            }
+            if (claimSlot(parkingType, candidate)) {
+                return candidate;
+            }
+            //another gate took it between the lookup and the claim
+        }
+    }
+
+    @Override
+    public boolean claimSlot(ParkingType parkingType, int parkingNumber) {
+        if (!index.setAvailable(parkingType, parkingNumber, false)) {
+            return false;
+        }
+        InMemoryTransaction.undoOnRollback(() -> index.setAvailable(parkingType, parkingNumber, true));
+        return true;
+    }
+
+    @Override
+    public boolean updateParking(ParkingSpot parkingSpot) {
+        ParkingType parkingType = parkingTypes.get(parkingSpot.getId());
+        if (parkingType == null) {
+            return false;
+        }
+        int parkingNumber = parkingSpot.getId();
+        boolean available = parkingSpot.isAvailable();
+        if (index.setAvailable(parkingType, parkingNumber, available)) {
+            InMemoryTransaction.undoOnRollback(() -> index.setAvailable(parkingType, parkingNumber, !available));
+        }
+        return true;
+    }
+
+    @Override
+    public Occupancy getOccupancy(ParkingType parkingType) {
+        return new Occupancy(parkingType, index.getCapacity(parkingType), index.getAvailableSpots(parkingType));
+    }
+
+    /**
+     * @return every spot with its current availability, by parking number
+     */
+    public List<ParkingSpot> getParkingSpots() {
+        List<ParkingSpot> parkingSpots = new ArrayList<>(parkingTypes.size());
+        for (Map.Entry<Integer, ParkingType> spot : parkingTypes.entrySet()) {
+            parkingSpots.add(new ParkingSpot(spot.getKey(), spot.getValue(), index.isAvailable(spot.getValue(), spot.getKey())));
+        }
+        return parkingSpots;
+    }
+}
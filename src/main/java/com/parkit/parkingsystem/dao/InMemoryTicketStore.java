@@ -0,0 +1,183 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.config.TransactionCallback;
+import com.parkit.parkingsystem.model.Ticket;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tickets held in concurrent maps only, for tests, simulations and kiosks without a database server.
+ * No lock is taken: a change is visible to other gates at once and undone if its transaction rolls back.
+ * Callers always get their own copy of a ticket.
+ */
+public class InMemoryTicketStore implements TicketStore {
+
+    private final AtomicInteger lastId = new AtomicInteger();
+    private final Map<Integer, Ticket> tickets = new ConcurrentHashMap<>();
+    //the ticket with the highest ID of each vehicle, like GET_TICKET
+    private final Map<String, Ticket> lastTickets = new ConcurrentHashMap<>();
+
+    @Override
+    public boolean saveTicket(Ticket ticket) {
+        try {
+            //a transaction of its own outside one, so that a change that cannot be written is undone
+            return InMemoryTransaction.run(() -> {
+                int id = lastId.incrementAndGet();
+                ticket.setId(id);
+                Ticket saved = ActiveSessionIndex.snapshot(ticket);
+                tickets.put(id, saved);
+                Ticket replaced = putLastTicket(saved);
+                InMemoryTransaction.undoOnRollback(() -> {
+                    tickets.remove(id, saved);
+                    lastTickets.computeIfPresent(normalize(saved.getVehicleRegNumber()), (plate, last) -> last == saved ? replaced : last);
+                });
+                InMemoryTransaction.beforeCommit(() -> written(TicketJournalEntry.Operation.SAVE, saved));
+                return true;
+            });
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    @Override
+    public int saveTickets(Collection<Ticket> tickets) {
+        int done = 0;
+        for (Ticket ticket : tickets) {
+            if (!saveTicket(ticket)) {
+                break;
+            }
+            done++;
+        }
+        return done;
+    }
+
+    @Override
+    public int updateTickets(Collection<Ticket> tickets) {
+        int done = 0;
+        for (Ticket ticket : tickets) {
+            if (!update(ticket, false)) {
+                break;
+            }
+            done++;
+        }
+        return done;
+    }
+
+    @Override
+    public Ticket getTicket(String vehicleRegNumber) {
+        Ticket ticket = lastTickets.get(normalize(vehicleRegNumber));
+        return ticket == null ? null : ActiveSessionIndex.snapshot(ticket);
+    }
+
+    @Override
+    public boolean updateTicket(Ticket ticket) {
+        return update(ticket, true);
+    }
+
+    /**
+     * @param openOnly refuse a ticket already closed, like CLOSE_OPEN_TICKET
+     */
+    private boolean update(Ticket ticket, boolean openOnly) {
+        try {
+            return InMemoryTransaction.run(() -> replace(ticket, openOnly));
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private boolean replace(Ticket ticket, boolean openOnly) throws Exception {
+        int id = ticket.getId();
+        Ticket current = tickets.get(id);
+        if (current == null || (openOnly && current.getOutTime() != null)) {
+            return false;
+        }
+        Ticket updated = ActiveSessionIndex.snapshot(current);
+        updated.setPrice(ticket.getPrice());
+        updated.setOutTime(ticket.getOutTime());
+        if (!tickets.replace(id, current, updated)) {
+            //updated by another gate meanwhile: apply on top of that
+            return replace(ticket, openOnly);
+        }
+        String plate = normalize(updated.getVehicleRegNumber());
+        lastTickets.computeIfPresent(plate, (key, last) -> last.getId() == id ? updated : last);
+        InMemoryTransaction.undoOnRollback(() -> {
+            tickets.replace(id, updated, current);
+            lastTickets.computeIfPresent(plate, (key, last) -> last == updated ? current : last);
+        });
+        InMemoryTransaction.beforeCommit(() -> written(TicketJournalEntry.Operation.UPDATE, updated));
+        return true;
+    }
+
+    @Override
+    public boolean isRegularUser(String vehicleRegNumber) {
+        return lastTickets.containsKey(normalize(vehicleRegNumber));
+    }
+
+    @Override
+    public boolean checkAlreadyInParking(String vehicleRegNumber) {
+        Ticket ticket = lastTickets.get(normalize(vehicleRegNumber));
+        return ticket != null && ticket.getOutTime() == null;
+    }
+
+    @Override
+    public <T> T inTransaction(TransactionCallback<T> callback) throws Exception {
+        return InMemoryTransaction.run(callback);
+    }
+
+    /**
+     * @return a copy of every ticket, by ID
+     */
+    public List<Ticket> getTickets() {
+        List<Ticket> copies = new ArrayList<>(tickets.size());
+        for (Ticket ticket : tickets.values()) {
+            copies.add(ActiveSessionIndex.snapshot(ticket));
+        }
+        copies.sort(Comparator.comparingInt(Ticket::getId));
+        return copies;
+    }
+
+    /**
+     * Puts back a ticket read from storage, keeping its ID.
+     */
+    protected void restore(Ticket ticket) {
+        Ticket restored = ActiveSessionIndex.snapshot(ticket);
+        tickets.put(restored.getId(), restored);
+        putLastTicket(restored);
+        lastId.accumulateAndGet(restored.getId(), Math::max);
+    }
+
+    /**
+     * Called when the transaction of a change is about to commit, with the ticket as it now is: throwing rolls
+     * the transaction back. Does nothing here.
+     */
+    protected void written(TicketJournalEntry.Operation operation, Ticket ticket) throws IOException {
+    }
+
+    /**
+     * @return the last ticket of the vehicle before this one, null if it had none or a newer one
+     */
+    private Ticket putLastTicket(Ticket ticket) {
+        Ticket[] replaced = new Ticket[1];
+        lastTickets.compute(normalize(ticket.getVehicleRegNumber()), (plate, last) -> {
+            if (last == null || last.getId() <= ticket.getId()) {
+                replaced[0] = last;
+                return ticket;
+            }
+            return last;
+        });
+        return replaced[0];
+    }
+
+    //the VEHICLE_REG_NUMBER comparison in MySQL is case insensitive
+    private static String normalize(String vehicleRegNumber) {
+        return vehicleRegNumber.toUpperCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,100 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.config.TransactionCallback;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Transaction of the in-memory stores, bound to the current thread: changes are made at once and undone
+ * (newest first) if the callback, or an action run before the commit, throws. Other threads may see them
+ * before the commit.
+ */
+final class InMemoryTransaction {
+
+    private static final Logger logger = LogManager.getLogger("InMemoryTransaction");
+    private static final ThreadLocal<InMemoryTransaction> currentTransaction = new ThreadLocal<>();
+
+    private final List<CommitAction> beforeCommitActions = new ArrayList<>();
+    private final List<Runnable> afterCommitActions = new ArrayList<>();
+    private final List<Runnable> undoActions = new ArrayList<>();
+
+    private InMemoryTransaction() {}
+
+    static <T> T run(TransactionCallback<T> callback) throws Exception {
+        if (currentTransaction.get() != null) {
+            return callback.doInTransaction();
+        }
+        InMemoryTransaction transaction = new InMemoryTransaction();
+        currentTransaction.set(transaction);
+        try {
+            T result = callback.doInTransaction();
+            //still in the transaction: an action may register undo actions, and throwing rolls everything back
+            for (int i = 0; i < transaction.beforeCommitActions.size(); i++) {
+                transaction.beforeCommitActions.get(i).run();
+            }
+            currentTransaction.remove();
+            for (Runnable action : transaction.afterCommitActions) {
+                runSafely(action);
+            }
+            return result;
+        } catch (Exception | Error e) {
+            currentTransaction.remove();
+            for (int i = transaction.undoActions.size() - 1; i >= 0; i--) {
+                runSafely(transaction.undoActions.get(i));
+            }
+            throw e;
+        } finally {
+            currentTransaction.remove();
+        }
+    }
+
+    /**
+     * Runs the action when the current transaction is about to commit, or right away when there is none.
+     * If it throws, the transaction rolls back instead.
+     */
+    static void beforeCommit(CommitAction action) throws Exception {
+        InMemoryTransaction transaction = currentTransaction.get();
+        if (transaction != null) {
+            transaction.beforeCommitActions.add(action);
+        } else {
+            action.run();
+        }
+    }
+
+    /**
+     * Runs the action once the current transaction commits, or right away when there is none.
+     */
+    static void afterCommit(Runnable action) {
+        InMemoryTransaction transaction = currentTransaction.get();
+        if (transaction != null) {
+            transaction.afterCommitActions.add(action);
+        } else {
+            action.run();
+        }
+    }
+
+    /**
+     * Runs the action if the current transaction rolls back; does nothing when there is none.
+     */
+    static void undoOnRollback(Runnable action) {
+        InMemoryTransaction transaction = currentTransaction.get();
+        if (transaction != null) {
+            transaction.undoActions.add(action);
+        }
+    }
+
+    interface CommitAction {
+        void run() throws Exception;
+    }
+
+    private static void runSafely(Runnable action) {
+        try {
+            action.run();
+        } catch (RuntimeException e) {
+            logger.error("Error in transaction completion action", e);
+        }
+    }
+}
@@ -0,0 +1,758 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.config.TransactionCallback;
+import com.parkit.parkingsystem.constants.DBConstants;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.Occupancy;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntPredicate;
+
+/**
+ * Keeps the gates working while MySQL is unreachable.
+ * <p>
+ * Online, the stores handed out by {@link #getTicketStore()} and {@link #getParkingSpotStore()} are the DAOs.
+ * When a gate transaction fails and the DB does not answer, the lot goes offline: the spots and open tickets held
+ * in the DAO indexes are copied into in-memory stores, the transaction runs again on them, and every ticket change
+ * is appended to a local {@link TicketJournalFile}, the queue, before the transaction commits, followed by a COMMIT
+ * or CANCEL marker once it is settled: a change the queue cannot take rolls its transaction back, and only
+ * committed changes are replayed. A background probe waits for the DB,
+ * then replays the queue in batches, one transaction each, checking every entry against what the DB recorded
+ * meanwhile; gates are only held back while the last batch is replayed and the DAO indexes are reloaded.
+ */
+public class OfflineMode implements Closeable {
+
+    private static final Logger logger = LogManager.getLogger("OfflineMode");
+
+    public static final int DEFAULT_REPLAY_BATCH_SIZE = 500;
+    public static final long DEFAULT_PROBE_INTERVAL_MILLIS = 1000;
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+
+    private final TicketDAO ticketDAO;
+    private final ParkingSpotDAO parkingSpotDAO;
+    private final DataBaseConfig dataBaseConfig;
+    private final TicketJournalFile queueFile;
+    private final String queueName;
+    private final int replayBatchSize;
+    private final long probeIntervalMillis;
+    private final ScheduledExecutorService prober;
+    //offline gate transactions hold the read lock, going back online takes the write lock
+    private final ReentrantReadWriteLock switchLock = new ReentrantReadWriteLock();
+    private final ThreadLocal<Attempt> currentAttempt = new ThreadLocal<>();
+    //settled entries not replayed yet, by sequence: committed changes and their markers, cancelled ones as markers
+    private final ConcurrentSkipListMap<Long, TicketJournalEntry> queuedEntries = new ConcurrentSkipListMap<>();
+    private final Object replayLock = new Object();
+    private final AtomicLong conflicts = new AtomicLong();
+    private final TicketStore ticketStore = new OfflineTicketStore();
+    private final ParkingSpotStore parkingSpotStore = new OfflineParkingSpotStore();
+    //null while online
+    private volatile LocalStores localStores;
+    private volatile long appliedSequence;
+    private ScheduledFuture<?> probe;
+
+    public OfflineMode(TicketDAO ticketDAO, ParkingSpotDAO parkingSpotDAO, TicketJournalFile queueFile, String queueName,
+                       int replayBatchSize, long probeIntervalMillis) {
+        this.ticketDAO = ticketDAO;
+        this.parkingSpotDAO = parkingSpotDAO;
+        this.dataBaseConfig = ticketDAO.getDataBaseConfig();
+        this.queueFile = queueFile;
+        this.queueName = queueName;
+        this.replayBatchSize = replayBatchSize;
+        this.probeIntervalMillis = probeIntervalMillis;
+        this.prober = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "offline-mode-prober");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @return the offline mode configured by the offline.* properties of the DAO's DataBaseConfig, or null when
+     * offline.queueFile is not set
+     */
+    public static OfflineMode fromProperties(TicketDAO ticketDAO, ParkingSpotDAO parkingSpotDAO) throws IOException {
+        Properties props = ticketDAO.getDataBaseConfig().getProperties();
+        String file = props.getProperty("offline.queueFile", "").trim();
+        if (file.isEmpty()) {
+            return null;
+        }
+        Path path = Paths.get(file);
+        TicketJournalFile queueFile = new TicketJournalFile(path,
+                Integer.parseInt(props.getProperty("offline.capacityBytes", "16777216")),
+                Boolean.parseBoolean(props.getProperty("offline.syncOnAppend", "true")));
+        return new OfflineMode(ticketDAO, parkingSpotDAO, queueFile, path.getFileName().toString(),
+                Integer.parseInt(props.getProperty("offline.replayBatchSize", String.valueOf(DEFAULT_REPLAY_BATCH_SIZE))),
+                Long.parseLong(props.getProperty("offline.probeIntervalMillis", String.valueOf(DEFAULT_PROBE_INTERVAL_MILLIS))));
+    }
+
+    /**
+     * Replays what the previous run queued and the DB has not seen yet. Must run before the DAO indexes
+     * are loaded, so that they see the replayed tickets.
+     * @return the number of entries replayed
+     */
+    public int recover() throws Exception {
+        int replayed;
+        synchronized (replayLock) {
+            long checkpoint = readCheckpoint();
+            queueFile.skipTo(checkpoint + 1);
+            List<TicketJournalEntry> entries = queueFile.getRecoveredEntries();
+            Set<Long> committedSequences = new HashSet<>();
+            for (TicketJournalEntry entry : entries) {
+                if (entry.getOperation() == TicketJournalEntry.Operation.COMMIT) {
+                    committedSequences.add(entry.getMarkedSequence());
+                }
+            }
+            int uncommitted = 0;
+            replayed = 0;
+            for (TicketJournalEntry entry : entries) {
+                long sequence = entry.getSequence();
+                if (sequence <= checkpoint) {
+                    continue;
+                }
+                if (entry.isMarker() || committedSequences.contains(sequence)) {
+                    queuedEntries.put(sequence, entry);
+                    replayed += entry.isMarker() ? 0 : 1;
+                } else {
+                    //nothing to apply, but the checkpoint must move past it
+                    queuedEntries.put(sequence, TicketJournalEntry.cancel(sequence, sequence));
+                    uncommitted++;
+                }
+            }
+            if (uncommitted > 0) {
+                logger.warn("Skipping " + uncommitted + " offline queue entries whose transaction never committed");
+            }
+            appliedSequence = checkpoint;
+            if (!queuedEntries.isEmpty() && queuedEntries.firstKey() > checkpoint + 1) {
+                logger.error("Offline queue " + queueFile.getPath() + " starts after checkpoint " + checkpoint
+                        + ", entries up to " + (queuedEntries.firstKey() - 1) + " are lost");
+                appliedSequence = queuedEntries.firstKey() - 1;
+            }
+            while (replay() > 0) {
+                //apply everything before the gates open
+            }
+            queueFile.startOverIfApplied(appliedSequence);
+        }
+        logger.info("Replayed " + replayed + " offline queue entries, applied up to " + appliedSequence);
+        return replayed;
+    }
+
+    public TicketStore getTicketStore() {
+        return ticketStore;
+    }
+
+    public ParkingSpotStore getParkingSpotStore() {
+        return parkingSpotStore;
+    }
+
+    public boolean isOffline() {
+        return localStores != null;
+    }
+
+    /**
+     * @return committed changes not replayed yet
+     */
+    public int getQueuedEntries() {
+        int changes = 0;
+        for (TicketJournalEntry entry : queuedEntries.values()) {
+            changes += entry.isMarker() ? 0 : 1;
+        }
+        return changes;
+    }
+
+    /**
+     * @return queued changes the DB contradicted when replayed
+     */
+    public long getConflicts() {
+        return conflicts.get();
+    }
+
+    /**
+     * Replays the queue if the DB answers again and switches the gates back online. Called by the probe.
+     * @return true if online
+     */
+    public boolean reconnect() throws Exception {
+        if (localStores == null) {
+            return true;
+        }
+        if (!isDataBaseReachable()) {
+            return false;
+        }
+        TicketJournal ticketJournal = ticketDAO.getTicketJournal();
+        if (ticketJournal != null) {
+            //write-behind entries from before the outage go first
+            while (ticketJournal.flush() > 0) {
+                //apply the backlog
+            }
+        }
+        while (replay() == replayBatchSize) {
+            //catch up while the gates keep working offline
+        }
+        switchLock.writeLock().lock();
+        try {
+            while (replay() > 0) {
+                //the tail queued during the catch up
+            }
+            if (!(parkingSpotDAO.loadParkingSpotIndex() && ticketDAO.loadRegularUserIndex() && ticketDAO.loadActiveSessionIndex())) {
+                throw new SQLException("Could not reload the DAO indexes, staying offline");
+            }
+            synchronized (this) {
+                localStores = null;
+                if (probe != null) {
+                    probe.cancel(false);
+                    probe = null;
+                }
+            }
+            queueFile.startOverIfApplied(appliedSequence);
+        } finally {
+            switchLock.writeLock().unlock();
+        }
+        logger.info("Database reachable again, gates back online, applied up to " + appliedSequence + ", "
+                + conflicts.get() + " conflicts so far");
+        return true;
+    }
+
+    private void reconnectQuietly() {
+        try {
+            reconnect();
+        } catch (Exception e) {
+            logger.error("Error replaying offline queue, will retry", e);
+        }
+    }
+
+    /**
+     * Switches to the in-memory stores if the DB is unreachable.
+     * @return false if the DB answers, or if the DAO indexes were never loaded so that there is nothing to work from
+     */
+    private synchronized boolean goOffline() {
+        if (localStores != null) {
+            return true;
+        }
+        if (isDataBaseReachable()) {
+            return false;
+        }
+        List<ParkingSpot> parkingSpots = parkingSpotDAO.getParkingSpots();
+        List<Ticket> openTickets = ticketDAO.getOpenTickets();
+        if (parkingSpots == null || openTickets == null) {
+            logger.error("Database unreachable and no parking spot or open ticket index to work offline from");
+            return false;
+        }
+        localStores = new LocalStores(parkingSpots, openTickets, ticketDAO.getLoadedRegularUserIndex());
+        probe = prober.scheduleWithFixedDelay(this::reconnectQuietly, probeIntervalMillis, probeIntervalMillis, TimeUnit.MILLISECONDS);
+        logger.error("Database unreachable, gates work offline with " + openTickets.size() + " open tickets, changes queued in "
+                + queueFile.getPath());
+        return true;
+    }
+
+    private boolean isDataBaseReachable() {
+        Connection con = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            return con.isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (Exception e) {
+            return false;
+        } finally {
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    private <T> T inTransaction(TransactionCallback<T> callback) throws Exception {
+        if (currentAttempt.get() != null) {
+            return callback.doInTransaction();
+        }
+        while (true) {
+            LocalStores local = localStores;
+            if (local == null) {
+                Attempt attempt = new Attempt(null);
+                currentAttempt.set(attempt);
+                try {
+                    return ticketDAO.inTransaction(() -> {
+                        T result = callback.doInTransaction();
+                        if (attempt.failed) {
+                            //a DAO answered with its error value: roll back, then see whether the DB is down
+                            throw new SQLException("Database call failed, transaction rolled back");
+                        }
+                        return result;
+                    });
+                } catch (Exception e) {
+                    //runtime exceptions are answers to the gate, like a vehicle already in the parking
+                    boolean dataBaseError = attempt.failed || !(e instanceof RuntimeException);
+                    if (!dataBaseError || !goOffline()) {
+                        throw e;
+                    }
+                } finally {
+                    currentAttempt.remove();
+                }
+                continue;
+            }
+            switchLock.readLock().lock();
+            try {
+                if (localStores == local) {
+                    currentAttempt.set(new Attempt(local));
+                    try {
+                        return local.ticketStore.inTransaction(callback);
+                    } finally {
+                        currentAttempt.remove();
+                    }
+                }
+            } finally {
+                switchLock.readLock().unlock();
+            }
+            //back online meanwhile
+        }
+    }
+
+    /**
+     * Runs a ticket change made outside any transaction as a transaction of its own, so that it cannot be
+     * queued after the queue was replayed.
+     */
+    private <T> T outsideTransaction(TransactionCallback<T> change, T onError) {
+        try {
+            return inTransaction(change);
+        } catch (Exception e) {
+            logger.error("Error writing ticket while offline", e);
+            return onError;
+        }
+    }
+
+    /**
+     * @return the stores of the current transaction, null when it runs online
+     */
+    private LocalStores getLocalStores() {
+        Attempt attempt = currentAttempt.get();
+        return attempt != null ? attempt.localStores : localStores;
+    }
+
+    private void failed() {
+        Attempt attempt = currentAttempt.get();
+        if (attempt != null) {
+            attempt.failed = true;
+        }
+    }
+
+    /**
+     * Appends a change of the current transaction to the queue, keeping room for its COMMIT or CANCEL marker.
+     * It is only replayed once {@link #committed} is called for it.
+     * @throws IOException if the queue is full, so that the transaction rolls back and the gate sees the failure
+     */
+    private TicketJournalEntry enqueue(TicketJournalEntry.Operation operation, Ticket ticket) throws IOException {
+        TicketJournalEntry entry = queueFile.appendPending(operation, ticket);
+        if (entry == null) {
+            logger.error("Offline queue " + queueFile.getPath() + " is full, rolling back the change of vehicle "
+                    + ticket.getVehicleRegNumber());
+            throw new IOException("Offline queue " + queueFile.getPath() + " is full");
+        }
+        return entry;
+    }
+
+    private void committed(TicketJournalEntry entry) {
+        TicketJournalEntry marker = queueFile.appendCommit(entry.getSequence());
+        if (marker == null) {
+            //cannot happen, appendPending kept room for it
+            logger.error("Could not mark offline queue entry " + entry.getSequence() + " committed, it is lost if the app stops before the DB is back");
+        }
+        queuedEntries.put(entry.getSequence(), entry);
+        if (marker != null) {
+            queuedEntries.put(marker.getSequence(), marker);
+        }
+    }
+
+    private void cancelled(TicketJournalEntry entry) {
+        TicketJournalEntry marker = queueFile.appendCancel(entry.getSequence());
+        //nothing to replay, but the replay must move past it
+        queuedEntries.put(entry.getSequence(), TicketJournalEntry.cancel(entry.getSequence(), entry.getSequence()));
+        if (marker != null) {
+            queuedEntries.put(marker.getSequence(), marker);
+        }
+    }
+
+    /**
+     * Replays the next batch of queued entries, in sequence order, in one transaction.
+     * @return the number of entries replayed
+     */
+    private int replay() throws Exception {
+        synchronized (replayLock) {
+            List<TicketJournalEntry> batch = new ArrayList<>();
+            long sequence = appliedSequence + 1;
+            TicketJournalEntry entry;
+            while (batch.size() < replayBatchSize && (entry = queuedEntries.get(sequence)) != null) {
+                batch.add(entry);
+                sequence++;
+            }
+            if (batch.isEmpty()) {
+                return 0;
+            }
+            long lastSequence = sequence - 1;
+            int batchConflicts = dataBaseConfig.inTransaction(() -> {
+                int found = applyBatch(batch);
+                saveCheckpoint(lastSequence);
+                return found;
+            });
+            for (long applied = appliedSequence + 1; applied <= lastSequence; applied++) {
+                queuedEntries.remove(applied);
+            }
+            appliedSequence = lastSequence;
+            conflicts.addAndGet(batchConflicts);
+            return batch.size();
+        }
+    }
+
+    /**
+     * @return the number of entries left out because the DB contradicts them
+     */
+    private int applyBatch(List<TicketJournalEntry> batch) throws Exception {
+        Connection con = null;
+        PreparedStatement findOpenTicket = null;
+        PreparedStatement saveTicket = null;
+        PreparedStatement closeTicket = null;
+        PreparedStatement closeOpenTicket = null;
+        PreparedStatement claimSpot = null;
+        PreparedStatement freeSpot = null;
+        int found = 0;
+        try {
+            con = dataBaseConfig.getConnection();
+            findOpenTicket = con.prepareStatement(DBConstants.GET_OPEN_TICKET_ID);
+            saveTicket = con.prepareStatement(DBConstants.SAVE_TICKET);
+            closeTicket = con.prepareStatement(DBConstants.CLOSE_OPEN_TICKET);
+            closeOpenTicket = con.prepareStatement(DBConstants.UPDATE_OPEN_TICKET);
+            claimSpot = con.prepareStatement(DBConstants.CLAIM_PARKING_SPOT);
+            freeSpot = con.prepareStatement(DBConstants.UPDATE_PARKING_SPOT);
+            for (TicketJournalEntry entry : batch) {
+                if (entry.isMarker()) {
+                    continue;
+                }
+                Ticket ticket = entry.getTicket();
+                ParkingSpot parkingSpot = ticket.getParkingSpot();
+                if (entry.getOperation() == TicketJournalEntry.Operation.SAVE) {
+                    if (ticket.getOutTime() == null && hasOpenTicket(findOpenTicket, ticket.getVehicleRegNumber())) {
+                        conflict(entry, "vehicle already has an open ticket, offline entry left out");
+                        found++;
+                        continue;
+                    }
+                    saveTicket.setInt(1, parkingSpot.getId());
+                    saveTicket.setString(2, ticket.getVehicleRegNumber());
+                    saveTicket.setDouble(3, ticket.getPrice());
+                    saveTicket.setTimestamp(4, new Timestamp(ticket.getInTime().getTime()));
+                    saveTicket.setTimestamp(5, (ticket.getOutTime() == null) ? null : new Timestamp(ticket.getOutTime().getTime()));
+                    saveTicket.executeUpdate();
+                    if (ticket.getOutTime() == null) {
+                        claimSpot.setInt(1, parkingSpot.getId());
+                        claimSpot.setString(2, parkingSpot.getParkingType().toString());
+                        if (claimSpot.executeUpdate() != 1) {
+                            //the vehicle is there all the same: its ticket is kept, the spot is now shared
+                            conflict(entry, "spot " + parkingSpot.getId() + " was taken meanwhile, ticket saved anyway");
+                            found++;
+                        }
+                    }
+                } else if (entry.getOperation() == TicketJournalEntry.Operation.UPDATE) {
+                    int closed;
+                    if (ticket.getId() > 0) {
+                        closeTicket.setDouble(1, ticket.getPrice());
+                        closeTicket.setTimestamp(2, new Timestamp(ticket.getOutTime().getTime()));
+                        closeTicket.setInt(3, ticket.getId());
+                        closed = closeTicket.executeUpdate();
+                    } else {
+                        //saved offline, so its ID was never known: close the open ticket of the vehicle
+                        closeOpenTicket.setDouble(1, ticket.getPrice());
+                        closeOpenTicket.setTimestamp(2, new Timestamp(ticket.getOutTime().getTime()));
+                        closeOpenTicket.setString(3, ticket.getVehicleRegNumber());
+                        closed = closeOpenTicket.executeUpdate();
+                    }
+                    if (closed != 1) {
+                        conflict(entry, "no open ticket left to close, offline exit left out");
+                        found++;
+                        continue;
+                    }
+                    freeSpot.setBoolean(1, true);
+                    freeSpot.setInt(2, parkingSpot.getId());
+                    freeSpot.executeUpdate();
+                }
+            }
+            return found;
+        } finally {
+            dataBaseConfig.closePreparedStatement(findOpenTicket);
+            dataBaseConfig.closePreparedStatement(saveTicket);
+            dataBaseConfig.closePreparedStatement(closeTicket);
+            dataBaseConfig.closePreparedStatement(closeOpenTicket);
+            dataBaseConfig.closePreparedStatement(claimSpot);
+            dataBaseConfig.closePreparedStatement(freeSpot);
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    private boolean hasOpenTicket(PreparedStatement findOpenTicket, String vehicleRegNumber) throws SQLException {
+        findOpenTicket.setString(1, vehicleRegNumber);
+        try (ResultSet rs = findOpenTicket.executeQuery()) {
+            return rs.next();
+        }
+    }
+
+    private void conflict(TicketJournalEntry entry, String reason) {
+        logger.warn("Offline queue entry " + entry.getSequence() + " (" + entry.getOperation() + " of vehicle "
+                + entry.getTicket().getVehicleRegNumber() + "): " + reason);
+    }
+
+    private long readCheckpoint() throws Exception {
+        Connection con = null;
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            ps = con.prepareStatement(DBConstants.GET_OFFLINE_QUEUE_CHECKPOINT);
+            ps.setString(1, queueName);
+            rs = ps.executeQuery();
+            return rs.next() ? rs.getLong(1) : 0;
+        } finally {
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    private void saveCheckpoint(long sequence) throws Exception {
+        Connection con = null;
+        PreparedStatement ps = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            ps = con.prepareStatement(DBConstants.SAVE_OFFLINE_QUEUE_CHECKPOINT);
+            ps.setString(1, queueName);
+            ps.setLong(2, sequence);
+            ps.executeUpdate();
+        } finally {
+            dataBaseConfig.closePreparedStatement(ps);
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    /**
+     * Stops the probe; what is still queued is replayed by {@link #recover()} at the next start.
+     */
+    @Override
+    public void close() throws IOException {
+        prober.shutdownNow();
+        queueFile.close();
+    }
+
+    private static final class Attempt {
+
+        private final LocalStores localStores;
+        private boolean failed;
+
+        private Attempt(LocalStores localStores) {
+            this.localStores = localStores;
+        }
+    }
+
+    /**
+     * The snapshot the gates work on while offline.
+     */
+    private final class LocalStores {
+
+        private final QueueingTicketStore ticketStore;
+        private final InMemoryParkingSpotStore parkingSpotStore;
+        private final RegularUserIndex regularUserIndex;
+
+        private LocalStores(List<ParkingSpot> parkingSpots, List<Ticket> openTickets, RegularUserIndex regularUserIndex) {
+            this.ticketStore = new QueueingTicketStore(openTickets);
+            this.parkingSpotStore = new InMemoryParkingSpotStore(parkingSpots);
+            this.regularUserIndex = regularUserIndex;
+        }
+
+        private boolean isRegularUser(String vehicleRegNumber) {
+            return ticketStore.isRegularUser(vehicleRegNumber)
+                    || (regularUserIndex != null && regularUserIndex.isRegularUser(vehicleRegNumber));
+        }
+    }
+
+    private final class QueueingTicketStore extends InMemoryTicketStore {
+
+        //saved offline: the DB gives them another ID, so their updates are queued without one
+        private final Set<Integer> offlineTicketIds = ConcurrentHashMap.newKeySet();
+
+        private QueueingTicketStore(List<Ticket> openTickets) {
+            for (Ticket ticket : openTickets) {
+                restore(ticket);
+            }
+        }
+
+        @Override
+        protected void written(TicketJournalEntry.Operation operation, Ticket ticket) throws IOException {
+            if (operation == TicketJournalEntry.Operation.SAVE) {
+                //IDs are never given twice, so a rolled back one can stay
+                offlineTicketIds.add(ticket.getId());
+            }
+            Ticket queued = ActiveSessionIndex.snapshot(ticket);
+            if (offlineTicketIds.contains(ticket.getId())) {
+                queued.setId(0);
+            }
+            TicketJournalEntry entry = enqueue(operation, queued);
+            //another change of the same transaction may still fail to be queued
+            InMemoryTransaction.undoOnRollback(() -> cancelled(entry));
+            InMemoryTransaction.afterCommit(() -> committed(entry));
+        }
+    }
+
+    private final class OfflineTicketStore implements TicketStore {
+
+        @Override
+        public boolean saveTicket(Ticket ticket) {
+            LocalStores local = getLocalStores();
+            if (local == null) {
+                boolean saved = ticketDAO.saveTicket(ticket);
+                if (!saved) {
+                    failed();
+                }
+                return saved;
+            }
+            if (currentAttempt.get() == null) {
+                return outsideTransaction(() -> saveTicket(ticket), false);
+            }
+            return local.ticketStore.saveTicket(ticket);
+        }
+
+        @Override
+        public int saveTickets(Collection<Ticket> tickets) {
+            LocalStores local = getLocalStores();
+            if (local == null) {
+                return ticketDAO.saveTickets(tickets);
+            }
+            if (currentAttempt.get() == null) {
+                return outsideTransaction(() -> saveTickets(tickets), 0);
+            }
+            return local.ticketStore.saveTickets(tickets);
+        }
+
+        @Override
+        public int updateTickets(Collection<Ticket> tickets) {
+            LocalStores local = getLocalStores();
+            if (local == null) {
+                return ticketDAO.updateTickets(tickets);
+            }
+            if (currentAttempt.get() == null) {
+                return outsideTransaction(() -> updateTickets(tickets), 0);
+            }
+            return local.ticketStore.updateTickets(tickets);
+        }
+
+        @Override
+        public Ticket getTicket(String vehicleRegNumber) {
+            LocalStores local = getLocalStores();
+            return local == null ? ticketDAO.getTicket(vehicleRegNumber) : local.ticketStore.getTicket(vehicleRegNumber);
+        }
+
+        @Override
+        public boolean updateTicket(Ticket ticket) {
+            LocalStores local = getLocalStores();
+            if (local == null) {
+                boolean updated = ticketDAO.updateTicket(ticket);
+                if (!updated) {
+                    failed();
+                }
+                return updated;
+            }
+            if (currentAttempt.get() == null) {
+                return outsideTransaction(() -> updateTicket(ticket), false);
+            }
+            return local.ticketStore.updateTicket(ticket);
+        }
+
+        @Override
+        public boolean isRegularUser(String vehicleRegNumber) {
+            LocalStores local = getLocalStores();
+            return local == null ? ticketDAO.isRegularUser(vehicleRegNumber) : local.isRegularUser(vehicleRegNumber);
+        }
+
+        @Override
+        public boolean checkAlreadyInParking(String vehicleRegNumber) {
+            LocalStores local = getLocalStores();
+            return local == null ? ticketDAO.checkAlreadyInParking(vehicleRegNumber) : local.ticketStore.checkAlreadyInParking(vehicleRegNumber);
+        }
+
+        @Override
+        public <T> T inTransaction(TransactionCallback<T> callback) throws Exception {
+            return OfflineMode.this.inTransaction(callback);
+        }
+    }
+
+    private final class OfflineParkingSpotStore implements ParkingSpotStore {
+
+        @Override
+        public int getNextAvailableSlot(ParkingType parkingType) throws Exception {
+            LocalStores local = getLocalStores();
+            return local == null ? parkingSpotDAO.getNextAvailableSlot(parkingType) : local.parkingSpotStore.getNextAvailableSlot(parkingType);
+        }
+
+        @Override
+        public int claimNextAvailableSlot(ParkingType parkingType) {
+            LocalStores local = getLocalStores();
+            if (local == null) {
+                int parkingNumber = parkingSpotDAO.claimNextAvailableSlot(parkingType);
+                if (parkingNumber < 0) {
+                    //or the gate would be told the lot is full
+                    failed();
+                }
+                return parkingNumber;
+            }
+            return local.parkingSpotStore.claimNextAvailableSlot(parkingType);
+        }
+
+        @Override
+        public int claimNextAvailableSlot(ParkingType parkingType, IntPredicate skip) {
+            LocalStores local = getLocalStores();
+            if (local == null) {
+                int parkingNumber = parkingSpotDAO.claimNextAvailableSlot(parkingType, skip);
+                if (parkingNumber < 0) {
+                    failed();
+                }
+                return parkingNumber;
+            }
+            return local.parkingSpotStore.claimNextAvailableSlot(parkingType, skip);
+        }
+
+        @Override
+        public boolean claimSlot(ParkingType parkingType, int parkingNumber) {
+            LocalStores local = getLocalStores();
+            //false is also the answer for a taken spot: the caller falls back to claimNextAvailableSlot,
+            //which notices an unreachable DB
+            return local == null ? parkingSpotDAO.claimSlot(parkingType, parkingNumber) : local.parkingSpotStore.claimSlot(parkingType, parkingNumber);
+        }
+
+        @Override
+        public boolean updateParking(ParkingSpot parkingSpot) {
+            LocalStores local = getLocalStores();
+            return local == null ? parkingSpotDAO.updateParking(parkingSpot) : local.parkingSpotStore.updateParking(parkingSpot);
+        }
+
+        @Override
+        public Occupancy getOccupancy(ParkingType parkingType) {
+            LocalStores local = getLocalStores();
+            return local == null ? parkingSpotDAO.getOccupancy(parkingType) : local.parkingSpotStore.getOccupancy(parkingType);
+        }
+    }
+}
@@ -3,58 +3,364 @@ package com.parkit.parkingsystem.dao;
 import com.parkit.parkingsystem.config.DataBaseConfig;
 import com.parkit.parkingsystem.constants.DBConstants;
 import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.Occupancy;
 import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.metrics.MetricsRegistry;
+import com.parkit.parkingsystem.metrics.OperationMetrics;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntPredicate;
 
-public class ParkingSpotDAO {
+public class ParkingSpotDAO implements ParkingSpotStore {
     private static final Logger logger = LogManager.getLogger("ParkingSpotDAO");
+    private static final OperationMetrics getNextAvailableSlotMetrics = MetricsRegistry.operation("ParkingSpotDAO.getNextAvailableSlot");
+    private static final OperationMetrics claimNextAvailableSlotMetrics = MetricsRegistry.operation("ParkingSpotDAO.claimNextAvailableSlot");
+    private static final OperationMetrics claimSlotMetrics = MetricsRegistry.operation("ParkingSpotDAO.claimSlot");
+    private static final OperationMetrics updateParkingMetrics = MetricsRegistry.operation("ParkingSpotDAO.updateParking");
+    private static final OperationMetrics getOccupancyMetrics = MetricsRegistry.operation("ParkingSpotDAO.getOccupancy");
 
     private DataBaseConfig dataBaseConfig = new DataBaseConfig();
+    private volatile ParkingSpotIndex parkingSpotIndex;
+    //type of every spot of the index, by parking number
+    private volatile Map<Integer, ParkingType> parkingTypes;
+    private final AtomicLong claimedSlots = new AtomicLong();
+    private final AtomicLong claimRetries = new AtomicLong();
+
     public void setDataBaseConfig (DataBaseConfig dataBaseConfig){
         this.dataBaseConfig = dataBaseConfig;
+        this.parkingSpotIndex = null;
+        this.parkingTypes = null;
+    }
+
+    /**
+     * (Re)builds the in-memory availability index from the parking table.
+     * Needed again whenever the table is changed behind this DAO's back.
+     */
+    public synchronized boolean loadParkingSpotIndex() {
+        Connection con = null;
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            ps = con.prepareStatement(DBConstants.GET_PARKING_SPOTS);
+            rs = ps.executeQuery();
+            ParkingSpotIndex index = null;
+            Map<Integer, ParkingType> types = new TreeMap<>();
+            while (rs.next()) {
+                int parkingNumber = rs.getInt(1);
+                if (index == null) {
+                    //rows come highest PARKING_NUMBER first
+                    index = new ParkingSpotIndex(parkingNumber);
+                }
+                try {
+                    ParkingType parkingType = ParkingType.valueOf(rs.getString(3));
+                    index.addSpot(parkingType, parkingNumber, rs.getBoolean(2));
+                    types.put(parkingNumber, parkingType);
+                } catch (IllegalArgumentException ie) {
+                    logger.error("Ignoring parking spot " + parkingNumber + " with unknown type " + rs.getString(3));
+                }
+            }
+            parkingSpotIndex = (index == null) ? new ParkingSpotIndex(0) : index;
+            parkingTypes = types;
+            return true;
+        }catch (Exception ex){
+            logger.error("Error loading parking spot index",ex);
+            parkingSpotIndex = null;
+            return false;
+        }finally {
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    /**
+     * Read from the availability index only, the DB is not queried.
+     * @return every spot with its current availability, by parking number; null if the index is not loaded
+     */
+    public List<ParkingSpot> getParkingSpots() {
+        ParkingSpotIndex index = parkingSpotIndex;
+        Map<Integer, ParkingType> types = parkingTypes;
+        if (index == null || types == null) {
+            return null;
+        }
+        List<ParkingSpot> parkingSpots = new ArrayList<>(types.size());
+        for (Map.Entry<Integer, ParkingType> spot : types.entrySet()) {
+            parkingSpots.add(new ParkingSpot(spot.getKey(), spot.getValue(), index.isAvailable(spot.getValue(), spot.getKey())));
+        }
+        return parkingSpots;
+    }
+
+    private ParkingSpotIndex getParkingSpotIndex() {
+        ParkingSpotIndex index = parkingSpotIndex;
+        if (index == null && loadParkingSpotIndex()) {
+            index = parkingSpotIndex;
+        }
+        return index;
     }
 
     public int getNextAvailableSlot(ParkingType parkingType) throws Exception{
+        long start = System.nanoTime();
+        try {
+            return findNextAvailableSlot(parkingType);
+        } finally {
+            getNextAvailableSlotMetrics.record(start);
+        }
+    }
+
+    private int findNextAvailableSlot(ParkingType parkingType) {
+        ParkingSpotIndex index = getParkingSpotIndex();
+        if (index != null) {
+            return index.getNextAvailableSlot(parkingType);
+        }
+        //no index (DB was unreachable while loading it): ask the DB directly
         Connection con = null;
         int result=-1;
         try {
             con = dataBaseConfig.getConnection();
-            PreparedStatement ps = con.prepareStatement(DBConstants.GET_NEXT_PARKING_SPOT);
+            result = queryNextAvailableSlot(con, parkingType);
+        }catch (Exception ex){
+            logger.error("Error fetching next available slot",ex);
+            getNextAvailableSlotMetrics.failed();
+        }finally {
+            dataBaseConfig.closeConnection(con);
+        }
+        return result;
+    }
+
+    private int queryNextAvailableSlot(Connection con, ParkingType parkingType) throws SQLException {
+        return queryNextAvailableSlot(con, parkingType, 1);
+    }
+
+    private int queryNextAvailableSlot(Connection con, ParkingType parkingType, int fromParkingNumber) throws SQLException {
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            //statements come from the per-connection cache, closing them gives them back
+            ps = con.prepareStatement(fromParkingNumber > 1 ? DBConstants.GET_NEXT_PARKING_SPOT_FROM : DBConstants.GET_NEXT_PARKING_SPOT);
             ps.setString(1, parkingType.toString());
-            ResultSet rs = ps.executeQuery();
-            if(rs.next()){
-                result = rs.getInt(1);
+            if (fromParkingNumber > 1) {
+                ps.setInt(2, fromParkingNumber);
             }
+            rs = ps.executeQuery();
+            return rs.next() ? rs.getInt(1) : 0;
+        } finally {
             dataBaseConfig.closeResultSet(rs);
             dataBaseConfig.closePreparedStatement(ps);
+        }
+    }
+
+    /**
+     * Finds the lowest free spot of this type and marks it taken in one step, so that two gates
+     * can never be handed the same spot. The row is only taken if it is still AVAILABLE; when another
+     * gate got there first the next candidate is tried.
+     * @return the claimed parking number, 0 if the lot is full for this type, -1 on error
+     */
+    public int claimNextAvailableSlot(ParkingType parkingType) {
+        return claimNextAvailableSlot(parkingType, parkingNumber -> false);
+    }
+
+    public int claimNextAvailableSlot(ParkingType parkingType, IntPredicate skip) {
+        long start = System.nanoTime();
+        try {
+            return claimFirstSlot(parkingType, skip);
+        } finally {
+            claimNextAvailableSlotMetrics.record(start);
+        }
+    }
+
+    private int claimFirstSlot(ParkingType parkingType, IntPredicate skip) {
+        ParkingSpotIndex index = getParkingSpotIndex();
+        Connection con = null;
+        PreparedStatement ps = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            ps = con.prepareStatement(DBConstants.CLAIM_PARKING_SPOT);
+            int from = 1;
+            while (true) {
+                int candidate = (index != null) ? index.getNextAvailableSlot(parkingType, from) : queryNextAvailableSlot(con, parkingType, from);
+                if (candidate <= 0) {
+                    return candidate;
+                }
+                if (skip.test(candidate)) {
+                    from = candidate + 1;
+                    continue;
+                }
+                //reserve the bit first so that gates of this JVM race on memory, not on the DB row
+                if (index != null && !index.setAvailable(parkingType, candidate, false)) {
+                    claimRetries.incrementAndGet();
+                    continue;
+                }
+                int updateRowCount;
+                try {
+                    ps.setInt(1, candidate);
+                    ps.setString(2, parkingType.toString());
+                    updateRowCount = ps.executeUpdate();
+                } catch (Exception ex) {
+                    if (index != null) {
+                        index.setAvailable(parkingType, candidate, true);
+                    }
+                    throw ex;
+                }
+                if (updateRowCount == 1) {
+                    if (index != null) {
+                        //the claim may be part of a transaction: free the bit again if it is rolled back
+                        dataBaseConfig.afterRollback(() -> index.setAvailable(parkingType, candidate, true));
+                    }
+                    claimedSlots.incrementAndGet();
+                    return candidate;
+                }
+                //taken by someone writing to the table directly: the cleared bit now matches the DB
+                claimRetries.incrementAndGet();
+            }
         }catch (Exception ex){
-            logger.error("Error fetching next available slot",ex);
+            logger.error("Error claiming next available slot",ex);
+            claimNextAvailableSlotMetrics.failed();
+            return -1;
         }finally {
+            dataBaseConfig.closePreparedStatement(ps);
             dataBaseConfig.closeConnection(con);
         }
-        return result;
+    }
+
+    /**
+     * Claims this spot only, the same way claimNextAvailableSlot claims its candidates.
+     */
+    public boolean claimSlot(ParkingType parkingType, int parkingNumber) {
+        long start = System.nanoTime();
+        ParkingSpotIndex index = getParkingSpotIndex();
+        //reserve the bit first, as claimNextAvailableSlot does
+        if (index != null && !index.setAvailable(parkingType, parkingNumber, false)) {
+            claimSlotMetrics.record(start);
+            return false;
+        }
+        Connection con = null;
+        PreparedStatement ps = null;
+        boolean claimed = false;
+        try {
+            con = dataBaseConfig.getConnection();
+            ps = con.prepareStatement(DBConstants.CLAIM_PARKING_SPOT);
+            ps.setInt(1, parkingNumber);
+            ps.setString(2, parkingType.toString());
+            claimed = ps.executeUpdate() == 1;
+            if (claimed) {
+                if (index != null) {
+                    dataBaseConfig.afterRollback(() -> index.setAvailable(parkingType, parkingNumber, true));
+                }
+                claimedSlots.incrementAndGet();
+            }
+            //not claimed: taken by someone writing to the table directly, the cleared bit matches the DB
+            return claimed;
+        }catch (Exception ex){
+            logger.error("Error claiming parking spot " + parkingNumber,ex);
+            claimSlotMetrics.failed();
+            if (index != null) {
+                index.setAvailable(parkingType, parkingNumber, true);
+            }
+            return false;
+        }finally {
+            dataBaseConfig.closePreparedStatement(ps);
+            dataBaseConfig.closeConnection(con);
+            claimSlotMetrics.record(start);
+        }
+    }
+
+    /**
+     * Counted by the availability index, which claims and updateParking keep up to date: the DB is only
+     * queried while the index cannot be loaded.
+     */
+    public Occupancy getOccupancy(ParkingType parkingType) {
+        long start = System.nanoTime();
+        try {
+            ParkingSpotIndex index = getParkingSpotIndex();
+            if (index != null) {
+                return new Occupancy(parkingType, index.getCapacity(parkingType), index.getAvailableSpots(parkingType));
+            }
+            return queryOccupancy(parkingType);
+        } finally {
+            getOccupancyMetrics.record(start);
+        }
+    }
+
+    private Occupancy queryOccupancy(ParkingType parkingType) {
+        Connection con = null;
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            ps = con.prepareStatement(DBConstants.GET_OCCUPANCY);
+            ps.setString(1, parkingType.toString());
+            rs = ps.executeQuery();
+            rs.next();
+            return new Occupancy(parkingType, rs.getInt(1), rs.getInt(2));
+        }catch (Exception ex){
+            logger.error("Error counting parking spots",ex);
+            getOccupancyMetrics.failed();
+            return null;
+        }finally {
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    public long getClaimedSlots() {
+        return claimedSlots.get();
+    }
+
+    /**
+     * @return how many times a claim lost the race for its candidate spot and had to try another one
+     */
+    public long getClaimRetries() {
+        return claimRetries.get();
     }
 
     public boolean updateParking(ParkingSpot parkingSpot){
+        long start = System.nanoTime();
+        try {
+            boolean updated = writeParking(parkingSpot);
+            if (!updated) {
+                updateParkingMetrics.failed();
+            }
+            return updated;
+        } finally {
+            updateParkingMetrics.record(start);
+        }
+    }
+
+    private boolean writeParking(ParkingSpot parkingSpot){
         //update the availability fo that parking slot
         Connection con = null;
+        PreparedStatement ps = null;
         try {
             con = dataBaseConfig.getConnection();
-            PreparedStatement ps = con.prepareStatement(DBConstants.UPDATE_PARKING_SPOT);
+            ps = con.prepareStatement(DBConstants.UPDATE_PARKING_SPOT);
             ps.setBoolean(1, parkingSpot.isAvailable());
             ps.setInt(2, parkingSpot.getId());
             int updateRowCount = ps.executeUpdate();
-            dataBaseConfig.closePreparedStatement(ps);
+            ParkingSpotIndex index = parkingSpotIndex;
+            if (updateRowCount == 1 && index != null && parkingSpot.getParkingType() != null) {
+                ParkingType parkingType = parkingSpot.getParkingType();
+                int parkingNumber = parkingSpot.getId();
+                boolean available = parkingSpot.isAvailable();
+                dataBaseConfig.afterCommit(() -> index.setAvailable(parkingType, parkingNumber, available));
+            }
             return (updateRowCount == 1);
         }catch (Exception ex){
             logger.error("Error updating parking info",ex);
             return false;
         }finally {
+            dataBaseConfig.closePreparedStatement(ps);
             dataBaseConfig.closeConnection(con);
         }
     }
@@ -0,0 +1,99 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.util.AtomicBitSet;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-memory copy of the AVAILABLE column of the parking table: one bit set per parking type,
+ * indexed by PARKING_NUMBER, where a set bit means the spot is free. Spots added with addSpot are also
+ * counted per type, along with the free ones, so that occupancy is read without scanning the bits.
+ */
+public class ParkingSpotIndex {
+
+    private final Map<ParkingType, AtomicBitSet> availableSpots = new EnumMap<>(ParkingType.class);
+    private final Map<ParkingType, AtomicInteger> capacities = new EnumMap<>(ParkingType.class);
+    private final Map<ParkingType, AtomicInteger> availableCounts = new EnumMap<>(ParkingType.class);
+
+    /**
+     * @param highestParkingNumber the highest PARKING_NUMBER of the lot, which sizes the bit sets
+     */
+    public ParkingSpotIndex(int highestParkingNumber) {
+        for (ParkingType parkingType : ParkingType.values()) {
+            availableSpots.put(parkingType, new AtomicBitSet(highestParkingNumber + 1));
+            capacities.put(parkingType, new AtomicInteger());
+            availableCounts.put(parkingType, new AtomicInteger());
+        }
+    }
+
+    /**
+     * @return the lowest free parking number of this type, or 0 if every spot is taken, like GET_NEXT_PARKING_SPOT
+     */
+    public int getNextAvailableSlot(ParkingType parkingType) {
+        return getNextAvailableSlot(parkingType, 1);
+    }
+
+    /**
+     * @return the lowest free parking number of this type from fromParkingNumber on, or 0 if there is none
+     */
+    public int getNextAvailableSlot(ParkingType parkingType, int fromParkingNumber) {
+        int parkingNumber = availableSpots.get(parkingType).nextSetBit(Math.max(1, fromParkingNumber));
+        return parkingNumber > 0 ? parkingNumber : 0;
+    }
+
+    public boolean isAvailable(ParkingType parkingType, int parkingNumber) {
+        AtomicBitSet spots = availableSpots.get(parkingType);
+        return isInRange(spots, parkingNumber) && spots.get(parkingNumber);
+    }
+
+    /**
+     * Adds a spot of the lot, counted in the capacity of its type. Each spot must be added once only.
+     * @return false if the parking number is beyond the one the index was sized for
+     */
+    public boolean addSpot(ParkingType parkingType, int parkingNumber, boolean available) {
+        if (!isInRange(availableSpots.get(parkingType), parkingNumber)) {
+            return false;
+        }
+        capacities.get(parkingType).incrementAndGet();
+        setAvailable(parkingType, parkingNumber, available);
+        return true;
+    }
+
+    /**
+     * @return false if the spot is unknown to the index (added to the table after loading) or already in that state
+     */
+    public boolean setAvailable(ParkingType parkingType, int parkingNumber, boolean available) {
+        AtomicBitSet spots = availableSpots.get(parkingType);
+        if (!isInRange(spots, parkingNumber)) {
+            return false;
+        }
+        boolean changed = available ? spots.set(parkingNumber) : spots.clear(parkingNumber);
+        if (changed) {
+            //only the gate whose compare-and-set flipped the bit moves the count
+            availableCounts.get(parkingType).addAndGet(available ? 1 : -1);
+        }
+        return changed;
+    }
+
+    /**
+     * @return the number of spots of this type given to addSpot
+     */
+    public int getCapacity(ParkingType parkingType) {
+        return capacities.get(parkingType).get();
+    }
+
+    /**
+     * @return the number of free spots of this type; while gates are claiming and freeing spots, it may lag
+     * the bits by the few changes in progress
+     */
+    public int getAvailableSpots(ParkingType parkingType) {
+        return Math.max(0, Math.min(availableCounts.get(parkingType).get(), getCapacity(parkingType)));
+    }
+
+    private static boolean isInRange(AtomicBitSet spots, int parkingNumber) {
+        return parkingNumber > 0 && parkingNumber < spots.size();
+    }
+}
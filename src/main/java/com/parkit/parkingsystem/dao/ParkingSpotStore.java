@@ -0,0 +1,46 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.Occupancy;
+import com.parkit.parkingsystem.model.ParkingSpot;
+
+import java.util.function.IntPredicate;
+
+/**
+ * Availability of the parking spots: {@link ParkingSpotDAO} for MySQL, {@link InMemoryParkingSpotStore} without
+ * a database server. Its changes belong to the transaction of the TicketStore it is used with.
+ */
+public interface ParkingSpotStore {
+
+    /**
+     * @return the lowest free parking number of this type, 0 if every spot is taken, -1 on error
+     */
+    int getNextAvailableSlot(ParkingType parkingType) throws Exception;
+
+    /**
+     * Finds the lowest free spot of this type and marks it taken in one step, so that two gates are never
+     * handed the same spot.
+     * @return the claimed parking number, 0 if the lot is full for this type, -1 on error
+     */
+    int claimNextAvailableSlot(ParkingType parkingType);
+
+    /**
+     * Same as claimNextAvailableSlot(parkingType), passing over the free spots for which skip is true.
+     * @return the claimed parking number, 0 if no other spot of this type is free, -1 on error
+     */
+    int claimNextAvailableSlot(ParkingType parkingType, IntPredicate skip);
+
+    /**
+     * Marks this spot taken if it is free, as a claim does.
+     * @return false if the spot is taken, of another type, unknown, or on error
+     */
+    boolean claimSlot(ParkingType parkingType, int parkingNumber);
+
+    boolean updateParking(ParkingSpot parkingSpot);
+
+    /**
+     * Read from memory, cheap enough for entrance displays polling it all the time.
+     * @return the capacity and free spots of this type, null on error
+     */
+    Occupancy getOccupancy(ParkingType parkingType);
+}
@@ -0,0 +1,87 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * A TicketStore and the ParkingSpotStore sharing its transactions, as ParkingService needs them.
+ */
+public class ParkingStores implements Closeable {
+
+    public static final int DEFAULT_FILE_CAPACITY = 1 << 20;
+
+    private final TicketStore ticketStore;
+    private final ParkingSpotStore parkingSpotStore;
+    private final ReservationDAO reservationDAO;
+    private final Closeable resources;
+
+    /**
+     * @param resources closed with the stores, may be null
+     */
+    public ParkingStores(TicketStore ticketStore, ParkingSpotStore parkingSpotStore, Closeable resources) {
+        this(ticketStore, parkingSpotStore, null, resources);
+    }
+
+    /**
+     * @param reservationDAO reservations of the lot, null if spots cannot be reserved
+     * @param resources closed with the stores, may be null
+     */
+    public ParkingStores(TicketStore ticketStore, ParkingSpotStore parkingSpotStore, ReservationDAO reservationDAO, Closeable resources) {
+        this.ticketStore = ticketStore;
+        this.parkingSpotStore = parkingSpotStore;
+        this.reservationDAO = reservationDAO;
+        this.resources = resources;
+    }
+
+    /**
+     * @param layout the spots of the lot, see {@link InMemoryParkingSpotStore#parseLayout(String)}
+     */
+    public static ParkingStores inMemory(String layout) {
+        return new ParkingStores(new InMemoryTicketStore(),
+                new InMemoryParkingSpotStore(InMemoryParkingSpotStore.parseLayout(layout)), null);
+    }
+
+    /**
+     * Opens the tickets kept in this file, creating it if needed. Spots of open tickets are taken again.
+     * @param layout the spots of the lot, see {@link InMemoryParkingSpotStore#parseLayout(String)}
+     */
+    public static ParkingStores file(Path path, String layout, boolean syncOnAppend) throws IOException {
+        FileTicketStore ticketStore = new FileTicketStore(path, DEFAULT_FILE_CAPACITY, syncOnAppend);
+        List<ParkingSpot> parkingSpots = InMemoryParkingSpotStore.parseLayout(layout);
+        InMemoryParkingSpotStore parkingSpotStore = new InMemoryParkingSpotStore(parkingSpots);
+        for (Ticket ticket : ticketStore.getTickets()) {
+            if (ticket.getOutTime() == null) {
+                ParkingSpot parkingSpot = ticket.getParkingSpot();
+                parkingSpotStore.updateParking(new ParkingSpot(parkingSpot.getId(), parkingSpot.getParkingType(), false));
+            }
+        }
+        return new ParkingStores(ticketStore, parkingSpotStore, ticketStore);
+    }
+
+    public TicketStore getTicketStore() {
+        return ticketStore;
+    }
+
+    public ParkingSpotStore getParkingSpotStore() {
+        return parkingSpotStore;
+    }
+
+    /**
+     * @return null if spots cannot be reserved
+     */
+    public ReservationDAO getReservationDAO() {
+        return reservationDAO;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (resources != null) {
+            resources.close();
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.util.BloomFilter;
+
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Every vehicle registration number that has a ticket, kept in memory so that the regular user
+ * discount can be decided without querying the ticket table. A Bloom filter answers most unknown
+ * plates without touching the set.
+ */
+public class RegularUserIndex {
+
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+    private static final int MIN_EXPECTED_PLATES = 1 << 14;
+
+    private final Set<String> knownPlates = ConcurrentHashMap.newKeySet();
+    private volatile BloomFilter bloomFilter = new BloomFilter(MIN_EXPECTED_PLATES, FALSE_POSITIVE_RATE);
+
+    public boolean isRegularUser(String vehicleRegNumber) {
+        String plate = normalize(vehicleRegNumber);
+        return bloomFilter.mightContain(plate) && knownPlates.contains(plate);
+    }
+
+    //writes are rare next to lookups: they are serialized, lookups never lock
+    public synchronized void addVehicle(String vehicleRegNumber) {
+        String plate = normalize(vehicleRegNumber);
+        if (knownPlates.add(plate)) {
+            bloomFilter.add(plate);
+            if (knownPlates.size() > bloomFilter.getExpectedInsertions()) {
+                BloomFilter bigger = new BloomFilter(bloomFilter.getExpectedInsertions() * 2, FALSE_POSITIVE_RATE);
+                for (String knownPlate : knownPlates) {
+                    bigger.add(knownPlate);
+                }
+                bloomFilter = bigger;
+            }
+        }
+    }
+
+    public int size() {
+        return knownPlates.size();
+    }
+
+    //the VEHICLE_REG_NUMBER comparison in MySQL is case insensitive
+    private static String normalize(String vehicleRegNumber) {
+        return vehicleRegNumber.toUpperCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,315 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.constants.DBConstants;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.metrics.MetricsRegistry;
+import com.parkit.parkingsystem.metrics.OperationMetrics;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Reservation;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reservations of the reservation table. Lookups at the gates are answered by a {@link ReservationIndex} of the
+ * reservations not over yet, loaded at startup and again every reservation.reloadSeconds once scheduled, so that
+ * bookings made through another instance are honoured here too; booking goes to the DB under a lock on the parking
+ * row of the spot, so that two instances never book the same spot for overlapping windows.
+ */
+public class ReservationDAO implements Closeable {
+    private static final Logger logger = LogManager.getLogger("ReservationDAO");
+    private static final OperationMetrics reserveMetrics = MetricsRegistry.operation("ReservationDAO.reserve");
+
+    public static final long DEFAULT_HOLD_MINUTES = 30;
+    public static final long DEFAULT_RELOAD_SECONDS = 60;
+
+    private DataBaseConfig dataBaseConfig = new DataBaseConfig();
+    private final long holdMillis;
+    private volatile ReservationIndex reservationIndex;
+    private final Object schedulerLock = new Object();
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * @param holdMillis how long before its start a reservation keeps its spot from other vehicles and lets
+     * its own vehicle in
+     */
+    public ReservationDAO(long holdMillis) {
+        this.holdMillis = holdMillis;
+    }
+
+    /**
+     * Reads reservation.holdMinutes from the properties file of dataBaseConfig.
+     */
+    public static ReservationDAO fromProperties(DataBaseConfig dataBaseConfig) throws IOException {
+        long holdMinutes = Long.parseLong(dataBaseConfig.getProperties().getProperty("reservation.holdMinutes",
+                String.valueOf(DEFAULT_HOLD_MINUTES)));
+        ReservationDAO reservationDAO = new ReservationDAO(TimeUnit.MINUTES.toMillis(holdMinutes));
+        reservationDAO.setDataBaseConfig(dataBaseConfig);
+        return reservationDAO;
+    }
+
+    public void setDataBaseConfig(DataBaseConfig dataBaseConfig) {
+        this.dataBaseConfig = dataBaseConfig;
+        this.reservationIndex = null;
+    }
+
+    /**
+     * (Re)builds the in-memory index from the parking and reservation tables, leaving out reservations
+     * already over. Needed again whenever the reservation table is changed behind this DAO's back.
+     */
+    public synchronized boolean loadReservationIndex() {
+        Connection con = null;
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            List<ParkingSpot> parkingSpots = new ArrayList<>();
+            ps = con.prepareStatement(DBConstants.GET_PARKING_SPOTS);
+            rs = ps.executeQuery();
+            while (rs.next()) {
+                try {
+                    parkingSpots.add(new ParkingSpot(rs.getInt(1), ParkingType.valueOf(rs.getString(3)), rs.getBoolean(2)));
+                } catch (IllegalArgumentException ie) {
+                    logger.error("Ignoring parking spot " + rs.getInt(1) + " with unknown type " + rs.getString(3));
+                }
+            }
+            dataBaseConfig.closeResultSet(rs);
+            rs = null;
+            dataBaseConfig.closePreparedStatement(ps);
+            ps = null;
+            ReservationIndex index = new ReservationIndex(parkingSpots, holdMillis);
+            ps = con.prepareStatement(DBConstants.GET_RESERVATIONS);
+            ps.setTimestamp(1, new Timestamp(System.currentTimeMillis()));
+            rs = ps.executeQuery();
+            while (rs.next()) {
+                Reservation reservation = new Reservation();
+                reservation.setId(rs.getInt(1));
+                try {
+                    reservation.setParkingSpot(new ParkingSpot(rs.getInt(2), ParkingType.valueOf(rs.getString(3)), false));
+                } catch (IllegalArgumentException ie) {
+                    continue;
+                }
+                reservation.setVehicleRegNumber(rs.getString(4));
+                reservation.setStartTime(rs.getTimestamp(5));
+                reservation.setEndTime(rs.getTimestamp(6));
+                if (!index.add(reservation)) {
+                    logger.error("Ignoring reservation " + reservation.getId() + " overlapping another one of spot "
+                            + reservation.getParkingSpot().getId());
+                }
+            }
+            reservationIndex = index;
+            return true;
+        }catch (Exception ex){
+            logger.error("Error loading reservation index",ex);
+            reservationIndex = null;
+            return false;
+        }finally {
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    /**
+     * Reloads the index every intervalSeconds on a background thread, until closed. Failures are logged and
+     * the index of the previous load kept.
+     */
+    public void scheduleReload(long intervalSeconds) {
+        synchronized (schedulerLock) {
+            if (scheduler != null) {
+                throw new IllegalStateException("Reservation index reload is already scheduled");
+            }
+            scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "reservation-index-loader");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleWithFixedDelay(this::reloadReservationIndex, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    private synchronized void reloadReservationIndex() {
+        ReservationIndex previous = reservationIndex;
+        if (!loadReservationIndex()) {
+            //better a stale index than none: the gates would give reserved spots away
+            reservationIndex = previous;
+        }
+    }
+
+    /**
+     * Stops the scheduled reload.
+     */
+    @Override
+    public void close() {
+        ScheduledExecutorService running;
+        synchronized (schedulerLock) {
+            running = scheduler;
+            scheduler = null;
+        }
+        if (running != null) {
+            running.shutdownNow();
+        }
+    }
+
+    private ReservationIndex getReservationIndex() {
+        ReservationIndex index = reservationIndex;
+        if (index == null && loadReservationIndex()) {
+            index = reservationIndex;
+        }
+        return index;
+    }
+
+    /**
+     * Books the lowest spot of this type free from startTime to endTime.
+     * @return the saved reservation, null if no spot of this type is free for the whole window
+     * @throws IllegalStateException if the vehicle already has a reservation overlapping the window
+     * @throws IllegalArgumentException if the window ends before it starts
+     */
+    public Reservation reserve(ParkingType parkingType, String vehicleRegNumber, Date startTime, Date endTime) throws Exception {
+        long start = System.nanoTime();
+        try {
+            ReservationIndex index = getReservationIndex();
+            if (index == null) {
+                throw new SQLException("Reservation index cannot be loaded");
+            }
+            index.removeEndedBefore(System.currentTimeMillis());
+            Reservation reservation = dataBaseConfig.inTransaction(() -> book(index, parkingType, vehicleRegNumber, startTime, endTime));
+            if (reservation != null) {
+                addToReloadedIndex(index, reservation);
+            }
+            return reservation;
+        } catch (IllegalArgumentException | IllegalStateException refused) {
+            throw refused;
+        } catch (Exception e) {
+            reserveMetrics.failed();
+            throw e;
+        } finally {
+            reserveMetrics.record(start);
+        }
+    }
+
+    private Reservation book(ReservationIndex index, ParkingType parkingType, String vehicleRegNumber, Date startTime, Date endTime) throws Exception {
+        Connection con = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            int lastCandidate = 0;
+            while (true) {
+                //taken in memory first so that requests of this JVM race on the index, not on the parking row
+                Reservation reservation = index.reserve(parkingType, vehicleRegNumber, startTime, endTime, lastCandidate);
+                if (reservation == null) {
+                    return null;
+                }
+                lastCandidate = reservation.getParkingSpot().getId();
+                boolean saved = false;
+                try {
+                    saved = save(con, reservation);
+                } finally {
+                    if (!saved) {
+                        index.remove(reservation);
+                    }
+                }
+                if (saved) {
+                    dataBaseConfig.afterRollback(() -> index.remove(reservation));
+                    return reservation;
+                }
+                //booked by another instance meanwhile: try the next spot
+            }
+        } finally {
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    /**
+     * A reload that read the reservation table before this booking committed left it out of the new index.
+     * Reloads are synchronized too: one that starts after this reads the booking from the DB.
+     */
+    private synchronized void addToReloadedIndex(ReservationIndex bookedIndex, Reservation reservation) {
+        ReservationIndex index = reservationIndex;
+        if (index != null && index != bookedIndex) {
+            //false when the reload already found it
+            index.add(reservation);
+        }
+    }
+
+    /**
+     * @return false if the spot is already reserved during the window in the DB
+     */
+    private boolean save(Connection con, Reservation reservation) throws Exception {
+        int parkingNumber = reservation.getParkingSpot().getId();
+        Timestamp startTime = new Timestamp(reservation.getStartTime().getTime());
+        Timestamp endTime = new Timestamp(reservation.getEndTime().getTime());
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            //held until commit: bookings of this spot by other instances wait for this one
+            ps = con.prepareStatement(DBConstants.LOCK_PARKING_SPOT);
+            ps.setInt(1, parkingNumber);
+            rs = ps.executeQuery();
+            dataBaseConfig.closeResultSet(rs);
+            rs = null;
+            dataBaseConfig.closePreparedStatement(ps);
+            ps = null;
+            ps = con.prepareStatement(DBConstants.COUNT_OVERLAPPING_RESERVATIONS);
+            ps.setInt(1, parkingNumber);
+            ps.setTimestamp(2, endTime);
+            ps.setTimestamp(3, startTime);
+            rs = ps.executeQuery();
+            if (rs.next() && rs.getInt(1) > 0) {
+                return false;
+            }
+            dataBaseConfig.closeResultSet(rs);
+            rs = null;
+            dataBaseConfig.closePreparedStatement(ps);
+            ps = null;
+            ps = con.prepareStatement(DBConstants.SAVE_RESERVATION, Statement.RETURN_GENERATED_KEYS);
+            ps.setInt(1, parkingNumber);
+            ps.setString(2, reservation.getVehicleRegNumber());
+            ps.setTimestamp(3, startTime);
+            ps.setTimestamp(4, endTime);
+            ps.executeUpdate();
+            try (ResultSet generatedKeys = ps.getGeneratedKeys()) {
+                if (generatedKeys.next()) {
+                    reservation.setId(generatedKeys.getInt(1));
+                }
+            }
+            return true;
+        } finally {
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+        }
+    }
+
+    /**
+     * Read from the index only, never loaded here: the gates must not wait on the DB for it.
+     * @return the reservation the vehicle may come in for at this time, null if there is none or the index
+     * is not loaded
+     */
+    public Reservation getReservation(String vehicleRegNumber, Date time) {
+        ReservationIndex index = reservationIndex;
+        return index == null ? null : index.getReservation(vehicleRegNumber, time.getTime());
+    }
+
+    /**
+     * Read from the index only, never loaded here.
+     * @return true if the spot is kept for a reservation at this time, false if the index is not loaded
+     */
+    public boolean isHeld(int parkingNumber, Date time) {
+        ReservationIndex index = reservationIndex;
+        return index != null && index.isHeld(parkingNumber, time.getTime());
+    }
+}
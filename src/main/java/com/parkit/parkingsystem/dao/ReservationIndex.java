@@ -0,0 +1,178 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Reservation;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * The reservations not over yet, in memory: per spot and per vehicle, a tree of reservations keyed by start time.
+ * The reservations of one spot never overlap, so their end times are in the same order as their start times and
+ * only the one starting last before a window can overlap it: checking a spot is a single O(log n) lookup, and
+ * finding a free spot for a window costs O(spots of the type x log n) however many reservations there are.
+ * <p>
+ * A spot is held for its reservation from holdMillis before its start until its end: the reserved vehicle may
+ * come in during that time, and other vehicles are not given the spot.
+ */
+public class ReservationIndex {
+
+    private final Map<ParkingType, int[]> parkingNumbers = new EnumMap<>(ParkingType.class);
+    private final Map<Integer, NavigableMap<Long, Reservation>> spotReservations = new HashMap<>();
+    private final Map<String, NavigableMap<Long, Reservation>> vehicleReservations = new HashMap<>();
+    private final long holdMillis;
+    private int size;
+
+    public ReservationIndex(Collection<ParkingSpot> parkingSpots, long holdMillis) {
+        this.holdMillis = holdMillis;
+        Map<ParkingType, List<Integer>> numbers = new EnumMap<>(ParkingType.class);
+        for (ParkingSpot parkingSpot : parkingSpots) {
+            numbers.computeIfAbsent(parkingSpot.getParkingType(), type -> new ArrayList<>()).add(parkingSpot.getId());
+            spotReservations.put(parkingSpot.getId(), new TreeMap<>());
+        }
+        for (Map.Entry<ParkingType, List<Integer>> typeNumbers : numbers.entrySet()) {
+            int[] sorted = typeNumbers.getValue().stream().mapToInt(Integer::intValue).sorted().toArray();
+            parkingNumbers.put(typeNumbers.getKey(), sorted);
+        }
+    }
+
+    /**
+     * Books the lowest spot of this type above afterParkingNumber that is free for the whole window.
+     * @return the new reservation, with no ID; null if no such spot is free
+     * @throws IllegalStateException if the vehicle already has a reservation overlapping the window
+     */
+    public synchronized Reservation reserve(ParkingType parkingType, String vehicleRegNumber, Date startTime, Date endTime,
+                                            int afterParkingNumber) {
+        long start = startTime.getTime();
+        long end = endTime.getTime();
+        if (end <= start) {
+            throw new IllegalArgumentException("Reservation must end after it starts");
+        }
+        NavigableMap<Long, Reservation> vehicle = vehicleReservations.get(normalize(vehicleRegNumber));
+        if (vehicle != null && overlaps(vehicle, start, end)) {
+            throw new IllegalStateException("Vehicle already has a reservation for this time");
+        }
+        for (int parkingNumber : parkingNumbers.getOrDefault(parkingType, new int[0])) {
+            if (parkingNumber <= afterParkingNumber || overlaps(spotReservations.get(parkingNumber), start, end)) {
+                continue;
+            }
+            Reservation reservation = new Reservation();
+            reservation.setParkingSpot(new ParkingSpot(parkingNumber, parkingType, false));
+            reservation.setVehicleRegNumber(vehicleRegNumber);
+            reservation.setStartTime(startTime);
+            reservation.setEndTime(endTime);
+            put(reservation);
+            return reservation;
+        }
+        return null;
+    }
+
+    /**
+     * Adds a reservation read from storage.
+     * @return false if its spot is unknown or already reserved during its window
+     */
+    public synchronized boolean add(Reservation reservation) {
+        NavigableMap<Long, Reservation> spot = spotReservations.get(reservation.getParkingSpot().getId());
+        long start = reservation.getStartTime().getTime();
+        long end = reservation.getEndTime().getTime();
+        if (spot == null || end <= start || overlaps(spot, start, end)) {
+            return false;
+        }
+        put(reservation);
+        return true;
+    }
+
+    public synchronized void remove(Reservation reservation) {
+        Long start = reservation.getStartTime().getTime();
+        NavigableMap<Long, Reservation> spot = spotReservations.get(reservation.getParkingSpot().getId());
+        if (spot != null && spot.remove(start, reservation)) {
+            size--;
+        }
+        String plate = normalize(reservation.getVehicleRegNumber());
+        NavigableMap<Long, Reservation> vehicle = vehicleReservations.get(plate);
+        if (vehicle != null && vehicle.remove(start, reservation) && vehicle.isEmpty()) {
+            vehicleReservations.remove(plate);
+        }
+    }
+
+    /**
+     * @return the reservation the vehicle may come in for at this time, null if there is none
+     */
+    public synchronized Reservation getReservation(String vehicleRegNumber, long time) {
+        NavigableMap<Long, Reservation> vehicle = vehicleReservations.get(normalize(vehicleRegNumber));
+        return vehicle == null ? null : heldAt(vehicle, time);
+    }
+
+    /**
+     * @return true if the spot is kept for a reservation at this time
+     */
+    public synchronized boolean isHeld(int parkingNumber, long time) {
+        NavigableMap<Long, Reservation> spot = spotReservations.get(parkingNumber);
+        return spot != null && heldAt(spot, time) != null;
+    }
+
+    /**
+     * Forgets the reservations over at this time.
+     * @return the number of reservations removed
+     */
+    public synchronized int removeEndedBefore(long time) {
+        int removed = 0;
+        for (NavigableMap<Long, Reservation> spot : spotReservations.values()) {
+            Iterator<Reservation> reservations = spot.values().iterator();
+            while (reservations.hasNext()) {
+                Reservation reservation = reservations.next();
+                if (reservation.getEndTime().getTime() > time) {
+                    //end times are in start time order
+                    break;
+                }
+                reservations.remove();
+                size--;
+                removed++;
+                String plate = normalize(reservation.getVehicleRegNumber());
+                NavigableMap<Long, Reservation> vehicle = vehicleReservations.get(plate);
+                if (vehicle != null && vehicle.remove(reservation.getStartTime().getTime(), reservation) && vehicle.isEmpty()) {
+                    vehicleReservations.remove(plate);
+                }
+            }
+        }
+        return removed;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    private void put(Reservation reservation) {
+        long start = reservation.getStartTime().getTime();
+        spotReservations.get(reservation.getParkingSpot().getId()).put(start, reservation);
+        //a vehicle booked twice at the same time by another instance keeps the first one
+        vehicleReservations.computeIfAbsent(normalize(reservation.getVehicleRegNumber()), plate -> new TreeMap<>())
+                .putIfAbsent(start, reservation);
+        size++;
+    }
+
+    private static boolean overlaps(NavigableMap<Long, Reservation> reservations, long start, long end) {
+        Map.Entry<Long, Reservation> last = reservations.lowerEntry(end);
+        return last != null && last.getValue().getEndTime().getTime() > start;
+    }
+
+    private Reservation heldAt(NavigableMap<Long, Reservation> reservations, long time) {
+        Map.Entry<Long, Reservation> last = reservations.floorEntry(time + holdMillis);
+        return last != null && last.getValue().getEndTime().getTime() > time ? last.getValue() : null;
+    }
+
+    //the VEHICLE_REG_NUMBER comparison in MySQL is case insensitive
+    private static String normalize(String vehicleRegNumber) {
+        return vehicleRegNumber.toUpperCase(Locale.ROOT);
+    }
+}
@@ -1,37 +1,211 @@
 package com.parkit.parkingsystem.dao;
 
 import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.config.TransactionCallback;
 import com.parkit.parkingsystem.constants.DBConstants;
 import com.parkit.parkingsystem.constants.ParkingType;
 import com.parkit.parkingsystem.model.ParkingSpot;
 import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.metrics.MetricsRegistry;
+import com.parkit.parkingsystem.metrics.OperationMetrics;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.Statement;
 import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 
-public class TicketDAO {
+public class TicketDAO implements TicketStore {
 
     private static final Logger logger = LogManager.getLogger("TicketDAO");
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    private static final OperationMetrics saveTicketMetrics = MetricsRegistry.operation("TicketDAO.saveTicket");
+    private static final OperationMetrics saveTicketsMetrics = MetricsRegistry.operation("TicketDAO.saveTickets");
+    private static final OperationMetrics updateTicketsMetrics = MetricsRegistry.operation("TicketDAO.updateTickets");
+    private static final OperationMetrics getTicketMetrics = MetricsRegistry.operation("TicketDAO.getTicket");
+    private static final OperationMetrics isRegularUserMetrics = MetricsRegistry.operation("TicketDAO.isRegularUser");
+    private static final OperationMetrics checkAlreadyInParkingMetrics = MetricsRegistry.operation("TicketDAO.checkAlreadyInParking");
+    private static final OperationMetrics updateTicketMetrics = MetricsRegistry.operation("TicketDAO.updateTicket");
+
     private DataBaseConfig dataBaseConfig = new DataBaseConfig();
+    private volatile RegularUserIndex regularUserIndex;
+    private volatile ActiveSessionIndex activeSessionIndex;
+    private volatile TicketJournal ticketJournal;
+    private int batchSize = DEFAULT_BATCH_SIZE;
 
     public DataBaseConfig getDataBaseConfig(){
         return this.dataBaseConfig;
     }
     public void setDataBaseConfig (DataBaseConfig dataBaseConfig){
         this.dataBaseConfig = dataBaseConfig;
+        this.regularUserIndex = null;
+        this.activeSessionIndex = null;
+    }
+
+    /**
+     * Runs the callback in one DB transaction of this DAO's DataBaseConfig.
+     */
+    public <T> T inTransaction(TransactionCallback<T> callback) throws Exception {
+        return dataBaseConfig.inTransaction(callback);
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * @param batchSize tickets sent per JDBC batch by saveTickets and updateTickets, each batch being one commit
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        }
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Switches saveTicket and updateTicket to write-behind through the journal; null writes straight to the DB again.
+     */
+    public void setTicketJournal(TicketJournal ticketJournal) {
+        this.ticketJournal = ticketJournal;
+    }
+
+    public TicketJournal getTicketJournal() {
+        return ticketJournal;
+    }
+
+    /**
+     * (Re)loads every open ticket, used to answer getTicket and checkAlreadyInParking from memory.
+     * Needed again whenever the ticket table is changed behind this DAO's back.
+     */
+    public synchronized boolean loadActiveSessionIndex() {
+        Connection con = null;
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            ps = con.prepareStatement(DBConstants.GET_OPEN_TICKETS);
+            rs = ps.executeQuery();
+            ActiveSessionIndex index = new ActiveSessionIndex();
+            while (rs.next()) {
+                //rows come oldest first: a newer open ticket of the same vehicle wins
+                Ticket ticket = new Ticket();
+                ticket.setParkingSpot(new ParkingSpot(rs.getInt(1), ParkingType.valueOf(rs.getString(6)), false));
+                ticket.setId(rs.getInt(2));
+                ticket.setPrice(rs.getDouble(3));
+                ticket.setInTime(rs.getTimestamp(4));
+                ticket.setVehicleRegNumber(rs.getString(5));
+                index.open(ticket);
+            }
+            activeSessionIndex = index;
+            return true;
+        }catch (Exception ex){
+            logger.error("Error loading active session index",ex);
+            activeSessionIndex = null;
+            return false;
+        }finally {
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    /**
+     * Read from the active session index only, the DB is not queried.
+     * @return a copy of every open ticket, null if the index is not loaded
+     */
+    public List<Ticket> getOpenTickets() {
+        ActiveSessionIndex index = activeSessionIndex;
+        return index == null ? null : index.getOpenTickets();
+    }
+
+    private ActiveSessionIndex getActiveSessionIndex() {
+        ActiveSessionIndex index = activeSessionIndex;
+        if (index == null && loadActiveSessionIndex()) {
+            index = activeSessionIndex;
+        }
+        return index;
+    }
+
+    /**
+     * (Re)loads the plates of every ticket, used to answer isRegularUser from memory.
+     * Needed again whenever the ticket table is changed behind this DAO's back.
+     */
+    public synchronized boolean loadRegularUserIndex() {
+        Connection con = null;
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            ps = con.prepareStatement(DBConstants.GET_VEHICLE_REG_NUMBERS);
+            rs = ps.executeQuery();
+            RegularUserIndex index = new RegularUserIndex();
+            while (rs.next()) {
+                index.addVehicle(rs.getString(1));
+            }
+            regularUserIndex = index;
+            return true;
+        }catch (Exception ex){
+            logger.error("Error loading regular user index",ex);
+            regularUserIndex = null;
+            return false;
+        }finally {
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    /**
+     * @return the regular user index as loaded, without trying to load it
+     */
+    RegularUserIndex getLoadedRegularUserIndex() {
+        return regularUserIndex;
+    }
+
+    private RegularUserIndex getRegularUserIndex() {
+        RegularUserIndex index = regularUserIndex;
+        if (index == null && loadRegularUserIndex()) {
+            index = regularUserIndex;
+        }
+        return index;
     }
 
 
     public boolean saveTicket(Ticket ticket){
-            Connection con = null;
-            PreparedStatement ps = null;
+        long start = System.nanoTime();
+        try {
+            boolean saved = insertTicket(ticket);
+            if (!saved) {
+                saveTicketMetrics.failed();
+            }
+            return saved;
+        } finally {
+            saveTicketMetrics.record(start);
+        }
+    }
+
+    private boolean insertTicket(Ticket ticket){
+        TicketJournal journal = ticketJournal;
+        if (journal != null) {
+            if (!appendToJournal(journal, TicketJournalEntry.Operation.SAVE, ticket)) {
+                return false;
+            }
+            ticketSaved(ticket);
+            return true;
+        }
+        Connection con = null;
+        PreparedStatement ps = null;
         try {
             con = dataBaseConfig.getConnection();
-            ps = con.prepareStatement(DBConstants.SAVE_TICKET);
+            //statements come from the per-connection cache, closing them gives them back
+            ps = con.prepareStatement(DBConstants.SAVE_TICKET, Statement.RETURN_GENERATED_KEYS);
             //ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME)
             //ps.setInt(1,ticket.getId());
             ps.setInt(1,ticket.getParkingSpot().getId());
@@ -39,7 +213,16 @@ public class TicketDAO {
             ps.setDouble(3, ticket.getPrice());
             ps.setTimestamp(4, new Timestamp(ticket.getInTime().getTime()));
             ps.setTimestamp(5, (ticket.getOutTime() == null)?null: (new Timestamp(ticket.getOutTime().getTime())) );
-            return ps.execute();
+            boolean saved = ps.executeUpdate() == 1;
+            if (saved) {
+                try (ResultSet generatedKeys = ps.getGeneratedKeys()) {
+                    if (generatedKeys.next()) {
+                        ticket.setId(generatedKeys.getInt(1));
+                    }
+                }
+                ticketSaved(ticket);
+            }
+            return saved;
         }catch (Exception ex){
             logger.error("Error fetching next available slot",ex);
         }finally {
@@ -49,15 +232,161 @@ public class TicketDAO {
         return false;
     }
 
+    /**
+     * Inserts the tickets with JDBC batching, committing every getBatchSize() tickets.
+     * Always writes straight to the DB, even in write-behind mode. Generated IDs are set on the tickets.
+     * @return the number of tickets saved: stops at the first batch that fails, which is rolled back
+     */
+    public int saveTickets(Collection<Ticket> tickets) {
+        return executeInBatches(tickets, true, saveTicketsMetrics);
+    }
+
+    /**
+     * Updates PRICE and OUT_TIME of the tickets, found by ID, with JDBC batching, committing every getBatchSize() tickets.
+     * @return the number of tickets updated: stops at the first batch that fails, which is rolled back
+     */
+    public int updateTickets(Collection<Ticket> tickets) {
+        return executeInBatches(tickets, false, updateTicketsMetrics);
+    }
+
+    private int executeInBatches(Collection<Ticket> tickets, boolean save, OperationMetrics metrics) {
+        long start = System.nanoTime();
+        List<Ticket> batch = new ArrayList<>(Math.min(batchSize, tickets.size()));
+        int done = 0;
+        try {
+            for (Ticket ticket : tickets) {
+                batch.add(ticket);
+                if (batch.size() == batchSize) {
+                    done += dataBaseConfig.inTransaction(() -> save ? saveBatch(batch) : updateBatch(batch));
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                done += dataBaseConfig.inTransaction(() -> save ? saveBatch(batch) : updateBatch(batch));
+            }
+        }catch (Exception ex){
+            logger.error("Error " + (save ? "saving" : "updating") + " tickets, " + done + " done",ex);
+            metrics.failed();
+        }
+        metrics.record(start);
+        return done;
+    }
+
+    private int saveBatch(List<Ticket> batch) throws Exception {
+        Connection con = null;
+        PreparedStatement ps = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            ps = con.prepareStatement(DBConstants.SAVE_TICKET, Statement.RETURN_GENERATED_KEYS);
+            for (Ticket ticket : batch) {
+                ps.setInt(1,ticket.getParkingSpot().getId());
+                ps.setString(2, ticket.getVehicleRegNumber());
+                ps.setDouble(3, ticket.getPrice());
+                ps.setTimestamp(4, new Timestamp(ticket.getInTime().getTime()));
+                ps.setTimestamp(5, (ticket.getOutTime() == null)?null: (new Timestamp(ticket.getOutTime().getTime())) );
+                ps.addBatch();
+            }
+            ps.executeBatch();
+            try (ResultSet generatedKeys = ps.getGeneratedKeys()) {
+                for (int i = 0; i < batch.size() && generatedKeys.next(); i++) {
+                    batch.get(i).setId(generatedKeys.getInt(1));
+                }
+            }
+            for (Ticket ticket : batch) {
+                ticketSaved(ticket);
+            }
+            return batch.size();
+        } finally {
+            dataBaseConfig.closePreparedStatement(ps);
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    private int updateBatch(List<Ticket> batch) throws Exception {
+        Connection con = null;
+        PreparedStatement ps = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            ps = con.prepareStatement(DBConstants.UPDATE_TICKET);
+            for (Ticket ticket : batch) {
+                ps.setDouble(1, ticket.getPrice());
+                ps.setTimestamp(2, new Timestamp(ticket.getOutTime().getTime()));
+                ps.setInt(3,ticket.getId());
+                ps.addBatch();
+            }
+            ps.executeBatch();
+            for (Ticket ticket : batch) {
+                ticketUpdated(ticket);
+            }
+            return batch.size();
+        } finally {
+            dataBaseConfig.closePreparedStatement(ps);
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    private void ticketSaved(Ticket ticket) {
+        RegularUserIndex regularUsers = regularUserIndex;
+        if (regularUsers != null) {
+            String vehicleRegNumber = ticket.getVehicleRegNumber();
+            dataBaseConfig.afterCommit(() -> regularUsers.addVehicle(vehicleRegNumber));
+        }
+        ActiveSessionIndex activeSessions = activeSessionIndex;
+        if (activeSessions != null && ticket.getOutTime() == null) {
+            Ticket openTicket = ActiveSessionIndex.snapshot(ticket);
+            dataBaseConfig.afterCommit(() -> activeSessions.open(openTicket));
+        }
+    }
+
+    private void ticketUpdated(Ticket ticket) {
+        ActiveSessionIndex index = activeSessionIndex;
+        if (index != null) {
+            Ticket closedTicket = ActiveSessionIndex.snapshot(ticket);
+            dataBaseConfig.afterCommit(() -> index.close(closedTicket));
+        }
+    }
+
+    private boolean appendToJournal(TicketJournal journal, TicketJournalEntry.Operation operation, Ticket ticket) {
+        try {
+            TicketJournalEntry entry = journal.append(operation, ticket);
+            //the entry is only applied once the gate's transaction commits
+            dataBaseConfig.afterCommit(() -> journal.committed(entry));
+            dataBaseConfig.afterRollback(() -> journal.rolledBack(entry));
+            return true;
+        }catch (Exception ex){
+            logger.error("Error writing ticket to journal",ex);
+            return false;
+        }
+    }
+
     public Ticket getTicket(String vehicleRegNumber) {
+        long start = System.nanoTime();
+        try {
+            return findTicket(vehicleRegNumber);
+        } finally {
+            getTicketMetrics.record(start);
+        }
+    }
+
+    private Ticket findTicket(String vehicleRegNumber) {
+        ActiveSessionIndex index = getActiveSessionIndex();
+        if (index != null) {
+            Ticket openTicket = index.getOpenTicket(vehicleRegNumber);
+            if (openTicket != null) {
+                return openTicket;
+            }
+        }
+        //not parked right now: the last ticket, if any, is closed and only in the DB
         Ticket ticket = null;
         Connection con = null;
+        PreparedStatement ps = null;
+        ResultSet rs = null;
         try {
             con = dataBaseConfig.getConnection();
-            PreparedStatement ps = con.prepareStatement(DBConstants.GET_TICKET);
+            ps = con.prepareStatement(DBConstants.GET_TICKET);
             //ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME)
             ps.setString(1,vehicleRegNumber);
-            ResultSet rs = ps.executeQuery();
+            rs = ps.executeQuery();
             if(rs.next()){
                 ticket = new Ticket();
                 ParkingSpot parkingSpot = new ParkingSpot(rs.getInt(1), ParkingType.valueOf(rs.getString(6)),false);
@@ -68,60 +397,95 @@ public class TicketDAO {
                 ticket.setInTime(rs.getTimestamp(4));
                 ticket.setOutTime(rs.getTimestamp(5));
             }
-            dataBaseConfig.closeResultSet(rs);
-            dataBaseConfig.closePreparedStatement(ps);
         }catch (Exception ex){
             logger.error("Error fetching next available slot",ex);
+            getTicketMetrics.failed();
         }finally {
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
             dataBaseConfig.closeConnection(con);
-            return ticket;
         }
+        return ticket;
     }
 
-        public boolean checkRegularUsers (String readVehicleRegistrationNumber) {
+    public boolean isRegularUser (String readVehicleRegistrationNumber) {
+        long start = System.nanoTime();
+        try {
+            return findRegularUser(readVehicleRegistrationNumber);
+        } finally {
+            isRegularUserMetrics.record(start);
+        }
+    }
+
+        private boolean findRegularUser (String readVehicleRegistrationNumber) {
+            RegularUserIndex index = getRegularUserIndex();
+            if (index != null) {
+                return index.isRegularUser(readVehicleRegistrationNumber);
+            }
+            //no index (DB was unreachable while loading it): ask the DB directly
             boolean regularUser = false;
             Connection con = null;
+            PreparedStatement ps = null;
+            ResultSet rs = null;
             try {
                 con = dataBaseConfig.getConnection();
-                PreparedStatement ps = con.prepareStatement(DBConstants.CHECK_REGULAR_USERS);
+                ps = con.prepareStatement(DBConstants.CHECK_REGULAR_USERS);
                 //(ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME)
                 ps.setString(1, readVehicleRegistrationNumber);
-                ResultSet rs = ps.executeQuery();
+                ps.setString(2, readVehicleRegistrationNumber);
+                rs = ps.executeQuery();
                 if (rs.next()) {
                     if(rs.getString("VEHICLE_REG_NUMBER").equalsIgnoreCase(readVehicleRegistrationNumber)){
                         regularUser = true;
-                        System.out.println("Welcome back! As a recurring user of our parking lot, you'll benefit from a 5% discount.");
                 }
                 }
-                dataBaseConfig.closeResultSet(rs);
-                dataBaseConfig.closePreparedStatement(ps);
             }catch (Exception ex){
                 logger.error("Error can't define regular user ",ex);
+                isRegularUserMetrics.failed();
             }finally {
+                dataBaseConfig.closeResultSet(rs);
+                dataBaseConfig.closePreparedStatement(ps);
                 dataBaseConfig.closeConnection(con);
             }
             return regularUser;
         }
 
     public boolean checkAlreadyInParking (String readVehicleRegistrationNumber) {
+        long start = System.nanoTime();
+        try {
+            return findAlreadyInParking(readVehicleRegistrationNumber);
+        } finally {
+            checkAlreadyInParkingMetrics.record(start);
+        }
+    }
+
+    private boolean findAlreadyInParking (String readVehicleRegistrationNumber) {
+        ActiveSessionIndex index = getActiveSessionIndex();
+        if (index != null) {
+            return index.isInParking(readVehicleRegistrationNumber);
+        }
+        //no index (DB was unreachable while loading it): ask the DB directly
         boolean alreadyInParking = false;
         Connection con = null;
+        PreparedStatement ps = null;
+        ResultSet rs = null;
         try {
             con = dataBaseConfig.getConnection();
-            PreparedStatement ps = con.prepareStatement(DBConstants.CHECK_ALREADY_IN_PARKING);
+            ps = con.prepareStatement(DBConstants.CHECK_ALREADY_IN_PARKING);
             //(ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME)
             ps.setString(1, readVehicleRegistrationNumber);
-            ResultSet rs = ps.executeQuery();
+            rs = ps.executeQuery();
             if (rs.next()) {
                 if(!rs.getBoolean("AVAILABLE")){
                     alreadyInParking = true;
                 }
             }
-            dataBaseConfig.closeResultSet(rs);
-            dataBaseConfig.closePreparedStatement(ps);
         }catch (Exception ex){
             logger.error("Error can't define if vehicle is already in parking ",ex);
+            checkAlreadyInParkingMetrics.failed();
         }finally {
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
             dataBaseConfig.closeConnection(con);
         }
         return alreadyInParking;
@@ -129,19 +493,61 @@ public class TicketDAO {
 
 
     public boolean updateTicket(Ticket ticket) {
+        long start = System.nanoTime();
+        try {
+            boolean updated = writeTicketUpdate(ticket);
+            if (!updated) {
+                updateTicketMetrics.failed();
+            }
+            return updated;
+        } finally {
+            updateTicketMetrics.record(start);
+        }
+    }
+
+    private boolean writeTicketUpdate(Ticket ticket) {
+        TicketJournal journal = ticketJournal;
+        if (journal != null) {
+            //the DB only sees the update later: the session index is what stops a second exit
+            ActiveSessionIndex index = activeSessionIndex;
+            Ticket openTicket = ActiveSessionIndex.snapshot(ticket);
+            if (index != null) {
+                if (!index.close(openTicket)) {
+                    logger.warn("Ticket " + ticket.getId() + " of " + ticket.getVehicleRegNumber() + " is already closed");
+                    return false;
+                }
+            }
+            if (!appendToJournal(journal, TicketJournalEntry.Operation.UPDATE, ticket)) {
+                //no transaction may roll back to reopen it, and the exit did not happen
+                if (index != null) {
+                    index.open(openTicket);
+                }
+                return false;
+            }
+            if (index != null) {
+                dataBaseConfig.afterRollback(() -> index.open(openTicket));
+            }
+            return true;
+        }
         Connection con = null;
+        PreparedStatement ps = null;
         try {
             con = dataBaseConfig.getConnection();
-            PreparedStatement ps = con.prepareStatement(DBConstants.UPDATE_TICKET);
+            //only an open ticket: a repeated or racing exit updates no row
+            ps = con.prepareStatement(DBConstants.CLOSE_OPEN_TICKET);
             ps.setDouble(1, ticket.getPrice());
             ps.setTimestamp(2, new Timestamp(ticket.getOutTime().getTime()));
             ps.setInt(3,ticket.getId());
-            ps.execute();
-            dataBaseConfig.closePreparedStatement(ps);
+            if (ps.executeUpdate() == 0) {
+                logger.warn("Ticket " + ticket.getId() + " of " + ticket.getVehicleRegNumber() + " is already closed");
+                return false;
+            }
+            ticketUpdated(ticket);
             return true;
         }catch (Exception ex){
             logger.error("Error saving ticket info",ex);
         }finally {
+            dataBaseConfig.closePreparedStatement(ps);
             dataBaseConfig.closeConnection(con);
         }
         return false;
@@ -0,0 +1,387 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.constants.DBConstants;
+import com.parkit.parkingsystem.model.Ticket;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind for ticket inserts and updates. TicketDAO appends each change to a local {@link TicketJournalFile}
+ * and answers the gate right away; a COMMIT marker follows once the gate's transaction commits, a CANCEL marker if it
+ * rolls back. A background thread then applies committed entries to the ticket table in sequence order, a batch per
+ * transaction. The last applied sequence is saved in ticket_journal_checkpoint in the same transaction, so that
+ * {@link #recover()} replays exactly the committed entries the DB has not seen yet.
+ * One journal per database: the checkpoint row is shared.
+ */
+public class TicketJournal implements Closeable {
+
+    private static final Logger logger = LogManager.getLogger("TicketJournal");
+
+    private static final long MAKE_ROOM_TIMEOUT_MILLIS = 5000;
+
+    private final DataBaseConfig dataBaseConfig;
+    private final TicketJournalFile journalFile;
+    private final int batchSize;
+    private final long flushIntervalMillis;
+    private final ScheduledExecutorService flusher;
+    //entries whose transaction is over, waiting for every earlier entry before being applied
+    private final ConcurrentSkipListMap<Long, TicketJournalEntry> readyEntries = new ConcurrentSkipListMap<>();
+    private final Object flushLock = new Object();
+    private volatile long appliedSequence;
+
+    public TicketJournal(DataBaseConfig dataBaseConfig, TicketJournalFile journalFile, int batchSize, long flushIntervalMillis) {
+        this.dataBaseConfig = dataBaseConfig;
+        this.journalFile = journalFile;
+        this.batchSize = batchSize;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ticket-journal-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @return the journal configured by the journal.* properties, or null when journal.file is not set
+     */
+    public static TicketJournal fromProperties(DataBaseConfig dataBaseConfig) throws IOException {
+        Properties props = dataBaseConfig.getProperties();
+        String file = props.getProperty("journal.file", "").trim();
+        if (file.isEmpty()) {
+            return null;
+        }
+        Path path = Paths.get(file);
+        TicketJournalFile journalFile = new TicketJournalFile(path,
+                Integer.parseInt(props.getProperty("journal.capacityBytes", "16777216")),
+                Boolean.parseBoolean(props.getProperty("journal.syncOnAppend", "true")));
+        return new TicketJournal(dataBaseConfig, journalFile,
+                Integer.parseInt(props.getProperty("journal.batchSize", "100")),
+                Long.parseLong(props.getProperty("journal.flushIntervalMillis", "50")));
+    }
+
+    /**
+     * Applies the committed entries left in the journal by the previous run, then starts the background flusher.
+     * Entries with no COMMIT marker belonged to a transaction cut short by the crash, whose spot claim the DB
+     * rolled back: they are skipped. Must run before the DAO indexes are loaded, so that they see the replayed tickets.
+     * @return the number of entries replayed
+     */
+    public int recover() throws Exception {
+        int replayed = 0;
+        synchronized (flushLock) {
+            long checkpoint = readCheckpoint();
+            journalFile.skipTo(checkpoint + 1);
+            List<TicketJournalEntry> entries = journalFile.getRecoveredEntries();
+            Set<Long> committedSequences = new HashSet<>();
+            for (TicketJournalEntry entry : entries) {
+                if (entry.getOperation() == TicketJournalEntry.Operation.COMMIT) {
+                    committedSequences.add(entry.getMarkedSequence());
+                }
+            }
+            int uncommitted = 0;
+            for (TicketJournalEntry entry : entries) {
+                long sequence = entry.getSequence();
+                if (sequence <= checkpoint) {
+                    continue;
+                }
+                if (entry.isMarker() || committedSequences.contains(sequence)) {
+                    readyEntries.put(sequence, entry);
+                    replayed += entry.isMarker() ? 0 : 1;
+                } else {
+                    //nothing to apply, but the checkpoint must move past it
+                    readyEntries.put(sequence, TicketJournalEntry.cancel(sequence, sequence));
+                    uncommitted++;
+                }
+            }
+            if (uncommitted > 0) {
+                logger.warn("Skipping " + uncommitted + " ticket journal entries whose transaction never committed");
+            }
+            appliedSequence = checkpoint;
+            if (!readyEntries.isEmpty() && firstReadySequence() > checkpoint + 1) {
+                logger.error("Ticket journal " + journalFile.getPath() + " starts after checkpoint " + checkpoint
+                        + ", entries up to " + (firstReadySequence() - 1) + " are lost");
+                appliedSequence = firstReadySequence() - 1;
+            }
+        }
+        while (flush() > 0) {
+            //apply everything before the gates open
+        }
+        logger.info("Replayed " + replayed + " ticket journal entries, applied up to " + appliedSequence);
+        flusher.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+        return replayed;
+    }
+
+    /**
+     * Writes the change to the journal. It is applied to the DB after {@link #committed} is called for it.
+     */
+    public TicketJournalEntry append(TicketJournalEntry.Operation operation, Ticket ticket) throws IOException {
+        TicketJournalEntry entry = journalFile.appendPending(operation, ticket);
+        if (entry == null) {
+            //full: wait for the flusher to apply everything, which lets the file start over
+            makeRoom();
+            entry = journalFile.appendPending(operation, ticket);
+            if (entry == null) {
+                throw new IOException("Ticket journal " + journalFile.getPath() + " is full");
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * The transaction that appended the entry committed: the entry can be applied, now and on replay.
+     */
+    public void committed(TicketJournalEntry entry) {
+        TicketJournalEntry commit = journalFile.appendCommit(entry.getSequence());
+        if (commit == null) {
+            //cannot happen while appendPending keeps room for the marker
+            logger.error("No room to commit ticket journal entry " + entry.getSequence() + ", it would be skipped after a restart");
+        } else {
+            readyEntries.put(commit.getSequence(), commit);
+        }
+        readyEntries.put(entry.getSequence(), entry);
+    }
+
+    /**
+     * The transaction that appended the entry rolled back: the entry is skipped, now and on replay.
+     */
+    public void rolledBack(TicketJournalEntry entry) {
+        TicketJournalEntry cancel = journalFile.appendCancel(entry.getSequence());
+        if (cancel == null) {
+            //no COMMIT marker either, so a restart skips it all the same
+            logger.warn("No room to cancel ticket journal entry " + entry.getSequence());
+            readyEntries.put(entry.getSequence(), TicketJournalEntry.cancel(entry.getSequence(), entry.getSequence()));
+            return;
+        }
+        readyEntries.put(entry.getSequence(), cancel);
+        readyEntries.put(cancel.getSequence(), cancel);
+    }
+
+    /**
+     * Applies the next batch of ready entries, in sequence order, in one transaction; entry by entry if that fails.
+     * @return the number of entries applied
+     */
+    public int flush() throws Exception {
+        synchronized (flushLock) {
+            List<TicketJournalEntry> batch = new ArrayList<>();
+            long sequence = appliedSequence + 1;
+            TicketJournalEntry entry;
+            while (batch.size() < batchSize && (entry = readyEntries.get(sequence)) != null) {
+                batch.add(entry);
+                sequence++;
+            }
+            if (batch.isEmpty()) {
+                return 0;
+            }
+            long lastSequence = sequence - 1;
+            try {
+                dataBaseConfig.inTransaction(() -> {
+                    for (TicketJournalEntry batchEntry : batch) {
+                        apply(batchEntry);
+                    }
+                    saveCheckpoint(lastSequence);
+                    return null;
+                });
+                markApplied(lastSequence);
+            } catch (Exception e) {
+                logger.warn("Error applying ticket journal entries " + batch.get(0).getSequence() + " to " + lastSequence
+                        + ", applying them one by one", e);
+                applyOneByOne(batch);
+            }
+            if (journalFile.getUsedBytes() > journalFile.getCapacity() / 2) {
+                journalFile.startOverIfApplied(lastSequence);
+            }
+            return batch.size();
+        }
+    }
+
+    /**
+     * Applies each entry in its own transaction, so that one the DB refuses does not hold back the others: it is
+     * saved in ticket_journal_dead_letter instead, with the checkpoint. Throws if that fails too, the DB being
+     * unreachable most likely, leaving the entry to the next flush.
+     */
+    private void applyOneByOne(List<TicketJournalEntry> batch) throws Exception {
+        for (TicketJournalEntry entry : batch) {
+            long sequence = entry.getSequence();
+            try {
+                dataBaseConfig.inTransaction(() -> {
+                    apply(entry);
+                    saveCheckpoint(sequence);
+                    return null;
+                });
+            } catch (Exception e) {
+                dataBaseConfig.inTransaction(() -> {
+                    saveDeadLetter(entry, e);
+                    saveCheckpoint(sequence);
+                    return null;
+                });
+                logger.error("Ticket journal entry " + sequence + " cannot be applied, moved to ticket_journal_dead_letter", e);
+            }
+            markApplied(sequence);
+        }
+    }
+
+    private void markApplied(long lastSequence) {
+        for (long applied = appliedSequence + 1; applied <= lastSequence; applied++) {
+            readyEntries.remove(applied);
+        }
+        appliedSequence = lastSequence;
+    }
+
+    private void flushQuietly() {
+        try {
+            while (flush() == batchSize) {
+                //keep going while there is a backlog
+            }
+        } catch (Exception e) {
+            logger.error("Error applying ticket journal, will retry", e);
+        }
+    }
+
+    private void makeRoom() {
+        try {
+            flusher.submit(() -> {
+                flushQuietly();
+                journalFile.startOverIfApplied(appliedSequence);
+            }).get(MAKE_ROOM_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            logger.error("Error making room in ticket journal", e);
+        }
+    }
+
+    private void apply(TicketJournalEntry entry) throws Exception {
+        Ticket ticket = entry.getTicket();
+        switch (entry.getOperation()) {
+            case SAVE:
+                execute(DBConstants.SAVE_TICKET, ps -> {
+                    ps.setInt(1, ticket.getParkingSpot().getId());
+                    ps.setString(2, ticket.getVehicleRegNumber());
+                    ps.setDouble(3, ticket.getPrice());
+                    ps.setTimestamp(4, new Timestamp(ticket.getInTime().getTime()));
+                    ps.setTimestamp(5, (ticket.getOutTime() == null) ? null : new Timestamp(ticket.getOutTime().getTime()));
+                });
+                break;
+            case UPDATE:
+                if (ticket.getId() > 0) {
+                    execute(DBConstants.CLOSE_OPEN_TICKET, ps -> {
+                        ps.setDouble(1, ticket.getPrice());
+                        ps.setTimestamp(2, new Timestamp(ticket.getOutTime().getTime()));
+                        ps.setInt(3, ticket.getId());
+                    });
+                } else {
+                    //saved through the journal, so its ID was never known: close the open ticket of the vehicle
+                    execute(DBConstants.UPDATE_OPEN_TICKET, ps -> {
+                        ps.setDouble(1, ticket.getPrice());
+                        ps.setTimestamp(2, new Timestamp(ticket.getOutTime().getTime()));
+                        ps.setString(3, ticket.getVehicleRegNumber());
+                    });
+                }
+                break;
+            default:
+                //CANCEL, COMMIT: nothing to apply
+        }
+    }
+
+    private long readCheckpoint() throws Exception {
+        Connection con = null;
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            ps = con.prepareStatement(DBConstants.GET_JOURNAL_CHECKPOINT);
+            rs = ps.executeQuery();
+            return rs.next() ? rs.getLong(1) : 0;
+        } finally {
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    private void saveDeadLetter(TicketJournalEntry entry, Exception error) throws Exception {
+        Ticket ticket = entry.getTicket();
+        String message = String.valueOf(error.getMessage());
+        execute(DBConstants.SAVE_JOURNAL_DEAD_LETTER, ps -> {
+            ps.setLong(1, entry.getSequence());
+            ps.setString(2, entry.getOperation().name());
+            ps.setInt(3, ticket.getId());
+            ps.setInt(4, ticket.getParkingSpot().getId());
+            ps.setString(5, truncate(ticket.getVehicleRegNumber(), 255));
+            ps.setDouble(6, ticket.getPrice());
+            ps.setTimestamp(7, (ticket.getInTime() == null) ? null : new Timestamp(ticket.getInTime().getTime()));
+            ps.setTimestamp(8, (ticket.getOutTime() == null) ? null : new Timestamp(ticket.getOutTime().getTime()));
+            ps.setString(9, truncate(message, 1000));
+            ps.setTimestamp(10, new Timestamp(System.currentTimeMillis()));
+        });
+    }
+
+    private static String truncate(String value, int maxLength) {
+        return value.length() <= maxLength ? value : value.substring(0, maxLength);
+    }
+
+    private void saveCheckpoint(long sequence) throws Exception {
+        execute(DBConstants.SAVE_JOURNAL_CHECKPOINT, ps -> ps.setLong(1, sequence));
+    }
+
+    private void execute(String sql, StatementSetter setter) throws Exception {
+        Connection con = null;
+        PreparedStatement ps = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            ps = con.prepareStatement(sql);
+            setter.set(ps);
+            ps.executeUpdate();
+        } finally {
+            dataBaseConfig.closePreparedStatement(ps);
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    private long firstReadySequence() {
+        return readyEntries.firstKey();
+    }
+
+    public long getAppliedSequence() {
+        return appliedSequence;
+    }
+
+    public int getPendingEntries() {
+        return (int) (journalFile.getLastSequence() - appliedSequence);
+    }
+
+    /**
+     * Stops the flusher after applying what is ready.
+     */
+    @Override
+    public void close() throws IOException {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(MAKE_ROOM_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flushQuietly();
+        journalFile.close();
+    }
+
+    private interface StatementSetter {
+        void set(PreparedStatement ps) throws Exception;
+    }
+}
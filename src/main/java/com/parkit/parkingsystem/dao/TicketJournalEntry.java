@@ -0,0 +1,133 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+
+/**
+ * One record of the ticket journal: a ticket to insert (SAVE), a ticket to close (UPDATE), or a marker
+ * settling an earlier record once its transaction is over: committed (COMMIT) or rolled back (CANCEL).
+ */
+public final class TicketJournalEntry {
+
+    public enum Operation {
+        SAVE, UPDATE, CANCEL, COMMIT;
+
+        public boolean isMarker() {
+            return this == CANCEL || this == COMMIT;
+        }
+    }
+
+    private static final long NO_TIME = -1L;
+    //encoded size of a CANCEL or COMMIT marker
+    static final int MARKER_SIZE = 8 + 1 + 8;
+
+    private final long sequence;
+    private final Operation operation;
+    private final Ticket ticket;
+    private final long markedSequence;
+
+    private TicketJournalEntry(long sequence, Operation operation, Ticket ticket, long markedSequence) {
+        this.sequence = sequence;
+        this.operation = operation;
+        this.ticket = ticket;
+        this.markedSequence = markedSequence;
+    }
+
+    public static TicketJournalEntry ticket(long sequence, Operation operation, Ticket ticket) {
+        if (operation.isMarker()) {
+            throw new IllegalArgumentException("A " + operation + " entry carries no ticket");
+        }
+        return new TicketJournalEntry(sequence, operation, ActiveSessionIndex.snapshot(ticket), 0);
+    }
+
+    public static TicketJournalEntry cancel(long sequence, long cancelledSequence) {
+        return new TicketJournalEntry(sequence, Operation.CANCEL, null, cancelledSequence);
+    }
+
+    public static TicketJournalEntry commit(long sequence, long committedSequence) {
+        return new TicketJournalEntry(sequence, Operation.COMMIT, null, committedSequence);
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public Operation getOperation() {
+        return operation;
+    }
+
+    /**
+     * @return a copy of the journaled ticket, null for a CANCEL entry
+     */
+    public Ticket getTicket() {
+        return ticket == null ? null : ActiveSessionIndex.snapshot(ticket);
+    }
+
+    /**
+     * @return the sequence of the entry a CANCEL or COMMIT marker settles
+     */
+    public long getMarkedSequence() {
+        return markedSequence;
+    }
+
+    public boolean isMarker() {
+        return operation.isMarker();
+    }
+
+    ByteBuffer encode() {
+        if (operation.isMarker()) {
+            ByteBuffer payload = ByteBuffer.allocate(MARKER_SIZE);
+            payload.putLong(sequence).put((byte) operation.ordinal()).putLong(markedSequence);
+            payload.flip();
+            return payload;
+        }
+        byte[] parkingType = ticket.getParkingSpot().getParkingType().name().getBytes(StandardCharsets.UTF_8);
+        byte[] vehicleRegNumber = ticket.getVehicleRegNumber().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer payload = ByteBuffer.allocate(8 + 1 + 4 + 4 + 2 + parkingType.length + 2 + vehicleRegNumber.length + 8 + 8 + 8);
+        payload.putLong(sequence).put((byte) operation.ordinal());
+        payload.putInt(ticket.getId()).putInt(ticket.getParkingSpot().getId());
+        payload.putShort((short) parkingType.length).put(parkingType);
+        payload.putShort((short) vehicleRegNumber.length).put(vehicleRegNumber);
+        payload.putDouble(ticket.getPrice());
+        payload.putLong(toMillis(ticket.getInTime())).putLong(toMillis(ticket.getOutTime()));
+        payload.flip();
+        return payload;
+    }
+
+    static TicketJournalEntry decode(ByteBuffer payload) {
+        long sequence = payload.getLong();
+        Operation operation = Operation.values()[payload.get()];
+        if (operation.isMarker()) {
+            return new TicketJournalEntry(sequence, operation, null, payload.getLong());
+        }
+        Ticket ticket = new Ticket();
+        ticket.setId(payload.getInt());
+        int parkingNumber = payload.getInt();
+        ParkingType parkingType = ParkingType.valueOf(getString(payload));
+        ticket.setParkingSpot(new ParkingSpot(parkingNumber, parkingType, false));
+        ticket.setVehicleRegNumber(getString(payload));
+        ticket.setPrice(payload.getDouble());
+        ticket.setInTime(toDate(payload.getLong()));
+        ticket.setOutTime(toDate(payload.getLong()));
+        return new TicketJournalEntry(sequence, operation, ticket, 0);
+    }
+
+    private static String getString(ByteBuffer payload) {
+        byte[] bytes = new byte[payload.getShort()];
+        payload.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static long toMillis(Date date) {
+        return date == null ? NO_TIME : date.getTime();
+    }
+
+    private static Date toDate(long millis) {
+        return millis == NO_TIME ? null : new Date(millis);
+    }
+}
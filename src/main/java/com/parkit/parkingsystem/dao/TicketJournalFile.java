@@ -0,0 +1,230 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.model.Ticket;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Fixed-size, memory-mapped append log of ticket journal entries.
+ * <p>
+ * Layout: a header (magic, sequence of the first entry) followed by entries, each written as
+ * payload length, CRC32 of the payload, payload. Reading stops at the first entry that is empty, torn
+ * (bad checksum) or out of sequence, so a crash in the middle of an append only loses that entry.
+ */
+public class TicketJournalFile implements Closeable {
+
+    private static final Logger logger = LogManager.getLogger("TicketJournalFile");
+
+    private static final int MAGIC = 0x504B544A;
+    private static final int HEADER_SIZE = 16;
+    private static final int FIRST_SEQUENCE_OFFSET = 8;
+    private static final int ENTRY_HEADER_SIZE = 8;
+    private static final int MARKER_ENTRY_SIZE = ENTRY_HEADER_SIZE + TicketJournalEntry.MARKER_SIZE;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final boolean syncOnAppend;
+    private final List<TicketJournalEntry> recoveredEntries = new ArrayList<>();
+    private int writePosition;
+    private long nextSequence;
+    //room kept for the markers of pending entries, so that settling an entry never fails for lack of room
+    private int reservedBytes;
+
+    /**
+     * Opens the journal, creating it if needed, and reads back the entries it already holds.
+     * @param syncOnAppend force every append to disk, so that an OS crash does not lose acknowledged entries either
+     */
+    public TicketJournalFile(Path path, int capacity, boolean syncOnAppend) throws IOException {
+        this.path = path;
+        this.syncOnAppend = syncOnAppend;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long size = Math.max(capacity, channel.size());
+        if (size < HEADER_SIZE + ENTRY_HEADER_SIZE) {
+            channel.close();
+            throw new IllegalArgumentException("Ticket journal capacity too small: " + capacity);
+        }
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        if (buffer.getInt(0) != MAGIC) {
+            buffer.putInt(0, MAGIC);
+            startOver(1);
+        } else {
+            recover();
+        }
+    }
+
+    private void recover() {
+        long expectedSequence = buffer.getLong(FIRST_SEQUENCE_OFFSET);
+        int position = HEADER_SIZE;
+        while (position + ENTRY_HEADER_SIZE <= buffer.capacity()) {
+            int length = buffer.getInt(position);
+            if (length <= 0 || length > buffer.capacity() - position - ENTRY_HEADER_SIZE) {
+                break;
+            }
+            ByteBuffer payload = slice(position + ENTRY_HEADER_SIZE, length);
+            if (checksum(payload) != buffer.getInt(position + 4)) {
+                logger.error("Ignoring torn entry at offset " + position + " of ticket journal " + path);
+                break;
+            }
+            TicketJournalEntry entry = TicketJournalEntry.decode(payload);
+            if (entry.getSequence() != expectedSequence) {
+                //left over from before the journal last started over
+                break;
+            }
+            recoveredEntries.add(entry);
+            expectedSequence++;
+            position += ENTRY_HEADER_SIZE + length;
+        }
+        writePosition = position;
+        nextSequence = expectedSequence;
+    }
+
+    /**
+     * @return the entries found in the file when it was opened, oldest first
+     */
+    public synchronized List<TicketJournalEntry> getRecoveredEntries() {
+        return new ArrayList<>(recoveredEntries);
+    }
+
+    /**
+     * @return the appended entry, or null if the journal has no room left for it
+     */
+    public synchronized TicketJournalEntry append(TicketJournalEntry.Operation operation, Ticket ticket) {
+        return write(TicketJournalEntry.ticket(nextSequence, operation, ticket), reservedBytes);
+    }
+
+    /**
+     * Appends an entry to be settled later by {@link #appendCommit} or {@link #appendCancel}, keeping room for that marker.
+     * @return the appended entry, or null if the journal has no room left for it and its marker
+     */
+    public synchronized TicketJournalEntry appendPending(TicketJournalEntry.Operation operation, Ticket ticket) {
+        TicketJournalEntry entry = write(TicketJournalEntry.ticket(nextSequence, operation, ticket), reservedBytes + MARKER_ENTRY_SIZE);
+        if (entry != null) {
+            reservedBytes += MARKER_ENTRY_SIZE;
+        }
+        return entry;
+    }
+
+    /**
+     * @return the appended entry, or null if the journal has no room left for it
+     */
+    public synchronized TicketJournalEntry appendCancel(long cancelledSequence) {
+        return writeMarker(TicketJournalEntry.cancel(nextSequence, cancelledSequence));
+    }
+
+    /**
+     * @return the appended entry, or null if the journal has no room left for it
+     */
+    public synchronized TicketJournalEntry appendCommit(long committedSequence) {
+        return writeMarker(TicketJournalEntry.commit(nextSequence, committedSequence));
+    }
+
+    private TicketJournalEntry writeMarker(TicketJournalEntry marker) {
+        //a marker may use the room kept for it by appendPending
+        int keptRoom = Math.max(0, reservedBytes - MARKER_ENTRY_SIZE);
+        TicketJournalEntry entry = write(marker, keptRoom);
+        if (entry != null) {
+            reservedBytes = keptRoom;
+        }
+        return entry;
+    }
+
+    private TicketJournalEntry write(TicketJournalEntry entry, int keptRoom) {
+        ByteBuffer payload = entry.encode();
+        int length = payload.remaining();
+        if (writePosition + ENTRY_HEADER_SIZE + length + keptRoom > buffer.capacity()) {
+            return null;
+        }
+        int crc = checksum(payload);
+        ByteBuffer target = slice(writePosition + ENTRY_HEADER_SIZE, length);
+        target.put(payload);
+        buffer.putInt(writePosition + 4, crc);
+        buffer.putInt(writePosition, length);
+        writePosition += ENTRY_HEADER_SIZE + length;
+        if (writePosition + 4 <= buffer.capacity()) {
+            //end marker, in case older entries are still lying further in the file
+            buffer.putInt(writePosition, 0);
+        }
+        if (syncOnAppend) {
+            buffer.force();
+        }
+        nextSequence++;
+        return entry;
+    }
+
+    /**
+     * Empties the journal once every entry in it has been applied, so that it never needs to grow.
+     * @return false if some entry after appliedSequence is still in the journal
+     */
+    public synchronized boolean startOverIfApplied(long appliedSequence) {
+        if (nextSequence - 1 != appliedSequence) {
+            return false;
+        }
+        startOver(nextSequence);
+        return true;
+    }
+
+    /**
+     * Makes sure new entries are numbered from firstSequence at least, emptying a journal that only holds older entries.
+     */
+    public synchronized void skipTo(long firstSequence) {
+        if (nextSequence < firstSequence) {
+            startOver(firstSequence);
+        }
+    }
+
+    private void startOver(long firstSequence) {
+        buffer.putInt(HEADER_SIZE, 0);
+        buffer.putLong(FIRST_SEQUENCE_OFFSET, firstSequence);
+        buffer.force();
+        recoveredEntries.clear();
+        writePosition = HEADER_SIZE;
+        nextSequence = firstSequence;
+    }
+
+    public synchronized long getLastSequence() {
+        return nextSequence - 1;
+    }
+
+    public synchronized int getUsedBytes() {
+        return writePosition;
+    }
+
+    public int getCapacity() {
+        return buffer.capacity();
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        buffer.force();
+        channel.close();
+    }
+
+    private ByteBuffer slice(int position, int length) {
+        ByteBuffer slice = buffer.duplicate();
+        slice.position(position);
+        slice.limit(position + length);
+        return slice.slice();
+    }
+
+    private static int checksum(ByteBuffer payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload.duplicate());
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,53 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.config.TransactionCallback;
+import com.parkit.parkingsystem.model.Ticket;
+
+import java.util.Collection;
+
+/**
+ * Where tickets are kept: {@link TicketDAO} for MySQL, {@link InMemoryTicketStore} and {@link FileTicketStore}
+ * to run without a database server.
+ */
+public interface TicketStore {
+
+    /**
+     * Sets the ID of the ticket once saved.
+     */
+    boolean saveTicket(Ticket ticket);
+
+    /**
+     * @return the number of tickets saved, stopping at the first failure
+     */
+    int saveTickets(Collection<Ticket> tickets);
+
+    /**
+     * Updates PRICE and OUT_TIME of tickets found by ID.
+     * @return the number of tickets updated, stopping at the first failure
+     */
+    int updateTickets(Collection<Ticket> tickets);
+
+    /**
+     * @return the last ticket of the vehicle, open or not, or null if it never came
+     */
+    Ticket getTicket(String vehicleRegNumber);
+
+    /**
+     * Closes the ticket, found by ID, setting its PRICE and OUT_TIME.
+     * @return false if it cannot be written or is already closed, by another gate for instance
+     */
+    boolean updateTicket(Ticket ticket);
+
+    /**
+     * @return true if the vehicle already has a ticket
+     */
+    boolean isRegularUser(String vehicleRegNumber);
+
+    boolean checkAlreadyInParking(String vehicleRegNumber);
+
+    /**
+     * Runs the callback so that every change it makes to this store, and to the ParkingSpotStore used with it,
+     * is kept if it returns and undone if it throws. A nested call joins the transaction already running.
+     */
+    <T> T inTransaction(TransactionCallback<T> callback) throws Exception;
+}
@@ -0,0 +1,120 @@
+package com.parkit.parkingsystem.metrics;
+
+import com.parkit.parkingsystem.config.ConnectionPool;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.ToLongFunction;
+
+/**
+ * Every operation timed by the application and every connection pool, published as MBeans of the
+ * {@value #JMX_DOMAIN} domain and as text in the Prometheus exposition format by {@link #scrape()}.
+ */
+public final class MetricsRegistry {
+
+    private static final Logger logger = LogManager.getLogger("MetricsRegistry");
+
+    public static final String JMX_DOMAIN = "com.parkit.parkingsystem";
+
+    private static final double[] QUANTILES = {0.5, 0.99, 0.999};
+
+    private static final Map<String, OperationMetrics> operations = new ConcurrentSkipListMap<>();
+    private static final Map<String, ConnectionPool> connectionPools = new ConcurrentSkipListMap<>();
+
+    private MetricsRegistry() {
+    }
+
+    /**
+     * @return the metrics of the operation, created and published on first use
+     */
+    public static OperationMetrics operation(String name) {
+        OperationMetrics metrics = operations.get(name);
+        if (metrics != null) {
+            return metrics;
+        }
+        OperationMetrics created = new OperationMetrics(name);
+        metrics = operations.putIfAbsent(name, created);
+        if (metrics != null) {
+            return metrics;
+        }
+        register("Operation", name, created);
+        return created;
+    }
+
+    /**
+     * Publishes the pool under this name, replacing the one published before under the same name.
+     */
+    public static void registerConnectionPool(String name, ConnectionPool connectionPool) {
+        connectionPools.put(name, connectionPool);
+        register("ConnectionPool", name, connectionPool);
+    }
+
+    private static void register(String type, String name, Object mbean) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(JMX_DOMAIN + ":type=" + type + ",name=" + ObjectName.quote(name));
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(mbean, objectName);
+        } catch (JMException e) {
+            logger.error("Error publishing " + type + " " + name + " over JMX", e);
+        }
+    }
+
+    /**
+     * @return the current value of every metric in the Prometheus text format, latencies in seconds
+     */
+    public static String scrape() {
+        StringBuilder text = new StringBuilder(4096);
+        text.append("# TYPE parkit_operation_latency_seconds summary\n");
+        for (OperationMetrics metrics : operations.values()) {
+            String label = "operation=\"" + escape(metrics.getName()) + '"';
+            for (double quantile : QUANTILES) {
+                sample(text, "parkit_operation_latency_seconds", label + ",quantile=\"" + quantile + '"',
+                        seconds(metrics.getLatencies().getValueAtPercentile(quantile * 100)));
+            }
+            sample(text, "parkit_operation_latency_seconds_sum", label, seconds(metrics.getLatencies().getTotal()));
+            sample(text, "parkit_operation_latency_seconds_count", label, Long.toString(metrics.getCount()));
+        }
+        text.append("# TYPE parkit_operation_errors_total counter\n");
+        for (OperationMetrics metrics : operations.values()) {
+            sample(text, "parkit_operation_errors_total", "operation=\"" + escape(metrics.getName()) + '"',
+                    Long.toString(metrics.getErrors()));
+        }
+        poolMetric(text, "parkit_pool_connections_active", "gauge", ConnectionPool::getActiveConnections);
+        poolMetric(text, "parkit_pool_connections_idle", "gauge", ConnectionPool::getIdleConnections);
+        poolMetric(text, "parkit_pool_connections_max", "gauge", ConnectionPool::getMaxSize);
+        poolMetric(text, "parkit_pool_waiting_threads", "gauge", ConnectionPool::getWaitingThreads);
+        poolMetric(text, "parkit_pool_acquired_total", "counter", ConnectionPool::getAcquiredConnections);
+        poolMetric(text, "parkit_pool_acquire_timeouts_total", "counter", ConnectionPool::getAcquireTimeouts);
+        poolMetric(text, "parkit_pool_statement_cache_hits_total", "counter", ConnectionPool::getStatementCacheHits);
+        poolMetric(text, "parkit_pool_statement_cache_misses_total", "counter", ConnectionPool::getStatementCacheMisses);
+        return text.toString();
+    }
+
+    private static void poolMetric(StringBuilder text, String metric, String type, ToLongFunction<ConnectionPool> value) {
+        text.append("# TYPE ").append(metric).append(' ').append(type).append('\n');
+        for (Map.Entry<String, ConnectionPool> pool : connectionPools.entrySet()) {
+            sample(text, metric, "pool=\"" + escape(pool.getKey()) + '"', Long.toString(value.applyAsLong(pool.getValue())));
+        }
+    }
+
+    private static void sample(StringBuilder text, String metric, String labels, String value) {
+        text.append(metric).append('{').append(labels).append("} ").append(value).append('\n');
+    }
+
+    private static String seconds(long nanos) {
+        return Double.toString(nanos / 1e9);
+    }
+
+    private static String escape(String label) {
+        return label.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
@@ -0,0 +1,77 @@
+package com.parkit.parkingsystem.metrics;
+
+import com.parkit.parkingsystem.util.LatencyHistogram;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latencies and error count of one named operation, e.g. TicketDAO.saveTicket. Get it from
+ * {@link MetricsRegistry#operation(String)} so that it is published; recording takes no lock.
+ */
+public class OperationMetrics implements OperationMetricsMBean {
+
+    private final String name;
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private final LongAdder errors = new LongAdder();
+
+    OperationMetrics(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Records the time elapsed since startNanos, a value of System.nanoTime().
+     */
+    public void record(long startNanos) {
+        latencies.record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Counts one call that failed, whether or not the caller saw an exception.
+     */
+    public void failed() {
+        errors.increment();
+    }
+
+    public LatencyHistogram getLatencies() {
+        return latencies;
+    }
+
+    @Override
+    public long getCount() {
+        return latencies.getCount();
+    }
+
+    @Override
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    @Override
+    public double getMeanMicros() {
+        return latencies.getMean() / 1000;
+    }
+
+    @Override
+    public double getP50Micros() {
+        return latencies.getValueAtPercentile(50) / 1000.0;
+    }
+
+    @Override
+    public double getP99Micros() {
+        return latencies.getValueAtPercentile(99) / 1000.0;
+    }
+
+    @Override
+    public double getP999Micros() {
+        return latencies.getValueAtPercentile(99.9) / 1000.0;
+    }
+
+    @Override
+    public double getMaxMicros() {
+        return latencies.getMax() / 1000.0;
+    }
+}
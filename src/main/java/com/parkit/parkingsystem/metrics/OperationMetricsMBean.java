@@ -0,0 +1,21 @@
+package com.parkit.parkingsystem.metrics;
+
+/**
+ * JMX view of one {@link OperationMetrics}, latencies in microseconds.
+ */
+public interface OperationMetricsMBean {
+
+    long getCount();
+
+    long getErrors();
+
+    double getMeanMicros();
+
+    double getP50Micros();
+
+    double getP99Micros();
+
+    double getP999Micros();
+
+    double getMaxMicros();
+}
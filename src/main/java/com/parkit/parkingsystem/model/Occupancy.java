@@ -0,0 +1,44 @@
+package com.parkit.parkingsystem.model;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+
+/**
+ * How many spots of one type the lot has and how many are free, at one point in time.
+ */
+public class Occupancy {
+
+    private final ParkingType parkingType;
+    private final int capacity;
+    private final int availableSpots;
+
+    public Occupancy(ParkingType parkingType, int capacity, int availableSpots) {
+        this.parkingType = parkingType;
+        this.capacity = capacity;
+        this.availableSpots = availableSpots;
+    }
+
+    public ParkingType getParkingType() {
+        return parkingType;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getAvailableSpots() {
+        return availableSpots;
+    }
+
+    public int getOccupiedSpots() {
+        return capacity - availableSpots;
+    }
+
+    public boolean isFull() {
+        return availableSpots == 0;
+    }
+
+    @Override
+    public String toString() {
+        return parkingType + ": " + availableSpots + "/" + capacity + " free";
+    }
+}
@@ -0,0 +1,117 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotStore;
+import com.parkit.parkingsystem.dao.ReservationDAO;
+import com.parkit.parkingsystem.dao.TicketStore;
+import com.parkit.parkingsystem.model.Ticket;
+
+import java.util.Date;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Non-blocking facade of {@link ParkingService}: entry and exit return at once with a future ticket, and never
+ * print anything. DAO calls run on a bounded I/O executor.
+ * When the executor's queue is full the returned future fails with a RejectedExecutionException,
+ * so callers see the overload instead of piling up work.
+ */
+public class AsyncParkingService implements AutoCloseable {
+
+    private final ParkingService parkingService;
+    private final TicketStore ticketStore;
+    private final ThreadPoolExecutor ioExecutor;
+
+    /**
+     * @param ioThreads threads making DAO calls, no use going above the connection pool's maxSize
+     * @param queueCapacity DAO calls waiting for a thread before new ones are rejected
+     */
+    public AsyncParkingService(ParkingSpotStore parkingSpotStore, TicketStore ticketStore, int ioThreads, int queueCapacity) {
+        this(parkingSpotStore, ticketStore, null, ioThreads, queueCapacity);
+    }
+
+    /**
+     * @param reservationDAO reservations honoured at entry, null when spots cannot be reserved
+     * @param ioThreads threads making DAO calls, no use going above the connection pool's maxSize
+     * @param queueCapacity DAO calls waiting for a thread before new ones are rejected
+     */
+    public AsyncParkingService(ParkingSpotStore parkingSpotStore, TicketStore ticketStore, ReservationDAO reservationDAO,
+                               int ioThreads, int queueCapacity) {
+        this.parkingService = new ParkingService(null, parkingSpotStore, ticketStore, reservationDAO);
+        this.ticketStore = ticketStore;
+        this.ioExecutor = new ThreadPoolExecutor(ioThreads, ioThreads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new IoThreadFactory());
+    }
+
+    /**
+     * @return the saved ticket, null if no spot of this type is free; fails with IllegalStateException
+     * if the vehicle is already in the parking
+     */
+    public CompletableFuture<Ticket> processIncomingVehicle(ParkingType parkingType, String vehicleRegNumber, Date inTime) {
+        //the already-in-parking check belongs to the entry transaction: two gates may race with the same plate
+        return onIoExecutor(() -> parkingService.processIncomingVehicle(parkingType, vehicleRegNumber, inTime));
+    }
+
+    /**
+     * @return the closed ticket with its fare; fails with IllegalStateException if the vehicle has no open ticket
+     */
+    public CompletableFuture<Ticket> processExitingVehicle(String vehicleRegNumber, Date outTime) {
+        return onIoExecutor(() -> ticketStore.getTicket(vehicleRegNumber))
+                .thenCompose(ticket -> {
+                    if (ticket == null) {
+                        return CompletableFuture.failedFuture(new IllegalStateException("No ticket found for vehicle " + vehicleRegNumber));
+                    }
+                    if (ticket.getOutTime() != null) {
+                        return CompletableFuture.failedFuture(new IllegalStateException("Vehicle " + vehicleRegNumber + " already left"));
+                    }
+                    return onIoExecutor(() -> parkingService.closeTicket(ticket, outTime));
+                });
+    }
+
+    private <T> CompletableFuture<T> onIoExecutor(Callable<T> call) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            ioExecutor.execute(() -> {
+                try {
+                    future.complete(call.call());
+                } catch (Throwable t) {
+                    future.completeExceptionally(t instanceof CompletionException ? t.getCause() : t);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    public int getQueuedCalls() {
+        return ioExecutor.getQueue().size();
+    }
+
+    /**
+     * Lets the DAO calls already submitted finish, rejects new ones.
+     */
+    @Override
+    public void close() {
+        ioExecutor.shutdown();
+    }
+
+    private static final class IoThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger threadCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "parking-io-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
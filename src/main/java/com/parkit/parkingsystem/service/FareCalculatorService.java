@@ -1,56 +1,88 @@
 package com.parkit.parkingsystem.service;
 
 import com.parkit.parkingsystem.constants.Fare;
+import com.parkit.parkingsystem.constants.ParkingType;
 import com.parkit.parkingsystem.model.Ticket;
 
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.Map;
 
-import static com.parkit.parkingsystem.constants.Fare.REGULAR_USER_REDUCTION;
-
-
+/**
+ * Computes fares in integer cents from epoch milliseconds, so that rounding is exact and a calculation
+ * allocates nothing: the rate table is flattened to an array indexed by ParkingType ordinal.
+ */
 public class FareCalculatorService {
 
-    private static final int ONE_HOUR_IN_MILLISECONDS = 60 * 60 * 1000;
+    private static final long ONE_HOUR_IN_MILLISECONDS = 60 * 60 * 1000;
     private static final double A_HALF_HOUR = 0.5;
+    private static final long FREE_MILLISECONDS = (long) (A_HALF_HOUR * ONE_HOUR_IN_MILLISECONDS);
+    private static final long NO_RATE = -1;
+
+    private final long[] ratePerHourCents;
+
+    public FareCalculatorService() {
+        this(defaultRates());
+    }
+
+    /**
+     * @param ratesPerHourCents hourly rate of each parking type in cents; types left out have no fare
+     */
+    public FareCalculatorService(Map<ParkingType, Long> ratesPerHourCents) {
+        ratePerHourCents = new long[ParkingType.values().length];
+        for (ParkingType parkingType : ParkingType.values()) {
+            Long rate = ratesPerHourCents.get(parkingType);
+            ratePerHourCents[parkingType.ordinal()] = (rate == null) ? NO_RATE : rate;
+        }
+    }
+
+    private static Map<ParkingType, Long> defaultRates() {
+        Map<ParkingType, Long> rates = new EnumMap<>(ParkingType.class);
+        rates.put(ParkingType.CAR, Fare.CAR_RATE_PER_HOUR_CENTS);
+        rates.put(ParkingType.BIKE, Fare.BIKE_RATE_PER_HOUR_CENTS);
+        return rates;
+    }
 
     public void calculateFare(Ticket ticket){
         if( (ticket.getOutTime() == null) || (ticket.getOutTime().before(ticket.getInTime())) ){
             throw new IllegalArgumentException("Out time provided is incorrect:"+ticket.getOutTime().toString());
         }
+        long priceCents = calculateFareCents(ticket.getParkingSpot().getParkingType(),
+                ticket.getInTime().getTime(), ticket.getOutTime().getTime(), ticket.getRegularUser());
+        ticket.setPrice(priceCents / 100.0);
+    }
+
+    public long calculateFareCents(ParkingType parkingType, Instant inTime, Instant outTime, boolean regularUser) {
+        return calculateFareCents(parkingType, inTime.toEpochMilli(), outTime.toEpochMilli(), regularUser);
+    }
 
-        long inHour = ticket.getInTime().getTime();
-        long outHour = ticket.getOutTime().getTime();
-
-
-        //TODO: Some tests are failing here. Need to check if this logic is correct
-        //Check
-
-        double duration = (outHour - inHour);
-        double timeAccount = duration / ONE_HOUR_IN_MILLISECONDS;
-
-        //first 30 minutes free
-        timeAccount = Math.max(0, timeAccount-A_HALF_HOUR);
-
-
-        switch (ticket.getParkingSpot().getParkingType()){
-            case CAR: {
-                double price = timeAccount * Fare.CAR_RATE_PER_HOUR;
-                double roundPrice = Math.round((price)*100.0)/100.0;
-                //5% reduction for regular users
-                if(ticket.getRegularUser() && roundPrice > 0)
-                    roundPrice = Math.round((price * REGULAR_USER_REDUCTION)*100)/100.0;
-                ticket.setPrice(roundPrice);
-                break;
-            }
-            case BIKE: {
-                double price = timeAccount * Fare.BIKE_RATE_PER_HOUR;
-                double roundPrice = Math.round((price)*100.0)/100.0;
-                //5% reduction for regular users
-                if(ticket.getRegularUser() && roundPrice > 0)
-                    roundPrice = Math.round((price * REGULAR_USER_REDUCTION)*100)/100.0;
-                ticket.setPrice(roundPrice);
-                break;
-            }
-            default: throw new IllegalArgumentException("Unknown Parking Type");
+    /**
+     * The first half hour is free, the rest is billed per millisecond at the hourly rate, rounded half up to the cent.
+     * Regular users pay REGULAR_USER_REDUCTION_PERCENT of the unrounded fare, rounded half down
+     * (the 5% discount never costs them a cent).
+     * @return the fare in cents
+     */
+    public long calculateFareCents(ParkingType parkingType, long inTimeMillis, long outTimeMillis, boolean regularUser) {
+        long rate = ratePerHourCents[parkingType.ordinal()];
+        if (rate == NO_RATE) {
+            throw new IllegalArgumentException("Unknown Parking Type");
+        }
+        if (outTimeMillis < inTimeMillis) {
+            throw new IllegalArgumentException("Out time provided is incorrect:" + outTimeMillis);
+        }
+        long billedMillis = Math.max(0, outTimeMillis - inTimeMillis - FREE_MILLISECONDS);
+        long priceCents = divideRoundingHalfUp(billedMillis * rate, ONE_HOUR_IN_MILLISECONDS);
+        if (regularUser && priceCents > 0) {
+            priceCents = divideRoundingHalfDown(billedMillis * rate * Fare.REGULAR_USER_REDUCTION_PERCENT, ONE_HOUR_IN_MILLISECONDS * 100);
         }
+        return priceCents;
+    }
+
+    private static long divideRoundingHalfUp(long dividend, long divisor) {
+        return (dividend + divisor / 2) / divisor;
+    }
+
+    private static long divideRoundingHalfDown(long dividend, long divisor) {
+        return (dividend + (divisor - 1) / 2) / divisor;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,354 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotStore;
+import com.parkit.parkingsystem.dao.ReservationDAO;
+import com.parkit.parkingsystem.dao.TicketStore;
+import com.parkit.parkingsystem.model.Ticket;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Runs a log of gate events through {@link ParkingService} without a keyboard, with the times of the log instead
+ * of the clock: to rebuild the state of the lot or backfill it from camera logs.
+ * <p>
+ * Expected columns, after a header line: TIME,EVENT,VEHICLE_REG_NUMBER,TYPE with TIME as yyyy-MM-dd HH:mm:ss,
+ * EVENT as IN or OUT and TYPE (CAR or BIKE) only needed for IN. Events are applied in file order.
+ * <p>
+ * A reader thread parses the log into batches while the caller's thread applies the previous ones, each batch in
+ * one store transaction: one commit per batch instead of one per event. Lookups are answered from the DAO indexes;
+ * with journal.file set, ticket writes are also taken off this thread by the journal flusher.
+ */
+public class GateEventProcessor {
+
+    private static final Logger logger = LogManager.getLogger("GateEventProcessor");
+
+    public static final int DEFAULT_BATCH_SIZE = 100;
+    public static final int DEFAULT_QUEUED_BATCHES = 16;
+    private static final int MAX_COMMIT_ATTEMPTS = 3;
+    private static final DateTimeFormatter DATE_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final int MIN_COLUMNS = 3;
+    private static final List<GateEvent> END_OF_LOG = Collections.emptyList();
+
+    private final ParkingService parkingService;
+    private final TicketStore ticketStore;
+    private final int batchSize;
+    private final int queuedBatches;
+
+    private volatile long rejectedLines;
+    private long entries;
+    private long exits;
+    private long fullLotRefusals;
+    private long refusedEvents;
+    private long failedEvents;
+
+    public GateEventProcessor(ParkingSpotStore parkingSpotStore, TicketStore ticketStore) {
+        this(parkingSpotStore, ticketStore, null);
+    }
+
+    /**
+     * @param reservationDAO reservations honoured at entry, null when spots cannot be reserved
+     */
+    public GateEventProcessor(ParkingSpotStore parkingSpotStore, TicketStore ticketStore, ReservationDAO reservationDAO) {
+        this(parkingSpotStore, ticketStore, reservationDAO, DEFAULT_BATCH_SIZE, DEFAULT_QUEUED_BATCHES);
+    }
+
+    /**
+     * @param batchSize events applied per transaction
+     * @param queuedBatches parsed batches waiting to be applied before the reader thread waits
+     */
+    public GateEventProcessor(ParkingSpotStore parkingSpotStore, TicketStore ticketStore, int batchSize, int queuedBatches) {
+        this(parkingSpotStore, ticketStore, null, batchSize, queuedBatches);
+    }
+
+    /**
+     * @param reservationDAO reservations honoured at entry, null when spots cannot be reserved
+     * @param batchSize events applied per transaction
+     * @param queuedBatches parsed batches waiting to be applied before the reader thread waits
+     */
+    public GateEventProcessor(ParkingSpotStore parkingSpotStore, TicketStore ticketStore, ReservationDAO reservationDAO,
+                              int batchSize, int queuedBatches) {
+        if (batchSize < 1 || queuedBatches < 1) {
+            throw new IllegalArgumentException("Invalid batch settings: batchSize=" + batchSize + " queuedBatches=" + queuedBatches);
+        }
+        this.parkingService = new ParkingService(null, parkingSpotStore, ticketStore, reservationDAO);
+        this.ticketStore = ticketStore;
+        this.batchSize = batchSize;
+        this.queuedBatches = queuedBatches;
+    }
+
+    /**
+     * Malformed lines are logged and skipped. So are events the lot refuses: a vehicle coming in twice, leaving
+     * without being parked, or finding no free spot. A batch whose commit keeps failing stops the run.
+     * @return the number of entries and exits applied
+     */
+    public long process(Reader log) throws Exception {
+        entries = 0;
+        exits = 0;
+        fullLotRefusals = 0;
+        refusedEvents = 0;
+        failedEvents = 0;
+        rejectedLines = 0;
+        BlockingQueue<List<GateEvent>> batches = new ArrayBlockingQueue<>(queuedBatches);
+        Parser parser = new Parser(log, batches);
+        Thread parserThread = new Thread(parser, "gate-event-parser");
+        parserThread.setDaemon(true);
+        parserThread.start();
+        try {
+            List<GateEvent> batch;
+            while ((batch = batches.take()) != END_OF_LOG) {
+                int next = 0;
+                while (next < batch.size()) {
+                    next = applyBatch(batch, next);
+                }
+            }
+        } finally {
+            //stops the parser if applying failed, no-op once it is done
+            parserThread.interrupt();
+            parserThread.join();
+        }
+        if (parser.failure != null) {
+            throw parser.failure;
+        }
+        logger.info("Applied " + entries + " entries and " + exits + " exits, " + fullLotRefusals + " vehicles found the lot full, "
+                + refusedEvents + " events refused, " + failedEvents + " failed, " + rejectedLines + " lines skipped");
+        return entries + exits;
+    }
+
+    public long getEntries() {
+        return entries;
+    }
+
+    public long getExits() {
+        return exits;
+    }
+
+    public long getFullLotRefusals() {
+        return fullLotRefusals;
+    }
+
+    /**
+     * @return entries of vehicles already parked and exits of vehicles that are not
+     */
+    public long getRefusedEvents() {
+        return refusedEvents;
+    }
+
+    /**
+     * @return events the store could not write
+     */
+    public long getFailedEvents() {
+        return failedEvents;
+    }
+
+    public long getRejectedLines() {
+        return rejectedLines;
+    }
+
+    /**
+     * Applies events from the first one in one transaction, stopping early where an event would not see what the
+     * previous ones did: the DAO indexes only show a batch's tickets and freed spots once it commits.
+     * If an event fails the transaction rolls back, and the events before it are applied again without it.
+     * If the commit fails, the same events are tried again up to {@link #MAX_COMMIT_ATTEMPTS} times in all.
+     * @return the index of the next event to apply
+     * @throws Exception the commit failure once every attempt failed
+     */
+    private int applyBatch(List<GateEvent> batch, int first) throws Exception {
+        Set<String> vehicles = new HashSet<>();
+        List<Outcome> outcomes = new ArrayList<>();
+        //index of the event being applied when the transaction failed, -1 if none was
+        int[] failed = {-1};
+        int end = batch.size();
+        int commitAttempts = 0;
+        while (true) {
+            int last = end;
+            try {
+                ticketStore.inTransaction(() -> {
+                    //each attempt starts over: the holders are shared across the attempts of the loop
+                    failed[0] = -1;
+                    vehicles.clear();
+                    outcomes.clear();
+                    boolean spotsFreed = false;
+                    for (int current = first; current < last; current++) {
+                        GateEvent event = batch.get(current);
+                        if (!vehicles.add(event.vehicleRegNumber.toUpperCase(Locale.ROOT))) {
+                            break;
+                        }
+                        failed[0] = current;
+                        Outcome outcome = event.parkingType != null ? enter(event) : leave(event);
+                        failed[0] = -1;
+                        if (outcome == Outcome.LOT_FULL && spotsFreed) {
+                            //an exit of this batch may have freed a spot the entry cannot see yet
+                            break;
+                        }
+                        spotsFreed |= outcome == Outcome.EXITED;
+                        outcomes.add(outcome);
+                    }
+                    return null;
+                });
+                break;
+            } catch (Exception e) {
+                if (failed[0] < 0) {
+                    //every event went through, the commit did not
+                    if (++commitAttempts >= MAX_COMMIT_ATTEMPTS) {
+                        throw e;
+                    }
+                    logger.warn("Could not commit events from " + batch.get(first) + ", trying again", e);
+                    continue;
+                }
+                if (failed[0] == first) {
+                    logger.error("Could not apply " + batch.get(first) + ", skipped", e);
+                    failedEvents++;
+                    return first + 1;
+                }
+                end = failed[0];
+            }
+        }
+        for (Outcome outcome : outcomes) {
+            switch (outcome) {
+                case ENTERED: entries++; break;
+                case EXITED: exits++; break;
+                case LOT_FULL: fullLotRefusals++; break;
+                default: refusedEvents++;
+            }
+        }
+        return first + outcomes.size();
+    }
+
+    private Outcome enter(GateEvent event) throws Exception {
+        if (ticketStore.checkAlreadyInParking(event.vehicleRegNumber)) {
+            logger.warn("Refused " + event + ": vehicle already in parking");
+            return Outcome.REFUSED;
+        }
+        boolean regularUser = ticketStore.isRegularUser(event.vehicleRegNumber);
+        Ticket ticket = parkingService.registerCheckedVehicle(event.parkingType, event.vehicleRegNumber, event.time, regularUser);
+        return ticket != null ? Outcome.ENTERED : Outcome.LOT_FULL;
+    }
+
+    private Outcome leave(GateEvent event) throws Exception {
+        Ticket ticket = ticketStore.getTicket(event.vehicleRegNumber);
+        if (ticket == null || ticket.getOutTime() != null) {
+            logger.warn("Refused " + event + ": vehicle not in parking");
+            return Outcome.REFUSED;
+        }
+        parkingService.closeTicket(ticket, event.time);
+        return Outcome.EXITED;
+    }
+
+    static GateEvent parse(String line) {
+        String[] columns = line.split(",", -1);
+        if (columns.length < MIN_COLUMNS) {
+            throw new IllegalArgumentException("expected at least " + MIN_COLUMNS + " columns, found " + columns.length);
+        }
+        Date time = Timestamp.valueOf(LocalDateTime.parse(columns[0].trim(), DATE_TIME_FORMAT));
+        String vehicleRegNumber = columns[2].trim();
+        if (vehicleRegNumber.isEmpty()) {
+            throw new IllegalArgumentException("missing vehicle registration number");
+        }
+        switch (columns[1].trim()) {
+            case "IN":
+                if (columns.length == MIN_COLUMNS) {
+                    throw new IllegalArgumentException("missing vehicle type");
+                }
+                return new GateEvent(time, vehicleRegNumber, ParkingType.valueOf(columns[3].trim()));
+            case "OUT":
+                return new GateEvent(time, vehicleRegNumber, null);
+            default:
+                throw new IllegalArgumentException("unknown event " + columns[1].trim() + ", expected IN or OUT");
+        }
+    }
+
+    private enum Outcome { ENTERED, EXITED, LOT_FULL, REFUSED }
+
+    static final class GateEvent {
+
+        private final Date time;
+        private final String vehicleRegNumber;
+        //null for an exit
+        private final ParkingType parkingType;
+
+        private GateEvent(Date time, String vehicleRegNumber, ParkingType parkingType) {
+            this.time = time;
+            this.vehicleRegNumber = vehicleRegNumber;
+            this.parkingType = parkingType;
+        }
+
+        @Override
+        public String toString() {
+            return (parkingType != null ? "entry of " + parkingType + " " : "exit of ") + vehicleRegNumber + " at " + time;
+        }
+    }
+
+    /**
+     * Reads the log into batches of parsed events, then queues END_OF_LOG, even if reading failed.
+     */
+    private final class Parser implements Runnable {
+
+        private final Reader log;
+        private final BlockingQueue<List<GateEvent>> batches;
+        private volatile IOException failure;
+
+        private Parser(Reader log, BlockingQueue<List<GateEvent>> batches) {
+            this.log = log;
+            this.batches = batches;
+        }
+
+        @Override
+        public void run() {
+            BufferedReader reader = (log instanceof BufferedReader) ? (BufferedReader) log : new BufferedReader(log);
+            try {
+                //header
+                reader.readLine();
+                List<GateEvent> batch = new ArrayList<>(batchSize);
+                String line;
+                int lineNumber = 1;
+                while ((line = reader.readLine()) != null) {
+                    lineNumber++;
+                    if (line.trim().isEmpty()) {
+                        continue;
+                    }
+                    try {
+                        batch.add(parse(line));
+                    } catch (RuntimeException e) {
+                        rejectedLines++;
+                        logger.error("Skipping line " + lineNumber + ": " + e.getMessage());
+                        continue;
+                    }
+                    if (batch.size() == batchSize) {
+                        batches.put(batch);
+                        batch = new ArrayList<>(batchSize);
+                    }
+                }
+                if (!batch.isEmpty()) {
+                    batches.put(batch);
+                }
+            } catch (IOException e) {
+                failure = e;
+            } catch (InterruptedException e) {
+                //the caller stopped applying events
+                return;
+            }
+            try {
+                batches.put(END_OF_LOG);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,338 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.metrics.MetricsRegistry;
+import com.parkit.parkingsystem.model.Occupancy;
+import com.parkit.parkingsystem.model.Reservation;
+import com.parkit.parkingsystem.model.Ticket;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * HTTP entry point for the gates, so that one instance serves many of them at once:
+ * <ul>
+ *     <li>POST /entries with type (CAR or BIKE) and vehicle: 201 and the ticket, 409 if already parked, 503 if full</li>
+ *     <li>POST /exits with vehicle: 200 and the closed ticket with its fare, 404 if not parked</li>
+ *     <li>GET /quotes with vehicle: 200 and the fare if the vehicle left now, 404 if not parked</li>
+ *     <li>POST /reservations with type, vehicle, from and to (ISO-8601 instants): 201 and the reserved spot,
+ *     409 if the vehicle already has a reservation then, 503 if no spot is free for the whole window</li>
+ *     <li>GET /occupancy: 200 and the capacity, free and occupied spots of each type, for the entrance displays</li>
+ *     <li>GET /metrics: 200 and the latencies, errors and pool usage of {@link MetricsRegistry}, as text</li>
+ * </ul>
+ * Parameters come from the query string or a form-encoded body. Each request runs on its own virtual thread
+ * when the JVM has them (Java 21+), on a pooled platform thread otherwise.
+ */
+public class GateServer {
+
+    private static final Logger logger = LogManager.getLogger("GateServer");
+
+    private final ParkingService parkingService;
+    private final HttpServer httpServer;
+    private final ExecutorService requestExecutor;
+
+    public GateServer(ParkingService parkingService, int port) throws IOException {
+        this.parkingService = parkingService;
+        this.httpServer = HttpServer.create(new InetSocketAddress(port), 0);
+        this.requestExecutor = newRequestExecutor();
+        httpServer.setExecutor(requestExecutor);
+        httpServer.createContext("/entries", new GateHandler("POST", this::entry));
+        httpServer.createContext("/exits", new GateHandler("POST", this::exit));
+        httpServer.createContext("/quotes", new GateHandler("GET", this::quote));
+        httpServer.createContext("/reservations", new GateHandler("POST", this::reservation));
+        httpServer.createContext("/occupancy", new GateHandler("GET", this::occupancy));
+        httpServer.createContext("/metrics", new GateHandler("GET", params -> Response.text(MetricsRegistry.scrape())));
+    }
+
+    private static ExecutorService newRequestExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            logger.info("Virtual threads not available, gate requests run on a platform thread pool");
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    public void start() {
+        httpServer.start();
+        logger.info("Gate API listening on port " + getPort());
+    }
+
+    public int getPort() {
+        return httpServer.getAddress().getPort();
+    }
+
+    /**
+     * Stops accepting requests and waits up to delaySeconds for the running ones.
+     */
+    public void stop(int delaySeconds) {
+        httpServer.stop(delaySeconds);
+        requestExecutor.shutdown();
+    }
+
+    private Response entry(Map<String, String> params) throws Exception {
+        ParkingType parkingType;
+        try {
+            parkingType = ParkingType.valueOf(params.getOrDefault("type", "").toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException ie) {
+            return Response.error(400, "Unknown vehicle type");
+        }
+        String vehicleRegNumber = getVehicleRegNumber(params);
+        if (vehicleRegNumber == null) {
+            return Response.error(400, "Missing vehicle registration number");
+        }
+        Ticket ticket;
+        try {
+            ticket = parkingService.processIncomingVehicle(parkingType, vehicleRegNumber, new Date());
+        } catch (IllegalStateException alreadyInParking) {
+            return Response.error(409, "Vehicle already in parking");
+        }
+        if (ticket == null) {
+            return Response.error(503, "No " + parkingType + " spot available");
+        }
+        return Response.ticket(201, ticket);
+    }
+
+    private Response exit(Map<String, String> params) throws Exception {
+        String vehicleRegNumber = getVehicleRegNumber(params);
+        if (vehicleRegNumber == null) {
+            return Response.error(400, "Missing vehicle registration number");
+        }
+        if (!parkingService.isInParking(vehicleRegNumber)) {
+            return Response.error(404, "Vehicle not in parking");
+        }
+        try {
+            return Response.ticket(200, parkingService.processExitingVehicle(vehicleRegNumber, new Date()));
+        } catch (IllegalStateException noTicket) {
+            //parked according to the index, but its ticket could not be read
+            return Response.error(404, "Vehicle not in parking");
+        }
+    }
+
+    private Response quote(Map<String, String> params) {
+        String vehicleRegNumber = getVehicleRegNumber(params);
+        if (vehicleRegNumber == null) {
+            return Response.error(400, "Missing vehicle registration number");
+        }
+        Ticket ticket = parkingService.quoteFare(vehicleRegNumber, new Date());
+        if (ticket == null) {
+            return Response.error(404, "Vehicle not in parking");
+        }
+        return Response.ticket(200, ticket);
+    }
+
+    private Response reservation(Map<String, String> params) throws Exception {
+        ParkingType parkingType;
+        try {
+            parkingType = ParkingType.valueOf(params.getOrDefault("type", "").toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException ie) {
+            return Response.error(400, "Unknown vehicle type");
+        }
+        String vehicleRegNumber = getVehicleRegNumber(params);
+        if (vehicleRegNumber == null) {
+            return Response.error(400, "Missing vehicle registration number");
+        }
+        Date startTime;
+        Date endTime;
+        try {
+            startTime = Date.from(Instant.parse(params.getOrDefault("from", "")));
+            endTime = Date.from(Instant.parse(params.getOrDefault("to", "")));
+        } catch (DateTimeParseException e) {
+            return Response.error(400, "from and to must be ISO-8601 instants");
+        }
+        Reservation reservation;
+        try {
+            reservation = parkingService.reserve(parkingType, vehicleRegNumber, startTime, endTime);
+        } catch (IllegalArgumentException emptyWindow) {
+            return Response.error(400, "Reservation must end after it starts");
+        } catch (IllegalStateException alreadyReserved) {
+            return Response.error(409, "Vehicle already has a reservation for this time");
+        } catch (UnsupportedOperationException noReservations) {
+            return Response.error(501, "Reservations are not available");
+        }
+        if (reservation == null) {
+            return Response.error(503, "No " + parkingType + " spot available for this time");
+        }
+        return Response.reservation(reservation);
+    }
+
+    private Response occupancy(Map<String, String> params) {
+        List<Occupancy> occupancies = new ArrayList<>();
+        for (ParkingType parkingType : ParkingType.values()) {
+            if (parkingType == ParkingType.UNKNOW_PARKING_TYPE) {
+                continue;
+            }
+            Occupancy occupancy = parkingService.getOccupancy(parkingType);
+            if (occupancy == null) {
+                return Response.error(503, "Occupancy not available");
+            }
+            occupancies.add(occupancy);
+        }
+        return Response.occupancy(occupancies);
+    }
+
+    private static String getVehicleRegNumber(Map<String, String> params) {
+        String vehicleRegNumber = params.getOrDefault("vehicle", "").trim();
+        return vehicleRegNumber.isEmpty() ? null : vehicleRegNumber;
+    }
+
+    private interface GateAction {
+        Response handle(Map<String, String> params) throws Exception;
+    }
+
+    private static final class GateHandler implements HttpHandler {
+
+        private final String method;
+        private final GateAction action;
+
+        private GateHandler(String method, GateAction action) {
+            this.method = method;
+            this.action = action;
+        }
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            Response response;
+            try {
+                if (!method.equals(exchange.getRequestMethod())) {
+                    response = Response.error(405, "Use " + method);
+                } else {
+                    response = action.handle(readParams(exchange));
+                }
+            } catch (Exception e) {
+                logger.error("Error handling " + exchange.getRequestMethod() + " " + exchange.getRequestURI(), e);
+                response = Response.error(500, "Internal error");
+            }
+            byte[] body = response.body.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", response.contentType);
+            exchange.sendResponseHeaders(response.status, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+
+        private static Map<String, String> readParams(HttpExchange exchange) throws IOException {
+            Map<String, String> params = new HashMap<>();
+            parseForm(exchange.getRequestURI().getRawQuery(), params);
+            try (InputStream in = exchange.getRequestBody()) {
+                parseForm(new String(in.readAllBytes(), StandardCharsets.UTF_8), params);
+            }
+            return params;
+        }
+
+        private static void parseForm(String form, Map<String, String> params) {
+            if (form == null || form.isEmpty()) {
+                return;
+            }
+            for (String pair : form.split("&")) {
+                int equals = pair.indexOf('=');
+                if (equals > 0) {
+                    params.put(URLDecoder.decode(pair.substring(0, equals), StandardCharsets.UTF_8),
+                            URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8));
+                }
+            }
+        }
+    }
+
+    private static final class Response {
+
+        private static final String JSON = "application/json; charset=utf-8";
+
+        private final int status;
+        private final String contentType;
+        private final String body;
+
+        private Response(int status, String contentType, String body) {
+            this.status = status;
+            this.contentType = contentType;
+            this.body = body;
+        }
+
+        static Response text(String body) {
+            return new Response(200, "text/plain; version=0.0.4; charset=utf-8", body);
+        }
+
+        static Response error(int status, String message) {
+            return new Response(status, JSON, "{\"error\":\"" + escape(message) + "\"}");
+        }
+
+        static Response ticket(int status, Ticket ticket) {
+            StringBuilder json = new StringBuilder(192);
+            json.append("{\"vehicle\":\"").append(escape(ticket.getVehicleRegNumber())).append('"');
+            json.append(",\"type\":\"").append(ticket.getParkingSpot().getParkingType()).append('"');
+            json.append(",\"spot\":").append(ticket.getParkingSpot().getId());
+            json.append(",\"inTime\":\"").append(format(ticket.getInTime())).append('"');
+            if (ticket.getOutTime() != null) {
+                json.append(",\"outTime\":\"").append(format(ticket.getOutTime())).append('"');
+                json.append(",\"price\":").append(ticket.getPrice());
+            }
+            json.append(",\"regularUser\":").append(ticket.getRegularUser()).append('}');
+            return new Response(status, JSON, json.toString());
+        }
+
+        static Response reservation(Reservation reservation) {
+            StringBuilder json = new StringBuilder(160);
+            json.append("{\"id\":").append(reservation.getId());
+            json.append(",\"vehicle\":\"").append(escape(reservation.getVehicleRegNumber())).append('"');
+            json.append(",\"type\":\"").append(reservation.getParkingSpot().getParkingType()).append('"');
+            json.append(",\"spot\":").append(reservation.getParkingSpot().getId());
+            json.append(",\"from\":\"").append(format(reservation.getStartTime())).append('"');
+            json.append(",\"to\":\"").append(format(reservation.getEndTime())).append("\"}");
+            return new Response(201, JSON, json.toString());
+        }
+
+        static Response occupancy(List<Occupancy> occupancies) {
+            StringBuilder json = new StringBuilder(64 * occupancies.size());
+            json.append('{');
+            for (Occupancy occupancy : occupancies) {
+                if (json.length() > 1) {
+                    json.append(',');
+                }
+                json.append('"').append(occupancy.getParkingType()).append("\":{");
+                json.append("\"capacity\":").append(occupancy.getCapacity());
+                json.append(",\"available\":").append(occupancy.getAvailableSpots());
+                json.append(",\"occupied\":").append(occupancy.getOccupiedSpots());
+                json.append(",\"full\":").append(occupancy.isFull()).append('}');
+            }
+            json.append('}');
+            return new Response(200, JSON, json.toString());
+        }
+
+        private static String format(Date date) {
+            return date.toInstant().toString();
+        }
+
+        private static String escape(String text) {
+            StringBuilder escaped = new StringBuilder(text.length());
+            for (char c : text.toCharArray()) {
+                if (c == '"' || c == '\\') {
+                    escaped.append('\\').append(c);
+                } else if (c < 0x20) {
+                    escaped.append(String.format("\\u%04x", (int) c));
+                } else {
+                    escaped.append(c);
+                }
+            }
+            return escaped.toString();
+        }
+    }
+}
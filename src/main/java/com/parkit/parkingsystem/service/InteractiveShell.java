@@ -1,25 +1,56 @@
 package com.parkit.parkingsystem.service;
 
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.config.SchemaMigrator;
+import com.parkit.parkingsystem.dao.OfflineMode;
 import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.ParkingStores;
+import com.parkit.parkingsystem.dao.ReservationDAO;
 import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.dao.TicketJournal;
 import com.parkit.parkingsystem.util.InputReaderUtil;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.io.IOException;
+import java.io.Reader;
+
 public final class InteractiveShell {
 
     private InteractiveShell(){};
     private static final Logger logger = LogManager.getLogger("InteractiveShell");
+    private static final int GATE_SERVER_STOP_DELAY_SECONDS = 5;
 
     public static void loadInterface() throws Exception {
+        loadInterface(0);
+    }
+
+    public static void loadInterface(int httpPort) throws Exception {
+        loadInterface(httpPort, null);
+    }
+
+    /**
+     * @param httpPort when positive, gates can also reach the parking through the HTTP API on this port
+     * @param stores where tickets and spots are kept, null for the MySQL database of DataBaseProperties.properties
+     */
+    public static void loadInterface(int httpPort, ParkingStores stores) throws Exception {
         logger.info("App initialized!!!");
         System.out.println("Welcome to Parking System!");
 
+        if (stores == null) {
+            stores = openDataBaseStores();
+        }
+
         boolean continueApp = true;
         InputReaderUtil inputReaderUtil = new InputReaderUtil();
-        ParkingSpotDAO parkingSpotDAO = new ParkingSpotDAO();
-        TicketDAO ticketDAO = new TicketDAO();
-        ParkingService parkingService = new ParkingService(inputReaderUtil, parkingSpotDAO, ticketDAO);
+        ParkingService parkingService = new ParkingService(inputReaderUtil, stores.getParkingSpotStore(), stores.getTicketStore(),
+                stores.getReservationDAO());
+        GateServer gateServer = null;
+        if (httpPort > 0) {
+            gateServer = new GateServer(parkingService, httpPort);
+            gateServer.start();
+            System.out.println("Gate API listening on port " + gateServer.getPort());
+        }
 
         while(continueApp){
             loadMenu();
@@ -41,6 +72,119 @@ public final class InteractiveShell {
                 default: System.out.println("Unsupported option. Please enter a number corresponding to the provided menu");
             }
         }
+        if (gateServer != null) {
+            gateServer.stop(GATE_SERVER_STOP_DELAY_SECONDS);
+        }
+        stores.close();
+    }
+
+    /**
+     * Applies a log of gate events, as read by {@link GateEventProcessor}, then closes the stores.
+     * @param stores where tickets and spots are kept, null for the MySQL database of DataBaseProperties.properties
+     */
+    public static void processEvents(Reader log, ParkingStores stores) throws Exception {
+        logger.info("Processing gate events");
+        if (stores == null) {
+            stores = openDataBaseStores();
+        }
+        try {
+            GateEventProcessor processor = new GateEventProcessor(stores.getParkingSpotStore(), stores.getTicketStore(),
+                    stores.getReservationDAO());
+            processor.process(log);
+            System.out.println("Applied " + processor.getEntries() + " entries and " + processor.getExits() + " exits");
+            System.out.println("Refused " + processor.getFullLotRefusals() + " vehicles on a full lot, " + processor.getRefusedEvents()
+                    + " events for vehicles already in or not in the parking; " + processor.getFailedEvents() + " events failed, "
+                    + processor.getRejectedLines() + " malformed lines skipped");
+        } finally {
+            stores.close();
+        }
+    }
+
+    private static ParkingStores openDataBaseStores() {
+        try {
+            new SchemaMigrator(new DataBaseConfig()).migrate();
+        } catch (Exception e) {
+            logger.error("Error while migrating database schema", e);
+        }
+
+        TicketJournal ticketJournal = null;
+        try {
+            ticketJournal = TicketJournal.fromProperties(new DataBaseConfig());
+            if (ticketJournal != null) {
+                ticketJournal.recover();
+            }
+        } catch (Exception e) {
+            logger.error("Error while replaying ticket journal, tickets are written straight to the database", e);
+            ticketJournal = null;
+        }
+
+        ParkingSpotDAO parkingSpotDAO = new ParkingSpotDAO();
+        TicketDAO ticketDAO = new TicketDAO();
+        ticketDAO.setTicketJournal(ticketJournal);
+        OfflineMode offlineMode = null;
+        try {
+            offlineMode = OfflineMode.fromProperties(ticketDAO, parkingSpotDAO);
+            if (offlineMode != null) {
+                offlineMode.recover();
+            }
+        } catch (Exception e) {
+            logger.error("Error while replaying offline queue, gates stop while the database is unreachable", e);
+            if (offlineMode != null) {
+                try {
+                    offlineMode.close();
+                } catch (IOException closeException) {
+                    logger.error("Error while closing offline queue", closeException);
+                }
+            }
+            offlineMode = null;
+        }
+
+        TicketArchiver ticketArchiver = null;
+        try {
+            long archiveIntervalMinutes = Long.parseLong(new DataBaseConfig().getProperties().getProperty("archive.intervalMinutes", "0"));
+            if (archiveIntervalMinutes > 0) {
+                ticketArchiver = TicketArchiver.fromProperties(new DataBaseConfig());
+                ticketArchiver.schedule(archiveIntervalMinutes);
+            }
+        } catch (Exception e) {
+            logger.error("Error while scheduling ticket archiving, closed tickets stay in the ticket table", e);
+        }
+
+        parkingSpotDAO.loadParkingSpotIndex();
+        ticketDAO.loadRegularUserIndex();
+        ticketDAO.loadActiveSessionIndex();
+        ReservationDAO reservationDAO = null;
+        try {
+            reservationDAO = ReservationDAO.fromProperties(new DataBaseConfig());
+            reservationDAO.loadReservationIndex();
+            long reloadSeconds = Long.parseLong(new DataBaseConfig().getProperties().getProperty("reservation.reloadSeconds",
+                    String.valueOf(ReservationDAO.DEFAULT_RELOAD_SECONDS)));
+            if (reloadSeconds > 0) {
+                reservationDAO.scheduleReload(reloadSeconds);
+            }
+        } catch (Exception e) {
+            logger.error("Error while reading reservation settings, reservations are not honoured", e);
+            reservationDAO = null;
+        }
+        TicketJournal journal = ticketJournal;
+        TicketArchiver archiver = ticketArchiver;
+        OfflineMode offline = offlineMode;
+        ReservationDAO reservations = reservationDAO;
+        return new ParkingStores(offline != null ? offline.getTicketStore() : ticketDAO,
+                offline != null ? offline.getParkingSpotStore() : parkingSpotDAO, reservationDAO, () -> {
+            if (archiver != null) {
+                archiver.close();
+            }
+            if (reservations != null) {
+                reservations.close();
+            }
+            if (offline != null) {
+                offline.close();
+            }
+            if (journal != null) {
+                journal.close();
+            }
+        });
     }
 
     private static void loadMenu(){
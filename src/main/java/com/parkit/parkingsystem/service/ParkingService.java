@@ -1,9 +1,14 @@
 package com.parkit.parkingsystem.service;
 
 import com.parkit.parkingsystem.constants.ParkingType;
-import com.parkit.parkingsystem.dao.ParkingSpotDAO;
-import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.dao.ParkingSpotStore;
+import com.parkit.parkingsystem.dao.ReservationDAO;
+import com.parkit.parkingsystem.dao.TicketStore;
+import com.parkit.parkingsystem.metrics.MetricsRegistry;
+import com.parkit.parkingsystem.metrics.OperationMetrics;
+import com.parkit.parkingsystem.model.Occupancy;
 import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Reservation;
 import com.parkit.parkingsystem.model.Ticket;
 import com.parkit.parkingsystem.util.InputReaderUtil;
 import org.apache.logging.log4j.LogManager;
@@ -14,66 +19,150 @@ import java.util.Date;
 public class ParkingService {
 
     private static final Logger logger = LogManager.getLogger("ParkingService");
+    private static final OperationMetrics entryMetrics = MetricsRegistry.operation("ParkingService.processIncomingVehicle");
+    private static final OperationMetrics exitMetrics = MetricsRegistry.operation("ParkingService.processExitingVehicle");
 
     private static FareCalculatorService fareCalculatorService = new FareCalculatorService();
 
     private InputReaderUtil inputReaderUtil;
-    private ParkingSpotDAO parkingSpotDAO;
-    private  TicketDAO ticketDAO;
+    private ParkingSpotStore parkingSpotStore;
+    private TicketStore ticketStore;
+    private ReservationDAO reservationDAO;
 
-    public ParkingService(InputReaderUtil inputReaderUtil, ParkingSpotDAO parkingSpotDAO, TicketDAO ticketDAO){
+    public ParkingService(InputReaderUtil inputReaderUtil, ParkingSpotStore parkingSpotStore, TicketStore ticketStore){
+        this(inputReaderUtil, parkingSpotStore, ticketStore, null);
+    }
+
+    /**
+     * @param reservationDAO reservations honoured at entry, null when spots cannot be reserved
+     */
+    public ParkingService(InputReaderUtil inputReaderUtil, ParkingSpotStore parkingSpotStore, TicketStore ticketStore,
+                          ReservationDAO reservationDAO){
         this.inputReaderUtil = inputReaderUtil;
-        this.parkingSpotDAO = parkingSpotDAO;
-        this.ticketDAO = ticketDAO;
+        this.parkingSpotStore = parkingSpotStore;
+        this.ticketStore = ticketStore;
+        this.reservationDAO = reservationDAO;
     }
 
-    public void processIncomingVehicle() throws Exception {
+    public Ticket processIncomingVehicle() throws Exception {
 
-            Date inTime = new Date();
-            Ticket ticket = new Ticket();
-            ParkingSpot parkingSpot = getNextParkingNumberIfAvailable();
-            if (parkingSpot != null && parkingSpot.getId() > 0) {
-                String vehicleRegNumber = getVehichleRegNumber();
-                ticket.setAlreadyInParking(ticketDAO.checkAlreadyInParking(vehicleRegNumber));
-                if (ticket.getAlreadyInParking()) {
-                    parkingSpot.setAvailable(true);
-                    throw new Exception("Vehicle already in parking");
+            ParkingType parkingType;
+            try {
+                parkingType = getVehichleType();
+            } catch (IllegalArgumentException ie) {
+                logger.error("Error parsing user input for type of vehicle", ie);
+                return null;
+            }
+            String vehicleRegNumber = getVehichleRegNumber();
+            //user input is read first so that no transaction stays open while waiting for the keyboard
+            Ticket ticket = processIncomingVehicle(parkingType, vehicleRegNumber, new Date());
+            if (ticket != null) {
+                if (ticket.getRegularUser()) {
+                    System.out.println("Welcome back! As a recurring user of our parking lot, you'll benefit from a 5% discount.");
                 }
-                parkingSpot.setAvailable(false);
-                parkingSpotDAO.updateParking(parkingSpot);//allot this parking space and mark it's availability as false
-
-                //ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME)
-                //ticket.setId(ticketID);
-                ticket.setParkingSpot(parkingSpot);
-                ticket.setRegularUser(ticketDAO.checkRegularUsers(vehicleRegNumber));
-                ticket.setVehicleRegNumber(vehicleRegNumber);
-                ticket.setPrice(0);
-                ticket.setInTime(inTime);
-                ticket.setOutTime(null);
-                ticketDAO.saveTicket(ticket);
                 System.out.println("Generated Ticket and saved in DB");
-                System.out.println("Please park your vehicle in spot number:" + parkingSpot.getId());
-                System.out.println("Recorded in-time for vehicle number:" + vehicleRegNumber + " is:" + inTime);
+                System.out.println("Please park your vehicle in spot number:" + ticket.getParkingSpot().getId());
+                System.out.println("Recorded in-time for vehicle number:" + vehicleRegNumber + " is:" + ticket.getInTime());
             }
+            return ticket;
+    }
 
+    /**
+     * Registers the entry of a vehicle whatever the gate it comes from: safe to call from several threads at once.
+     * @return the saved ticket, or null if no spot of this type is free
+     * @throws IllegalStateException if the vehicle is already in the parking
+     */
+    public Ticket processIncomingVehicle(ParkingType parkingType, String vehicleRegNumber, Date inTime) throws Exception {
+        long start = System.nanoTime();
+        try {
+            return ticketStore.inTransaction(
+                    () -> registerIncomingVehicle(parkingType, vehicleRegNumber, inTime));
+        } catch (IllegalStateException alreadyInParking) {
+            //an answer to the gate, not a failure
+            throw alreadyInParking;
+        } catch (Exception e) {
+            entryMetrics.failed();
+            throw e;
+        } finally {
+            entryMetrics.record(start);
+        }
     }
 
+    /**
+     * Claims a spot and saves the ticket. Runs inside the entry transaction: throwing rolls back the claim.
+     * @return the saved ticket, or null if no spot is free
+     */
+    private Ticket registerIncomingVehicle(ParkingType parkingType, String vehicleRegNumber, Date inTime) throws Exception {
+        Ticket ticket = new Ticket();
+        ticket.setAlreadyInParking(ticketStore.checkAlreadyInParking(vehicleRegNumber));
+        if (ticket.getAlreadyInParking()) {
+            throw new IllegalStateException("Vehicle already in parking");
+        }
+        ParkingSpot parkingSpot = claimParkingSpot(parkingType, vehicleRegNumber, inTime);
+        if (parkingSpot == null || parkingSpot.getId() <= 0) {
+            return null;
+        }
+        return saveTicket(ticket, parkingSpot, vehicleRegNumber, inTime, ticketStore.isRegularUser(vehicleRegNumber));
+    }
+
+    /**
+     * Claims a spot and saves the ticket in one transaction, for a vehicle the caller already checked.
+     * @return the saved ticket, or null if no spot is free
+     */
+    Ticket registerCheckedVehicle(ParkingType parkingType, String vehicleRegNumber, Date inTime, boolean regularUser) throws Exception {
+        long start = System.nanoTime();
+        try {
+            return ticketStore.inTransaction(() -> {
+                ParkingSpot parkingSpot = claimParkingSpot(parkingType, vehicleRegNumber, inTime);
+                if (parkingSpot == null || parkingSpot.getId() <= 0) {
+                    return null;
+                }
+                return saveTicket(new Ticket(), parkingSpot, vehicleRegNumber, inTime, regularUser);
+            });
+        } catch (Exception e) {
+            entryMetrics.failed();
+            throw e;
+        } finally {
+            entryMetrics.record(start);
+        }
+    }
+
+    private Ticket saveTicket(Ticket ticket, ParkingSpot parkingSpot, String vehicleRegNumber, Date inTime, boolean regularUser) throws Exception {
+        //ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME)
+        //ticket.setId(ticketID);
+        ticket.setParkingSpot(parkingSpot);
+        ticket.setRegularUser(regularUser);
+        ticket.setVehicleRegNumber(vehicleRegNumber);
+        ticket.setPrice(0);
+        ticket.setInTime(inTime);
+        ticket.setOutTime(null);
+        if (!ticketStore.saveTicket(ticket)) {
+            throw new Exception("Unable to save ticket information. Error occurred");
+        }
+        return ticket;
+    }
 
     private String getVehichleRegNumber() throws Exception {
         System.out.println("Please type the vehicle registration number and press enter key");
         return inputReaderUtil.readVehicleRegistrationNumber();
     }
 
+    /**
+     * Looks up the next free spot for the vehicle type read from the user, without taking it: entries claim
+     * their spot when they save the ticket.
+     */
     public ParkingSpot getNextParkingNumberIfAvailable() throws Exception{
         int parkingNumber=0;
         ParkingSpot parkingSpot = null;
         try{
             ParkingType parkingType = getVehichleType();
-            parkingNumber = parkingSpotDAO.getNextAvailableSlot(parkingType);
+            parkingNumber = parkingSpotStore.getNextAvailableSlot(parkingType);
             if(parkingNumber > 0){
                 parkingSpot = new ParkingSpot(parkingNumber,parkingType, true);
+            }else if(parkingNumber == 0){
+                logger.warn("No {} spot available, parking slots are full", parkingType);
             }else{
-                throw new Exception("Error fetching parking number from DB. Parking slots might be full");
+                logger.error("Error fetching parking number from DB");
             }
         }catch(IllegalArgumentException ie){
             logger.error("Error parsing user input for type of vehicle", ie);
@@ -83,6 +172,61 @@ public class ParkingService {
         return parkingSpot;
     }
 
+    /**
+     * Claims a spot for the vehicle coming in: the returned spot is already marked as taken.
+     */
+    private ParkingSpot claimParkingSpot(ParkingType parkingType, String vehicleRegNumber, Date inTime) {
+        int parkingNumber=0;
+        ParkingSpot parkingSpot = null;
+        try{
+            parkingNumber = claimParkingNumber(parkingType, vehicleRegNumber, inTime);
+            if(parkingNumber > 0){
+                parkingSpot = new ParkingSpot(parkingNumber,parkingType, false);
+            }else if(parkingNumber == 0){
+                //common during a rush: no exception, its stack trace would cost more than the claim
+                logger.warn("No {} spot available, parking slots are full", parkingType);
+            }else{
+                logger.error("Error fetching parking number from DB");
+            }
+        }catch(Exception e){
+            logger.error("Error fetching next available parking slot", e);
+        }
+        return parkingSpot;
+    }
+
+    /**
+     * A vehicle with a reservation gets its reserved spot. Other vehicles get the lowest free spot not held
+     * for a reservation, as does a vehicle whose reserved spot is still taken.
+     */
+    private int claimParkingNumber(ParkingType parkingType, String vehicleRegNumber, Date inTime) {
+        if (reservationDAO == null) {
+            return parkingSpotStore.claimNextAvailableSlot(parkingType);
+        }
+        Reservation reservation = (vehicleRegNumber == null) ? null : reservationDAO.getReservation(vehicleRegNumber, inTime);
+        if (reservation != null && reservation.getParkingSpot().getParkingType() == parkingType) {
+            int reservedNumber = reservation.getParkingSpot().getId();
+            if (parkingSpotStore.claimSlot(parkingType, reservedNumber)) {
+                return reservedNumber;
+            }
+            logger.warn("Reserved spot {} of {} is taken, giving another one", reservedNumber, vehicleRegNumber);
+        }
+        return parkingSpotStore.claimNextAvailableSlot(parkingType, parkingNumber -> reservationDAO.isHeld(parkingNumber, inTime));
+    }
+
+    /**
+     * Books the lowest spot of this type free for the whole window.
+     * @return the reservation, or null if no spot of this type is free for the window
+     * @throws IllegalStateException if the vehicle already has a reservation overlapping the window
+     * @throws IllegalArgumentException if the window ends before it starts
+     * @throws UnsupportedOperationException if this parking takes no reservation
+     */
+    public Reservation reserve(ParkingType parkingType, String vehicleRegNumber, Date startTime, Date endTime) throws Exception {
+        if (reservationDAO == null) {
+            throw new UnsupportedOperationException("Reservations are not available");
+        }
+        return reservationDAO.reserve(parkingType, vehicleRegNumber, startTime, endTime);
+    }
+
     private ParkingType getVehichleType() throws IllegalArgumentException{
         System.out.println("Please select vehicle type from menu");
         System.out.println("1 CAR");
@@ -102,21 +246,93 @@ public class ParkingService {
         }
     }
 
-    public void processExitingVehicle() throws Exception {
+    public Ticket processExitingVehicle() throws Exception {
 
             String vehicleRegNumber = getVehichleRegNumber();
-            Ticket ticket = ticketDAO.getTicket(vehicleRegNumber);
-            Date outTime = new Date();
+            Ticket ticket;
+            try {
+                ticket = processExitingVehicle(vehicleRegNumber, new Date());
+            } catch (IllegalStateException noTicket) {
+                logger.error("No ticket found for vehicle " + vehicleRegNumber);
+                System.out.println("No ticket found for vehicle number:" + vehicleRegNumber);
+                return null;
+            }
+            System.out.println("Please pay the parking fare:" + ticket.getPrice());
+            System.out.println("Recorded out-time for vehicle number:" + ticket.getVehicleRegNumber() + " is:" + ticket.getOutTime());
+            return ticket;
+    }
+
+    /**
+     * Closes the ticket of the vehicle and frees its spot, whatever the gate it comes from.
+     * @return the closed ticket, with its fare
+     * @throws IllegalStateException if the vehicle has no open ticket
+     */
+    public Ticket processExitingVehicle(String vehicleRegNumber, Date outTime) throws Exception {
+        Ticket ticket = ticketStore.getTicket(vehicleRegNumber);
+        if (ticket == null) {
+            throw new IllegalStateException("No ticket found for vehicle " + vehicleRegNumber);
+        }
+        if (ticket.getOutTime() != null) {
+            //last ticket of a vehicle already gone: a repeated exit must not price it again nor free its spot
+            throw new IllegalStateException("Vehicle " + vehicleRegNumber + " already left");
+        }
+        return closeTicket(ticket, outTime);
+    }
+
+    /**
+     * Prices the ticket, then closes it and frees its spot in one transaction.
+     */
+    Ticket closeTicket(Ticket ticket, Date outTime) throws Exception {
+        long start = System.nanoTime();
+        try {
             ticket.setOutTime(outTime);
             fareCalculatorService.calculateFare(ticket);
-            if(ticketDAO.updateTicket(ticket)) {
-                ParkingSpot parkingSpot = ticket.getParkingSpot();
-                parkingSpot.setAvailable(true);
-                parkingSpotDAO.updateParking(parkingSpot);
-                System.out.println("Please pay the parking fare:" + ticket.getPrice());
-                System.out.println("Recorded out-time for vehicle number:" + ticket.getVehicleRegNumber() + " is:" + outTime);
-            }else{
-                throw new Exception("Unable to update ticket information. Error occurred");
-            }
+            return ticketStore.inTransaction(() -> {
+                if(ticketStore.updateTicket(ticket)) {
+                    ParkingSpot parkingSpot = ticket.getParkingSpot();
+                    parkingSpot.setAvailable(true);
+                    if (!parkingSpotStore.updateParking(parkingSpot)) {
+                        //a closed ticket on a spot still marked taken would leak that spot for good
+                        throw new Exception("Unable to free parking spot " + parkingSpot.getId() + ". Error occurred");
+                    }
+                    return ticket;
+                }else{
+                    throw new Exception("Unable to update ticket information. Error occurred");
+                }
+            });
+        } catch (Exception e) {
+            exitMetrics.failed();
+            throw e;
+        } finally {
+            exitMetrics.record(start);
+        }
+    }
+
+    /**
+     * @return the capacity and free spots of this type, null if they cannot be read
+     */
+    public Occupancy getOccupancy(ParkingType parkingType) {
+        return parkingSpotStore.getOccupancy(parkingType);
+    }
+
+    public boolean isInParking(String vehicleRegNumber) {
+        return ticketStore.checkAlreadyInParking(vehicleRegNumber);
+    }
+
+    /**
+     * @return the open ticket of the vehicle with the fare it would pay when leaving at quoteTime, nothing saved;
+     * null if the vehicle is not in the parking
+     */
+    public Ticket quoteFare(String vehicleRegNumber, Date quoteTime) {
+        if (!isInParking(vehicleRegNumber)) {
+            return null;
+        }
+        Ticket ticket = ticketStore.getTicket(vehicleRegNumber);
+        if (ticket == null || ticket.getOutTime() != null) {
+            return null;
+        }
+        ticket.setOutTime(quoteTime);
+        fareCalculatorService.calculateFare(ticket);
+        return ticket;
     }
 }
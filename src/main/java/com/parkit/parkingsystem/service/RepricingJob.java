@@ -0,0 +1,258 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.constants.DBConstants;
+import com.parkit.parkingsystem.constants.ParkingType;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Reprices closed tickets under two fare tables and reports the revenue difference.
+ * <p>
+ * Tickets are read from the DB one chunk at a time (keyset paging on ID) into primitive arrays, from the
+ * ticket_history_YYYYMM table of each month of the range and then from the ticket table; while the fork/join pool
+ * prices a chunk, the next one is read. At most two chunks are in memory whatever the number of tickets, and
+ * pricing uses every core of the pool. The first ticket of each vehicle, which tells regular users apart, is
+ * gathered once per job into a temporary table.
+ */
+public class RepricingJob {
+
+    private static final Logger logger = LogManager.getLogger("RepricingJob");
+
+    public static final int DEFAULT_CHUNK_SIZE = 10_000;
+    private static final int TICKETS_PER_TASK = 1024;
+
+    private final DataBaseConfig dataBaseConfig;
+    private final FareCalculatorService oldFares;
+    private final FareCalculatorService newFares;
+    private final int chunkSize;
+    private final ForkJoinPool forkJoinPool;
+
+    public RepricingJob(DataBaseConfig dataBaseConfig, FareCalculatorService oldFares, FareCalculatorService newFares) {
+        this(dataBaseConfig, oldFares, newFares, DEFAULT_CHUNK_SIZE, ForkJoinPool.commonPool());
+    }
+
+    public RepricingJob(DataBaseConfig dataBaseConfig, FareCalculatorService oldFares, FareCalculatorService newFares,
+                        int chunkSize, ForkJoinPool forkJoinPool) {
+        this.dataBaseConfig = dataBaseConfig;
+        this.oldFares = oldFares;
+        this.newFares = newFares;
+        this.chunkSize = chunkSize;
+        this.forkJoinPool = forkJoinPool;
+    }
+
+    /**
+     * @param from first exit time included
+     * @param to first exit time excluded
+     */
+    public RepricingReport run(LocalDateTime from, LocalDateTime to) throws Exception {
+        RepricingReport report = new RepricingReport();
+        long[] chunks = {0};
+        //one connection and one snapshot for the job: the first_ticket table is only seen by its connection
+        dataBaseConfig.inTransaction(() -> {
+            Connection con = null;
+            try {
+                con = dataBaseConfig.getConnection();
+                List<String> tables = saveFirstTickets(con, from, to);
+                ForkJoinTask<RepricingReport> pricing = null;
+                for (String table : tables) {
+                    int lastId = 0;
+                    int read = chunkSize;
+                    while (read == chunkSize) {
+                        TicketChunk chunk = readChunk(con, table, from, to, lastId);
+                        if (pricing != null) {
+                            report.merge(pricing.join());
+                            pricing = null;
+                        }
+                        read = chunk.size;
+                        if (chunk.size > 0) {
+                            pricing = forkJoinPool.submit(new PricingTask(oldFares, newFares, chunk, 0, chunk.size));
+                            lastId = chunk.lastId;
+                            chunks[0]++;
+                        }
+                    }
+                }
+                if (pricing != null) {
+                    report.merge(pricing.join());
+                }
+                execute(con, DBConstants.DROP_FIRST_TICKETS);
+                return null;
+            } finally {
+                dataBaseConfig.closeConnection(con);
+            }
+        });
+        logger.info("Repriced " + report.getTicketCount() + " tickets in " + chunks[0] + " chunks");
+        return report;
+    }
+
+    /**
+     * Fills first_ticket from ticket and the history tables of the months up to the end of the range: an earlier
+     * ticket of a vehicle left before the later one came in.
+     * @return the tables holding the tickets that left during the range, ticket last
+     */
+    private List<String> saveFirstTickets(Connection con, LocalDateTime from, LocalDateTime to) throws SQLException {
+        YearMonth firstMonth = YearMonth.from(from);
+        YearMonth lastMonth = YearMonth.from(to.minusNanos(1));
+        List<String> tables = new ArrayList<>();
+        execute(con, DBConstants.DROP_FIRST_TICKETS);
+        execute(con, DBConstants.CREATE_FIRST_TICKETS);
+        for (String historyTable : readHistoryTables(con)) {
+            YearMonth month = TicketArchiver.getHistoryMonth(historyTable);
+            if (month.isAfter(lastMonth)) {
+                break;
+            }
+            execute(con, String.format(DBConstants.SAVE_FIRST_TICKETS, historyTable));
+            if (!month.isBefore(firstMonth)) {
+                tables.add(historyTable);
+            }
+        }
+        execute(con, String.format(DBConstants.SAVE_FIRST_TICKETS, "ticket"));
+        tables.add("ticket");
+        return tables;
+    }
+
+    private SortedSet<String> readHistoryTables(Connection con) throws SQLException {
+        SortedSet<String> historyTables = new TreeSet<>();
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            ps = con.prepareStatement(DBConstants.GET_TICKET_HISTORY_TABLES);
+            rs = ps.executeQuery();
+            while (rs.next()) {
+                historyTables.add(rs.getString(1));
+            }
+            return historyTables;
+        } finally {
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+        }
+    }
+
+    private void execute(Connection con, String sql) throws SQLException {
+        PreparedStatement ps = null;
+        try {
+            ps = con.prepareStatement(sql);
+            ps.execute();
+        } finally {
+            dataBaseConfig.closePreparedStatement(ps);
+        }
+    }
+
+    private TicketChunk readChunk(Connection con, String table, LocalDateTime from, LocalDateTime to, int afterId) throws SQLException {
+        TicketChunk chunk = new TicketChunk(chunkSize);
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            ps = con.prepareStatement(String.format(DBConstants.GET_CLOSED_TICKETS_PAGE, table));
+            ps.setTimestamp(1, Timestamp.valueOf(from));
+            ps.setTimestamp(2, Timestamp.valueOf(to));
+            ps.setInt(3, afterId);
+            ps.setInt(4, chunkSize);
+            rs = ps.executeQuery();
+            while (rs.next()) {
+                int row = chunk.size++;
+                chunk.lastId = rs.getInt(1);
+                chunk.parkingTypes[row] = parkingTypeOrdinal(rs.getString(2));
+                chunk.inTimes[row] = rs.getTimestamp(3).getTime();
+                Timestamp outTime = rs.getTimestamp(4);
+                chunk.outTimes[row] = outTime.getTime();
+                chunk.exitDays[row] = outTime.toLocalDateTime().toLocalDate().toEpochDay();
+                chunk.regularUsers[row] = rs.getBoolean(5);
+            }
+            return chunk;
+        } finally {
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+        }
+    }
+
+    private static int parkingTypeOrdinal(String parkingType) {
+        try {
+            return ParkingType.valueOf(parkingType).ordinal();
+        } catch (IllegalArgumentException | NullPointerException e) {
+            return -1;
+        }
+    }
+
+    private static final class TicketChunk {
+
+        private final int[] parkingTypes;
+        private final long[] inTimes;
+        private final long[] outTimes;
+        private final long[] exitDays;
+        private final boolean[] regularUsers;
+        private int size;
+        private int lastId;
+
+        private TicketChunk(int capacity) {
+            parkingTypes = new int[capacity];
+            inTimes = new long[capacity];
+            outTimes = new long[capacity];
+            exitDays = new long[capacity];
+            regularUsers = new boolean[capacity];
+        }
+    }
+
+    private static final class PricingTask extends RecursiveTask<RepricingReport> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient FareCalculatorService oldFares;
+        private final transient FareCalculatorService newFares;
+        private final transient TicketChunk chunk;
+        private final int start;
+        private final int end;
+
+        private PricingTask(FareCalculatorService oldFares, FareCalculatorService newFares, TicketChunk chunk, int start, int end) {
+            this.oldFares = oldFares;
+            this.newFares = newFares;
+            this.chunk = chunk;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected RepricingReport compute() {
+            if (end - start > TICKETS_PER_TASK) {
+                int middle = (start + end) >>> 1;
+                PricingTask left = new PricingTask(oldFares, newFares, chunk, start, middle);
+                left.fork();
+                RepricingReport report = new PricingTask(oldFares, newFares, chunk, middle, end).compute();
+                report.merge(left.join());
+                return report;
+            }
+            ParkingType[] parkingTypes = ParkingType.values();
+            RepricingReport report = new RepricingReport();
+            for (int row = start; row < end; row++) {
+                if (chunk.parkingTypes[row] < 0) {
+                    report.skip();
+                    continue;
+                }
+                ParkingType parkingType = parkingTypes[chunk.parkingTypes[row]];
+                try {
+                    long oldFare = oldFares.calculateFareCents(parkingType, chunk.inTimes[row], chunk.outTimes[row], chunk.regularUsers[row]);
+                    long newFare = newFares.calculateFareCents(parkingType, chunk.inTimes[row], chunk.outTimes[row], chunk.regularUsers[row]);
+                    report.add(parkingType, chunk.exitDays[row], oldFare, newFare);
+                } catch (IllegalArgumentException e) {
+                    report.skip();
+                }
+            }
+            return report;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Revenue of the repriced tickets under the old and the new fares, per parking type and per day of exit.
+ */
+public class RepricingReport {
+
+    public static final class Revenue {
+
+        private long tickets;
+        private long oldFareCents;
+        private long newFareCents;
+
+        public long getTickets() {
+            return tickets;
+        }
+
+        public long getOldFareCents() {
+            return oldFareCents;
+        }
+
+        public long getNewFareCents() {
+            return newFareCents;
+        }
+
+        public long getDeltaCents() {
+            return newFareCents - oldFareCents;
+        }
+
+        private void add(long tickets, long oldFareCents, long newFareCents) {
+            this.tickets += tickets;
+            this.oldFareCents += oldFareCents;
+            this.newFareCents += newFareCents;
+        }
+
+        @Override
+        public String toString() {
+            return tickets + " tickets, " + oldFareCents + " -> " + newFareCents + " cents (" + getDeltaCents() + ")";
+        }
+    }
+
+    private final Map<ParkingType, SortedMap<Long, Revenue>> dailyRevenues = new EnumMap<>(ParkingType.class);
+    private long skippedTickets;
+
+    void add(ParkingType parkingType, long epochDay, long oldFareCents, long newFareCents) {
+        dailyRevenues.computeIfAbsent(parkingType, type -> new TreeMap<>())
+                .computeIfAbsent(epochDay, day -> new Revenue())
+                .add(1, oldFareCents, newFareCents);
+    }
+
+    void skip() {
+        skippedTickets++;
+    }
+
+    void merge(RepricingReport other) {
+        for (Map.Entry<ParkingType, SortedMap<Long, Revenue>> typeRevenues : other.dailyRevenues.entrySet()) {
+            SortedMap<Long, Revenue> days = dailyRevenues.computeIfAbsent(typeRevenues.getKey(), type -> new TreeMap<>());
+            for (Map.Entry<Long, Revenue> day : typeRevenues.getValue().entrySet()) {
+                Revenue revenue = day.getValue();
+                days.computeIfAbsent(day.getKey(), epochDay -> new Revenue())
+                        .add(revenue.tickets, revenue.oldFareCents, revenue.newFareCents);
+            }
+        }
+        skippedTickets += other.skippedTickets;
+    }
+
+    /**
+     * @return the revenue of each day with at least one exit of this type, oldest day first
+     */
+    public SortedMap<LocalDate, Revenue> getDailyRevenue(ParkingType parkingType) {
+        SortedMap<LocalDate, Revenue> days = new TreeMap<>();
+        for (Map.Entry<Long, Revenue> day : dailyRevenues.getOrDefault(parkingType, Collections.emptySortedMap()).entrySet()) {
+            days.put(LocalDate.ofEpochDay(day.getKey()), day.getValue());
+        }
+        return days;
+    }
+
+    public Revenue getTotalRevenue(ParkingType parkingType) {
+        Revenue total = new Revenue();
+        for (Revenue revenue : dailyRevenues.getOrDefault(parkingType, Collections.emptySortedMap()).values()) {
+            total.add(revenue.tickets, revenue.oldFareCents, revenue.newFareCents);
+        }
+        return total;
+    }
+
+    public long getTicketCount() {
+        long tickets = 0;
+        for (ParkingType parkingType : dailyRevenues.keySet()) {
+            tickets += getTotalRevenue(parkingType).getTickets();
+        }
+        return tickets;
+    }
+
+    /**
+     * @return tickets left out because one of the fare tables has no rate for their parking type
+     */
+    public long getSkippedTickets() {
+        return skippedTickets;
+    }
+}
@@ -0,0 +1,305 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.constants.DBConstants;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Moves closed tickets out of the ticket table into one ticket_history_YYYYMM table per month of exit, so that
+ * the gates keep querying a table holding only open and recent tickets. Tickets go in small batches, each one
+ * its own short transaction, with a pause in between so that gates are never kept waiting on their rows.
+ * <p>
+ * The ticket_all view unions the ticket table with every history table, for reports; the plates of archived
+ * tickets are kept in archived_vehicle so that their vehicles stay regular users.
+ */
+public class TicketArchiver implements Closeable {
+
+    private static final Logger logger = LogManager.getLogger("TicketArchiver");
+
+    public static final int DEFAULT_MIN_AGE_DAYS = 90;
+    public static final int DEFAULT_BATCH_SIZE = 500;
+    public static final long DEFAULT_PAUSE_MILLIS = 100;
+    private static final String HISTORY_TABLE_PREFIX = "ticket_history_";
+    private static final DateTimeFormatter MONTH_FORMAT = DateTimeFormatter.ofPattern("yyyyMM");
+
+    private final DataBaseConfig dataBaseConfig;
+    private final int minAgeDays;
+    private final int batchSize;
+    private final long pauseMillis;
+    //history tables known to exist, read again from the schema whenever one is missing
+    private final SortedSet<String> historyTables = new TreeSet<>();
+    private final Object schedulerLock = new Object();
+    private ScheduledExecutorService scheduler;
+
+    public TicketArchiver(DataBaseConfig dataBaseConfig, int minAgeDays, int batchSize, long pauseMillis) {
+        if (minAgeDays < 0 || batchSize < 1 || pauseMillis < 0) {
+            throw new IllegalArgumentException("Invalid archive settings: minAgeDays=" + minAgeDays
+                    + " batchSize=" + batchSize + " pauseMillis=" + pauseMillis);
+        }
+        this.dataBaseConfig = dataBaseConfig;
+        this.minAgeDays = minAgeDays;
+        this.batchSize = batchSize;
+        this.pauseMillis = pauseMillis;
+    }
+
+    /**
+     * Reads archive.minAgeDays, archive.batchSize and archive.pauseMillis from the properties file of dataBaseConfig.
+     */
+    public static TicketArchiver fromProperties(DataBaseConfig dataBaseConfig) throws IOException {
+        Properties props = dataBaseConfig.getProperties();
+        return new TicketArchiver(dataBaseConfig,
+                Integer.parseInt(props.getProperty("archive.minAgeDays", String.valueOf(DEFAULT_MIN_AGE_DAYS))),
+                Integer.parseInt(props.getProperty("archive.batchSize", String.valueOf(DEFAULT_BATCH_SIZE))),
+                Long.parseLong(props.getProperty("archive.pauseMillis", String.valueOf(DEFAULT_PAUSE_MILLIS))));
+    }
+
+    /**
+     * @return the table holding the tickets that left during this month once archived
+     */
+    public static String getHistoryTable(YearMonth month) {
+        return HISTORY_TABLE_PREFIX + month.format(MONTH_FORMAT);
+    }
+
+    /**
+     * @return the month of exit of the tickets in this ticket_history_YYYYMM table
+     */
+    public static YearMonth getHistoryMonth(String historyTable) {
+        return YearMonth.parse(historyTable.substring(HISTORY_TABLE_PREFIX.length()), MONTH_FORMAT);
+    }
+
+    /**
+     * Archives every ticket closed more than minAgeDays ago.
+     * @return the number of tickets archived
+     */
+    public int archive() throws Exception {
+        return archive(LocalDateTime.now().minusDays(minAgeDays));
+    }
+
+    /**
+     * Archives every ticket that left before the cutoff, except the one with the highest ID.
+     * @return the number of tickets archived
+     */
+    public synchronized int archive(LocalDateTime cutoff) throws Exception {
+        int archived = 0;
+        while (true) {
+            List<Ticket> batch = readBatch(cutoff);
+            if (batch.isEmpty()) {
+                break;
+            }
+            Map<YearMonth, List<Ticket>> months = new TreeMap<>();
+            for (Ticket ticket : batch) {
+                YearMonth month = YearMonth.from(ticket.getOutTime().toInstant().atZone(ZoneId.systemDefault()));
+                months.computeIfAbsent(month, key -> new ArrayList<>()).add(ticket);
+            }
+            //DDL commits implicitly in MySQL: tables are created before the batch transaction starts
+            createHistoryTables(months.keySet());
+            dataBaseConfig.inTransaction(() -> moveBatch(months));
+            archived += batch.size();
+            if (batch.size() < batchSize) {
+                break;
+            }
+            Thread.sleep(pauseMillis);
+        }
+        logger.info("Archived " + archived + " tickets closed before " + cutoff);
+        return archived;
+    }
+
+    /**
+     * Archives every intervalMinutes on a background thread, until closed. Failures are logged and retried next time.
+     */
+    public void schedule(long intervalMinutes) {
+        synchronized (schedulerLock) {
+            if (scheduler != null) {
+                throw new IllegalStateException("Archiving is already scheduled");
+            }
+            scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "ticket-archiver");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleWithFixedDelay(() -> {
+                try {
+                    archive();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (Exception e) {
+                    logger.error("Error archiving tickets", e);
+                }
+            }, intervalMinutes, intervalMinutes, TimeUnit.MINUTES);
+        }
+    }
+
+    /**
+     * Stops the scheduled archiving, interrupting a run between two batches.
+     */
+    @Override
+    public void close() {
+        ScheduledExecutorService running;
+        synchronized (schedulerLock) {
+            running = scheduler;
+            scheduler = null;
+        }
+        if (running != null) {
+            running.shutdownNow();
+        }
+    }
+
+    private List<Ticket> readBatch(LocalDateTime cutoff) throws Exception {
+        List<Ticket> batch = new ArrayList<>(batchSize);
+        Connection con = null;
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            ps = con.prepareStatement(DBConstants.GET_TICKETS_TO_ARCHIVE);
+            ps.setTimestamp(1, Timestamp.valueOf(cutoff));
+            ps.setInt(2, batchSize);
+            rs = ps.executeQuery();
+            while (rs.next()) {
+                Ticket ticket = new Ticket();
+                ticket.setId(rs.getInt(1));
+                ticket.setParkingSpot(new ParkingSpot(rs.getInt(2), null, false));
+                ticket.setVehicleRegNumber(rs.getString(3));
+                ticket.setPrice(rs.getDouble(4));
+                ticket.setInTime(rs.getTimestamp(5));
+                ticket.setOutTime(rs.getTimestamp(6));
+                batch.add(ticket);
+            }
+            return batch;
+        } finally {
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    private void createHistoryTables(Iterable<YearMonth> months) throws Exception {
+        List<String> missingTables = new ArrayList<>();
+        for (YearMonth month : months) {
+            if (!historyTables.contains(getHistoryTable(month))) {
+                missingTables.add(getHistoryTable(month));
+            }
+        }
+        if (missingTables.isEmpty()) {
+            return;
+        }
+        Connection con = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            loadHistoryTables(con);
+            missingTables.removeAll(historyTables);
+            for (String table : missingTables) {
+                execute(con, String.format(DBConstants.CREATE_TICKET_HISTORY_TABLE, table));
+                logger.info("Created ticket history table " + table);
+            }
+            //another instance may have created some meanwhile: the view is built from the schema, not from memory
+            loadHistoryTables(con);
+            execute(con, getTicketAllView());
+        } finally {
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    private void loadHistoryTables(Connection con) throws SQLException {
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            ps = con.prepareStatement(DBConstants.GET_TICKET_HISTORY_TABLES);
+            rs = ps.executeQuery();
+            historyTables.clear();
+            while (rs.next()) {
+                historyTables.add(rs.getString(1));
+            }
+        } finally {
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+        }
+    }
+
+    private String getTicketAllView() {
+        StringBuilder sql = new StringBuilder(DBConstants.CREATE_TICKET_ALL_VIEW);
+        for (String table : historyTables) {
+            sql.append(" union all select ").append(DBConstants.TICKET_COLUMNS).append(" from ").append(table);
+        }
+        return sql.toString();
+    }
+
+    private int moveBatch(Map<YearMonth, List<Ticket>> months) throws Exception {
+        Connection con = null;
+        PreparedStatement ps = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            for (Map.Entry<YearMonth, List<Ticket>> month : months.entrySet()) {
+                ps = con.prepareStatement(String.format(DBConstants.ARCHIVE_TICKET, getHistoryTable(month.getKey())));
+                for (Ticket ticket : month.getValue()) {
+                    ps.setInt(1, ticket.getId());
+                    ps.setInt(2, ticket.getParkingSpot().getId());
+                    ps.setString(3, ticket.getVehicleRegNumber());
+                    ps.setDouble(4, ticket.getPrice());
+                    ps.setTimestamp(5, new Timestamp(ticket.getInTime().getTime()));
+                    ps.setTimestamp(6, new Timestamp(ticket.getOutTime().getTime()));
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+                dataBaseConfig.closePreparedStatement(ps);
+                ps = null;
+            }
+            ps = con.prepareStatement(DBConstants.SAVE_ARCHIVED_VEHICLE);
+            for (List<Ticket> tickets : months.values()) {
+                for (Ticket ticket : tickets) {
+                    ps.setString(1, ticket.getVehicleRegNumber());
+                    ps.addBatch();
+                }
+            }
+            ps.executeBatch();
+            dataBaseConfig.closePreparedStatement(ps);
+            ps = null;
+            int moved = 0;
+            ps = con.prepareStatement(DBConstants.DELETE_TICKET);
+            for (List<Ticket> tickets : months.values()) {
+                for (Ticket ticket : tickets) {
+                    ps.setInt(1, ticket.getId());
+                    ps.addBatch();
+                    moved++;
+                }
+            }
+            ps.executeBatch();
+            return moved;
+        } finally {
+            dataBaseConfig.closePreparedStatement(ps);
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    private static void execute(Connection con, String sql) throws SQLException {
+        try (Statement statement = con.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streams historical tickets from CSV into the ticket table, one TicketDAO batch at a time,
+ * so memory use does not depend on the size of the file.
+ * <p>
+ * Expected columns, after a header line: PARKING_NUMBER,TYPE,VEHICLE_REG_NUMBER,PRICE,IN_TIME,OUT_TIME
+ * with times as yyyy-MM-dd HH:mm:ss and an empty OUT_TIME for a vehicle still parked.
+ */
+public class TicketCsvImporter {
+
+    private static final Logger logger = LogManager.getLogger("TicketCsvImporter");
+
+    private static final DateTimeFormatter DATE_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final int COLUMNS = 6;
+
+    private final TicketDAO ticketDAO;
+    private long rejectedLines;
+
+    public TicketCsvImporter(TicketDAO ticketDAO) {
+        this.ticketDAO = ticketDAO;
+    }
+
+    /**
+     * Malformed lines are logged and skipped; a batch the DB refuses stops the import.
+     * @return the number of tickets imported
+     */
+    public long importTickets(Reader csv) throws IOException {
+        int batchSize = ticketDAO.getBatchSize();
+        List<Ticket> batch = new ArrayList<>(batchSize);
+        BufferedReader reader = (csv instanceof BufferedReader) ? (BufferedReader) csv : new BufferedReader(csv);
+        long imported = 0;
+        rejectedLines = 0;
+        //header
+        reader.readLine();
+        String line;
+        int lineNumber = 1;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            try {
+                batch.add(parse(line));
+            } catch (RuntimeException e) {
+                rejectedLines++;
+                logger.error("Skipping line " + lineNumber + ": " + e.getMessage());
+                continue;
+            }
+            if (batch.size() == batchSize) {
+                if (!save(batch)) {
+                    return imported;
+                }
+                imported += batch.size();
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty() && save(batch)) {
+            imported += batch.size();
+        }
+        logger.info("Imported " + imported + " tickets, skipped " + rejectedLines + " lines");
+        return imported;
+    }
+
+    public long getRejectedLines() {
+        return rejectedLines;
+    }
+
+    private boolean save(List<Ticket> batch) {
+        int saved = ticketDAO.saveTickets(batch);
+        if (saved != batch.size()) {
+            logger.error("Import stopped: the database refused a batch of " + batch.size() + " tickets");
+            return false;
+        }
+        return true;
+    }
+
+    static Ticket parse(String line) {
+        String[] columns = line.split(",", -1);
+        if (columns.length != COLUMNS) {
+            throw new IllegalArgumentException("expected " + COLUMNS + " columns, found " + columns.length);
+        }
+        Ticket ticket = new Ticket();
+        ParkingType parkingType = ParkingType.valueOf(columns[1].trim());
+        ticket.setParkingSpot(new ParkingSpot(Integer.parseInt(columns[0].trim()), parkingType, false));
+        String vehicleRegNumber = columns[2].trim();
+        if (vehicleRegNumber.isEmpty()) {
+            throw new IllegalArgumentException("missing vehicle registration number");
+        }
+        ticket.setVehicleRegNumber(vehicleRegNumber);
+        ticket.setPrice(columns[3].trim().isEmpty() ? 0 : Double.parseDouble(columns[3].trim()));
+        ticket.setInTime(Timestamp.valueOf(LocalDateTime.parse(columns[4].trim(), DATE_TIME_FORMAT)));
+        String outTime = columns[5].trim();
+        ticket.setOutTime(outTime.isEmpty() ? null : Timestamp.valueOf(LocalDateTime.parse(outTime, DATE_TIME_FORMAT)));
+        return ticket;
+    }
+}
@@ -0,0 +1,255 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.constants.DBConstants;
+import com.parkit.parkingsystem.constants.ParkingType;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Revenue and occupancy hours of closed tickets per day or month of exit and per parking type, written as CSV:
+ * PERIOD,TYPE,TICKETS,REVENUE,OCCUPANCY_HOURS
+ * <p>
+ * Tickets are read one month of exit at a time, from the ticket_history_YYYYMM table of that month and then from
+ * the ticket table, each through a forward-only, read-only cursor over a range of its OUT_TIME index: nothing is
+ * sorted, and a month is written out before the next one is read, so memory use is the same for a day or for ten
+ * years of tickets. The queries are plain InnoDB consistent reads of one snapshot, so they take no lock the
+ * gates could wait on.
+ */
+public class UsageReport {
+
+    private static final Logger logger = LogManager.getLogger("UsageReport");
+
+    /**
+     * Makes MySQL Connector/J send rows one at a time instead of the whole result. A positive fetch size
+     * streams in blocks of that many rows, but only with useCursorFetch=true in jdbc.url.
+     */
+    public static final int DEFAULT_FETCH_SIZE = Integer.MIN_VALUE;
+    public static final String HEADER = "PERIOD,TYPE,TICKETS,REVENUE,OCCUPANCY_HOURS";
+    private static final long MILLIS_PER_HOUR = 60 * 60 * 1000;
+
+    public enum Period {
+        DAY(DateTimeFormatter.ofPattern("yyyy-MM-dd")),
+        MONTH(DateTimeFormatter.ofPattern("yyyy-MM"));
+
+        private final DateTimeFormatter format;
+
+        Period(DateTimeFormatter format) {
+            this.format = format;
+        }
+
+        LocalDate startOf(LocalDate day) {
+            return this == MONTH ? day.withDayOfMonth(1) : day;
+        }
+    }
+
+    private static final class Usage {
+
+        private long tickets;
+        private long revenueCents;
+        private long occupancyMillis;
+    }
+
+    private final DataBaseConfig dataBaseConfig;
+    private final int fetchSize;
+
+    public UsageReport(DataBaseConfig dataBaseConfig) {
+        this(dataBaseConfig, DEFAULT_FETCH_SIZE);
+    }
+
+    public UsageReport(DataBaseConfig dataBaseConfig, int fetchSize) {
+        this.dataBaseConfig = dataBaseConfig;
+        this.fetchSize = fetchSize;
+    }
+
+    /**
+     * Usage: UsageReport DAY|MONTH &lt;from yyyy-MM-dd&gt; &lt;to yyyy-MM-dd, excluded&gt; [output file, standard output by default]
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.err.println("Usage: UsageReport DAY|MONTH <from yyyy-MM-dd> <to yyyy-MM-dd> [output.csv]");
+            System.exit(2);
+        }
+        Period period = Period.valueOf(args[0].toUpperCase());
+        LocalDateTime from = LocalDate.parse(args[1]).atStartOfDay();
+        LocalDateTime to = LocalDate.parse(args[2]).atStartOfDay();
+        try (Writer out = args.length > 3 ? Files.newBufferedWriter(Paths.get(args[3]), StandardCharsets.UTF_8)
+                : new OutputStreamWriter(System.out, StandardCharsets.UTF_8)) {
+            new UsageReport(new DataBaseConfig()).write(period, from, to, out);
+        }
+    }
+
+    /**
+     * Writes one line per period and parking type with at least one exit, oldest period first, parking types
+     * in declaration order. Tickets whose parking type is unknown are left out.
+     * @param from first exit time included
+     * @param to first exit time excluded
+     * @return the number of tickets reported
+     */
+    public long write(Period period, LocalDateTime from, LocalDateTime to, Writer csv) throws Exception {
+        Writer out = (csv instanceof BufferedWriter) ? csv : new BufferedWriter(csv);
+        out.write(HEADER);
+        out.write('\n');
+        //reported, skipped
+        long[] counts = new long[2];
+        //one transaction: every table is read from the same snapshot, even while the archiver moves tickets
+        dataBaseConfig.inTransaction(() -> {
+            Connection con = null;
+            try {
+                con = dataBaseConfig.getConnection();
+                SortedSet<String> historyTables = readHistoryTables(con);
+                YearMonth[] exits = readExitMonths(con, historyTables);
+                if (exits == null || !from.isBefore(to)) {
+                    return null;
+                }
+                YearMonth first = max(YearMonth.from(from), exits[0]);
+                YearMonth last = min(YearMonth.from(to.minusNanos(1)), exits[1]);
+                for (YearMonth month = first; !month.isAfter(last); month = month.plusMonths(1)) {
+                    LocalDateTime monthStart = max(from, month.atDay(1).atStartOfDay());
+                    LocalDateTime monthEnd = min(to, month.plusMonths(1).atDay(1).atStartOfDay());
+                    //a month is in its history table, then in ticket for the tickets not archived yet
+                    Map<LocalDate, Map<ParkingType, Usage>> periods = new TreeMap<>();
+                    String historyTable = TicketArchiver.getHistoryTable(month);
+                    if (historyTables.contains(historyTable)) {
+                        readTickets(con, historyTable, period, monthStart, monthEnd, periods, counts);
+                    }
+                    readTickets(con, "ticket", period, monthStart, monthEnd, periods, counts);
+                    for (Map.Entry<LocalDate, Map<ParkingType, Usage>> entry : periods.entrySet()) {
+                        writePeriod(out, period, entry.getKey(), entry.getValue());
+                    }
+                }
+                return null;
+            } finally {
+                dataBaseConfig.closeConnection(con);
+            }
+        });
+        out.flush();
+        logger.info("Reported " + counts[0] + " tickets from " + from + " to " + to + ", skipped " + counts[1]);
+        return counts[0];
+    }
+
+    private SortedSet<String> readHistoryTables(Connection con) throws SQLException {
+        SortedSet<String> historyTables = new TreeSet<>();
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            ps = con.prepareStatement(DBConstants.GET_TICKET_HISTORY_TABLES);
+            rs = ps.executeQuery();
+            while (rs.next()) {
+                historyTables.add(rs.getString(1));
+            }
+            return historyTables;
+        } finally {
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+        }
+    }
+
+    /**
+     * @return the months of the first and last exits, null if no ticket ever left
+     */
+    private YearMonth[] readExitMonths(Connection con, SortedSet<String> historyTables) throws SQLException {
+        YearMonth firstExit = historyTables.isEmpty() ? null : TicketArchiver.getHistoryMonth(historyTables.first());
+        YearMonth lastExit = historyTables.isEmpty() ? null : TicketArchiver.getHistoryMonth(historyTables.last());
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            ps = con.prepareStatement(DBConstants.GET_TICKET_EXIT_RANGE);
+            rs = ps.executeQuery();
+            if (rs.next() && rs.getTimestamp(1) != null) {
+                YearMonth first = YearMonth.from(rs.getTimestamp(1).toLocalDateTime());
+                YearMonth last = YearMonth.from(rs.getTimestamp(2).toLocalDateTime());
+                firstExit = firstExit == null ? first : min(firstExit, first);
+                lastExit = lastExit == null ? last : max(lastExit, last);
+            }
+        } finally {
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+        }
+        return firstExit == null ? null : new YearMonth[] {firstExit, lastExit};
+    }
+
+    private void readTickets(Connection con, String table, Period period, LocalDateTime from, LocalDateTime to,
+                             Map<LocalDate, Map<ParkingType, Usage>> periods, long[] counts) throws SQLException {
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            //three arguments: a one-shot statement, the pool does not cache it with this fetch size
+            ps = con.prepareStatement(String.format(DBConstants.GET_CLOSED_TICKETS_BY_EXIT, table),
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(fetchSize);
+            ps.setTimestamp(1, Timestamp.valueOf(from));
+            ps.setTimestamp(2, Timestamp.valueOf(to));
+            rs = ps.executeQuery();
+            while (rs.next()) {
+                ParkingType parkingType = parkingType(rs.getString(1));
+                if (parkingType == null) {
+                    counts[1]++;
+                    continue;
+                }
+                Timestamp inTime = rs.getTimestamp(3);
+                Timestamp outTime = rs.getTimestamp(4);
+                LocalDate ticketPeriod = period.startOf(outTime.toLocalDateTime().toLocalDate());
+                Usage usage = periods.computeIfAbsent(ticketPeriod, key -> new EnumMap<>(ParkingType.class))
+                        .computeIfAbsent(parkingType, type -> new Usage());
+                usage.tickets++;
+                usage.revenueCents += Math.round(rs.getDouble(2) * 100);
+                usage.occupancyMillis += outTime.getTime() - inTime.getTime();
+                counts[0]++;
+            }
+        } finally {
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+        }
+    }
+
+    private static <T extends Comparable<? super T>> T min(T a, T b) {
+        return a.compareTo(b) <= 0 ? a : b;
+    }
+
+    private static <T extends Comparable<? super T>> T max(T a, T b) {
+        return a.compareTo(b) >= 0 ? a : b;
+    }
+
+    private static void writePeriod(Writer out, Period period, LocalDate periodStart, Map<ParkingType, Usage> usages) throws IOException {
+        for (Map.Entry<ParkingType, Usage> entry : usages.entrySet()) {
+            Usage usage = entry.getValue();
+            out.write(periodStart.format(period.format) + "," + entry.getKey() + "," + usage.tickets + ","
+                    + BigDecimal.valueOf(usage.revenueCents, 2).toPlainString() + ","
+                    + BigDecimal.valueOf(usage.occupancyMillis).divide(BigDecimal.valueOf(MILLIS_PER_HOUR), 2, RoundingMode.HALF_UP).toPlainString());
+            out.write('\n');
+        }
+    }
+
+    private static ParkingType parkingType(String parkingType) {
+        try {
+            return ParkingType.valueOf(parkingType);
+        } catch (IllegalArgumentException | NullPointerException e) {
+            return null;
+        }
+    }
+}
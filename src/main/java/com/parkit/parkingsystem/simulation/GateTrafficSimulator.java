@@ -0,0 +1,303 @@
+package com.parkit.parkingsystem.simulation;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.config.SchemaMigrator;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.InMemoryParkingSpotStore;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.ParkingSpotStore;
+import com.parkit.parkingsystem.dao.ParkingStores;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.dao.TicketStore;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.ParkingService;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.Date;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generates arrivals and departures following a TrafficProfile and sends them through the entry and exit flows
+ * of ParkingService that the gate server uses, one thread per gate. Vehicles still parked when the simulated day
+ * ends leave at once, so that the lot is empty again after a run.
+ */
+public class GateTrafficSimulator {
+
+    private static final Logger logger = LogManager.getLogger("GateTrafficSimulator");
+    private static final int REGULAR_CUSTOMER_PICKS = 8;
+    //arrivals are queued this early and released by the delay queue: sleeping per arrival would lag at high rates
+    private static final long ARRIVAL_LOOKAHEAD_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private final ParkingSpotStore parkingSpotStore;
+    private final TicketStore ticketStore;
+    private final TrafficProfile profile;
+
+    private final DelayQueue<GateEvent> events = new DelayQueue<>();
+    private final Map<Integer, String> occupiedSpots = new ConcurrentHashMap<>();
+    private final Set<String> parkedRegularCustomers = ConcurrentHashMap.newKeySet();
+    private final AtomicLong pendingArrivals = new AtomicLong();
+    private final AtomicLong newCustomers = new AtomicLong();
+    private final String runId = Long.toString(System.currentTimeMillis() % 100_000, 36).toUpperCase();
+    private SimulationReport report;
+
+    public GateTrafficSimulator(ParkingSpotStore parkingSpotStore, TicketStore ticketStore, TrafficProfile profile) {
+        this.parkingSpotStore = parkingSpotStore;
+        this.ticketStore = ticketStore;
+        this.profile = profile;
+    }
+
+    /**
+     * Usage: GateTrafficSimulator [profile.properties], see TrafficProfile.fromProperties for the keys.
+     * Runs against the database of DataBaseProperties.properties, or in memory with simulation.store=memory
+     * on a lot of simulation.layout (see InMemoryParkingSpotStore.parseLayout).
+     */
+    public static void main(String[] args) throws Exception {
+        Properties props = new Properties();
+        if (args.length > 0) {
+            try (InputStream in = new FileInputStream(args[0])) {
+                props.load(in);
+            }
+        }
+        ParkingStores stores;
+        if ("memory".equals(props.getProperty("simulation.store"))) {
+            stores = ParkingStores.inMemory(props.getProperty("simulation.layout", InMemoryParkingSpotStore.DEFAULT_LAYOUT));
+        } else {
+            DataBaseConfig dataBaseConfig = new DataBaseConfig();
+            new SchemaMigrator(dataBaseConfig).migrate();
+            ParkingSpotDAO parkingSpotDAO = new ParkingSpotDAO();
+            parkingSpotDAO.loadParkingSpotIndex();
+            TicketDAO ticketDAO = new TicketDAO();
+            ticketDAO.loadRegularUserIndex();
+            ticketDAO.loadActiveSessionIndex();
+            stores = new ParkingStores(ticketDAO, parkingSpotDAO, null);
+        }
+        SimulationReport report = new GateTrafficSimulator(stores.getParkingSpotStore(), stores.getTicketStore(),
+                TrafficProfile.fromProperties(props)).run();
+        System.out.println(report);
+        System.exit(report.getDoubleAllocations() == 0 ? 0 : 1);
+    }
+
+    public synchronized SimulationReport run() throws InterruptedException {
+        report = new SimulationReport();
+        events.clear();
+        occupiedSpots.clear();
+        parkedRegularCustomers.clear();
+        pendingArrivals.set(0);
+        ExecutorService gates = Executors.newFixedThreadPool(profile.getGates());
+        long start = System.nanoTime();
+        try {
+            for (int gate = 0; gate < profile.getGates(); gate++) {
+                gates.execute(this::runGate);
+            }
+            generateArrivals(start);
+            leaveNow();
+            for (int gate = 0; gate < profile.getGates(); gate++) {
+                events.put(GateEvent.closeGate());
+            }
+            gates.shutdown();
+            while (!gates.awaitTermination(1, TimeUnit.SECONDS)) {
+                logger.info("Waiting for gates to finish, " + events.size() + " events left");
+            }
+        } finally {
+            gates.shutdownNow();
+        }
+        report.finished(System.nanoTime() - start);
+        return report;
+    }
+
+    /**
+     * Arrivals of a non-homogeneous Poisson process, drawn at the peak rate and kept with probability rate/peak.
+     */
+    private void generateArrivals(long start) throws InterruptedException {
+        Random random = new Random(profile.getSeed());
+        double peakPerMinute = profile.getMaxArrivalsPerHour() / 60;
+        if (peakPerMinute <= 0) {
+            return;
+        }
+        double minute = 0;
+        while (true) {
+            minute += -Math.log(1 - random.nextDouble()) / peakPerMinute;
+            if (minute >= profile.getDurationMinutes()) {
+                return;
+            }
+            if (random.nextDouble() * peakPerMinute * 60 > profile.getArrivalsPerHour(minute)) {
+                continue;
+            }
+            ParkingType parkingType = random.nextDouble() < profile.getCarShare() ? ParkingType.CAR : ParkingType.BIKE;
+            boolean regular = random.nextDouble() < profile.getRegularShare();
+            double medianMinutes = parkingType == ParkingType.CAR ? profile.getCarDwellMedianMinutes() : profile.getBikeDwellMedianMinutes();
+            double dwellMinutes = medianMinutes * Math.exp(profile.getDwellSigma() * random.nextGaussian());
+            long due = start + profile.toRealNanos(minute);
+            long wait = due - System.nanoTime() - ARRIVAL_LOOKAHEAD_NANOS;
+            if (wait > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+            pendingArrivals.incrementAndGet();
+            report.arrival();
+            events.put(GateEvent.arrival(due, parkingType, regular, profile.toRealNanos(dwellMinutes)));
+        }
+    }
+
+    /**
+     * Once every arrival went through a gate, brings the departures still ahead forward to now.
+     */
+    private void leaveNow() throws InterruptedException {
+        while (pendingArrivals.get() > 0) {
+            Thread.sleep(10);
+        }
+        long now = System.nanoTime();
+        for (GateEvent event : events.toArray(new GateEvent[0])) {
+            //a gate may have taken it meanwhile
+            if (events.remove(event)) {
+                events.put(event.dueAt(now));
+            }
+        }
+    }
+
+    private void runGate() {
+        ParkingService parkingService = new ParkingService(null, parkingSpotStore, ticketStore);
+        try {
+            while (true) {
+                GateEvent event = events.take();
+                if (event.closesGate()) {
+                    return;
+                }
+                if (event.ticket == null) {
+                    try {
+                        enter(parkingService, event);
+                    } finally {
+                        pendingArrivals.decrementAndGet();
+                    }
+                } else {
+                    exit(parkingService, event);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void enter(ParkingService parkingService, GateEvent event) {
+        String vehicleRegNumber = event.regular ? pickRegularCustomer() : null;
+        if (vehicleRegNumber == null) {
+            vehicleRegNumber = "SIM" + runId + "N" + newCustomers.incrementAndGet();
+        }
+        Ticket ticket;
+        try {
+            ticket = parkingService.processIncomingVehicle(event.parkingType, vehicleRegNumber, new Date());
+        } catch (Exception e) {
+            logger.error("Entry of " + vehicleRegNumber + " failed", e);
+            report.entryFailed();
+            parkedRegularCustomers.remove(vehicleRegNumber);
+            return;
+        }
+        long latency = System.nanoTime() - event.due;
+        if (ticket == null) {
+            report.allocationFailed();
+            parkedRegularCustomers.remove(vehicleRegNumber);
+            return;
+        }
+        report.entered(latency);
+        String previous = occupiedSpots.putIfAbsent(ticket.getParkingSpot().getId(), vehicleRegNumber);
+        if (previous != null) {
+            logger.error("Spot " + ticket.getParkingSpot().getId() + " given to " + vehicleRegNumber + " while " + previous + " is parked on it");
+            report.doubleAllocated();
+        }
+        events.put(GateEvent.departure(System.nanoTime() + event.dwellNanos, ticket));
+    }
+
+    private void exit(ParkingService parkingService, GateEvent event) {
+        String vehicleRegNumber = event.ticket.getVehicleRegNumber();
+        //before the spot is freed: once it is, another gate may hand it out again
+        occupiedSpots.remove(event.ticket.getParkingSpot().getId(), vehicleRegNumber);
+        try {
+            parkingService.processExitingVehicle(vehicleRegNumber, new Date());
+            report.exited(System.nanoTime() - event.due);
+        } catch (Exception e) {
+            logger.error("Exit of " + vehicleRegNumber + " failed", e);
+            report.exitFailed();
+        } finally {
+            parkedRegularCustomers.remove(vehicleRegNumber);
+        }
+    }
+
+    /**
+     * @return a regular customer not parked right now, marked as parked, or null if the few picked were all in
+     */
+    private String pickRegularCustomer() {
+        if (profile.getRegularCustomers() <= 0) {
+            return null;
+        }
+        for (int i = 0; i < REGULAR_CUSTOMER_PICKS; i++) {
+            String vehicleRegNumber = "SIMREG" + ThreadLocalRandom.current().nextInt(profile.getRegularCustomers());
+            if (parkedRegularCustomers.add(vehicleRegNumber)) {
+                return vehicleRegNumber;
+            }
+        }
+        return null;
+    }
+
+    private static final class GateEvent implements Delayed {
+
+        private final long due;
+        private final ParkingType parkingType;
+        private final boolean regular;
+        private final long dwellNanos;
+        private final Ticket ticket;
+
+        private GateEvent(long due, ParkingType parkingType, boolean regular, long dwellNanos, Ticket ticket) {
+            this.due = due;
+            this.parkingType = parkingType;
+            this.regular = regular;
+            this.dwellNanos = dwellNanos;
+            this.ticket = ticket;
+        }
+
+        static GateEvent arrival(long due, ParkingType parkingType, boolean regular, long dwellNanos) {
+            return new GateEvent(due, parkingType, regular, dwellNanos, null);
+        }
+
+        static GateEvent departure(long due, Ticket ticket) {
+            return new GateEvent(due, null, false, 0, ticket);
+        }
+
+        /**
+         * Due just after everything already queued for now, so that gates close once the lot is empty.
+         */
+        static GateEvent closeGate() {
+            return new GateEvent(System.nanoTime() + 1, null, false, 0, null);
+        }
+
+        boolean closesGate() {
+            return parkingType == null && ticket == null;
+        }
+
+        GateEvent dueAt(long newDue) {
+            return new GateEvent(newDue, parkingType, regular, dwellNanos, ticket);
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(due - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(due, ((GateEvent) other).due);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.parkit.parkingsystem.simulation;
+
+import com.parkit.parkingsystem.util.LatencyHistogram;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Outcome of a simulation run. Latencies are counted from the moment the vehicle reached the gate, so time spent
+ * waiting for a busy gate is part of them.
+ */
+public class SimulationReport {
+
+    private final LatencyHistogram entryLatency = new LatencyHistogram();
+    private final LatencyHistogram exitLatency = new LatencyHistogram();
+    private final AtomicLong arrivals = new AtomicLong();
+    private final AtomicLong allocationFailures = new AtomicLong();
+    private final AtomicLong doubleAllocations = new AtomicLong();
+    private final AtomicLong entryErrors = new AtomicLong();
+    private final AtomicLong exitErrors = new AtomicLong();
+    private volatile long elapsedNanos;
+
+    void arrival() {
+        arrivals.incrementAndGet();
+    }
+
+    void entered(long latencyNanos) {
+        entryLatency.record(latencyNanos);
+    }
+
+    void exited(long latencyNanos) {
+        exitLatency.record(latencyNanos);
+    }
+
+    void allocationFailed() {
+        allocationFailures.incrementAndGet();
+    }
+
+    void doubleAllocated() {
+        doubleAllocations.incrementAndGet();
+    }
+
+    void entryFailed() {
+        entryErrors.incrementAndGet();
+    }
+
+    void exitFailed() {
+        exitErrors.incrementAndGet();
+    }
+
+    void finished(long elapsedNanos) {
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public LatencyHistogram getEntryLatency() {
+        return entryLatency;
+    }
+
+    public LatencyHistogram getExitLatency() {
+        return exitLatency;
+    }
+
+    public long getArrivals() {
+        return arrivals.get();
+    }
+
+    public long getEntries() {
+        return entryLatency.getCount();
+    }
+
+    public long getExits() {
+        return exitLatency.getCount();
+    }
+
+    /**
+     * @return entries refused because no spot of the vehicle type was free
+     */
+    public long getAllocationFailures() {
+        return allocationFailures.get();
+    }
+
+    /**
+     * @return entries given a spot that another vehicle still occupied: must stay 0
+     */
+    public long getDoubleAllocations() {
+        return doubleAllocations.get();
+    }
+
+    public long getEntryErrors() {
+        return entryErrors.get();
+    }
+
+    public long getExitErrors() {
+        return exitErrors.get();
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * @return entries and exits per real second
+     */
+    public double getThroughput() {
+        return elapsedNanos == 0 ? 0 : (getEntries() + getExits()) / (elapsedNanos / 1e9);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d arrivals in %.1f s: %d entries, %d exits, %.1f operations/s%n"
+                        + "entry latency p50 %.2f ms, p99 %.2f ms, p99.9 %.2f ms, max %.2f ms%n"
+                        + "exit latency p50 %.2f ms, p99 %.2f ms, p99.9 %.2f ms, max %.2f ms%n"
+                        + "%d allocation failures (lot full), %d double allocations, %d entry errors, %d exit errors",
+                getArrivals(), elapsedNanos / 1e9, getEntries(), getExits(), getThroughput(),
+                millis(entryLatency.getValueAtPercentile(50)), millis(entryLatency.getValueAtPercentile(99)),
+                millis(entryLatency.getValueAtPercentile(99.9)), millis(entryLatency.getMax()),
+                millis(exitLatency.getValueAtPercentile(50)), millis(exitLatency.getValueAtPercentile(99)),
+                millis(exitLatency.getValueAtPercentile(99.9)), millis(exitLatency.getMax()),
+                getAllocationFailures(), getDoubleAllocations(), getEntryErrors(), getExitErrors());
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+}
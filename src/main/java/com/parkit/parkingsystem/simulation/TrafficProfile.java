@@ -0,0 +1,193 @@
+package com.parkit.parkingsystem.simulation;
+
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * What the simulated day looks like: arrival rate over time, vehicle mix, share of regular customers and how long
+ * vehicles stay. Times are simulated minutes; timeScale is how many simulated seconds pass in one real second.
+ */
+public class TrafficProfile {
+
+    private final NavigableMap<Double, Double> arrivalsPerHour = new TreeMap<>();
+    private int gates = 8;
+    private double durationMinutes = 480;
+    private double timeScale = 60;
+    private double carShare = 0.8;
+    private double regularShare = 0.3;
+    private int regularCustomers = 200;
+    private double carDwellMedianMinutes = 90;
+    private double bikeDwellMedianMinutes = 45;
+    private double dwellSigma = 0.8;
+    private long seed = 42;
+
+    /**
+     * @return a Saturday: quiet morning, rush from late morning to mid afternoon, then quiet again
+     */
+    public static TrafficProfile saturdayRush() {
+        TrafficProfile profile = new TrafficProfile();
+        profile.setArrivalsPerHour("0:60,90:300,180:900,300:600,420:120,480:60");
+        return profile;
+    }
+
+    /**
+     * Reads the simulation.* keys, starting from {@link #saturdayRush()} for the missing ones.
+     */
+    public static TrafficProfile fromProperties(Properties props) {
+        TrafficProfile profile = saturdayRush();
+        if (props.containsKey("simulation.arrivalsPerHour")) {
+            profile.setArrivalsPerHour(props.getProperty("simulation.arrivalsPerHour"));
+        }
+        profile.setGates(Integer.parseInt(props.getProperty("simulation.gates", String.valueOf(profile.gates))));
+        profile.setDurationMinutes(Double.parseDouble(props.getProperty("simulation.durationMinutes", String.valueOf(profile.durationMinutes))));
+        profile.setTimeScale(Double.parseDouble(props.getProperty("simulation.timeScale", String.valueOf(profile.timeScale))));
+        profile.setCarShare(Double.parseDouble(props.getProperty("simulation.carShare", String.valueOf(profile.carShare))));
+        profile.setRegularShare(Double.parseDouble(props.getProperty("simulation.regularShare", String.valueOf(profile.regularShare))));
+        profile.setRegularCustomers(Integer.parseInt(props.getProperty("simulation.regularCustomers", String.valueOf(profile.regularCustomers))));
+        profile.setCarDwellMedianMinutes(Double.parseDouble(props.getProperty("simulation.carDwellMedianMinutes", String.valueOf(profile.carDwellMedianMinutes))));
+        profile.setBikeDwellMedianMinutes(Double.parseDouble(props.getProperty("simulation.bikeDwellMedianMinutes", String.valueOf(profile.bikeDwellMedianMinutes))));
+        profile.setDwellSigma(Double.parseDouble(props.getProperty("simulation.dwellSigma", String.valueOf(profile.dwellSigma))));
+        profile.setSeed(Long.parseLong(props.getProperty("simulation.seed", String.valueOf(profile.seed))));
+        return profile;
+    }
+
+    /**
+     * @param curve comma separated minute:arrivalsPerHour points, the rate going linearly from one point to the next
+     */
+    public void setArrivalsPerHour(String curve) {
+        arrivalsPerHour.clear();
+        for (String point : curve.split(",")) {
+            String[] values = point.trim().split(":");
+            if (values.length != 2) {
+                throw new IllegalArgumentException("Invalid arrival rate point: " + point);
+            }
+            setArrivalsPerHour(Double.parseDouble(values[0]), Double.parseDouble(values[1]));
+        }
+    }
+
+    public void setArrivalsPerHour(double minute, double rate) {
+        if (minute < 0 || rate < 0) {
+            throw new IllegalArgumentException("Invalid arrival rate point: " + minute + ":" + rate);
+        }
+        arrivalsPerHour.put(minute, rate);
+    }
+
+    /**
+     * @return the arrival rate at this simulated minute, constant before the first and after the last point
+     */
+    public double getArrivalsPerHour(double minute) {
+        Map.Entry<Double, Double> before = arrivalsPerHour.floorEntry(minute);
+        Map.Entry<Double, Double> after = arrivalsPerHour.ceilingEntry(minute);
+        if (before == null && after == null) {
+            return 0;
+        }
+        if (before == null || after == null || before.getKey().equals(after.getKey())) {
+            return (before != null ? before : after).getValue();
+        }
+        double progress = (minute - before.getKey()) / (after.getKey() - before.getKey());
+        return before.getValue() + progress * (after.getValue() - before.getValue());
+    }
+
+    public double getMaxArrivalsPerHour() {
+        double max = 0;
+        for (double rate : arrivalsPerHour.values()) {
+            max = Math.max(max, rate);
+        }
+        return max;
+    }
+
+    public int getGates() {
+        return gates;
+    }
+
+    public void setGates(int gates) {
+        if (gates <= 0) {
+            throw new IllegalArgumentException("At least one gate is needed");
+        }
+        this.gates = gates;
+    }
+
+    public double getDurationMinutes() {
+        return durationMinutes;
+    }
+
+    public void setDurationMinutes(double durationMinutes) {
+        this.durationMinutes = durationMinutes;
+    }
+
+    public double getTimeScale() {
+        return timeScale;
+    }
+
+    public void setTimeScale(double timeScale) {
+        if (timeScale <= 0) {
+            throw new IllegalArgumentException("Time scale must be positive");
+        }
+        this.timeScale = timeScale;
+    }
+
+    public double getCarShare() {
+        return carShare;
+    }
+
+    public void setCarShare(double carShare) {
+        this.carShare = carShare;
+    }
+
+    public double getRegularShare() {
+        return regularShare;
+    }
+
+    public void setRegularShare(double regularShare) {
+        this.regularShare = regularShare;
+    }
+
+    public int getRegularCustomers() {
+        return regularCustomers;
+    }
+
+    public void setRegularCustomers(int regularCustomers) {
+        this.regularCustomers = regularCustomers;
+    }
+
+    public double getCarDwellMedianMinutes() {
+        return carDwellMedianMinutes;
+    }
+
+    public void setCarDwellMedianMinutes(double carDwellMedianMinutes) {
+        this.carDwellMedianMinutes = carDwellMedianMinutes;
+    }
+
+    public double getBikeDwellMedianMinutes() {
+        return bikeDwellMedianMinutes;
+    }
+
+    public void setBikeDwellMedianMinutes(double bikeDwellMedianMinutes) {
+        this.bikeDwellMedianMinutes = bikeDwellMedianMinutes;
+    }
+
+    /**
+     * @return spread of the log-normal dwell time around its median, 0 making every stay last the median
+     */
+    public double getDwellSigma() {
+        return dwellSigma;
+    }
+
+    public void setDwellSigma(double dwellSigma) {
+        this.dwellSigma = dwellSigma;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    long toRealNanos(double simulatedMinutes) {
+        return (long) (simulatedMinutes * 60e9 / timeScale);
+    }
+}
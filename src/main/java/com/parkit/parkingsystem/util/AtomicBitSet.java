@@ -0,0 +1,103 @@
+package com.parkit.parkingsystem.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-size bit set whose bits are flipped with compare-and-set, so readers and writers never block each other.
+ */
+public class AtomicBitSet {
+
+    private static final int ADDRESS_BITS_PER_WORD = 6;
+
+    private final int size;
+    private final AtomicLongArray words;
+
+    public AtomicBitSet(int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("Negative bit set size: " + size);
+        }
+        this.size = size;
+        this.words = new AtomicLongArray((size + 63) >>> ADDRESS_BITS_PER_WORD);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean get(int index) {
+        checkIndex(index);
+        return (words.get(index >>> ADDRESS_BITS_PER_WORD) & (1L << index)) != 0;
+    }
+
+    /**
+     * @return true if the bit was clear and this call set it
+     */
+    public boolean set(int index) {
+        checkIndex(index);
+        int wordIndex = index >>> ADDRESS_BITS_PER_WORD;
+        long mask = 1L << index;
+        long word;
+        do {
+            word = words.get(wordIndex);
+            if ((word & mask) != 0) {
+                return false;
+            }
+        } while (!words.compareAndSet(wordIndex, word, word | mask));
+        return true;
+    }
+
+    /**
+     * @return true if the bit was set and this call cleared it
+     */
+    public boolean clear(int index) {
+        checkIndex(index);
+        int wordIndex = index >>> ADDRESS_BITS_PER_WORD;
+        long mask = 1L << index;
+        long word;
+        do {
+            word = words.get(wordIndex);
+            if ((word & mask) == 0) {
+                return false;
+            }
+        } while (!words.compareAndSet(wordIndex, word, word & ~mask));
+        return true;
+    }
+
+    /**
+     * @return the index of the first set bit at or after fromIndex, or -1 if there is none
+     */
+    public int nextSetBit(int fromIndex) {
+        if (fromIndex < 0) {
+            throw new IndexOutOfBoundsException("fromIndex < 0: " + fromIndex);
+        }
+        if (fromIndex >= size) {
+            return -1;
+        }
+        int wordIndex = fromIndex >>> ADDRESS_BITS_PER_WORD;
+        long word = words.get(wordIndex) & (-1L << fromIndex);
+        while (true) {
+            if (word != 0) {
+                int index = (wordIndex << ADDRESS_BITS_PER_WORD) + Long.numberOfTrailingZeros(word);
+                return index < size ? index : -1;
+            }
+            if (++wordIndex == words.length()) {
+                return -1;
+            }
+            word = words.get(wordIndex);
+        }
+    }
+
+    public int cardinality() {
+        int count = 0;
+        for (int i = 0; i < words.length(); i++) {
+            count += Long.bitCount(words.get(i));
+        }
+        return count;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Bit index out of range: " + index);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.parkit.parkingsystem.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread-safe Bloom filter over strings: mightContain() never misses an added value,
+ * and wrongly answers true for other values with about the false positive rate it was sized for.
+ */
+public class BloomFilter {
+
+    private final AtomicLongArray bits;
+    private final long bitCount;
+    private final int hashFunctions;
+    private final int expectedInsertions;
+
+    public BloomFilter(int expectedInsertions, double falsePositiveRate) {
+        if (expectedInsertions <= 0 || falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("Invalid Bloom filter sizing");
+        }
+        this.expectedInsertions = expectedInsertions;
+        long optimalBits = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        this.bits = new AtomicLongArray((int) ((Math.max(optimalBits, 64) + 63) >>> 6));
+        this.bitCount = (long) bits.length() << 6;
+        this.hashFunctions = Math.max(1, (int) Math.round((double) bitCount / expectedInsertions * Math.log(2)));
+    }
+
+    public int getExpectedInsertions() {
+        return expectedInsertions;
+    }
+
+    public void add(String value) {
+        long hash64 = hash(value);
+        int hash1 = (int) hash64;
+        int hash2 = (int) (hash64 >>> 32);
+        for (int i = 1; i <= hashFunctions; i++) {
+            long bitIndex = Math.floorMod(hash1 + (long) i * hash2, bitCount);
+            int wordIndex = (int) (bitIndex >>> 6);
+            long mask = 1L << bitIndex;
+            long word;
+            do {
+                word = bits.get(wordIndex);
+                if ((word & mask) != 0) {
+                    break;
+                }
+            } while (!bits.compareAndSet(wordIndex, word, word | mask));
+        }
+    }
+
+    public boolean mightContain(String value) {
+        long hash64 = hash(value);
+        int hash1 = (int) hash64;
+        int hash2 = (int) (hash64 >>> 32);
+        for (int i = 1; i <= hashFunctions; i++) {
+            long bitIndex = Math.floorMod(hash1 + (long) i * hash2, bitCount);
+            if ((bits.get((int) (bitIndex >>> 6)) & (1L << bitIndex)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    //64-bit FNV-1a followed by a murmur3 finalizer to spread the bits
+    private static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,89 @@
+package com.parkit.parkingsystem.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread-safe histogram of latencies in nanoseconds with a fixed memory footprint. Values under 64 are counted
+ * exactly, larger ones in 32 buckets per power of two, so a percentile is at most about 3% above the recorded value.
+ */
+public class LatencyHistogram {
+
+    private static final int EXACT_VALUES = 64;
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int LOWEST_EXPONENT = 6;
+    private static final int BUCKETS = EXACT_VALUES + (63 - LOWEST_EXPONENT) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong totalCount = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(bucketOf(value));
+        totalCount.incrementAndGet();
+        totalNanos.addAndGet(value);
+        maxNanos.accumulateAndGet(value, Math::max);
+    }
+
+    public long getCount() {
+        return totalCount.get();
+    }
+
+    /**
+     * @return the sum of every recorded value
+     */
+    public long getTotal() {
+        return totalNanos.get();
+    }
+
+    public long getMax() {
+        return maxNanos.get();
+    }
+
+    public double getMean() {
+        long count = totalCount.get();
+        return count == 0 ? 0 : (double) totalNanos.get() / count;
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return the highest value of the bucket holding that percentile, 0 if nothing was recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        long count = totalCount.get();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(Math.min(percentile, 100) / 100 * count));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += counts.get(bucket);
+            if (seen >= rank) {
+                return Math.min(highestValueOf(bucket), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    private static int bucketOf(long value) {
+        if (value < EXACT_VALUES) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) - SUB_BUCKETS;
+        return EXACT_VALUES + (exponent - LOWEST_EXPONENT) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long highestValueOf(int bucket) {
+        if (bucket < EXACT_VALUES) {
+            return bucket;
+        }
+        int exponent = (bucket - EXACT_VALUES) / SUB_BUCKETS + LOWEST_EXPONENT;
+        int shift = exponent - SUB_BUCKET_BITS;
+        long lowest = (long) ((bucket - EXACT_VALUES) % SUB_BUCKETS + SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,49 @@
+package com.parkit.parkingsystem.util;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * InputReaderUtil answering from a script instead of the keyboard, so that the interactive entry and exit
+ * flows of ParkingService can be driven by a program. Not thread-safe: give each gate its own instance.
+ */
+public class ScriptedInputReaderUtil extends InputReaderUtil {
+
+    private final Deque<String> lines = new ArrayDeque<>();
+
+    public ScriptedInputReaderUtil addSelection(int selection) {
+        lines.addLast(Integer.toString(selection));
+        return this;
+    }
+
+    public ScriptedInputReaderUtil addVehicleRegistrationNumber(String vehicleRegNumber) {
+        lines.addLast(vehicleRegNumber);
+        return this;
+    }
+
+    public int getRemainingLines() {
+        return lines.size();
+    }
+
+    public void clear() {
+        lines.clear();
+    }
+
+    @Override
+    public int readSelection() {
+        try {
+            return Integer.parseInt(lines.removeFirst());
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    @Override
+    public String readVehicleRegistrationNumber() throws Exception {
+        String vehicleRegNumber = lines.pollFirst();
+        if (vehicleRegNumber == null || vehicleRegNumber.trim().length() == 0) {
+            throw new IllegalArgumentException("Invalid input provided");
+        }
+        return vehicleRegNumber;
+    }
+}
@@ -0,0 +1,3 @@
+-- GET_TICKET, CHECK_REGULAR_USERS and CHECK_ALREADY_IN_PARKING all filter on the plate;
+-- GET_TICKET also wants the newest ID first and the join needs PARKING_NUMBER
+create index IDX_TICKET_VEHICLE_REG_NUMBER on ticket(VEHICLE_REG_NUMBER, ID DESC, PARKING_NUMBER);
@@ -0,0 +1,7 @@
+-- Last ticket journal entry applied to the ticket table, updated in the same transaction as the entries
+create table if not exists ticket_journal_checkpoint(
+ ID int PRIMARY KEY,
+ APPLIED_SEQUENCE bigint NOT NULL
+);
+
+insert ignore into ticket_journal_checkpoint(ID, APPLIED_SEQUENCE) values(1, 0);
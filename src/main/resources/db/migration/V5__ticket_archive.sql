@@ -0,0 +1,8 @@
+-- Plates of the tickets moved to ticket_history_YYYYMM tables, so that their vehicles stay regular users
+create table if not exists archived_vehicle(
+ VEHICLE_REG_NUMBER varchar(10) PRIMARY KEY
+);
+-- TicketArchiver picks closed tickets by exit time
+create index IDX_TICKET_OUT_TIME on ticket(OUT_TIME);
+-- Every ticket, archived or not: TicketArchiver redefines it with each history table it creates
+create or replace view ticket_all as select ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME from ticket;
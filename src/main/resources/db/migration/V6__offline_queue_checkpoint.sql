@@ -0,0 +1,5 @@
+-- Last offline queue entry replayed into the ticket table, one row per queue file, updated in the same transaction as the entries
+create table if not exists offline_queue_checkpoint(
+ QUEUE_NAME varchar(100) PRIMARY KEY,
+ APPLIED_SEQUENCE bigint NOT NULL
+);
@@ -0,0 +1,14 @@
+-- Spots booked for a time window, honoured by ParkingService at entry
+create table if not exists reservation(
+ ID int PRIMARY KEY AUTO_INCREMENT,
+ PARKING_NUMBER int NOT NULL,
+ VEHICLE_REG_NUMBER varchar(10) NOT NULL,
+ START_TIME DATETIME NOT NULL,
+ END_TIME DATETIME NOT NULL,
+ FOREIGN KEY (PARKING_NUMBER)
+ REFERENCES parking(PARKING_NUMBER)
+);
+-- Overlap check of a spot while booking it
+create index IDX_RESERVATION_PARKING_NUMBER on reservation(PARKING_NUMBER, START_TIME, END_TIME);
+-- ReservationDAO only loads the reservations not over yet
+create index IDX_RESERVATION_END_TIME on reservation(END_TIME);
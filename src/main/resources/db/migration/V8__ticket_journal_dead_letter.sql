@@ -0,0 +1,14 @@
+-- Ticket journal entries the DB refused (bad spot, plate too long...), set aside so that the flusher can go on
+create table if not exists ticket_journal_dead_letter(
+ ID int PRIMARY KEY AUTO_INCREMENT,
+ SEQUENCE bigint NOT NULL,
+ OPERATION varchar(10) NOT NULL,
+ TICKET_ID int NOT NULL,
+ PARKING_NUMBER int NOT NULL,
+ VEHICLE_REG_NUMBER varchar(255) NOT NULL,
+ PRICE double,
+ IN_TIME DATETIME,
+ OUT_TIME DATETIME,
+ ERROR varchar(1000),
+ FAILED_AT DATETIME NOT NULL
+);
@@ -0,0 +1,125 @@
+package com.parkit.parkingsystem.integration;
+
+import com.parkit.parkingsystem.config.SchemaMigrator;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.integration.config.DataBaseTestConfig;
+import com.parkit.parkingsystem.integration.service.DataBasePrepareService;
+import com.parkit.parkingsystem.service.GateServer;
+import com.parkit.parkingsystem.service.ParkingService;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Drives the HTTP gate API with many gates at once against the test database and prints throughput and p99 latency.
+ */
+public class GateServerLoadIT {
+
+    private static final int GATES = 48;
+    private static final int VEHICLES_PER_GATE = 25;
+    private static final int FIRST_LOAD_TEST_SPOT = 1000;
+
+    private static DataBaseTestConfig dataBaseTestConfig = new DataBaseTestConfig();
+    private static DataBasePrepareService dataBasePrepareService = new DataBasePrepareService();
+    private static GateServer gateServer;
+
+    @BeforeAll
+    private static void setUp() throws Exception {
+        new SchemaMigrator(dataBaseTestConfig).migrate();
+        dataBasePrepareService.clearDataBaseEntries();
+        //one spot per gate, so that no entry finds the parking full
+        Connection con = dataBaseTestConfig.getConnection();
+        try (PreparedStatement ps = con.prepareStatement("insert ignore into parking(PARKING_NUMBER, AVAILABLE, TYPE) values(?, true, 'CAR')")) {
+            for (int i = 0; i < GATES; i++) {
+                ps.setInt(1, FIRST_LOAD_TEST_SPOT + i);
+                ps.executeUpdate();
+            }
+        } finally {
+            dataBaseTestConfig.closeConnection(con);
+        }
+        ParkingSpotDAO parkingSpotDAO = new ParkingSpotDAO();
+        parkingSpotDAO.setDataBaseConfig(dataBaseTestConfig);
+        TicketDAO ticketDAO = new TicketDAO();
+        ticketDAO.setDataBaseConfig(dataBaseTestConfig);
+        parkingSpotDAO.loadParkingSpotIndex();
+        ticketDAO.loadRegularUserIndex();
+        ticketDAO.loadActiveSessionIndex();
+        gateServer = new GateServer(new ParkingService(null, parkingSpotDAO, ticketDAO), 0);
+        gateServer.start();
+    }
+
+    @AfterAll
+    private static void tearDown() throws Exception {
+        gateServer.stop(0);
+        dataBasePrepareService.clearDataBaseEntries();
+        Connection con = dataBaseTestConfig.getConnection();
+        try (PreparedStatement ps = con.prepareStatement("delete from parking where PARKING_NUMBER >= ?")) {
+            ps.setInt(1, FIRST_LOAD_TEST_SPOT);
+            ps.executeUpdate();
+        } finally {
+            dataBaseTestConfig.closeConnection(con);
+        }
+    }
+
+    @Test
+    public void manyGatesEnterAndLeaveAtOnce() throws Exception {
+        HttpClient httpClient = HttpClient.newHttpClient();
+        String baseUrl = "http://localhost:" + gateServer.getPort();
+        ExecutorService gates = Executors.newFixedThreadPool(GATES);
+        List<Future<long[]>> results = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int gate = 0; gate < GATES; gate++) {
+            int gateNumber = gate;
+            results.add(gates.submit(() -> {
+                long[] latencies = new long[VEHICLES_PER_GATE * 2];
+                for (int i = 0; i < VEHICLES_PER_GATE; i++) {
+                    String vehicle = "G" + gateNumber + "V" + i;
+                    latencies[2 * i] = post(httpClient, baseUrl + "/entries?type=CAR&vehicle=" + vehicle, 201);
+                    latencies[2 * i + 1] = post(httpClient, baseUrl + "/exits?vehicle=" + vehicle, 200);
+                }
+                return latencies;
+            }));
+        }
+        long[] latencies = new long[GATES * VEHICLES_PER_GATE * 2];
+        int count = 0;
+        for (Future<long[]> result : results) {
+            for (long latency : result.get()) {
+                latencies[count++] = latency;
+            }
+        }
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+        gates.shutdown();
+
+        Arrays.sort(latencies);
+        long p99 = latencies[(int) Math.ceil(latencies.length * 0.99) - 1];
+        System.out.printf("%d gates, %d requests in %.2f s: %.0f requests/s, p50 %.2f ms, p99 %.2f ms%n",
+                GATES, latencies.length, elapsedSeconds, latencies.length / elapsedSeconds,
+                latencies[latencies.length / 2] / 1e6, p99 / 1e6);
+        assertEquals(GATES * VEHICLES_PER_GATE * 2, count);
+    }
+
+    private static long post(HttpClient httpClient, String url, int expectedStatus) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url)).POST(HttpRequest.BodyPublishers.noBody()).build();
+        long start = System.nanoTime();
+        HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+        long latency = System.nanoTime() - start;
+        assertEquals(expectedStatus, response.statusCode(), response.body());
+        return latency;
+    }
+}
@@ -0,0 +1,60 @@
+package com.parkit.parkingsystem.integration;
+
+import com.parkit.parkingsystem.config.SchemaMigrator;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.integration.config.DataBaseTestConfig;
+import com.parkit.parkingsystem.integration.service.DataBasePrepareService;
+import com.parkit.parkingsystem.simulation.GateTrafficSimulator;
+import com.parkit.parkingsystem.simulation.SimulationReport;
+import com.parkit.parkingsystem.simulation.TrafficProfile;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * A compressed Saturday rush against the test database: the small test lot is full most of the time,
+ * which is when gates race for the spots being freed.
+ */
+public class GateTrafficSimulatorIT {
+
+    private static DataBaseTestConfig dataBaseTestConfig = new DataBaseTestConfig();
+    private static DataBasePrepareService dataBasePrepareService = new DataBasePrepareService();
+
+    @BeforeAll
+    private static void setUp() throws Exception {
+        new SchemaMigrator(dataBaseTestConfig).migrate();
+        dataBasePrepareService.clearDataBaseEntries();
+    }
+
+    @AfterAll
+    private static void tearDown() {
+        dataBasePrepareService.clearDataBaseEntries();
+    }
+
+    @Test
+    public void saturdayRushWithoutDoubleAllocation() throws Exception {
+        ParkingSpotDAO parkingSpotDAO = new ParkingSpotDAO();
+        parkingSpotDAO.setDataBaseConfig(dataBaseTestConfig);
+        TicketDAO ticketDAO = new TicketDAO();
+        ticketDAO.setDataBaseConfig(dataBaseTestConfig);
+        parkingSpotDAO.loadParkingSpotIndex();
+        ticketDAO.loadRegularUserIndex();
+        ticketDAO.loadActiveSessionIndex();
+        TrafficProfile profile = TrafficProfile.saturdayRush();
+        profile.setGates(16);
+        //the 8 hours in 16 seconds
+        profile.setTimeScale(1800);
+
+        SimulationReport report = new GateTrafficSimulator(parkingSpotDAO, ticketDAO, profile).run();
+
+        System.out.println(report);
+        assertEquals(0, report.getDoubleAllocations());
+        assertEquals(0, report.getEntryErrors());
+        assertEquals(0, report.getExitErrors());
+        assertEquals(report.getEntries(), report.getExits());
+        assertEquals(report.getArrivals(), report.getEntries() + report.getAllocationFailures());
+    }
+}
@@ -1,6 +1,7 @@
 package com.parkit.parkingsystem.integration;
 
 import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.config.SchemaMigrator;
 import com.parkit.parkingsystem.constants.DBConstants;
 import com.parkit.parkingsystem.constants.Fare;
 import com.parkit.parkingsystem.constants.ParkingType;
@@ -8,8 +9,11 @@ import com.parkit.parkingsystem.dao.ParkingSpotDAO;
 import com.parkit.parkingsystem.dao.TicketDAO;
 import com.parkit.parkingsystem.integration.config.DataBaseTestConfig;
 import com.parkit.parkingsystem.integration.service.DataBasePrepareService;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
 import com.parkit.parkingsystem.service.FareCalculatorService;
 import com.parkit.parkingsystem.service.ParkingService;
+import com.parkit.parkingsystem.service.TicketArchiver;
 import com.parkit.parkingsystem.unit.FareCalculatorServiceTest;
 import com.parkit.parkingsystem.util.InputReaderUtil;
 import org.apache.logging.log4j.Level;
@@ -25,12 +29,16 @@ import java.sql.*;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.time.LocalDateTime;
+import java.time.YearMonth;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 import java.util.Locale;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.when;
 
@@ -48,6 +56,7 @@ public class ParkingDataBaseIT {
 
     @BeforeAll
     private static void setUp() throws Exception {
+        new SchemaMigrator(dataBaseTestConfig).migrate();
         parkingSpotDAO = new ParkingSpotDAO();
         parkingSpotDAO.setDataBaseConfig(dataBaseTestConfig);
         ticketDAO = new TicketDAO();
@@ -59,6 +68,9 @@ public class ParkingDataBaseIT {
     @BeforeEach
     private void setUpPerTest() throws Exception {
         dataBasePrepareService.clearDataBaseEntries();
+        parkingSpotDAO.loadParkingSpotIndex();
+        ticketDAO.loadRegularUserIndex();
+        ticketDAO.loadActiveSessionIndex();
     }
 
     @AfterAll
@@ -92,6 +104,59 @@ public class ParkingDataBaseIT {
         assertEquals(dateFormat.format(date), dateFormat.format(ticketDAO.getTicket(REG_NUMBER_FOR_TEST).getOutTime()));
         assertEquals(0.00, ticketDAO.getTicket(REG_NUMBER_FOR_TEST).getPrice()); // 0.00 because first 30 minutes free
     }
+    @Test
+    public void testSavingAndUpdatingTicketsInBatches() throws Exception {
+        ticketDAO.setBatchSize(2);
+        List<Ticket> tickets = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            Ticket ticket = new Ticket();
+            ticket.setParkingSpot(new ParkingSpot(i, ParkingType.CAR, false));
+            ticket.setVehicleRegNumber("BATCH" + i);
+            ticket.setInTime(new Date(System.currentTimeMillis() - 60 * 60 * 1000));
+            tickets.add(ticket);
+        }
+
+        assertEquals(3, ticketDAO.saveTickets(tickets));
+        for (Ticket ticket : tickets) {
+            ticket.setOutTime(new Date());
+            ticket.setPrice(1.5);
+        }
+        assertEquals(3, ticketDAO.updateTickets(tickets));
+        ticketDAO.setBatchSize(TicketDAO.DEFAULT_BATCH_SIZE);
+
+        Ticket saved = ticketDAO.getTicket("BATCH3");
+        assertEquals(tickets.get(2).getId(), saved.getId());
+        assertEquals(1.5, saved.getPrice());
+    }
+
+    @Test
+    public void testArchivingOldClosedTickets() throws Exception {
+        testParkingLotExit();
+        testParkingACar();
+        Connection con = dataBaseTestConfig.getConnection();
+        con.prepareStatement("update ticket set IN_TIME = '2020-01-05 10:00:00', OUT_TIME = '2020-01-05 11:00:00' where OUT_TIME is not null").execute();
+        dataBaseTestConfig.closeConnection(con);
+
+        assertEquals(1, new TicketArchiver(dataBaseTestConfig, 30, 100, 0).archive());
+
+        assertEquals(1, count("ticket"));
+        assertEquals(1, count(TicketArchiver.getHistoryTable(YearMonth.of(2020, 1))));
+        assertEquals(2, count("ticket_all"));
+        ticketDAO.loadRegularUserIndex();
+        assertTrue(ticketDAO.isRegularUser(REG_NUMBER_FOR_TEST));
+        assertTrue(ticketDAO.checkAlreadyInParking(REG_NUMBER_FOR_TEST));
+    }
+
+    private static int count(String table) throws Exception {
+        Connection con = dataBaseTestConfig.getConnection();
+        try (ResultSet rs = con.prepareStatement("select count(*) from " + table).executeQuery()) {
+            rs.next();
+            return rs.getInt(1);
+        } finally {
+            dataBaseTestConfig.closeConnection(con);
+        }
+    }
+
     @Test
     public void testDatabaseConfig_connection() throws Exception {
         DataBaseConfig dataBaseConfig = new DataBaseConfig();
@@ -1,62 +1,13 @@
 package com.parkit.parkingsystem.integration.config;
 
 import com.parkit.parkingsystem.config.DataBaseConfig;
-import org.apache.logging.log4j.LogManager;
-import org.apache.logging.log4j.Logger;
-
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.IOException;
-import java.sql.*;
-import java.util.Properties;
 
 public class DataBaseTestConfig extends DataBaseConfig {
 
-    private static final Logger logger = LogManager.getLogger("DataBaseTestConfig");
-
-    public Connection getConnection() throws ClassNotFoundException, SQLException, IOException {
-        logger.info("Create DB connection");
-        Properties props = new Properties();
-        FileInputStream fis = new FileInputStream("src/test/java/com/parkit/parkingsystem/integration/config/DataBaseProperties.properties");
-        props.load(fis);
-        String url = props.getProperty("jdbc.url");
-        String user = props.getProperty("jdbc.username");
-        String password = props.getProperty("jdbc.password");
-        Class.forName("com.mysql.cj.jdbc.Driver");
-        return DriverManager.getConnection(
-                url,user,password);
-    }
-
-    public void closeConnection(Connection con){
-        if(con!=null){
-            try {
-                con.close();
-                logger.info("Closing DB connection");
-            } catch (SQLException e) {
-                logger.error("Error while closing connection",e);
-            }
-        }
-    }
-
-    public void closePreparedStatement(PreparedStatement ps) {
-        if(ps!=null){
-            try {
-                ps.close();
-                logger.info("Closing Prepared Statement");
-            } catch (SQLException e) {
-                logger.error("Error while closing prepared statement",e);
-            }
-        }
-    }
+    private static final String PROPERTIES_FILE = "src/test/java/com/parkit/parkingsystem/integration/config/DataBaseProperties.properties";
 
-    public void closeResultSet(ResultSet rs) {
-        if(rs!=null){
-            try {
-                rs.close();
-                logger.info("Closing Result Set");
-            } catch (SQLException e) {
-                logger.error("Error while closing result set",e);
-            }
-        }
+    @Override
+    protected String getPropertiesFile() {
+        return PROPERTIES_FILE;
     }
 }
@@ -1,8 +1,12 @@
 package com.parkit.parkingsystem.integration.service;
 
+import com.parkit.parkingsystem.constants.DBConstants;
 import com.parkit.parkingsystem.integration.config.DataBaseTestConfig;
 
 import java.sql.Connection;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
 
 public class DataBasePrepareService {
 
@@ -19,6 +23,22 @@ public class DataBasePrepareService {
             //clear ticket entries;
             connection.prepareStatement("truncate table ticket").execute();
 
+            //clear archived tickets, whose IDs would clash with the new ones
+            connection.prepareStatement("truncate table archived_vehicle").execute();
+            connection.prepareStatement("truncate table offline_queue_checkpoint").execute();
+            connection.prepareStatement("truncate table reservation").execute();
+            connection.prepareStatement("truncate table ticket_journal_dead_letter").execute();
+            List<String> historyTables = new ArrayList<>();
+            try (ResultSet rs = connection.prepareStatement(DBConstants.GET_TICKET_HISTORY_TABLES).executeQuery()) {
+                while (rs.next()) {
+                    historyTables.add(rs.getString(1));
+                }
+            }
+            connection.prepareStatement(DBConstants.CREATE_TICKET_ALL_VIEW).execute();
+            for (String historyTable : historyTables) {
+                connection.prepareStatement("drop table " + historyTable).execute();
+            }
+
         }catch(Exception e){
             e.printStackTrace();
         }finally {
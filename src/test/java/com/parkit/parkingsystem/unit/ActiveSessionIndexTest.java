@@ -0,0 +1,65 @@
+package com.parkit.parkingsystem.unit;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ActiveSessionIndex;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ActiveSessionIndexTest {
+
+    private ActiveSessionIndex activeSessionIndex;
+
+    @BeforeEach
+    private void setUpPerTest() {
+        activeSessionIndex = new ActiveSessionIndex();
+    }
+
+    private static Ticket ticket(int id, String vehicleRegNumber) {
+        Ticket ticket = new Ticket();
+        ticket.setId(id);
+        ticket.setParkingSpot(new ParkingSpot(1, ParkingType.CAR, false));
+        ticket.setVehicleRegNumber(vehicleRegNumber);
+        ticket.setInTime(new Date());
+        return ticket;
+    }
+
+    @Test
+    public void openTicketIsFoundWhateverTheCase() {
+        activeSessionIndex.open(ticket(1, "AbCdEf"));
+
+        assertTrue(activeSessionIndex.isInParking("ABCDEF"));
+        assertEquals(1, activeSessionIndex.getOpenTicket("abcdef").getId());
+        assertNull(activeSessionIndex.getOpenTicket("GHIJKL"));
+    }
+
+    @Test
+    public void changingReturnedTicketDoesNotChangeIndex() {
+        activeSessionIndex.open(ticket(1, "ABCDEF"));
+
+        Ticket ticket = activeSessionIndex.getOpenTicket("ABCDEF");
+        ticket.setOutTime(new Date());
+        ticket.getParkingSpot().setAvailable(true);
+
+        assertNull(activeSessionIndex.getOpenTicket("ABCDEF").getOutTime());
+        assertFalse(activeSessionIndex.getOpenTicket("ABCDEF").getParkingSpot().isAvailable());
+    }
+
+    @Test
+    public void closingAnOlderTicketKeepsTheNewerSession() {
+        activeSessionIndex.open(ticket(1, "ABCDEF"));
+        activeSessionIndex.open(ticket(2, "ABCDEF"));
+
+        activeSessionIndex.close(ticket(1, "ABCDEF"));
+        assertEquals(2, activeSessionIndex.getOpenTicket("ABCDEF").getId());
+
+        activeSessionIndex.close(ticket(2, "ABCDEF"));
+        assertFalse(activeSessionIndex.isInParking("ABCDEF"));
+        assertEquals(0, activeSessionIndex.size());
+    }
+}
@@ -0,0 +1,140 @@
+package com.parkit.parkingsystem.unit;
+
+import com.parkit.parkingsystem.config.TransactionCallback;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.AsyncParkingService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import java.util.Date;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@MockitoSettings(strictness = Strictness.LENIENT)
+@ExtendWith(MockitoExtension.class)
+public class AsyncParkingServiceTest {
+
+    @Mock
+    private static ParkingSpotDAO parkingSpotDAO;
+    @Mock
+    private static TicketDAO ticketDAO;
+
+    private AsyncParkingService asyncParkingService;
+
+    @BeforeEach
+    private void setUpPerTest() throws Exception {
+        when(ticketDAO.inTransaction(any())).thenAnswer(
+                invocation -> invocation.<TransactionCallback<?>>getArgument(0).doInTransaction());
+        when(ticketDAO.saveTicket(any(Ticket.class))).thenReturn(true);
+        when(ticketDAO.updateTicket(any(Ticket.class))).thenReturn(true);
+        when(parkingSpotDAO.updateParking(any(ParkingSpot.class))).thenReturn(true);
+        asyncParkingService = new AsyncParkingService(parkingSpotDAO, ticketDAO, 2, 16);
+    }
+
+    @AfterEach
+    private void tearDownPerTest() {
+        asyncParkingService.close();
+    }
+
+    @Test
+    public void entryIsCheckedInsideItsTransaction() throws Exception {
+        int[] depth = {0};
+        int[] checkDepth = {-1};
+        doAnswer(invocation -> {
+            depth[0]++;
+            try {
+                return invocation.<TransactionCallback<?>>getArgument(0).doInTransaction();
+            } finally {
+                depth[0]--;
+            }
+        }).when(ticketDAO).inTransaction(any());
+        //two gates racing with the same plate: only the check inside the entry transaction stops the second one
+        when(ticketDAO.checkAlreadyInParking("ABCDEF")).thenAnswer(invocation -> {
+            checkDepth[0] = depth[0];
+            return false;
+        });
+        when(ticketDAO.isRegularUser("ABCDEF")).thenReturn(true);
+        when(parkingSpotDAO.claimNextAvailableSlot(ParkingType.CAR)).thenReturn(4);
+
+        Ticket ticket = asyncParkingService.processIncomingVehicle(ParkingType.CAR, "ABCDEF", new Date()).get(10, TimeUnit.SECONDS);
+
+        assertEquals(4, ticket.getParkingSpot().getId());
+        assertTrue(ticket.getRegularUser());
+        assertEquals(1, checkDepth[0]);
+    }
+
+    @Test
+    public void entryOfVehicleAlreadyInParkingFails() {
+        when(ticketDAO.checkAlreadyInParking("ABCDEF")).thenReturn(true);
+
+        ExecutionException e = assertThrows(ExecutionException.class,
+                () -> asyncParkingService.processIncomingVehicle(ParkingType.CAR, "ABCDEF", new Date()).get(10, TimeUnit.SECONDS));
+
+        assertTrue(e.getCause() instanceof IllegalStateException);
+        verify(parkingSpotDAO, never()).claimNextAvailableSlot(any(ParkingType.class));
+    }
+
+    @Test
+    public void entryWhenParkingIsFullGivesNoTicket() throws Exception {
+        when(parkingSpotDAO.claimNextAvailableSlot(ParkingType.BIKE)).thenReturn(0);
+
+        assertNull(asyncParkingService.processIncomingVehicle(ParkingType.BIKE, "ABCDEF", new Date()).get(10, TimeUnit.SECONDS));
+        verify(ticketDAO, never()).saveTicket(any(Ticket.class));
+    }
+
+    @Test
+    public void exitClosesTicketAndFreesSpot() throws Exception {
+        Ticket open = new Ticket();
+        open.setParkingSpot(new ParkingSpot(1, ParkingType.CAR, false));
+        open.setVehicleRegNumber("ABCDEF");
+        open.setInTime(new Date(System.currentTimeMillis() - 60 * 60 * 1000));
+        when(ticketDAO.getTicket("ABCDEF")).thenReturn(open);
+
+        Ticket ticket = asyncParkingService.processExitingVehicle("ABCDEF", new Date()).get(10, TimeUnit.SECONDS);
+
+        assertNotNull(ticket.getOutTime());
+        assertTrue(ticket.getParkingSpot().isAvailable());
+        verify(parkingSpotDAO).updateParking(any(ParkingSpot.class));
+    }
+
+    @Test
+    public void exitOfUnknownVehicleFails() {
+        when(ticketDAO.getTicket("ABCDEF")).thenReturn(null);
+
+        ExecutionException e = assertThrows(ExecutionException.class,
+                () -> asyncParkingService.processExitingVehicle("ABCDEF", new Date()).get(10, TimeUnit.SECONDS));
+
+        assertTrue(e.getCause() instanceof IllegalStateException);
+    }
+
+    @Test
+    public void exitOfVehicleAlreadyGoneFails() {
+        Ticket closed = new Ticket();
+        closed.setParkingSpot(new ParkingSpot(1, ParkingType.CAR, false));
+        closed.setVehicleRegNumber("ABCDEF");
+        closed.setInTime(new Date(System.currentTimeMillis() - 2 * 60 * 60 * 1000));
+        closed.setOutTime(new Date(System.currentTimeMillis() - 60 * 60 * 1000));
+        when(ticketDAO.getTicket("ABCDEF")).thenReturn(closed);
+
+        ExecutionException e = assertThrows(ExecutionException.class,
+                () -> asyncParkingService.processExitingVehicle("ABCDEF", new Date()).get(10, TimeUnit.SECONDS));
+
+        assertTrue(e.getCause() instanceof IllegalStateException);
+        verify(ticketDAO, never()).updateTicket(any(Ticket.class));
+        verify(parkingSpotDAO, never()).updateParking(any(ParkingSpot.class));
+    }
+}
@@ -0,0 +1,153 @@
+package com.parkit.parkingsystem.unit;
+
+import com.parkit.parkingsystem.config.ConnectionPool;
+import com.parkit.parkingsystem.constants.DBConstants;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTimeoutException;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConnectionPoolTest {
+
+    private static final String FAKE_URL = "jdbc:parkit-fake:pool";
+    private static final AtomicInteger openedConnections = new AtomicInteger();
+    private static final AtomicInteger preparedStatements = new AtomicInteger();
+
+    private ConnectionPool connectionPool;
+
+    @BeforeAll
+    private static void registerFakeDriver() throws SQLException {
+        DriverManager.registerDriver(new FakeDriver());
+    }
+
+    @BeforeEach
+    private void setUpPerTest() {
+        openedConnections.set(0);
+        preparedStatements.set(0);
+        connectionPool = new ConnectionPool(FAKE_URL, "user", "password", 1, 2, 100, 1, 60_000, 8);
+    }
+
+    @Test
+    public void closedConnectionIsReusedInsteadOfReopened() throws SQLException {
+        connectionPool.prefill();
+        Connection first = connectionPool.getConnection();
+        first.close();
+        Connection second = connectionPool.getConnection();
+
+        assertTrue(first.isClosed());
+        assertFalse(second.isClosed());
+        assertEquals(1, openedConnections.get());
+        assertEquals(1, connectionPool.getActiveConnections());
+        second.close();
+        assertEquals(0, connectionPool.getActiveConnections());
+        assertEquals(1, connectionPool.getIdleConnections());
+    }
+
+    @Test
+    public void getConnectionTimesOutWhenPoolIsExhausted() throws SQLException {
+        connectionPool.getConnection();
+        connectionPool.getConnection();
+
+        assertThrows(SQLTimeoutException.class, () -> connectionPool.getConnection());
+        assertEquals(1, connectionPool.getAcquireTimeouts());
+    }
+
+    @Test
+    public void preparedStatementIsPreparedOncePerConnection() throws SQLException {
+        for (int i = 0; i < 3; i++) {
+            Connection con = connectionPool.getConnection();
+            PreparedStatement ps = con.prepareStatement(DBConstants.GET_TICKET);
+            ps.setString(1, "ABCDEF");
+            ps.close();
+            con.close();
+        }
+
+        assertEquals(1, preparedStatements.get());
+        assertEquals(1, connectionPool.getStatementCacheMisses());
+        assertEquals(2, connectionPool.getStatementCacheHits());
+    }
+
+    @Test
+    public void statementNotClosedByCallerIsReturnedWithConnection() throws SQLException {
+        Connection con = connectionPool.getConnection();
+        PreparedStatement leaked = con.prepareStatement(DBConstants.GET_TICKET);
+        con.close();
+
+        Connection again = connectionPool.getConnection();
+        again.prepareStatement(DBConstants.GET_TICKET);
+
+        assertTrue(leaked.isClosed());
+        assertEquals(1, preparedStatements.get());
+    }
+
+    private static class FakeDriver implements Driver {
+
+        @Override
+        public Connection connect(String url, Properties info) {
+            if (!acceptsURL(url)) {
+                return null;
+            }
+            openedConnections.incrementAndGet();
+            return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Connection.class},
+                    (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "prepareStatement":
+                                preparedStatements.incrementAndGet();
+                                return Proxy.newProxyInstance(getClass().getClassLoader(),
+                                        new Class<?>[]{PreparedStatement.class}, (p, m, a) -> null);
+                            case "getAutoCommit":
+                            case "isValid":
+                                return true;
+                            case "isClosed":
+                                return false;
+                            default:
+                                return null;
+                        }
+                    });
+        }
+
+        @Override
+        public boolean acceptsURL(String url) {
+            return url.startsWith("jdbc:parkit-fake:");
+        }
+
+        @Override
+        public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+            return new DriverPropertyInfo[0];
+        }
+
+        @Override
+        public int getMajorVersion() {
+            return 1;
+        }
+
+        @Override
+        public int getMinorVersion() {
+            return 0;
+        }
+
+        @Override
+        public boolean jdbcCompliant() {
+            return false;
+        }
+
+        @Override
+        public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+            throw new SQLFeatureNotSupportedException();
+        }
+    }
+}
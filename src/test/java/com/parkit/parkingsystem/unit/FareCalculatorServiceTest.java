@@ -16,7 +16,10 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import static com.parkit.parkingsystem.constants.Fare.REGULAR_USER_REDUCTION;
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.time.Instant;
 import java.util.Date;
+import java.util.EnumMap;
+import java.util.Map;
 
 public class FareCalculatorServiceTest {
 
@@ -273,4 +276,39 @@ public class FareCalculatorServiceTest {
         fareCalculatorService.calculateFare(ticket);
         assertEquals(Math.round(((Fare.BIKE_RATE_PER_HOUR * REGULAR_USER_REDUCTION ) ) * 100.0) / 100.0, ticket.getPrice()); // First 30 free minutes
     }
-}
\ No newline at end of file
+
+    // INTEGER CENTS ENGINE
+    @Test
+    public void calculateFareCentsRoundsTheBaseFareHalfUp() {
+        //15 billed minutes of car: 37.5 cents
+        long inTime = 0;
+        long outTime = 45 * 60 * 1000;
+        assertEquals(38, fareCalculatorService.calculateFareCents(ParkingType.CAR, inTime, outTime, false));
+    }
+
+    @Test
+    public void calculateFareCentsRoundsTheRegularUserFareHalfDown() {
+        //one billed hour of car with 5% off: 142.5 cents
+        long inTime = 0;
+        long outTime = AN_HOUR_AND_A_HOULF_IN_MILLISEDONDS;
+        assertEquals(142, fareCalculatorService.calculateFareCents(ParkingType.CAR, inTime, outTime, true));
+    }
+
+    @Test
+    public void calculateFareCentsFromInstants() {
+        Instant inTime = Instant.parse("2020-01-01T10:00:00Z");
+        Instant outTime = Instant.parse("2020-01-02T11:00:00Z");
+        assertEquals(2450, fareCalculatorService.calculateFareCents(ParkingType.BIKE, inTime, outTime, false));
+    }
+
+    @Test
+    public void calculateFareCentsWithCustomRateTable() {
+        Map<ParkingType, Long> rates = new EnumMap<>(ParkingType.class);
+        rates.put(ParkingType.CAR, 200L);
+        FareCalculatorService customFareCalculatorService = new FareCalculatorService(rates);
+
+        assertEquals(200, customFareCalculatorService.calculateFareCents(ParkingType.CAR, 0, AN_HOUR_AND_A_HOULF_IN_MILLISEDONDS, false));
+        assertThrows(IllegalArgumentException.class,
+                () -> customFareCalculatorService.calculateFareCents(ParkingType.BIKE, 0, AN_HOUR_AND_A_HOULF_IN_MILLISEDONDS, false));
+    }
+}
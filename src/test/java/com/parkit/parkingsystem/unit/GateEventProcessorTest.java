@@ -0,0 +1,224 @@
+package com.parkit.parkingsystem.unit;
+
+import com.parkit.parkingsystem.config.TransactionCallback;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.InMemoryParkingSpotStore;
+import com.parkit.parkingsystem.dao.ParkingSpotStore;
+import com.parkit.parkingsystem.dao.ParkingStores;
+import com.parkit.parkingsystem.dao.ReservationDAO;
+import com.parkit.parkingsystem.dao.TicketStore;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Reservation;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.GateEventProcessor;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import java.io.StringReader;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@MockitoSettings(strictness = Strictness.LENIENT)
+@ExtendWith(MockitoExtension.class)
+public class GateEventProcessorTest {
+
+    private static final String HEADER = "TIME,EVENT,VEHICLE_REG_NUMBER,TYPE\n";
+
+    @Mock
+    private static ParkingSpotStore parkingSpotStore;
+    @Mock
+    private static TicketStore ticketStore;
+    @Mock
+    private static ReservationDAO reservationDAO;
+
+    @Test
+    public void eventsAreAppliedWithTheTimesOfTheLog() throws Exception {
+        String log = HEADER
+                + "2020-01-01 08:00:00,IN,ABCDEF,CAR\n"
+                + "2020-01-01 08:05:00,IN,GHIJKL,BIKE\n"
+                + "2020-01-01 10:30:00,OUT,ABCDEF,\n"
+                + "2020-01-02 08:00:00,IN,ABCDEF,CAR\n"
+                + "2020-01-02 10:30:00,OUT,ABCDEF\n";
+
+        try (ParkingStores stores = ParkingStores.inMemory(InMemoryParkingSpotStore.DEFAULT_LAYOUT)) {
+            GateEventProcessor processor = new GateEventProcessor(stores.getParkingSpotStore(), stores.getTicketStore(), 2, 1);
+
+            assertEquals(5, processor.process(new StringReader(log)));
+            assertEquals(3, processor.getEntries());
+            assertEquals(2, processor.getExits());
+
+            Ticket ticket = stores.getTicketStore().getTicket("ABCDEF");
+            assertEquals(Timestamp.valueOf("2020-01-02 08:00:00"), ticket.getInTime());
+            assertEquals(Timestamp.valueOf("2020-01-02 10:30:00"), ticket.getOutTime());
+            assertTrue(ticket.getRegularUser());
+            assertEquals(2.85, ticket.getPrice());
+            assertTrue(stores.getTicketStore().checkAlreadyInParking("GHIJKL"));
+            assertEquals(1, stores.getParkingSpotStore().getNextAvailableSlot(ParkingType.CAR));
+        }
+    }
+
+    @Test
+    public void reservedSpotIsKeptForItsVehicle() throws Exception {
+        Reservation reservation = new Reservation();
+        reservation.setParkingSpot(new ParkingSpot(1, ParkingType.CAR, false));
+        reservation.setVehicleRegNumber("RESERVED");
+        when(reservationDAO.getReservation(eq("RESERVED"), any())).thenReturn(reservation);
+        when(reservationDAO.isHeld(eq(1), any())).thenReturn(true);
+        String log = HEADER
+                + "2020-01-01 08:00:00,IN,WALKIN,CAR\n"
+                + "2020-01-01 08:05:00,IN,RESERVED,CAR\n";
+
+        try (ParkingStores stores = ParkingStores.inMemory(InMemoryParkingSpotStore.DEFAULT_LAYOUT)) {
+            GateEventProcessor processor = new GateEventProcessor(stores.getParkingSpotStore(), stores.getTicketStore(),
+                    reservationDAO);
+
+            assertEquals(2, processor.process(new StringReader(log)));
+            assertEquals(2, stores.getTicketStore().getTicket("WALKIN").getParkingSpot().getId());
+            assertEquals(1, stores.getTicketStore().getTicket("RESERVED").getParkingSpot().getId());
+        }
+    }
+
+    @Test
+    public void refusedEventsAndMalformedLinesAreSkipped() throws Exception {
+        String log = HEADER
+                + "2020-01-01 08:00:00,IN,BIKE1,BIKE\n"
+                + "2020-01-01 08:01:00,IN,BIKE2,BIKE\n"
+                + "2020-01-01 08:02:00,IN,BIKE3,BIKE\n"
+                + "2020-01-01 08:03:00,IN,BIKE1,BIKE\n"
+                + "2020-01-01 08:04:00,OUT,NOTHERE,\n"
+                + "2020-01-01 08:05:00,PARK,BIKE3,BIKE\n"
+                + "yesterday,IN,BIKE3,BIKE\n"
+                + "2020-01-01 09:00:00,IN,BIKE3\n"
+                + "2020-01-01 09:00:00,OUT,BIKE2,\n"
+                + "2020-01-01 09:01:00,IN,BIKE3,BIKE\n";
+
+        try (ParkingStores stores = ParkingStores.inMemory(InMemoryParkingSpotStore.DEFAULT_LAYOUT)) {
+            GateEventProcessor processor = new GateEventProcessor(stores.getParkingSpotStore(), stores.getTicketStore(), 3, 1);
+
+            assertEquals(4, processor.process(new StringReader(log)));
+            assertEquals(3, processor.getEntries());
+            assertEquals(1, processor.getExits());
+            assertEquals(1, processor.getFullLotRefusals());
+            assertEquals(2, processor.getRefusedEvents());
+            assertEquals(3, processor.getRejectedLines());
+            assertTrue(stores.getTicketStore().checkAlreadyInParking("BIKE3"));
+        }
+    }
+
+    @Test
+    public void eventTheStoreCannotWriteIsSkippedAndTheRestOfItsBatchApplied() throws Exception {
+        List<Ticket> savedTickets = new ArrayList<>();
+        List<Ticket> rolledBack = new ArrayList<>();
+        when(ticketStore.inTransaction(any())).thenAnswer(invocation -> {
+            int saved = savedTickets.size();
+            try {
+                return invocation.<TransactionCallback<?>>getArgument(0).doInTransaction();
+            } catch (Exception e) {
+                rolledBack.addAll(savedTickets.subList(saved, savedTickets.size()));
+                savedTickets.subList(saved, savedTickets.size()).clear();
+                throw e;
+            }
+        });
+        when(ticketStore.checkAlreadyInParking(anyString())).thenReturn(false);
+        when(parkingSpotStore.claimNextAvailableSlot(any(ParkingType.class))).thenReturn(1);
+        when(parkingSpotStore.updateParking(any(ParkingSpot.class))).thenReturn(true);
+        when(ticketStore.saveTicket(any(Ticket.class))).thenAnswer(invocation -> {
+            Ticket ticket = invocation.getArgument(0);
+            if (ticket.getVehicleRegNumber().equals("BROKEN")) {
+                return false;
+            }
+            savedTickets.add(ticket);
+            return true;
+        });
+        String log = HEADER
+                + "2020-01-01 08:00:00,IN,CAR1,CAR\n"
+                + "2020-01-01 08:01:00,IN,CAR2,CAR\n"
+                + "2020-01-01 08:02:00,IN,BROKEN,CAR\n"
+                + "2020-01-01 08:03:00,IN,CAR3,CAR\n";
+
+        GateEventProcessor processor = new GateEventProcessor(parkingSpotStore, ticketStore, 10, 1);
+
+        assertEquals(3, processor.process(new StringReader(log)));
+        assertEquals(1, processor.getFailedEvents());
+        assertEquals(3, savedTickets.size());
+        assertEquals(2, rolledBack.size());
+        assertEquals("CAR3", savedTickets.get(2).getVehicleRegNumber());
+    }
+
+    @Test
+    public void batchWhoseCommitFailsIsTriedAgain() throws Exception {
+        int[] commits = {0};
+        int[] depth = {0};
+        when(ticketStore.inTransaction(any())).thenAnswer(invocation -> {
+            Object result;
+            depth[0]++;
+            try {
+                result = invocation.<TransactionCallback<?>>getArgument(0).doInTransaction();
+            } finally {
+                depth[0]--;
+            }
+            //nested calls join the outer transaction
+            if (depth[0] == 0 && commits[0]++ == 0) {
+                throw new SQLException("Deadlock found when trying to get lock", "40001");
+            }
+            return result;
+        });
+        when(ticketStore.checkAlreadyInParking(anyString())).thenReturn(false);
+        when(parkingSpotStore.claimNextAvailableSlot(any(ParkingType.class))).thenReturn(1);
+        when(parkingSpotStore.updateParking(any(ParkingSpot.class))).thenReturn(true);
+        when(ticketStore.saveTicket(any(Ticket.class))).thenReturn(true);
+        String log = HEADER
+                + "2020-01-01 08:00:00,IN,CAR1,CAR\n"
+                + "2020-01-01 08:01:00,IN,CAR2,CAR\n";
+
+        GateEventProcessor processor = new GateEventProcessor(parkingSpotStore, ticketStore, 10, 1);
+
+        assertEquals(2, processor.process(new StringReader(log)));
+        assertEquals(0, processor.getFailedEvents());
+        assertEquals(2, commits[0]);
+        verify(ticketStore, times(4)).saveTicket(any(Ticket.class));
+    }
+
+    @Test
+    public void batchWhoseCommitKeepsFailingStopsTheRun() throws Exception {
+        int[] depth = {0};
+        when(ticketStore.inTransaction(any())).thenAnswer(invocation -> {
+            Object result;
+            depth[0]++;
+            try {
+                result = invocation.<TransactionCallback<?>>getArgument(0).doInTransaction();
+            } finally {
+                depth[0]--;
+            }
+            if (depth[0] == 0) {
+                throw new SQLException("Communications link failure", "08S01");
+            }
+            return result;
+        });
+        when(ticketStore.checkAlreadyInParking(anyString())).thenReturn(false);
+        when(parkingSpotStore.claimNextAvailableSlot(any(ParkingType.class))).thenReturn(1);
+        when(parkingSpotStore.updateParking(any(ParkingSpot.class))).thenReturn(true);
+        when(ticketStore.saveTicket(any(Ticket.class))).thenReturn(true);
+        String log = HEADER
+                + "2020-01-01 08:00:00,IN,CAR1,CAR\n"
+                + "2020-01-01 08:01:00,IN,CAR2,CAR\n";
+
+        GateEventProcessor processor = new GateEventProcessor(parkingSpotStore, ticketStore, 10, 1);
+
+        assertThrows(SQLException.class, () -> processor.process(new StringReader(log)));
+        //three batch attempts, each with one nested transaction per entry
+        verify(ticketStore, times(9)).inTransaction(any());
+    }
+}
@@ -0,0 +1,142 @@
+package com.parkit.parkingsystem.unit;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.Occupancy;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.GateServer;
+import com.parkit.parkingsystem.service.ParkingService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class GateServerTest {
+
+    @Mock
+    private static ParkingService parkingService;
+
+    private GateServer gateServer;
+    private HttpClient httpClient;
+
+    @BeforeEach
+    private void setUpPerTest() throws Exception {
+        gateServer = new GateServer(parkingService, 0);
+        gateServer.start();
+        httpClient = HttpClient.newHttpClient();
+    }
+
+    @AfterEach
+    private void tearDownPerTest() {
+        gateServer.stop(0);
+    }
+
+    private HttpResponse<String> send(String method, String path) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + gateServer.getPort() + path))
+                .method(method, HttpRequest.BodyPublishers.noBody())
+                .build();
+        return httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static Ticket ticket(Date outTime, double price) {
+        Ticket ticket = new Ticket();
+        ticket.setParkingSpot(new ParkingSpot(3, ParkingType.CAR, false));
+        ticket.setVehicleRegNumber("ABCDEF");
+        ticket.setInTime(new Date(0));
+        ticket.setOutTime(outTime);
+        ticket.setPrice(price);
+        return ticket;
+    }
+
+    @Test
+    public void entryReturnsTheTicket() throws Exception {
+        when(parkingService.processIncomingVehicle(eq(ParkingType.CAR), eq("ABCDEF"), any(Date.class)))
+                .thenReturn(ticket(null, 0));
+
+        HttpResponse<String> response = send("POST", "/entries?type=car&vehicle=ABCDEF");
+
+        assertEquals(201, response.statusCode());
+        assertTrue(response.body().contains("\"spot\":3"));
+        assertFalse(response.body().contains("price"));
+    }
+
+    @Test
+    public void entryOfVehicleAlreadyInParkingIsAConflict() throws Exception {
+        when(parkingService.processIncomingVehicle(any(ParkingType.class), anyString(), any(Date.class)))
+                .thenThrow(new IllegalStateException("Vehicle already in parking"));
+
+        assertEquals(409, send("POST", "/entries?type=CAR&vehicle=ABCDEF").statusCode());
+    }
+
+    @Test
+    public void entryWhenParkingIsFullIsUnavailable() throws Exception {
+        when(parkingService.processIncomingVehicle(any(ParkingType.class), anyString(), any(Date.class))).thenReturn(null);
+
+        assertEquals(503, send("POST", "/entries?type=BIKE&vehicle=ABCDEF").statusCode());
+    }
+
+    @Test
+    public void entryWithUnknownTypeIsRejected() throws Exception {
+        assertEquals(400, send("POST", "/entries?type=TRUCK&vehicle=ABCDEF").statusCode());
+        verifyNoInteractions(parkingService);
+    }
+
+    @Test
+    public void exitReturnsTheFare() throws Exception {
+        when(parkingService.isInParking("ABCDEF")).thenReturn(true);
+        when(parkingService.processExitingVehicle(eq("ABCDEF"), any(Date.class))).thenReturn(ticket(new Date(), 1.5));
+
+        HttpResponse<String> response = send("POST", "/exits?vehicle=ABCDEF");
+
+        assertEquals(200, response.statusCode());
+        assertTrue(response.body().contains("\"price\":1.5"));
+    }
+
+    @Test
+    public void exitOfUnknownVehicleIsNotFound() throws Exception {
+        when(parkingService.isInParking("ABCDEF")).thenReturn(false);
+
+        assertEquals(404, send("POST", "/exits?vehicle=ABCDEF").statusCode());
+        verify(parkingService, never()).processExitingVehicle(anyString(), any(Date.class));
+    }
+
+    @Test
+    public void quoteNeedsGet() throws Exception {
+        assertEquals(405, send("POST", "/quotes?vehicle=ABCDEF").statusCode());
+    }
+
+    @Test
+    public void metricsAreServedAsText() throws Exception {
+        HttpResponse<String> response = send("GET", "/metrics");
+
+        assertEquals(200, response.statusCode());
+        assertTrue(response.headers().firstValue("Content-Type").orElse("").startsWith("text/plain"));
+        assertTrue(response.body().contains("# TYPE parkit_operation_latency_seconds summary"));
+    }
+
+    @Test
+    public void occupancyOfEveryType() throws Exception {
+        when(parkingService.getOccupancy(ParkingType.CAR)).thenReturn(new Occupancy(ParkingType.CAR, 3, 0));
+        when(parkingService.getOccupancy(ParkingType.BIKE)).thenReturn(new Occupancy(ParkingType.BIKE, 2, 1));
+
+        HttpResponse<String> response = send("GET", "/occupancy");
+
+        assertEquals(200, response.statusCode());
+        assertEquals("{\"CAR\":{\"capacity\":3,\"available\":0,\"occupied\":3,\"full\":true},"
+                + "\"BIKE\":{\"capacity\":2,\"available\":1,\"occupied\":1,\"full\":false}}", response.body());
+    }
+}
@@ -0,0 +1,134 @@
+package com.parkit.parkingsystem.unit;
+
+import com.parkit.parkingsystem.config.TransactionCallback;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.InMemoryParkingSpotStore;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.ParkingStores;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.simulation.GateTrafficSimulator;
+import com.parkit.parkingsystem.simulation.SimulationReport;
+import com.parkit.parkingsystem.simulation.TrafficProfile;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@MockitoSettings(strictness = Strictness.LENIENT)
+@ExtendWith(MockitoExtension.class)
+public class GateTrafficSimulatorTest {
+
+    private static final int SPOTS = 1000;
+
+    @Mock
+    private static ParkingSpotDAO parkingSpotDAO;
+    @Mock
+    private static TicketDAO ticketDAO;
+
+    private final NavigableSet<Integer> freeSpots = new ConcurrentSkipListSet<>();
+    private final Map<String, Ticket> openTickets = new ConcurrentHashMap<>();
+
+    @BeforeEach
+    private void setUpPerTest() throws Exception {
+        for (int spot = 1; spot <= SPOTS; spot++) {
+            freeSpots.add(spot);
+        }
+        //a lot whose spots are shared by both vehicle types
+        when(ticketDAO.inTransaction(any())).thenAnswer(
+                invocation -> invocation.<TransactionCallback<?>>getArgument(0).doInTransaction());
+        when(parkingSpotDAO.claimNextAvailableSlot(any(ParkingType.class))).thenAnswer(invocation -> {
+            Integer spot = freeSpots.pollFirst();
+            return spot == null ? 0 : spot;
+        });
+        when(parkingSpotDAO.updateParking(any(ParkingSpot.class))).thenAnswer(invocation -> {
+            freeSpots.add(invocation.<ParkingSpot>getArgument(0).getId());
+            return true;
+        });
+        when(ticketDAO.checkAlreadyInParking(anyString())).thenAnswer(invocation -> openTickets.containsKey(invocation.<String>getArgument(0)));
+        when(ticketDAO.saveTicket(any(Ticket.class))).thenAnswer(invocation -> {
+            Ticket ticket = invocation.getArgument(0);
+            openTickets.put(ticket.getVehicleRegNumber(), ticket);
+            return true;
+        });
+        when(ticketDAO.getTicket(anyString())).thenAnswer(invocation -> openTickets.get(invocation.<String>getArgument(0)));
+        when(ticketDAO.updateTicket(any(Ticket.class))).thenAnswer(
+                invocation -> openTickets.remove(invocation.<Ticket>getArgument(0).getVehicleRegNumber()) != null);
+    }
+
+    private static TrafficProfile oneSecondRush() {
+        TrafficProfile profile = new TrafficProfile();
+        profile.setArrivalsPerHour("0:300,30:900,60:300");
+        profile.setDurationMinutes(60);
+        profile.setTimeScale(3600);
+        profile.setGates(4);
+        profile.setCarDwellMedianMinutes(5);
+        profile.setBikeDwellMedianMinutes(3);
+        profile.setRegularCustomers(50);
+        return profile;
+    }
+
+    @Test
+    public void everyArrivalIsServedOrRefusedAndTheLotEndsEmpty() throws Exception {
+        SimulationReport report = new GateTrafficSimulator(parkingSpotDAO, ticketDAO, oneSecondRush()).run();
+
+        assertTrue(report.getArrivals() > 300, report.toString());
+        assertEquals(report.getArrivals(), report.getEntries() + report.getAllocationFailures() + report.getEntryErrors());
+        assertEquals(report.getEntries(), report.getExits());
+        assertEquals(0, report.getDoubleAllocations());
+        assertEquals(0, report.getEntryErrors());
+        assertEquals(0, report.getExitErrors());
+        assertTrue(report.getEntryLatency().getValueAtPercentile(99) > 0);
+        assertEquals(SPOTS, freeSpots.size());
+        assertTrue(openTickets.isEmpty());
+    }
+
+    @Test
+    public void spotHandedOutTwiceIsReported() throws Exception {
+        when(parkingSpotDAO.claimNextAvailableSlot(any(ParkingType.class))).thenReturn(7);
+        TrafficProfile profile = oneSecondRush();
+        profile.setDurationMinutes(10);
+        profile.setDwellSigma(0);
+
+        SimulationReport report = new GateTrafficSimulator(parkingSpotDAO, ticketDAO, profile).run();
+
+        assertTrue(report.getDoubleAllocations() > 0, report.toString());
+    }
+
+    @Test
+    public void rushOnInMemoryStores() throws Exception {
+        ParkingStores stores = ParkingStores.inMemory("CAR:1-60,BIKE:61-80");
+
+        SimulationReport report = new GateTrafficSimulator(stores.getParkingSpotStore(), stores.getTicketStore(), oneSecondRush()).run();
+
+        assertEquals(report.getArrivals(), report.getEntries() + report.getAllocationFailures());
+        assertEquals(report.getEntries(), report.getExits());
+        assertEquals(0, report.getDoubleAllocations());
+        assertEquals(0, report.getExitErrors());
+        assertEquals(1, stores.getParkingSpotStore().getNextAvailableSlot(ParkingType.CAR));
+    }
+
+    @Test
+    public void profileInterpolatesArrivalRate() {
+        TrafficProfile profile = new TrafficProfile();
+        profile.setArrivalsPerHour("0:60,60:120");
+
+        assertEquals(90, profile.getArrivalsPerHour(30), 1e-9);
+        assertEquals(120, profile.getArrivalsPerHour(90), 1e-9);
+        assertEquals(120, profile.getMaxArrivalsPerHour(), 1e-9);
+    }
+}
@@ -0,0 +1,45 @@
+package com.parkit.parkingsystem.unit;
+
+import com.parkit.parkingsystem.util.LatencyHistogram;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void smallValuesAreExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 50; i++) {
+            histogram.record(i);
+        }
+
+        assertEquals(50, histogram.getCount());
+        assertEquals(25, histogram.getValueAtPercentile(50));
+        assertEquals(50, histogram.getValueAtPercentile(100));
+        assertEquals(25.5, histogram.getMean());
+    }
+
+    @Test
+    public void percentilesOfLargeValuesStayWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long micros = 1; micros <= 10_000; micros++) {
+            histogram.record(micros * 1000);
+        }
+
+        long p99 = histogram.getValueAtPercentile(99);
+        assertTrue(p99 >= 9_900_000 && p99 <= 9_900_000 * 1.04, "p99 was " + p99);
+        long p50 = histogram.getValueAtPercentile(50);
+        assertTrue(p50 >= 5_000_000 && p50 <= 5_000_000 * 1.04, "p50 was " + p50);
+        assertEquals(10_000_000, histogram.getMax());
+        assertEquals(10_000_000, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void emptyHistogramReportsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        assertEquals(0, histogram.getValueAtPercentile(99));
+        assertEquals(0, histogram.getMean());
+    }
+}
@@ -0,0 +1,74 @@
+package com.parkit.parkingsystem.unit;
+
+import com.parkit.parkingsystem.config.ConnectionPool;
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.metrics.MetricsRegistry;
+import com.parkit.parkingsystem.metrics.OperationMetrics;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class MetricsRegistryTest {
+
+    @Mock
+    private static DataBaseConfig dataBaseConfig;
+
+    @Test
+    public void operationIsPublishedOverJmx() throws Exception {
+        OperationMetrics metrics = MetricsRegistry.operation("MetricsRegistryTest.jmx");
+        assertSame(metrics, MetricsRegistry.operation("MetricsRegistryTest.jmx"));
+        metrics.record(System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(2));
+        metrics.failed();
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName objectName = new ObjectName(MetricsRegistry.JMX_DOMAIN + ":type=Operation,name=" + ObjectName.quote("MetricsRegistryTest.jmx"));
+        assertEquals(1L, server.getAttribute(objectName, "Count"));
+        assertEquals(1L, server.getAttribute(objectName, "Errors"));
+        assertTrue((Double) server.getAttribute(objectName, "P999Micros") >= 2000);
+    }
+
+    @Test
+    public void scrapeHasPercentilesErrorsAndPools() {
+        OperationMetrics metrics = MetricsRegistry.operation("MetricsRegistryTest.scrape");
+        for (int i = 0; i < 1000; i++) {
+            metrics.record(System.nanoTime());
+        }
+        MetricsRegistry.registerConnectionPool("test-pool", new ConnectionPool("jdbc:none", "", "", 0, 2, 10, 1, 0, 0));
+
+        String text = MetricsRegistry.scrape();
+
+        assertTrue(text.contains("parkit_operation_latency_seconds{operation=\"MetricsRegistryTest.scrape\",quantile=\"0.5\"}"));
+        assertTrue(text.contains("parkit_operation_latency_seconds{operation=\"MetricsRegistryTest.scrape\",quantile=\"0.99\"}"));
+        assertTrue(text.contains("parkit_operation_latency_seconds{operation=\"MetricsRegistryTest.scrape\",quantile=\"0.999\"}"));
+        assertTrue(text.contains("parkit_operation_latency_seconds_count{operation=\"MetricsRegistryTest.scrape\"} 1000\n"));
+        assertTrue(text.contains("parkit_operation_errors_total{operation=\"MetricsRegistryTest.scrape\"} 0\n"));
+        assertTrue(text.contains("parkit_pool_connections_max{pool=\"test-pool\"} 2\n"));
+    }
+
+    @Test
+    public void failedDaoCallIsTimedAndCounted() throws Exception {
+        when(dataBaseConfig.getConnection()).thenThrow(new SQLException("database down"));
+        TicketDAO ticketDAO = new TicketDAO();
+        ticketDAO.setDataBaseConfig(dataBaseConfig);
+        OperationMetrics metrics = MetricsRegistry.operation("TicketDAO.getTicket");
+        long count = metrics.getCount();
+        long errors = metrics.getErrors();
+
+        assertNull(ticketDAO.getTicket("ABCDEF"));
+
+        assertEquals(count + 1, metrics.getCount());
+        assertEquals(errors + 1, metrics.getErrors());
+    }
+}
@@ -0,0 +1,219 @@
+package com.parkit.parkingsystem.unit;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.config.TransactionCallback;
+import com.parkit.parkingsystem.constants.DBConstants;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.OfflineMode;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.dao.TicketJournalEntry;
+import com.parkit.parkingsystem.dao.TicketJournalFile;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.ParkingService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@MockitoSettings(strictness = Strictness.LENIENT)
+@ExtendWith(MockitoExtension.class)
+public class OfflineModeTest {
+
+    private static final int QUEUE_CAPACITY = 1 << 16;
+
+    @Mock
+    private static TicketDAO ticketDAO;
+    @Mock
+    private static ParkingSpotDAO parkingSpotDAO;
+    @Mock
+    private static DataBaseConfig dataBaseConfig;
+    @Mock
+    private static Connection connection;
+
+    private final Map<String, PreparedStatement> preparedStatements = new HashMap<>();
+    private Path path;
+
+    private PreparedStatement preparedStatement(String sql) {
+        return preparedStatements.computeIfAbsent(sql, key -> mock(PreparedStatement.class));
+    }
+
+    @BeforeEach
+    private void setUpPerTest() throws Exception {
+        path = Files.createTempFile("offline", ".queue");
+        Files.delete(path);
+        when(ticketDAO.getDataBaseConfig()).thenReturn(dataBaseConfig);
+        //the database is down
+        when(ticketDAO.inTransaction(any())).thenThrow(new SQLException("Communications link failure", "08S01"));
+        when(dataBaseConfig.getConnection()).thenThrow(new SQLException("Communications link failure", "08S01"));
+
+        Ticket openTicket = new Ticket();
+        openTicket.setId(7);
+        openTicket.setParkingSpot(new ParkingSpot(1, ParkingType.CAR, false));
+        openTicket.setVehicleRegNumber("OPEN1");
+        openTicket.setInTime(new Date(System.currentTimeMillis() - 60 * 60 * 1000));
+        when(ticketDAO.getOpenTickets()).thenReturn(Collections.singletonList(openTicket));
+        when(parkingSpotDAO.getParkingSpots()).thenReturn(Arrays.asList(new ParkingSpot(1, ParkingType.CAR, false),
+                new ParkingSpot(2, ParkingType.CAR, true), new ParkingSpot(3, ParkingType.CAR, true),
+                new ParkingSpot(4, ParkingType.BIKE, true)));
+    }
+
+    @AfterEach
+    private void tearDownPerTest() throws Exception {
+        Files.deleteIfExists(path);
+    }
+
+    private OfflineMode openOfflineMode() throws Exception {
+        return new OfflineMode(ticketDAO, parkingSpotDAO, new TicketJournalFile(path, QUEUE_CAPACITY, false), "offline.queue", 100, 60_000);
+    }
+
+    private void databaseIsBack() throws Exception {
+        reset(dataBaseConfig);
+        when(dataBaseConfig.getConnection()).thenReturn(connection);
+        when(dataBaseConfig.inTransaction(any())).thenAnswer(invocation -> ((TransactionCallback<?>) invocation.getArgument(0)).doInTransaction());
+        when(connection.isValid(anyInt())).thenReturn(true);
+        when(connection.prepareStatement(anyString())).thenAnswer(invocation -> preparedStatement(invocation.getArgument(0)));
+        ResultSet noRow = mock(ResultSet.class);
+        when(preparedStatement(DBConstants.GET_OPEN_TICKET_ID).executeQuery()).thenReturn(noRow);
+        when(preparedStatement(DBConstants.GET_OFFLINE_QUEUE_CHECKPOINT).executeQuery()).thenReturn(noRow);
+        when(preparedStatement(DBConstants.SAVE_TICKET).executeUpdate()).thenReturn(1);
+        when(preparedStatement(DBConstants.CLAIM_PARKING_SPOT).executeUpdate()).thenReturn(1);
+        //OPEN1 was let out by another instance that still reached the database
+        when(preparedStatement(DBConstants.CLOSE_OPEN_TICKET).executeUpdate()).thenReturn(0);
+        when(parkingSpotDAO.loadParkingSpotIndex()).thenReturn(true);
+        when(ticketDAO.loadRegularUserIndex()).thenReturn(true);
+        when(ticketDAO.loadActiveSessionIndex()).thenReturn(true);
+    }
+
+    private static void parkAndLeave(OfflineMode offlineMode) throws Exception {
+        ParkingService parkingService = new ParkingService(null, offlineMode.getParkingSpotStore(), offlineMode.getTicketStore());
+        Ticket entry = parkingService.processIncomingVehicle(ParkingType.CAR, "NEW1", new Date());
+        assertEquals(2, entry.getParkingSpot().getId());
+        assertThrows(IllegalStateException.class, () -> parkingService.processIncomingVehicle(ParkingType.CAR, "OPEN1", new Date()));
+        Ticket exit = parkingService.processExitingVehicle("OPEN1", new Date());
+        assertNotNull(exit.getOutTime());
+        assertThrows(IllegalStateException.class, () -> parkingService.processExitingVehicle("UNKNOWN", new Date()));
+    }
+
+    @Test
+    public void gatesKeepWorkingOnTheSnapshotWhileTheDatabaseIsDown() throws Exception {
+        try (OfflineMode offlineMode = openOfflineMode()) {
+            parkAndLeave(offlineMode);
+
+            assertTrue(offlineMode.isOffline());
+            assertEquals(2, offlineMode.getQueuedEntries());
+            assertEquals(2, offlineMode.getParkingSpotStore().getOccupancy(ParkingType.CAR).getAvailableSpots());
+            assertFalse(offlineMode.getTicketStore().checkAlreadyInParking("OPEN1"));
+            assertTrue(offlineMode.getTicketStore().checkAlreadyInParking("NEW1"));
+            verify(ticketDAO, never()).saveTicket(any(Ticket.class));
+        }
+    }
+
+    @Test
+    public void queueIsReplayedWithConflictsOnReconnect() throws Exception {
+        try (OfflineMode offlineMode = openOfflineMode()) {
+            parkAndLeave(offlineMode);
+            databaseIsBack();
+
+            assertTrue(offlineMode.reconnect());
+
+            assertFalse(offlineMode.isOffline());
+            assertEquals(0, offlineMode.getQueuedEntries());
+            assertEquals(1, offlineMode.getConflicts());
+            PreparedStatement saveTicket = preparedStatement(DBConstants.SAVE_TICKET);
+            verify(saveTicket).setString(2, "NEW1");
+            verify(saveTicket).executeUpdate();
+            verify(preparedStatement(DBConstants.CLAIM_PARKING_SPOT)).setInt(1, 2);
+            verify(preparedStatement(DBConstants.CLOSE_OPEN_TICKET)).setInt(3, 7);
+            //the exit was left out: its spot is not freed
+            verify(preparedStatement(DBConstants.UPDATE_PARKING_SPOT), never()).executeUpdate();
+            //two changes, each followed by its COMMIT marker
+            verify(preparedStatement(DBConstants.SAVE_OFFLINE_QUEUE_CHECKPOINT)).setLong(2, 4);
+            verify(ticketDAO).loadActiveSessionIndex();
+
+            //online again: the DAOs answer
+            when(ticketDAO.checkAlreadyInParking("NEW1")).thenReturn(true);
+            assertTrue(offlineMode.getTicketStore().checkAlreadyInParking("NEW1"));
+        }
+    }
+
+    @Test
+    public void changeTheQueueCannotTakeIsRolledBack() throws Exception {
+        //room for one ticket and its COMMIT marker
+        try (OfflineMode offlineMode = new OfflineMode(ticketDAO, parkingSpotDAO, new TicketJournalFile(path, 128, false),
+                "offline.queue", 100, 60_000)) {
+            ParkingService parkingService = new ParkingService(null, offlineMode.getParkingSpotStore(), offlineMode.getTicketStore());
+            parkingService.processIncomingVehicle(ParkingType.CAR, "NEW1", new Date());
+
+            assertThrows(Exception.class, () -> parkingService.processIncomingVehicle(ParkingType.CAR, "NEW2", new Date()));
+            assertFalse(offlineMode.getTicketStore().checkAlreadyInParking("NEW2"));
+            assertEquals(1, offlineMode.getParkingSpotStore().getOccupancy(ParkingType.CAR).getAvailableSpots());
+            assertEquals(1, offlineMode.getQueuedEntries());
+        }
+        databaseIsBack();
+
+        try (OfflineMode offlineMode = openOfflineMode()) {
+            assertEquals(1, offlineMode.recover());
+            verify(preparedStatement(DBConstants.SAVE_TICKET)).setString(2, "NEW1");
+            verify(preparedStatement(DBConstants.SAVE_TICKET), never()).setString(2, "NEW2");
+        }
+    }
+
+    @Test
+    public void uncommittedChangeIsNotReplayedAfterARestart() throws Exception {
+        Ticket ticket = new Ticket();
+        ticket.setParkingSpot(new ParkingSpot(2, ParkingType.CAR, false));
+        ticket.setInTime(new Date());
+        try (TicketJournalFile queueFile = new TicketJournalFile(path, QUEUE_CAPACITY, false)) {
+            ticket.setVehicleRegNumber("NEW1");
+            queueFile.appendCommit(queueFile.appendPending(TicketJournalEntry.Operation.SAVE, ticket).getSequence());
+            //the app stopped before this transaction committed
+            ticket.setVehicleRegNumber("CRASHED");
+            queueFile.appendPending(TicketJournalEntry.Operation.SAVE, ticket);
+        }
+        databaseIsBack();
+
+        try (OfflineMode offlineMode = openOfflineMode()) {
+            assertEquals(1, offlineMode.recover());
+            verify(preparedStatement(DBConstants.SAVE_TICKET)).setString(2, "NEW1");
+            verify(preparedStatement(DBConstants.SAVE_TICKET), never()).setString(2, "CRASHED");
+            verify(preparedStatement(DBConstants.SAVE_OFFLINE_QUEUE_CHECKPOINT)).setLong(2, 3);
+        }
+    }
+
+    @Test
+    public void queueSurvivesARestart() throws Exception {
+        try (OfflineMode offlineMode = openOfflineMode()) {
+            parkAndLeave(offlineMode);
+        }
+        databaseIsBack();
+
+        try (OfflineMode offlineMode = openOfflineMode()) {
+            assertEquals(2, offlineMode.recover());
+            assertEquals(0, offlineMode.getQueuedEntries());
+            verify(preparedStatement(DBConstants.SAVE_TICKET)).executeUpdate();
+        }
+    }
+}
@@ -1,9 +1,12 @@
 package com.parkit.parkingsystem.unit;
 
+import com.parkit.parkingsystem.config.TransactionCallback;
 import com.parkit.parkingsystem.constants.ParkingType;
 import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.ReservationDAO;
 import com.parkit.parkingsystem.dao.TicketDAO;
 import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Reservation;
 import com.parkit.parkingsystem.model.Ticket;
 import com.parkit.parkingsystem.service.FareCalculatorService;
 import com.parkit.parkingsystem.service.ParkingService;
@@ -20,6 +23,7 @@ import org.mockito.quality.Strictness;
 import static org.assertj.core.api.Assertions.*;
 
 import java.util.Date;
+import java.util.function.IntPredicate;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
@@ -37,12 +41,17 @@ public class ParkingServiceTest {
     private static ParkingSpotDAO parkingSpotDAO;
     @Mock
     private static TicketDAO ticketDAO;
+    @Mock
+    private static ReservationDAO reservationDAO;
 
     @BeforeEach
     private void setUpPerTest() {
         try {
             when(inputReaderUtil.readVehicleRegistrationNumber()).thenReturn("ABCDEF");
             when(parkingSpotDAO.updateParking(any(ParkingSpot.class))).thenReturn(true);
+            when(ticketDAO.saveTicket(any(Ticket.class))).thenReturn(true);
+            when(ticketDAO.inTransaction(any())).thenAnswer(
+                    invocation -> invocation.<TransactionCallback<?>>getArgument(0).doInTransaction());
 
             ParkingSpot parkingSpot = new ParkingSpot(1, ParkingType.CAR,false);
             Ticket ticket = new Ticket();
@@ -60,37 +69,72 @@ public class ParkingServiceTest {
 
     @Test
     public void processIncomingVehicle_CarTypeTest() throws Exception {
-        when(parkingSpotDAO.getNextAvailableSlot(any(ParkingType.class))).thenReturn(1);
+        when(parkingSpotDAO.claimNextAvailableSlot(any(ParkingType.class))).thenReturn(1);
         when(inputReaderUtil.readSelection()).thenReturn(1);
         parkingService.processIncomingVehicle();
-        verify(parkingSpotDAO, Mockito.times(1)).updateParking(any(ParkingSpot.class));
+        verify(parkingSpotDAO, Mockito.times(1)).claimNextAvailableSlot(ParkingType.CAR);
+        verify(parkingSpotDAO, never()).updateParking(any(ParkingSpot.class));
         verify(ticketDAO, Mockito.times(1)).saveTicket(any(Ticket.class));
     }
 
+    @Test
+    public void nextParkingNumberIsLookedUpWithoutClaimingIt() throws Exception {
+        when(parkingSpotDAO.getNextAvailableSlot(ParkingType.CAR)).thenReturn(3);
+        when(inputReaderUtil.readSelection()).thenReturn(1);
+
+        ParkingSpot parkingSpot = parkingService.getNextParkingNumberIfAvailable();
+
+        assertEquals(3, parkingSpot.getId());
+        assertEquals(true, parkingSpot.isAvailable());
+        verify(parkingSpotDAO, never()).claimNextAvailableSlot(any(ParkingType.class));
+        verify(parkingSpotDAO, never()).claimNextAvailableSlot(any(ParkingType.class), any(IntPredicate.class));
+    }
+
     @Test
     public void processIncomingVehicle_BikeTypeTest() throws Exception {
-        when(parkingSpotDAO.getNextAvailableSlot((any(ParkingType.class)))).thenReturn(1);
+        when(parkingSpotDAO.claimNextAvailableSlot((any(ParkingType.class)))).thenReturn(1);
         when(inputReaderUtil.readSelection()).thenReturn(2);
         parkingService.processIncomingVehicle();
-        verify(parkingSpotDAO, Mockito.times(1)).updateParking(any(ParkingSpot.class));
+        verify(parkingSpotDAO, Mockito.times(1)).claimNextAvailableSlot(ParkingType.BIKE);
+        verify(parkingSpotDAO, never()).updateParking(any(ParkingSpot.class));
         verify(ticketDAO, Mockito.times(1)).saveTicket(any(Ticket.class));
     }
 
 
     @Test
     public void processIncomingVehicle_WithAlreadyInParkingErrorTest() throws Exception{
-        when(parkingSpotDAO.getNextAvailableSlot((any(ParkingType.class)))).thenReturn(1);
+        when(parkingSpotDAO.claimNextAvailableSlot((any(ParkingType.class)))).thenReturn(1);
         when(inputReaderUtil.readSelection()).thenReturn(1);
         when(ticketDAO.checkAlreadyInParking(anyString())).thenReturn(true);
         assertThrows(Exception.class, ()-> parkingService.processIncomingVehicle() );
+        verify(parkingSpotDAO, never()).claimNextAvailableSlot(any(ParkingType.class));
+        verify(ticketDAO, never()).saveTicket(any(Ticket.class));
+    }
+
+    @Test
+    public void processIncomingVehicle_RunsInOneTransaction() throws Exception {
+        when(parkingSpotDAO.claimNextAvailableSlot(any(ParkingType.class))).thenReturn(1);
+        when(inputReaderUtil.readSelection()).thenReturn(1);
+        parkingService.processIncomingVehicle();
+        verify(ticketDAO, Mockito.times(1)).inTransaction(any());
+    }
+
+    @Test
+    public void processIncomingVehicle_WithSavingTicketErrorTest() throws Exception {
+        when(parkingSpotDAO.claimNextAvailableSlot(any(ParkingType.class))).thenReturn(1);
+        when(inputReaderUtil.readSelection()).thenReturn(1);
+        when(ticketDAO.saveTicket(any(Ticket.class))).thenReturn(false);
+        //the exception makes the transaction roll the claimed spot back
+        assertThrows(Exception.class, ()-> parkingService.processIncomingVehicle() );
     }
 
     @Test
     public void processIncomingVehicle_WithErrorFetchingParkingNumber() throws Exception{
-        when(parkingSpotDAO.getNextAvailableSlot((any(ParkingType.class)))).thenReturn(0);
+        when(parkingSpotDAO.claimNextAvailableSlot((any(ParkingType.class)))).thenReturn(0);
         when(inputReaderUtil.readSelection()).thenReturn(1);
         parkingService.processIncomingVehicle();
-        verify(parkingSpotDAO, times(1)).getNextAvailableSlot(any(ParkingType.class));
+        verify(parkingSpotDAO, times(1)).claimNextAvailableSlot(any(ParkingType.class));
+        verify(ticketDAO, never()).saveTicket(any(Ticket.class));
     }
     @Test
     public void processExitingVehicleTest() throws Exception {
@@ -106,6 +150,71 @@ public class ParkingServiceTest {
         assertThrows(Exception.class, ()-> parkingService.processExitingVehicle() );
     }
 
+    @Test
+    public void processExitingVehicle_WithUpdatingParkingErrorTest() throws Exception{
+        when(ticketDAO.updateTicket(any(Ticket.class))).thenReturn(true);
+        when(parkingSpotDAO.updateParking(any(ParkingSpot.class))).thenReturn(false);
+        //the exception makes the transaction roll the closed ticket back
+        assertThrows(Exception.class, ()-> parkingService.processExitingVehicle("ABCDEF", new Date()));
+    }
+
+    @Test
+    public void processExitingVehicle_WithoutTicketTest() throws Exception {
+        when(ticketDAO.getTicket(anyString())).thenReturn(null);
+        assertThat(parkingService.processExitingVehicle()).isNull();
+        assertThrows(IllegalStateException.class, () -> parkingService.processExitingVehicle("ABCDEF", new Date()));
+        verify(ticketDAO, never()).updateTicket(any(Ticket.class));
+    }
+
+    @Test
+    public void processExitingVehicle_AlreadyLeftTest() throws Exception {
+        Ticket closedTicket = new Ticket();
+        closedTicket.setParkingSpot(new ParkingSpot(1, ParkingType.CAR, false));
+        closedTicket.setVehicleRegNumber("ABCDEF");
+        closedTicket.setInTime(new Date(System.currentTimeMillis() - (2*60*60*1000)));
+        closedTicket.setOutTime(new Date(System.currentTimeMillis() - (60*60*1000)));
+        when(ticketDAO.getTicket(anyString())).thenReturn(closedTicket);
+
+        assertThrows(IllegalStateException.class, () -> parkingService.processExitingVehicle("ABCDEF", new Date()));
+        verify(ticketDAO, never()).updateTicket(any(Ticket.class));
+        verify(parkingSpotDAO, never()).updateParking(any(ParkingSpot.class));
+    }
+
+    @Test
+    public void processIncomingVehicle_WithReservationTest() throws Exception {
+        Reservation reservation = new Reservation();
+        reservation.setParkingSpot(new ParkingSpot(3, ParkingType.CAR, false));
+        reservation.setVehicleRegNumber("ABCDEF");
+        when(reservationDAO.getReservation(eq("ABCDEF"), any(Date.class))).thenReturn(reservation);
+        when(parkingSpotDAO.claimSlot(ParkingType.CAR, 3)).thenReturn(true);
+        parkingService = new ParkingService(inputReaderUtil, parkingSpotDAO, ticketDAO, reservationDAO);
+
+        Ticket ticket = parkingService.processIncomingVehicle(ParkingType.CAR, "ABCDEF", new Date());
+
+        assertEquals(3, ticket.getParkingSpot().getId());
+        verify(parkingSpotDAO, never()).claimNextAvailableSlot(any(ParkingType.class), any(IntPredicate.class));
+    }
+
+    @Test
+    public void processIncomingVehicle_WithoutReservationSkipsHeldSpotsTest() throws Exception {
+        when(reservationDAO.isHeld(eq(1), any(Date.class))).thenReturn(true);
+        when(parkingSpotDAO.claimNextAvailableSlot(eq(ParkingType.CAR), any(IntPredicate.class))).thenAnswer(invocation -> {
+            IntPredicate skip = invocation.getArgument(1);
+            for (int parkingNumber = 1; parkingNumber <= 3; parkingNumber++) {
+                if (!skip.test(parkingNumber)) {
+                    return parkingNumber;
+                }
+            }
+            return 0;
+        });
+        parkingService = new ParkingService(inputReaderUtil, parkingSpotDAO, ticketDAO, reservationDAO);
+
+        Ticket ticket = parkingService.processIncomingVehicle(ParkingType.CAR, "GHIJKL", new Date());
+
+        assertEquals(2, ticket.getParkingSpot().getId());
+        verify(parkingSpotDAO, never()).claimSlot(any(ParkingType.class), anyInt());
+    }
+
 }
 
 
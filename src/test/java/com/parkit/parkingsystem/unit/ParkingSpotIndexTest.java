@@ -0,0 +1,71 @@
+package com.parkit.parkingsystem.unit;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotIndex;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ParkingSpotIndexTest {
+
+    private ParkingSpotIndex parkingSpotIndex;
+
+    @BeforeEach
+    private void setUpPerTest() {
+        parkingSpotIndex = new ParkingSpotIndex(200);
+        parkingSpotIndex.setAvailable(ParkingType.CAR, 3, true);
+        parkingSpotIndex.setAvailable(ParkingType.CAR, 130, true);
+        parkingSpotIndex.setAvailable(ParkingType.BIKE, 4, true);
+    }
+
+    @Test
+    public void nextAvailableSlotIsLowestFreeNumberOfThatType() {
+        assertEquals(3, parkingSpotIndex.getNextAvailableSlot(ParkingType.CAR));
+        assertEquals(4, parkingSpotIndex.getNextAvailableSlot(ParkingType.BIKE));
+    }
+
+    @Test
+    public void takenSpotIsSkippedAcrossWords() {
+        parkingSpotIndex.setAvailable(ParkingType.CAR, 3, false);
+        assertEquals(130, parkingSpotIndex.getNextAvailableSlot(ParkingType.CAR));
+    }
+
+    @Test
+    public void fullTypeReturnsZero() {
+        parkingSpotIndex.setAvailable(ParkingType.BIKE, 4, false);
+        assertEquals(0, parkingSpotIndex.getNextAvailableSlot(ParkingType.BIKE));
+    }
+
+    @Test
+    public void settingSameStateTwiceReportsNoChange() {
+        assertTrue(parkingSpotIndex.setAvailable(ParkingType.CAR, 3, false));
+        assertFalse(parkingSpotIndex.setAvailable(ParkingType.CAR, 3, false));
+    }
+
+    @Test
+    public void unknownSpotIsIgnored() {
+        assertFalse(parkingSpotIndex.setAvailable(ParkingType.CAR, 201, true));
+        assertFalse(parkingSpotIndex.isAvailable(ParkingType.CAR, 201));
+    }
+
+    @Test
+    public void occupancyFollowsEveryChange() {
+        ParkingSpotIndex index = new ParkingSpotIndex(5);
+        index.addSpot(ParkingType.CAR, 1, true);
+        index.addSpot(ParkingType.CAR, 2, false);
+        index.addSpot(ParkingType.CAR, 3, true);
+        assertEquals(3, index.getCapacity(ParkingType.CAR));
+        assertEquals(2, index.getAvailableSpots(ParkingType.CAR));
+
+        index.setAvailable(ParkingType.CAR, 1, false);
+        index.setAvailable(ParkingType.CAR, 1, false);
+        index.setAvailable(ParkingType.CAR, 2, true);
+        assertEquals(2, index.getAvailableSpots(ParkingType.CAR));
+        index.setAvailable(ParkingType.CAR, 2, false);
+        index.setAvailable(ParkingType.CAR, 3, false);
+
+        assertEquals(0, index.getAvailableSpots(ParkingType.CAR));
+        assertEquals(0, index.getCapacity(ParkingType.BIKE));
+    }
+}
@@ -0,0 +1,303 @@
+package com.parkit.parkingsystem.unit;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.FileTicketStore;
+import com.parkit.parkingsystem.dao.InMemoryParkingSpotStore;
+import com.parkit.parkingsystem.dao.ParkingStores;
+import com.parkit.parkingsystem.dao.TicketJournalEntry;
+import com.parkit.parkingsystem.dao.TicketStore;
+import com.parkit.parkingsystem.model.Occupancy;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.ParkingService;
+import com.parkit.parkingsystem.util.ScriptedInputReaderUtil;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The scenarios of ParkingDataBaseIT, run on the stores that need no database server.
+ */
+public class ParkingStoresTest {
+
+    private static final String REG_NUMBER_FOR_TEST = "ABCDEF";
+
+    private Path path;
+
+    @BeforeEach
+    private void setUpPerTest() throws IOException {
+        path = Files.createTempFile("tickets", ".log");
+        Files.delete(path);
+    }
+
+    @AfterEach
+    private void tearDownPerTest() throws IOException {
+        Files.deleteIfExists(path);
+        Files.deleteIfExists(path.resolveSibling(path.getFileName() + ".rewrite"));
+    }
+
+    private List<ParkingStores> openStores() throws IOException {
+        return Arrays.asList(ParkingStores.inMemory(InMemoryParkingSpotStore.DEFAULT_LAYOUT),
+                ParkingStores.file(path, InMemoryParkingSpotStore.DEFAULT_LAYOUT, false));
+    }
+
+    private static Ticket parkACar(ParkingStores stores) throws Exception {
+        ScriptedInputReaderUtil inputReaderUtil = new ScriptedInputReaderUtil().addSelection(1).addVehicleRegistrationNumber(REG_NUMBER_FOR_TEST);
+        return new ParkingService(inputReaderUtil, stores.getParkingSpotStore(), stores.getTicketStore()).processIncomingVehicle();
+    }
+
+    private static Ticket leave(ParkingStores stores) throws Exception {
+        ScriptedInputReaderUtil inputReaderUtil = new ScriptedInputReaderUtil().addVehicleRegistrationNumber(REG_NUMBER_FOR_TEST);
+        return new ParkingService(inputReaderUtil, stores.getParkingSpotStore(), stores.getTicketStore()).processExitingVehicle();
+    }
+
+    @Test
+    public void testParkingACar() throws Exception {
+        for (ParkingStores stores : openStores()) {
+            try (stores) {
+                parkACar(stores);
+
+                Ticket ticket = stores.getTicketStore().getTicket(REG_NUMBER_FOR_TEST);
+                assertEquals(REG_NUMBER_FOR_TEST, ticket.getVehicleRegNumber());
+                assertEquals(1, ticket.getParkingSpot().getId());
+                assertNull(ticket.getOutTime());
+                assertTrue(stores.getTicketStore().checkAlreadyInParking(REG_NUMBER_FOR_TEST));
+                assertEquals(2, stores.getParkingSpotStore().getNextAvailableSlot(ParkingType.CAR));
+            }
+        }
+    }
+
+    @Test
+    public void testParkingLotExit() throws Exception {
+        for (ParkingStores stores : openStores()) {
+            try (stores) {
+                parkACar(stores);
+                leave(stores);
+
+                Ticket ticket = stores.getTicketStore().getTicket(REG_NUMBER_FOR_TEST);
+                assertNotNull(ticket.getOutTime());
+                assertEquals(0.00, ticket.getPrice()); // 0.00 because first 30 minutes free
+                assertFalse(stores.getTicketStore().checkAlreadyInParking(REG_NUMBER_FOR_TEST));
+                assertEquals(1, stores.getParkingSpotStore().getNextAvailableSlot(ParkingType.CAR));
+            }
+        }
+    }
+
+    @Test
+    public void secondVisitIsARegularUser() throws Exception {
+        for (ParkingStores stores : openStores()) {
+            try (stores) {
+                assertFalse(parkACar(stores).getRegularUser());
+                leave(stores);
+
+                assertTrue(parkACar(stores).getRegularUser());
+                assertTrue(stores.getTicketStore().isRegularUser(REG_NUMBER_FOR_TEST.toLowerCase()));
+            }
+        }
+    }
+
+    @Test
+    public void noTicketWhenTheLotIsFull() throws Exception {
+        for (ParkingStores stores : openStores()) {
+            try (stores) {
+                ParkingService parkingService = new ParkingService(null, stores.getParkingSpotStore(), stores.getTicketStore());
+                for (int i = 0; i < 2; i++) {
+                    assertNotNull(parkingService.processIncomingVehicle(ParkingType.BIKE, "BIKE" + i, new Date()));
+                }
+
+                assertNull(parkingService.processIncomingVehicle(ParkingType.BIKE, "BIKE2", new Date()));
+                assertThrows(IllegalStateException.class, () -> parkingService.processIncomingVehicle(ParkingType.BIKE, "BIKE0", new Date()));
+            }
+        }
+    }
+
+    @Test
+    public void rolledBackEntryFreesTheSpotAndForgetsTheTicket() throws Exception {
+        for (ParkingStores stores : openStores()) {
+            try (stores) {
+                TicketStore ticketStore = stores.getTicketStore();
+                assertThrows(IllegalStateException.class, () -> ticketStore.inTransaction(() -> {
+                    int parkingNumber = stores.getParkingSpotStore().claimNextAvailableSlot(ParkingType.CAR);
+                    Ticket ticket = new Ticket();
+                    ticket.setParkingSpot(new ParkingSpot(parkingNumber, ParkingType.CAR, false));
+                    ticket.setVehicleRegNumber(REG_NUMBER_FOR_TEST);
+                    ticket.setInTime(new Date());
+                    ticketStore.saveTicket(ticket);
+                    throw new IllegalStateException("gate failure");
+                }));
+
+                assertNull(ticketStore.getTicket(REG_NUMBER_FOR_TEST));
+                assertFalse(ticketStore.isRegularUser(REG_NUMBER_FOR_TEST));
+                assertEquals(1, stores.getParkingSpotStore().getNextAvailableSlot(ParkingType.CAR));
+            }
+        }
+    }
+
+    @Test
+    public void testSavingAndUpdatingTicketsInBatches() throws Exception {
+        for (ParkingStores stores : openStores()) {
+            try (stores) {
+                List<Ticket> tickets = new ArrayList<>();
+                for (int i = 1; i <= 3; i++) {
+                    Ticket ticket = new Ticket();
+                    ticket.setParkingSpot(new ParkingSpot(i, ParkingType.CAR, false));
+                    ticket.setVehicleRegNumber("BATCH" + i);
+                    ticket.setInTime(new Date(System.currentTimeMillis() - 60 * 60 * 1000));
+                    tickets.add(ticket);
+                }
+
+                assertEquals(3, stores.getTicketStore().saveTickets(tickets));
+                for (Ticket ticket : tickets) {
+                    ticket.setOutTime(new Date());
+                    ticket.setPrice(1.5);
+                }
+                assertEquals(3, stores.getTicketStore().updateTickets(tickets));
+
+                Ticket saved = stores.getTicketStore().getTicket("BATCH3");
+                assertEquals(tickets.get(2).getId(), saved.getId());
+                assertEquals(1.5, saved.getPrice());
+            }
+        }
+    }
+
+    @Test
+    public void fileStoreKeepsTicketsAndTakenSpotsAcrossRestarts() throws Exception {
+        try (ParkingStores stores = ParkingStores.file(path, InMemoryParkingSpotStore.DEFAULT_LAYOUT, false)) {
+            parkACar(stores);
+            leave(stores);
+            parkACar(stores);
+        }
+
+        try (ParkingStores stores = ParkingStores.file(path, InMemoryParkingSpotStore.DEFAULT_LAYOUT, false)) {
+            Ticket ticket = stores.getTicketStore().getTicket(REG_NUMBER_FOR_TEST);
+            assertEquals(2, ticket.getId());
+            assertNull(ticket.getOutTime());
+            assertEquals(2, stores.getParkingSpotStore().getNextAvailableSlot(ParkingType.CAR));
+
+            leave(stores);
+            assertEquals(1, stores.getParkingSpotStore().getNextAvailableSlot(ParkingType.CAR));
+        }
+    }
+
+    @Test
+    public void changeTheFileCannotTakeRollsItsTransactionBack() throws Exception {
+        try (FileTicketStore ticketStore = new FileTicketStore(path, 4096, false) {
+            @Override
+            protected void written(TicketJournalEntry.Operation operation, Ticket ticket) throws IOException {
+                if (ticket.getVehicleRegNumber().equals("BROKEN")) {
+                    throw new IOException("No space left on device");
+                }
+                super.written(operation, ticket);
+            }
+        }) {
+            assertThrows(IOException.class, () -> ticketStore.inTransaction(() -> {
+                ticketStore.saveTicket(newTicket(REG_NUMBER_FOR_TEST));
+                ticketStore.saveTicket(newTicket("BROKEN"));
+                return null;
+            }));
+            assertNull(ticketStore.getTicket(REG_NUMBER_FOR_TEST));
+
+            assertFalse(ticketStore.saveTicket(newTicket("BROKEN")));
+            assertNull(ticketStore.getTicket("BROKEN"));
+        }
+
+        try (FileTicketStore ticketStore = new FileTicketStore(path, 4096, false)) {
+            assertTrue(ticketStore.getTickets().isEmpty());
+        }
+    }
+
+    private static Ticket newTicket(String vehicleRegNumber) {
+        Ticket ticket = new Ticket();
+        ticket.setParkingSpot(new ParkingSpot(1, ParkingType.CAR, false));
+        ticket.setVehicleRegNumber(vehicleRegNumber);
+        ticket.setInTime(new Date());
+        return ticket;
+    }
+
+    @Test
+    public void fullFileIsRewrittenLarger() throws Exception {
+        try (FileTicketStore ticketStore = new FileTicketStore(path, 256, false)) {
+            for (int i = 0; i < 50; i++) {
+                Ticket ticket = new Ticket();
+                ticket.setParkingSpot(new ParkingSpot(1, ParkingType.CAR, false));
+                ticket.setVehicleRegNumber("CAR" + i);
+                ticket.setInTime(new Date());
+                assertTrue(ticketStore.saveTicket(ticket));
+                ticket.setOutTime(new Date());
+                assertTrue(ticketStore.updateTicket(ticket));
+            }
+        }
+
+        try (FileTicketStore ticketStore = new FileTicketStore(path, 256, false)) {
+            assertEquals(50, ticketStore.getTickets().size());
+            assertNotNull(ticketStore.getTicket("CAR49").getOutTime());
+            assertTrue(Files.size(path) > 256);
+        }
+    }
+
+    @Test
+    public void transactionRolledBackAfterARewriteLeavesNoTicketBehind() throws Exception {
+        try (FileTicketStore ticketStore = new FileTicketStore(path, 256, false) {
+            @Override
+            protected void written(TicketJournalEntry.Operation operation, Ticket ticket) throws IOException {
+                if (ticket.getVehicleRegNumber().equals("BROKEN")) {
+                    throw new IOException("No space left on device");
+                }
+                super.written(operation, ticket);
+            }
+        }) {
+            assertTrue(ticketStore.saveTicket(newTicket("KEPT1")));
+            assertTrue(ticketStore.saveTicket(newTicket("KEPT2")));
+            //the file fills up and is rewritten in the middle of the transaction, which then rolls back
+            assertThrows(IOException.class, () -> ticketStore.inTransaction(() -> {
+                for (int i = 0; i < 5; i++) {
+                    ticketStore.saveTicket(newTicket("GONE" + i));
+                }
+                ticketStore.saveTicket(newTicket("BROKEN"));
+                return null;
+            }));
+            assertTrue(Files.size(path) > 256);
+        }
+
+        try (FileTicketStore ticketStore = new FileTicketStore(path, 256, false)) {
+            assertEquals(2, ticketStore.getTickets().size());
+            assertNotNull(ticketStore.getTicket("KEPT1"));
+            assertNotNull(ticketStore.getTicket("KEPT2"));
+            assertNull(ticketStore.getTicket("GONE0"));
+        }
+    }
+
+    @Test
+    public void occupancyIsCountedWithoutTheRolledBackClaims() throws Exception {
+        for (ParkingStores stores : openStores()) {
+            try (stores) {
+                parkACar(stores);
+                assertThrows(IllegalStateException.class, () -> stores.getTicketStore().inTransaction(() -> {
+                    stores.getParkingSpotStore().claimNextAvailableSlot(ParkingType.CAR);
+                    throw new IllegalStateException("gate failure");
+                }));
+
+                Occupancy cars = stores.getParkingSpotStore().getOccupancy(ParkingType.CAR);
+                assertEquals(3, cars.getCapacity());
+                assertEquals(2, cars.getAvailableSpots());
+                assertEquals(1, cars.getOccupiedSpots());
+                assertFalse(cars.isFull());
+
+                ParkingService parkingService = new ParkingService(null, stores.getParkingSpotStore(), stores.getTicketStore());
+                parkingService.processIncomingVehicle(ParkingType.BIKE, "BIKE0", new Date());
+                parkingService.processIncomingVehicle(ParkingType.BIKE, "BIKE1", new Date());
+                assertTrue(parkingService.getOccupancy(ParkingType.BIKE).isFull());
+            }
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.parkit.parkingsystem.unit;
+
+import com.parkit.parkingsystem.dao.RegularUserIndex;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RegularUserIndexTest {
+
+    private RegularUserIndex regularUserIndex;
+
+    @BeforeEach
+    private void setUpPerTest() {
+        regularUserIndex = new RegularUserIndex();
+    }
+
+    @Test
+    public void unknownVehicleIsNotRegularUser() {
+        regularUserIndex.addVehicle("ABCDEF");
+        assertFalse(regularUserIndex.isRegularUser("GHIJKL"));
+    }
+
+    @Test
+    public void knownVehicleIsRegularUserWhateverTheCase() {
+        regularUserIndex.addVehicle("AbCdEf");
+        assertTrue(regularUserIndex.isRegularUser("ABCDEF"));
+        assertTrue(regularUserIndex.isRegularUser("abcdef"));
+    }
+
+    @Test
+    public void everyVehicleIsStillFoundAfterTheFilterGrows() {
+        for (int i = 0; i < 40_000; i++) {
+            regularUserIndex.addVehicle("PLATE" + i);
+        }
+        assertEquals(40_000, regularUserIndex.size());
+        for (int i = 0; i < 40_000; i++) {
+            assertTrue(regularUserIndex.isRegularUser("PLATE" + i));
+        }
+        assertFalse(regularUserIndex.isRegularUser("PLATE40000"));
+    }
+}
@@ -0,0 +1,146 @@
+package com.parkit.parkingsystem.unit;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.config.TransactionCallback;
+import com.parkit.parkingsystem.constants.DBConstants;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.service.FareCalculatorService;
+import com.parkit.parkingsystem.service.RepricingJob;
+import com.parkit.parkingsystem.service.RepricingReport;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@MockitoSettings(strictness = Strictness.LENIENT)
+@ExtendWith(MockitoExtension.class)
+public class RepricingJobTest {
+
+    @Mock
+    private static DataBaseConfig dataBaseConfig;
+    @Mock
+    private static Connection connection;
+
+    private final Map<String, PreparedStatement> preparedStatements = new HashMap<>();
+
+    //ID, TYPE, IN_TIME, OUT_TIME, REGULAR_USER: January is archived, except for the ticket the archiver did not reach yet
+    private static final Object[][] HISTORY_202001 = {
+            {1, "CAR", "2020-01-01 10:00:00", "2020-01-01 11:30:00", false},
+            {2, "BIKE", "2020-01-01 10:00:00", "2020-01-01 12:30:00", false},
+    };
+    private static final Object[][] TICKET = {
+            {3, "CAR", "2020-01-02 09:00:00", "2020-01-02 10:30:00", true},
+    };
+
+    private static ResultSet rows(Object[]... tickets) throws SQLException {
+        ResultSet rs = mock(ResultSet.class);
+        AtomicInteger row = new AtomicInteger(-1);
+        when(rs.next()).thenAnswer(invocation -> row.incrementAndGet() < tickets.length);
+        when(rs.getInt(1)).thenAnswer(invocation -> tickets[row.get()][0]);
+        when(rs.getString(anyInt())).thenAnswer(invocation -> tickets[row.get()][(int) invocation.getArgument(0) - 1]);
+        when(rs.getTimestamp(anyInt())).thenAnswer(invocation -> Timestamp.valueOf((String) tickets[row.get()][(int) invocation.getArgument(0) - 1]));
+        when(rs.getBoolean(5)).thenAnswer(invocation -> tickets[row.get()][4]);
+        return rs;
+    }
+
+    private PreparedStatement preparedStatement(String sql) {
+        return preparedStatements.computeIfAbsent(sql, key -> mock(PreparedStatement.class));
+    }
+
+    private PreparedStatement page(String table) {
+        return preparedStatement(String.format(DBConstants.GET_CLOSED_TICKETS_PAGE, table));
+    }
+
+    private PreparedStatement saveFirstTickets(String table) {
+        return preparedStatement(String.format(DBConstants.SAVE_FIRST_TICKETS, table));
+    }
+
+    //keyset paging: the rows of the table after the ID of the third parameter, at most the fourth parameter of them
+    private void answerPages(String table, Object[][] tickets) throws SQLException {
+        PreparedStatement ps = page(table);
+        int[] parameters = new int[2];
+        doAnswer(invocation -> parameters[(int) invocation.getArgument(0) - 3] = invocation.getArgument(1))
+                .when(ps).setInt(anyInt(), anyInt());
+        when(ps.executeQuery()).thenAnswer(invocation -> rows(Arrays.stream(tickets)
+                .filter(ticket -> (int) ticket[0] > parameters[0]).limit(parameters[1]).toArray(Object[][]::new)));
+    }
+
+    @BeforeEach
+    private void setUpPerTest() throws Exception {
+        when(dataBaseConfig.inTransaction(any())).thenAnswer(invocation -> ((TransactionCallback<?>) invocation.getArgument(0)).doInTransaction());
+        when(dataBaseConfig.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(anyString())).thenAnswer(invocation -> preparedStatement(invocation.getArgument(0)));
+        when(preparedStatement(DBConstants.GET_TICKET_HISTORY_TABLES).executeQuery()).thenAnswer(invocation -> rows(
+                new Object[] {"ticket_history_201912"}, new Object[] {"ticket_history_202001"}, new Object[] {"ticket_history_202002"}));
+        answerPages("ticket_history_202001", HISTORY_202001);
+        answerPages("ticket", TICKET);
+    }
+
+    @Test
+    public void revenueDeltasAreAggregatedPerTypeAndDay() throws Exception {
+        Map<ParkingType, Long> newRates = new EnumMap<>(ParkingType.class);
+        newRates.put(ParkingType.CAR, 200L);
+        newRates.put(ParkingType.BIKE, 100L);
+        RepricingJob repricingJob = new RepricingJob(dataBaseConfig, new FareCalculatorService(),
+                new FareCalculatorService(newRates), 2, new ForkJoinPool(2));
+
+        RepricingReport report = repricingJob.run(LocalDateTime.parse("2020-01-01T00:00:00"), LocalDateTime.parse("2020-02-01T00:00:00"));
+
+        assertEquals(3, report.getTicketCount());
+        SortedMap<LocalDate, RepricingReport.Revenue> carDays = report.getDailyRevenue(ParkingType.CAR);
+        assertEquals(2, carDays.size());
+        //one billed hour: 150 -> 200 cents
+        assertEquals(150, carDays.get(LocalDate.parse("2020-01-01")).getOldFareCents());
+        assertEquals(50, carDays.get(LocalDate.parse("2020-01-01")).getDeltaCents());
+        //regular user: 142 -> 190 cents
+        assertEquals(48, carDays.get(LocalDate.parse("2020-01-02")).getDeltaCents());
+        assertEquals(98, report.getTotalRevenue(ParkingType.CAR).getDeltaCents());
+        assertEquals(0, report.getTotalRevenue(ParkingType.BIKE).getDeltaCents());
+        assertEquals(200, report.getTotalRevenue(ParkingType.BIKE).getNewFareCents());
+    }
+
+    @Test
+    public void firstTicketsAreGatheredOnceAndOnlyTheTablesOfTheRangeArePaged() throws Exception {
+        RepricingJob repricingJob = new RepricingJob(dataBaseConfig, new FareCalculatorService(),
+                new FareCalculatorService(), 2, new ForkJoinPool(2));
+
+        repricingJob.run(LocalDateTime.parse("2020-01-01T00:00:00"), LocalDateTime.parse("2020-02-01T00:00:00"));
+
+        verify(preparedStatement(DBConstants.CREATE_FIRST_TICKETS)).execute();
+        //an earlier ticket of a vehicle may have left in an earlier month, never in a later one
+        verify(saveFirstTickets("ticket_history_201912")).execute();
+        verify(saveFirstTickets("ticket_history_202001")).execute();
+        verify(saveFirstTickets("ticket")).execute();
+        verify(saveFirstTickets("ticket_history_202002"), never()).execute();
+        //chunks of two tickets: [1, 2], then nothing in the history table of January; [3] in ticket
+        verify(page("ticket_history_201912"), never()).executeQuery();
+        verify(page("ticket_history_202001"), times(2)).executeQuery();
+        verify(page("ticket"), times(1)).executeQuery();
+        verify(page("ticket_history_202002"), never()).executeQuery();
+        verify(dataBaseConfig).closeConnection(connection);
+    }
+}
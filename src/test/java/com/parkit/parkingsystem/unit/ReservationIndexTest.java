@@ -0,0 +1,103 @@
+package com.parkit.parkingsystem.unit;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.InMemoryParkingSpotStore;
+import com.parkit.parkingsystem.dao.ReservationIndex;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Reservation;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ReservationIndexTest {
+
+    private static final long HOLD_MILLIS = TimeUnit.MINUTES.toMillis(30);
+
+    private ReservationIndex reservationIndex;
+
+    @BeforeEach
+    private void setUpPerTest() {
+        reservationIndex = new ReservationIndex(InMemoryParkingSpotStore.parseLayout(InMemoryParkingSpotStore.DEFAULT_LAYOUT), HOLD_MILLIS);
+    }
+
+    private static Date at(String time) {
+        return Timestamp.valueOf("2020-01-01 " + time + ":00");
+    }
+
+    @Test
+    public void lowestSpotFreeForTheWholeWindowIsBooked() {
+        assertEquals(1, reservationIndex.reserve(ParkingType.CAR, "CAR1", at("08:00"), at("10:00"), 0).getParkingSpot().getId());
+        assertEquals(2, reservationIndex.reserve(ParkingType.CAR, "CAR2", at("09:00"), at("11:00"), 0).getParkingSpot().getId());
+        assertEquals(3, reservationIndex.reserve(ParkingType.CAR, "CAR3", at("07:00"), at("12:00"), 0).getParkingSpot().getId());
+        assertNull(reservationIndex.reserve(ParkingType.CAR, "CAR4", at("09:30"), at("09:45"), 0));
+
+        //windows exclude their end
+        assertEquals(1, reservationIndex.reserve(ParkingType.CAR, "CAR4", at("10:00"), at("12:00"), 0).getParkingSpot().getId());
+        assertEquals(4, reservationIndex.reserve(ParkingType.BIKE, "BIKE1", at("08:00"), at("10:00"), 0).getParkingSpot().getId());
+        assertEquals(5, reservationIndex.reserve(ParkingType.BIKE, "BIKE2", at("08:00"), at("10:00"), 4).getParkingSpot().getId());
+        assertEquals(6, reservationIndex.size());
+    }
+
+    @Test
+    public void vehicleCannotHoldTwoReservationsAtOnce() {
+        reservationIndex.reserve(ParkingType.CAR, "ABCDEF", at("08:00"), at("10:00"), 0);
+
+        assertThrows(IllegalStateException.class, () -> reservationIndex.reserve(ParkingType.BIKE, "abcdef", at("09:00"), at("09:30"), 0));
+        assertThrows(IllegalArgumentException.class, () -> reservationIndex.reserve(ParkingType.CAR, "GHIJKL", at("09:00"), at("09:00"), 0));
+        assertNotNull(reservationIndex.reserve(ParkingType.CAR, "ABCDEF", at("10:00"), at("11:00"), 0));
+    }
+
+    @Test
+    public void spotIsHeldFromHoldMillisBeforeTheStartUntilTheEnd() {
+        Reservation reservation = reservationIndex.reserve(ParkingType.CAR, "ABCDEF", at("08:00"), at("10:00"), 0);
+
+        assertFalse(reservationIndex.isHeld(1, at("07:29").getTime()));
+        assertTrue(reservationIndex.isHeld(1, at("07:30").getTime()));
+        assertTrue(reservationIndex.isHeld(1, at("09:59").getTime()));
+        assertFalse(reservationIndex.isHeld(1, at("10:00").getTime()));
+        assertFalse(reservationIndex.isHeld(2, at("08:00").getTime()));
+        assertSame(reservation, reservationIndex.getReservation("abcdef", at("07:45").getTime()));
+        assertNull(reservationIndex.getReservation("ABCDEF", at("07:00").getTime()));
+
+        reservationIndex.remove(reservation);
+        assertFalse(reservationIndex.isHeld(1, at("08:00").getTime()));
+        assertNull(reservationIndex.getReservation("ABCDEF", at("08:00").getTime()));
+        assertEquals(0, reservationIndex.size());
+    }
+
+    @Test
+    public void tensOfThousandsOfReservationsAreCheckedByLookup() {
+        List<ParkingSpot> parkingSpots = new ArrayList<>();
+        for (int parkingNumber = 1; parkingNumber <= 200; parkingNumber++) {
+            parkingSpots.add(new ParkingSpot(parkingNumber, ParkingType.CAR, true));
+        }
+        ReservationIndex lot = new ReservationIndex(parkingSpots, HOLD_MILLIS);
+        long hour = TimeUnit.HOURS.toMillis(1);
+        long start = at("00:00").getTime();
+        //every spot booked hour after hour, but one free hour on spot 200
+        for (int slot = 0; slot < 250; slot++) {
+            for (int vehicle = 0; vehicle < 200; vehicle++) {
+                if (slot == 100 && vehicle == 199) {
+                    continue;
+                }
+                assertNotNull(lot.reserve(ParkingType.CAR, "V" + vehicle, new Date(start + slot * hour), new Date(start + (slot + 1) * hour), 0));
+            }
+        }
+        assertEquals(49_999, lot.size());
+
+        Reservation reservation = lot.reserve(ParkingType.CAR, "LATE", new Date(start + 100 * hour), new Date(start + 101 * hour), 0);
+        assertEquals(200, reservation.getParkingSpot().getId());
+        assertNull(lot.reserve(ParkingType.CAR, "LATER", new Date(start + 100 * hour), new Date(start + 100 * hour + 1), 0));
+
+        assertEquals(200 * 100, lot.removeEndedBefore(start + 100 * hour));
+        assertEquals(30_000, lot.size());
+        assertTrue(lot.isHeld(200, start + 100 * hour));
+    }
+}
@@ -0,0 +1,21 @@
+package com.parkit.parkingsystem.unit;
+
+import com.parkit.parkingsystem.config.SchemaMigrator;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SchemaMigratorTest {
+
+    @Test
+    public void baselineScriptIsSplitIntoStatementsWithoutComments() throws Exception {
+        List<String> statements = SchemaMigrator.readStatements("db/migration/V1__create_parking_and_ticket.sql");
+
+        assertEquals(2, statements.size());
+        assertTrue(statements.get(0).startsWith("create table if not exists parking("));
+        assertTrue(statements.get(1).startsWith("create table if not exists ticket("));
+        assertFalse(statements.get(1).contains(";"));
+    }
+}
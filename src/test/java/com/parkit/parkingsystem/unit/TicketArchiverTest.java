@@ -0,0 +1,122 @@
+package com.parkit.parkingsystem.unit;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.config.TransactionCallback;
+import com.parkit.parkingsystem.constants.DBConstants;
+import com.parkit.parkingsystem.service.TicketArchiver;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@MockitoSettings(strictness = Strictness.LENIENT)
+@ExtendWith(MockitoExtension.class)
+public class TicketArchiverTest {
+
+    @Mock
+    private static DataBaseConfig dataBaseConfig;
+    @Mock
+    private static Connection connection;
+    @Mock
+    private static Statement statement;
+
+    //ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME
+    private static final Object[][] TICKETS = {
+            {3, 1, "ABCDEF", 0.0, "2020-01-02 10:00:00", "2020-01-02 10:20:00"},
+            {1, 2, "GHIJKL", 1.5, "2020-01-31 22:00:00", "2020-01-31 23:00:00"},
+            {2, 4, "ABCDEF", 3.0, "2020-01-31 22:00:00", "2020-02-01 01:00:00"},
+    };
+
+    private final Map<String, PreparedStatement> preparedStatements = new HashMap<>();
+    private final List<String> executedSql = new ArrayList<>();
+
+    private static ResultSet rows(Object[][] rows) throws Exception {
+        ResultSet rs = mock(ResultSet.class);
+        AtomicInteger row = new AtomicInteger(-1);
+        when(rs.next()).thenAnswer(invocation -> row.incrementAndGet() < rows.length);
+        when(rs.getInt(anyInt())).thenAnswer(invocation -> rows[row.get()][(int) invocation.getArgument(0) - 1]);
+        when(rs.getString(anyInt())).thenAnswer(invocation -> rows[row.get()][(int) invocation.getArgument(0) - 1]);
+        when(rs.getDouble(anyInt())).thenAnswer(invocation -> rows[row.get()][(int) invocation.getArgument(0) - 1]);
+        when(rs.getTimestamp(anyInt())).thenAnswer(invocation -> Timestamp.valueOf((String) rows[row.get()][(int) invocation.getArgument(0) - 1]));
+        return rs;
+    }
+
+    private PreparedStatement preparedStatement(String sql) {
+        return preparedStatements.computeIfAbsent(sql, key -> mock(PreparedStatement.class));
+    }
+
+    @BeforeEach
+    private void setUpPerTest() throws Exception {
+        when(dataBaseConfig.getConnection()).thenReturn(connection);
+        when(dataBaseConfig.inTransaction(any())).thenAnswer(invocation -> ((TransactionCallback<?>) invocation.getArgument(0)).doInTransaction());
+        when(connection.prepareStatement(anyString())).thenAnswer(invocation -> preparedStatement(invocation.getArgument(0)));
+        when(connection.createStatement()).thenReturn(statement);
+        when(statement.execute(anyString())).thenAnswer(invocation -> executedSql.add(invocation.getArgument(0)));
+    }
+
+    @Test
+    public void closedTicketsAreMovedToTheTableOfTheirExitMonth() throws Exception {
+        ResultSet tickets = rows(TICKETS);
+        when(preparedStatement(DBConstants.GET_TICKETS_TO_ARCHIVE).executeQuery()).thenReturn(tickets);
+        //no history table yet, then the two created
+        ResultSet noTables = rows(new Object[0][]);
+        ResultSet createdTables = rows(new Object[][]{{"ticket_history_202001"}, {"ticket_history_202002"}});
+        when(preparedStatement(DBConstants.GET_TICKET_HISTORY_TABLES).executeQuery()).thenReturn(noTables, createdTables);
+
+        int archived = new TicketArchiver(dataBaseConfig, 30, 10, 0).archive(LocalDateTime.parse("2020-03-01T00:00:00"));
+
+        assertEquals(3, archived);
+        assertEquals(3, executedSql.size());
+        assertTrue(executedSql.get(0).startsWith("create table if not exists ticket_history_202001("));
+        assertTrue(executedSql.get(1).startsWith("create table if not exists ticket_history_202002("));
+        assertTrue(executedSql.get(2).endsWith(" from ticket union all select " + DBConstants.TICKET_COLUMNS + " from ticket_history_202001"
+                + " union all select " + DBConstants.TICKET_COLUMNS + " from ticket_history_202002"));
+        verify(preparedStatement(String.format(DBConstants.ARCHIVE_TICKET, "ticket_history_202001")), times(2)).addBatch();
+        verify(preparedStatement(String.format(DBConstants.ARCHIVE_TICKET, "ticket_history_202002")), times(1)).addBatch();
+        verify(preparedStatement(DBConstants.SAVE_ARCHIVED_VEHICLE), times(3)).addBatch();
+        PreparedStatement delete = preparedStatement(DBConstants.DELETE_TICKET);
+        verify(delete).setInt(1, 3);
+        verify(delete).setInt(1, 1);
+        verify(delete).setInt(1, 2);
+        verify(delete).executeBatch();
+        verify(dataBaseConfig, times(1)).inTransaction(any());
+    }
+
+    @Test
+    public void knownHistoryTablesAreNotCreatedAgain() throws Exception {
+        TicketArchiver ticketArchiver = new TicketArchiver(dataBaseConfig, 30, 10, 0);
+        ResultSet firstRun = rows(new Object[][]{TICKETS[0]});
+        ResultSet secondRun = rows(new Object[][]{TICKETS[1]});
+        when(preparedStatement(DBConstants.GET_TICKETS_TO_ARCHIVE).executeQuery()).thenReturn(firstRun, secondRun);
+        ResultSet existingTable = rows(new Object[][]{{"ticket_history_202001"}});
+        ResultSet sameTable = rows(new Object[][]{{"ticket_history_202001"}});
+        when(preparedStatement(DBConstants.GET_TICKET_HISTORY_TABLES).executeQuery()).thenReturn(existingTable, sameTable);
+
+        assertEquals(1, ticketArchiver.archive(LocalDateTime.parse("2020-03-01T00:00:00")));
+        assertEquals(1, ticketArchiver.archive(LocalDateTime.parse("2020-03-01T00:00:00")));
+
+        //the table existed already: only the view is defined again, and only on the first run
+        assertEquals(1, executedSql.size());
+        verify(preparedStatement(DBConstants.GET_TICKET_HISTORY_TABLES), times(2)).executeQuery();
+    }
+}
@@ -0,0 +1,93 @@
+package com.parkit.parkingsystem.unit;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.TicketCsvImporter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.StringReader;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class TicketCsvImporterTest {
+
+    private static final String HEADER = "PARKING_NUMBER,TYPE,VEHICLE_REG_NUMBER,PRICE,IN_TIME,OUT_TIME\n";
+
+    @Mock
+    private static TicketDAO ticketDAO;
+
+    private final List<List<Ticket>> savedBatches = new ArrayList<>();
+    private TicketCsvImporter ticketCsvImporter;
+
+    @BeforeEach
+    private void setUpPerTest() {
+        when(ticketDAO.getBatchSize()).thenReturn(2);
+        ticketCsvImporter = new TicketCsvImporter(ticketDAO);
+    }
+
+    private void acceptBatches() {
+        when(ticketDAO.saveTickets(anyList())).thenAnswer(invocation -> {
+            List<Ticket> batch = new ArrayList<>(invocation.getArgument(0));
+            savedBatches.add(batch);
+            return batch.size();
+        });
+    }
+
+    @Test
+    public void ticketsAreSavedInBatches() throws Exception {
+        acceptBatches();
+        String csv = HEADER
+                + "1,CAR,ABCDEF,1.5,2020-01-01 10:00:00,2020-01-01 11:00:00\n"
+                + "4,BIKE,GHIJKL,1.0,2020-01-01 10:00:00,2020-01-01 12:00:00\n"
+                + "2,CAR,MNOPQR,,2020-01-02 08:30:00,\n";
+
+        long imported = ticketCsvImporter.importTickets(new StringReader(csv));
+
+        assertEquals(3, imported);
+        assertEquals(2, savedBatches.size());
+        assertEquals(2, savedBatches.get(0).size());
+        Ticket ticket = savedBatches.get(0).get(1);
+        assertEquals(4, ticket.getParkingSpot().getId());
+        assertEquals(ParkingType.BIKE, ticket.getParkingSpot().getParkingType());
+        assertEquals("GHIJKL", ticket.getVehicleRegNumber());
+        assertEquals(Timestamp.valueOf("2020-01-01 12:00:00"), ticket.getOutTime());
+        Ticket openTicket = savedBatches.get(1).get(0);
+        assertEquals(0, openTicket.getPrice());
+        assertNull(openTicket.getOutTime());
+    }
+
+    @Test
+    public void malformedLinesAreSkipped() throws Exception {
+        acceptBatches();
+        String csv = HEADER
+                + "1,CAR,ABCDEF,1.5,2020-01-01 10:00:00,2020-01-01 11:00:00\n"
+                + "1,TRUCK,ABCDEF,1.5,2020-01-01 10:00:00,2020-01-01 11:00:00\n"
+                + "1,CAR,ABCDEF,1.5,yesterday,\n"
+                + "1,CAR,ABCDEF\n";
+
+        assertEquals(1, ticketCsvImporter.importTickets(new StringReader(csv)));
+        assertEquals(3, ticketCsvImporter.getRejectedLines());
+    }
+
+    @Test
+    public void importStopsAtRefusedBatch() throws Exception {
+        when(ticketDAO.saveTickets(anyList())).thenReturn(0);
+        String csv = HEADER
+                + "1,CAR,ABCDEF,1.5,2020-01-01 10:00:00,2020-01-01 11:00:00\n"
+                + "1,CAR,GHIJKL,1.5,2020-01-01 10:00:00,2020-01-01 11:00:00\n"
+                + "1,CAR,MNOPQR,1.5,2020-01-01 10:00:00,2020-01-01 11:00:00\n";
+
+        assertEquals(0, ticketCsvImporter.importTickets(new StringReader(csv)));
+    }
+}
@@ -0,0 +1,116 @@
+package com.parkit.parkingsystem.unit;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.TicketJournalEntry;
+import com.parkit.parkingsystem.dao.TicketJournalFile;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TicketJournalFileTest {
+
+    private static final int CAPACITY = 4096;
+
+    private Path path;
+
+    @BeforeEach
+    private void setUpPerTest() throws IOException {
+        path = Files.createTempFile("ticket-journal", ".log");
+        Files.delete(path);
+    }
+
+    @AfterEach
+    private void tearDownPerTest() throws IOException {
+        Files.deleteIfExists(path);
+    }
+
+    private static Ticket ticket(String vehicleRegNumber) {
+        Ticket ticket = new Ticket();
+        ticket.setParkingSpot(new ParkingSpot(2, ParkingType.BIKE, false));
+        ticket.setVehicleRegNumber(vehicleRegNumber);
+        ticket.setPrice(1.5);
+        ticket.setInTime(new Date(1_000_000L));
+        return ticket;
+    }
+
+    @Test
+    public void appendedEntriesAreReadBackAfterReopening() throws IOException {
+        try (TicketJournalFile journalFile = new TicketJournalFile(path, CAPACITY, false)) {
+            assertEquals(1, journalFile.append(TicketJournalEntry.Operation.SAVE, ticket("ABCDEF")).getSequence());
+            assertEquals(2, journalFile.appendCancel(1).getSequence());
+        }
+
+        try (TicketJournalFile journalFile = new TicketJournalFile(path, CAPACITY, false)) {
+            List<TicketJournalEntry> entries = journalFile.getRecoveredEntries();
+            assertEquals(2, entries.size());
+            Ticket ticket = entries.get(0).getTicket();
+            assertEquals(TicketJournalEntry.Operation.SAVE, entries.get(0).getOperation());
+            assertEquals("ABCDEF", ticket.getVehicleRegNumber());
+            assertEquals(ParkingType.BIKE, ticket.getParkingSpot().getParkingType());
+            assertEquals(2, ticket.getParkingSpot().getId());
+            assertEquals(1.5, ticket.getPrice());
+            assertEquals(new Date(1_000_000L), ticket.getInTime());
+            assertNull(ticket.getOutTime());
+            assertEquals(1, entries.get(1).getMarkedSequence());
+            assertEquals(3, journalFile.append(TicketJournalEntry.Operation.UPDATE, ticket("ABCDEF")).getSequence());
+        }
+    }
+
+    @Test
+    public void tornEntryEndsTheJournal() throws IOException {
+        try (TicketJournalFile journalFile = new TicketJournalFile(path, CAPACITY, false)) {
+            journalFile.append(TicketJournalEntry.Operation.SAVE, ticket("ABCDEF"));
+            journalFile.append(TicketJournalEntry.Operation.SAVE, ticket("GHIJKL"));
+        }
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            //last byte of the second entry
+            long position = 16 + 2 * 8 + 2 * (8 + 1 + 4 + 4 + 2 + 4 + 2 + 6 + 8 + 8 + 8) - 1;
+            file.seek(position);
+            int lastByte = file.read();
+            file.seek(position);
+            file.write(lastByte ^ 0xFF);
+        }
+
+        try (TicketJournalFile journalFile = new TicketJournalFile(path, CAPACITY, false)) {
+            assertEquals(1, journalFile.getRecoveredEntries().size());
+            assertEquals(2, journalFile.append(TicketJournalEntry.Operation.SAVE, ticket("MNOPQR")).getSequence());
+        }
+    }
+
+    @Test
+    public void journalStartsOverOnlyOnceEverythingIsApplied() throws IOException {
+        try (TicketJournalFile journalFile = new TicketJournalFile(path, CAPACITY, false)) {
+            journalFile.append(TicketJournalEntry.Operation.SAVE, ticket("ABCDEF"));
+            journalFile.append(TicketJournalEntry.Operation.SAVE, ticket("GHIJKL"));
+
+            assertFalse(journalFile.startOverIfApplied(1));
+            assertTrue(journalFile.startOverIfApplied(2));
+            assertEquals(3, journalFile.append(TicketJournalEntry.Operation.SAVE, ticket("MNOPQR")).getSequence());
+        }
+
+        try (TicketJournalFile journalFile = new TicketJournalFile(path, CAPACITY, false)) {
+            List<TicketJournalEntry> entries = journalFile.getRecoveredEntries();
+            assertEquals(1, entries.size());
+            assertEquals(3, entries.get(0).getSequence());
+        }
+    }
+
+    @Test
+    public void fullJournalRefusesEntries() throws IOException {
+        try (TicketJournalFile journalFile = new TicketJournalFile(path, 128, false)) {
+            assertNotNull(journalFile.append(TicketJournalEntry.Operation.SAVE, ticket("ABCDEF")));
+            assertNull(journalFile.append(TicketJournalEntry.Operation.SAVE, ticket("GHIJKL")));
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.parkit.parkingsystem.unit;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.config.TransactionCallback;
+import com.parkit.parkingsystem.constants.DBConstants;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.dao.TicketJournal;
+import com.parkit.parkingsystem.dao.TicketJournalEntry;
+import com.parkit.parkingsystem.dao.TicketJournalFile;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@MockitoSettings(strictness = Strictness.LENIENT)
+@ExtendWith(MockitoExtension.class)
+public class TicketJournalTest {
+
+    private static final int CAPACITY = 1 << 16;
+
+    @Mock
+    private static DataBaseConfig dataBaseConfig;
+    @Mock
+    private static Connection connection;
+
+    private final Map<String, PreparedStatement> preparedStatements = new HashMap<>();
+    private Path path;
+
+    private PreparedStatement preparedStatement(String sql) {
+        return preparedStatements.computeIfAbsent(sql, key -> mock(PreparedStatement.class));
+    }
+
+    @BeforeEach
+    private void setUpPerTest() throws Exception {
+        path = Files.createTempFile("ticket-journal", ".log");
+        Files.delete(path);
+        when(dataBaseConfig.getConnection()).thenReturn(connection);
+        when(dataBaseConfig.inTransaction(any())).thenAnswer(invocation -> ((TransactionCallback<?>) invocation.getArgument(0)).doInTransaction());
+        when(connection.prepareStatement(anyString())).thenAnswer(invocation -> preparedStatement(invocation.getArgument(0)));
+        ResultSet noCheckpoint = mock(ResultSet.class);
+        when(preparedStatement(DBConstants.GET_JOURNAL_CHECKPOINT).executeQuery()).thenReturn(noCheckpoint);
+    }
+
+    @AfterEach
+    private void tearDownPerTest() throws Exception {
+        Files.deleteIfExists(path);
+    }
+
+    private static Ticket ticket(String vehicleRegNumber) {
+        Ticket ticket = new Ticket();
+        ticket.setParkingSpot(new ParkingSpot(1, ParkingType.CAR, false));
+        ticket.setVehicleRegNumber(vehicleRegNumber);
+        ticket.setInTime(new Date(1_000_000L));
+        return ticket;
+    }
+
+    @Test
+    public void entryWhoseTransactionNeverCommittedIsNotReplayed() throws Exception {
+        try (TicketJournalFile journalFile = new TicketJournalFile(path, CAPACITY, false)) {
+            journalFile.appendPending(TicketJournalEntry.Operation.SAVE, ticket("COMMITTED"));
+            //crash between the append and the commit of the gate transaction
+            journalFile.appendPending(TicketJournalEntry.Operation.SAVE, ticket("CRASHED"));
+            journalFile.appendCommit(1);
+        }
+
+        TicketJournal journal = new TicketJournal(dataBaseConfig, new TicketJournalFile(path, CAPACITY, false), 100, 60_000);
+        try {
+            assertEquals(1, journal.recover());
+            assertEquals(3, journal.getAppliedSequence());
+        } finally {
+            journal.close();
+        }
+        verify(preparedStatement(DBConstants.SAVE_TICKET)).setString(2, "COMMITTED");
+        verify(preparedStatement(DBConstants.SAVE_TICKET), never()).setString(2, "CRASHED");
+        verify(preparedStatement(DBConstants.SAVE_JOURNAL_CHECKPOINT)).setLong(1, 3);
+    }
+
+    @Test
+    public void entryTheDataBaseRefusesIsMovedToTheDeadLetterTable() throws Exception {
+        PreparedStatement saveTicket = preparedStatement(DBConstants.SAVE_TICKET);
+        String[] vehicleRegNumber = new String[1];
+        doAnswer(invocation -> vehicleRegNumber[0] = invocation.getArgument(1)).when(saveTicket).setString(eq(2), anyString());
+        when(saveTicket.executeUpdate()).thenAnswer(invocation -> {
+            if (vehicleRegNumber[0].length() > 10) {
+                throw new SQLException("Data too long for column 'VEHICLE_REG_NUMBER'", "22001");
+            }
+            return 1;
+        });
+        try (TicketJournalFile journalFile = new TicketJournalFile(path, CAPACITY, false)) {
+            for (String plate : new String[] {"ABCDEF", "FAR-TOO-LONG-PLATE", "GHIJKL"}) {
+                journalFile.appendCommit(journalFile.appendPending(TicketJournalEntry.Operation.SAVE, ticket(plate)).getSequence());
+            }
+        }
+
+        TicketJournal journal = new TicketJournal(dataBaseConfig, new TicketJournalFile(path, CAPACITY, false), 100, 60_000);
+        try {
+            assertEquals(3, journal.recover());
+            assertEquals(6, journal.getAppliedSequence());
+        } finally {
+            journal.close();
+        }
+        verify(preparedStatement(DBConstants.SAVE_JOURNAL_DEAD_LETTER)).setLong(1, 3);
+        verify(preparedStatement(DBConstants.SAVE_JOURNAL_DEAD_LETTER)).setString(5, "FAR-TOO-LONG-PLATE");
+        verify(preparedStatement(DBConstants.SAVE_JOURNAL_DEAD_LETTER), times(1)).executeUpdate();
+        verify(preparedStatement(DBConstants.SAVE_JOURNAL_CHECKPOINT), atLeastOnce()).setLong(1, 6);
+    }
+
+    @Test
+    public void exitTheJournalCannotTakeLeavesTheSessionOpen() throws Exception {
+        ResultSet openTickets = mock(ResultSet.class);
+        when(openTickets.next()).thenReturn(true, false);
+        when(openTickets.getInt(1)).thenReturn(1);
+        when(openTickets.getInt(2)).thenReturn(7);
+        when(openTickets.getTimestamp(4)).thenReturn(new Timestamp(1_000_000L));
+        when(openTickets.getString(5)).thenReturn("ABCDEF");
+        when(openTickets.getString(6)).thenReturn("CAR");
+        when(preparedStatement(DBConstants.GET_OPEN_TICKETS).executeQuery()).thenReturn(openTickets);
+        TicketJournal journal = mock(TicketJournal.class);
+        when(journal.append(any(TicketJournalEntry.Operation.class), any(Ticket.class))).thenThrow(new IOException("Ticket journal is full"));
+        TicketDAO ticketDAO = new TicketDAO();
+        ticketDAO.setDataBaseConfig(dataBaseConfig);
+        assertTrue(ticketDAO.loadActiveSessionIndex());
+        ticketDAO.setTicketJournal(journal);
+        Ticket ticket = ticket("ABCDEF");
+        ticket.setId(7);
+        ticket.setOutTime(new Date(2_000_000L));
+
+        //outside any transaction: nothing rolls back to reopen the session
+        assertFalse(ticketDAO.updateTicket(ticket));
+
+        assertTrue(ticketDAO.checkAlreadyInParking("ABCDEF"));
+        assertEquals(7, ticketDAO.getTicket("ABCDEF").getId());
+    }
+}
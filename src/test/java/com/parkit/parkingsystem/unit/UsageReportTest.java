@@ -0,0 +1,161 @@
+package com.parkit.parkingsystem.unit;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.config.TransactionCallback;
+import com.parkit.parkingsystem.constants.DBConstants;
+import com.parkit.parkingsystem.service.UsageReport;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import java.io.StringWriter;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@MockitoSettings(strictness = Strictness.LENIENT)
+@ExtendWith(MockitoExtension.class)
+public class UsageReportTest {
+
+    @Mock
+    private static DataBaseConfig dataBaseConfig;
+    @Mock
+    private static Connection connection;
+
+    private final Map<String, PreparedStatement> preparedStatements = new HashMap<>();
+
+    //TYPE, PRICE, IN_TIME, OUT_TIME: January is archived, except for the tickets the archiver did not reach yet
+    private static final Object[][] HISTORY_202001 = {
+            {"CAR", 1.5, "2020-01-01 10:00:00", "2020-01-01 11:00:00"},
+            {"BIKE", 0.0, "2020-01-01 10:00:00", "2020-01-01 10:20:00"},
+            {"UNKNOWN", 9.0, "2020-01-01 09:00:00", "2020-01-01 13:00:00"},
+            {"CAR", 0.1, "2020-01-02 09:00:00", "2020-01-02 10:00:00"},
+    };
+    private static final Object[][] TICKET = {
+            {"BIKE", 1.0, "2020-02-10 08:00:00", "2020-02-10 10:00:00"},
+            {"CAR", 2.25, "2020-01-01 09:00:00", "2020-01-01 12:30:00"},
+    };
+
+    private static ResultSet rows(Object[]... tickets) {
+        ResultSet rs = mock(ResultSet.class);
+        AtomicInteger row = new AtomicInteger(-1);
+        try {
+            when(rs.next()).thenAnswer(invocation -> row.incrementAndGet() < tickets.length);
+            when(rs.getString(1)).thenAnswer(invocation -> tickets[row.get()][0]);
+            when(rs.getDouble(2)).thenAnswer(invocation -> tickets[row.get()][1]);
+            when(rs.getTimestamp(anyInt())).thenAnswer(invocation -> {
+                Object value = tickets[row.get()][(int) invocation.getArgument(0) - 1];
+                return value == null ? null : Timestamp.valueOf((String) value);
+            });
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+        return rs;
+    }
+
+    private static ResultSet ticketsByExit(Object[][] tickets, Timestamp from, Timestamp to) {
+        return rows(Arrays.stream(tickets).filter(ticket -> {
+            Timestamp outTime = Timestamp.valueOf((String) ticket[3]);
+            return !outTime.before(from) && outTime.before(to);
+        }).toArray(Object[][]::new));
+    }
+
+    private PreparedStatement preparedStatement(String sql) {
+        return preparedStatements.computeIfAbsent(sql, key -> mock(PreparedStatement.class));
+    }
+
+    private PreparedStatement byExit(String table) {
+        return preparedStatement(String.format(DBConstants.GET_CLOSED_TICKETS_BY_EXIT, table));
+    }
+
+    private void answerByExit(String table, Object[][] tickets) throws SQLException {
+        PreparedStatement ps = byExit(table);
+        Timestamp[] range = new Timestamp[2];
+        doAnswer(invocation -> range[(int) invocation.getArgument(0) - 1] = invocation.getArgument(1))
+                .when(ps).setTimestamp(anyInt(), any(Timestamp.class));
+        when(ps.executeQuery()).thenAnswer(invocation -> ticketsByExit(tickets, range[0], range[1]));
+    }
+
+    @BeforeEach
+    private void setUpPerTest() throws Exception {
+        when(dataBaseConfig.getConnection()).thenReturn(connection);
+        when(dataBaseConfig.inTransaction(any())).thenAnswer(invocation -> ((TransactionCallback<?>) invocation.getArgument(0)).doInTransaction());
+        when(connection.prepareStatement(anyString())).thenAnswer(invocation -> preparedStatement(invocation.getArgument(0)));
+        when(connection.prepareStatement(anyString(), eq(ResultSet.TYPE_FORWARD_ONLY), eq(ResultSet.CONCUR_READ_ONLY)))
+                .thenAnswer(invocation -> preparedStatement(invocation.getArgument(0)));
+        when(preparedStatement(DBConstants.GET_TICKET_HISTORY_TABLES).executeQuery())
+                .thenAnswer(invocation -> rows(new Object[] {"ticket_history_202001"}));
+        when(preparedStatement(DBConstants.GET_TICKET_EXIT_RANGE).executeQuery())
+                .thenAnswer(invocation -> rows(new Object[] {"2020-01-01 12:30:00", "2020-02-10 10:00:00"}));
+        answerByExit("ticket_history_202001", HISTORY_202001);
+        answerByExit("ticket", TICKET);
+    }
+
+    @Test
+    public void dailyUsageIsWrittenPerTypeInOnePass() throws Exception {
+        StringWriter csv = new StringWriter();
+
+        long reported = new UsageReport(dataBaseConfig).write(UsageReport.Period.DAY,
+                LocalDateTime.parse("2020-01-01T00:00:00"), LocalDateTime.parse("2020-03-01T00:00:00"), csv);
+
+        assertEquals(5, reported);
+        assertEquals(UsageReport.HEADER + "\n"
+                + "2020-01-01,CAR,2,3.75,4.50\n"
+                + "2020-01-01,BIKE,1,0.00,0.33\n"
+                + "2020-01-02,CAR,1,0.10,1.00\n"
+                + "2020-02-10,BIKE,1,1.00,2.00\n", csv.toString());
+        verify(byExit("ticket_history_202001")).setFetchSize(Integer.MIN_VALUE);
+        verify(byExit("ticket_history_202001")).setTimestamp(2, Timestamp.valueOf("2020-02-01 00:00:00"));
+        verify(byExit("ticket"), times(2)).setFetchSize(Integer.MIN_VALUE);
+        verify(byExit("ticket")).setTimestamp(1, Timestamp.valueOf("2020-02-01 00:00:00"));
+        verify(byExit("ticket"), never()).setTimestamp(2, Timestamp.valueOf("2020-04-01 00:00:00"));
+        verify(dataBaseConfig).closePreparedStatement(byExit("ticket_history_202001"));
+        verify(dataBaseConfig, times(2)).closePreparedStatement(byExit("ticket"));
+        verify(dataBaseConfig).closeConnection(connection);
+    }
+
+    @Test
+    public void monthsWithoutExitsAreNotRead() throws Exception {
+        StringWriter csv = new StringWriter();
+
+        long reported = new UsageReport(dataBaseConfig).write(UsageReport.Period.DAY,
+                LocalDateTime.parse("1970-01-01T00:00:00"), LocalDateTime.parse("2100-01-01T00:00:00"), csv);
+
+        assertEquals(5, reported);
+        verify(byExit("ticket")).setTimestamp(1, Timestamp.valueOf("2020-01-01 00:00:00"));
+        verify(byExit("ticket")).setTimestamp(2, Timestamp.valueOf("2020-03-01 00:00:00"));
+        verify(byExit("ticket"), times(2)).executeQuery();
+    }
+
+    @Test
+    public void monthlyUsageAddsUpTheDays() throws Exception {
+        StringWriter csv = new StringWriter();
+
+        new UsageReport(dataBaseConfig, 500).write(UsageReport.Period.MONTH,
+                LocalDateTime.parse("2020-01-01T00:00:00"), LocalDateTime.parse("2020-03-01T00:00:00"), csv);
+
+        assertEquals(UsageReport.HEADER + "\n"
+                + "2020-01,CAR,3,3.85,5.50\n"
+                + "2020-01,BIKE,1,0.00,0.33\n"
+                + "2020-02,BIKE,1,1.00,2.00\n", csv.toString());
+        verify(byExit("ticket"), times(2)).setFetchSize(500);
+    }
+}